@@ -103,6 +103,19 @@ public class ExclusiveBeanNameAutoProxyCreator extends BeanNameAutoProxyCreator
 	 */
 	private boolean m_applyCommonInterceptorsFirst = true;
 	
+	/**
+	 * @see #setLazyProxies(boolean)
+	 */
+	private boolean m_lazyProxies = false;
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * The class loader of the beans, used for the lazy proxies.
+	 */
+	private transient ClassLoader m_beanClassLoader
+		= ClassUtils.getDefaultClassLoader();
+	
 	/**
 	 * Should the output of a {@link FactoryBean} be proxied instead of the factory itself?
 	 */
@@ -199,16 +212,27 @@ public class ExclusiveBeanNameAutoProxyCreator extends BeanNameAutoProxyCreator
 	 */
 	@SuppressWarnings("unchecked")
 	@Override
-	protected Object createProxy(Class beanClass, String beanName,
-		Object[] specificInterceptors, TargetSource targetSource) {
+	protected Object createProxy(final Class beanClass, final String beanName,
+		final Object[] specificInterceptors, final TargetSource targetSource) {
 		
 		Object proxy = ProxyEnricher.enrichProxy(beanClass, beanName,
 			specificInterceptors, targetSource, getInterceptorNames(),
 			getBeanFactory(), getAdvisorAdapterRegistry(),
 			isApplyCommonInterceptorsFirst());
 		
-		// If no proxy could be enriched create a new one.
-		if (proxy == null) {
+		// If no proxy could be enriched create a new one, on first invocation
+		// in lazy mode.
+		if (proxy == null && isLazyProxies() && LazyProxy.isApplicable(beanClass,
+			specificInterceptors, shouldProxyTargetClass(beanClass, beanName))) {
+			proxy = LazyProxy.create(beanClass, beanName, isOpaque(),
+				m_beanClassLoader,
+				new LazyProxy.RealProxyFactory() {
+					public Object createRealProxy() {
+						return ExclusiveBeanNameAutoProxyCreator.super.createProxy(beanClass, beanName,
+							specificInterceptors, targetSource);
+					}
+				});
+		} else if (proxy == null) {
 			proxy = super.createProxy(beanClass, beanName,
 				specificInterceptors, targetSource);
 		}
@@ -335,4 +359,36 @@ public class ExclusiveBeanNameAutoProxyCreator extends BeanNameAutoProxyCreator
 	public void setProxyFactoryBeanOutput(boolean proxyFactoryBeanOutput) {
 		m_proxyFactoryBeanOutput = proxyFactoryBeanOutput;
 	}
+	
+	/**
+	 * @return Returns whether advised proxies are created on first invocation.
+	 */
+	public boolean isLazyProxies() {
+		return m_lazyProxies;
+	}
+
+	/**
+	 * Installs a forwarding stub instead of the advised proxy of a bean and
+	 * creates the advised proxy on first invocation of the bean (see
+	 * {@link LazyProxy} for the restrictions). Default is <code>false</code>.
+	 *
+	 * @param lazyProxies
+	 *            Whether advised proxies are created on first invocation.
+	 */
+	public void setLazyProxies(boolean lazyProxies) {
+		m_lazyProxies = lazyProxies;
+	}
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * Added to create the lazy proxies in the class loader of the beans.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		m_beanClassLoader = classLoader;
+		super.setBeanClassLoader(classLoader);
+	}
 }
@@ -17,9 +17,14 @@
 package ch.elca.el4j.core.aop;
 
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
 import org.springframework.aop.TargetSource;
 import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
 import org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry;
@@ -30,6 +35,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
 import ch.elca.el4j.util.codingsupport.AopHelper;
@@ -40,6 +46,11 @@ import ch.elca.el4j.util.codingsupport.AopHelper;
  * getter and setter for them) do just take place in this class, because class
  * {@link AbstractAutoProxyCreator} hides them.
  *
+ * <p>Optionally, the advisors that apply to a class are matched only once for
+ * all beans of this class (see {@link #setCacheAdvisorMatching(boolean)}) and
+ * the advised proxies are created on first invocation (see
+ * {@link #setLazyProxies(boolean)}).
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Martin Zeltner (MZE)
@@ -79,11 +90,35 @@ public class IntelligentAdvisorAutoProxyCreator extends DefaultAdvisorAutoProxyC
 	 */
 	private boolean m_applyCommonInterceptorsFirst = true;
 	
+	/**
+	 * @see #setLazyProxies(boolean)
+	 */
+	private boolean m_lazyProxies = false;
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * The class loader of the beans, used for the lazy proxies.
+	 */
+	private transient ClassLoader m_beanClassLoader
+		= ClassUtils.getDefaultClassLoader();
+	
 	/**
 	 * If <code>true</code> (default) the use of advisor name prefix is mandatory.
 	 * @see #setUsePrefix(boolean)
 	 */
 	private boolean forceUseOfAdvisorNamePrefix = true;
+	
+	/**
+	 * @see #setCacheAdvisorMatching(boolean)
+	 */
+	private boolean m_cacheAdvisorMatching = false;
+	
+	/**
+	 * The advisors that apply to a bean class, by bean class.
+	 */
+	private final transient Map<Class<?>, AdvisorMatch> m_advisorMatches
+		= new ConcurrentHashMap<Class<?>, AdvisorMatch>();
 
 	/**
 	 * Will not create a new proxy for a given bean if this bean is already
@@ -93,16 +128,27 @@ public class IntelligentAdvisorAutoProxyCreator extends DefaultAdvisorAutoProxyC
 	 */
 	@SuppressWarnings("unchecked")
 	@Override
-	protected Object createProxy(Class beanClass, String beanName,
-		Object[] specificInterceptors, TargetSource targetSource) {
+	protected Object createProxy(final Class beanClass, final String beanName,
+		final Object[] specificInterceptors, final TargetSource targetSource) {
 		
 		Object proxy = ProxyEnricher.enrichProxy(beanClass, beanName,
 			specificInterceptors, targetSource, getInterceptorNames(),
 			getBeanFactory(), getAdvisorAdapterRegistry(),
 			isApplyCommonInterceptorsFirst());
 		
-		// If no proxy could be enriched create a new one.
-		if (proxy == null) {
+		// If no proxy could be enriched create a new one, on first invocation
+		// in lazy mode.
+		if (proxy == null && isLazyProxies() && LazyProxy.isApplicable(beanClass,
+			specificInterceptors, shouldProxyTargetClass(beanClass, beanName))) {
+			proxy = LazyProxy.create(beanClass, beanName, isOpaque(),
+				m_beanClassLoader,
+				new LazyProxy.RealProxyFactory() {
+					public Object createRealProxy() {
+						return IntelligentAdvisorAutoProxyCreator.super.createProxy(beanClass, beanName,
+							specificInterceptors, targetSource);
+					}
+				});
+		} else if (proxy == null) {
 			proxy = super.createProxy(beanClass, beanName,
 				specificInterceptors, targetSource);
 		}
@@ -121,6 +167,31 @@ public class IntelligentAdvisorAutoProxyCreator extends DefaultAdvisorAutoProxyC
 		return super.getAdvicesAndAdvisorsForBean(deproxiedBeanClass, beanName, targetSource);
 	}
 
+	/**
+	 * Matches the candidate advisors only once per bean class if the advisor
+	 * matching is cached.
+	 *
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected List<Advisor> findAdvisorsThatCanApply(
+		List<Advisor> candidateAdvisors, Class beanClass, String beanName) {
+		if (!m_cacheAdvisorMatching) {
+			return super.findAdvisorsThatCanApply(candidateAdvisors,
+				beanClass, beanName);
+		}
+		AdvisorMatch match = m_advisorMatches.get(beanClass);
+		if (match == null || !match.m_candidates.equals(candidateAdvisors)) {
+			match = new AdvisorMatch(candidateAdvisors,
+				super.findAdvisorsThatCanApply(candidateAdvisors, beanClass,
+					beanName));
+			m_advisorMatches.put(beanClass, match);
+		}
+		// the caller extends and sorts the list
+		return new ArrayList<Advisor>(match.m_eligible);
+	}
+	
 	/**
 	 * Finds out if the given class is a generated one of a proxy. If yes, the original class will be returned.
 	 * 
@@ -238,4 +309,84 @@ public class IntelligentAdvisorAutoProxyCreator extends DefaultAdvisorAutoProxyC
 			+ "This was made to eliminate duplicated used advisors, so interceptors are not applied twice or "
 			+ "even more on one bean.");
 	}
+	
+	/**
+	 * @return Returns whether advised proxies are created on first invocation.
+	 */
+	public boolean isLazyProxies() {
+		return m_lazyProxies;
+	}
+
+	/**
+	 * Installs a forwarding stub instead of the advised proxy of a bean and
+	 * creates the advised proxy on first invocation of the bean (see
+	 * {@link LazyProxy} for the restrictions). Default is <code>false</code>.
+	 *
+	 * @param lazyProxies
+	 *            Whether advised proxies are created on first invocation.
+	 */
+	public void setLazyProxies(boolean lazyProxies) {
+		m_lazyProxies = lazyProxies;
+	}
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * Added to create the lazy proxies in the class loader of the beans.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		m_beanClassLoader = classLoader;
+		super.setBeanClassLoader(classLoader);
+	}
+	
+	/**
+	 * @return Returns whether the advisors that apply to a class are matched
+	 *         only once.
+	 */
+	public boolean isCacheAdvisorMatching() {
+		return m_cacheAdvisorMatching;
+	}
+
+	/**
+	 * Matches the candidate advisors only once for all beans of the same
+	 * class, instead of once per bean. Must not be enabled if the pointcuts
+	 * depend on the bean name (e.g. AspectJ <code>bean()</code> pointcuts).
+	 * Default is <code>false</code>.
+	 *
+	 * @param cacheAdvisorMatching
+	 *            Whether the advisors that apply to a class are matched only
+	 *            once.
+	 */
+	public void setCacheAdvisorMatching(boolean cacheAdvisorMatching) {
+		m_cacheAdvisorMatching = cacheAdvisorMatching;
+	}
+	
+	/**
+	 * The advisors that apply to a bean class.
+	 */
+	private static final class AdvisorMatch {
+		/**
+		 * The candidate advisors that have been matched.
+		 */
+		private final List<Advisor> m_candidates;
+		
+		/**
+		 * The candidate advisors that apply to the bean class.
+		 */
+		private final List<Advisor> m_eligible;
+		
+		/**
+		 * @param candidates
+		 *            Are the candidate advisors that have been matched.
+		 * @param eligible
+		 *            Are the candidate advisors that apply to the bean class.
+		 */
+		private AdvisorMatch(List<Advisor> candidates, List<Advisor> eligible) {
+			m_candidates = new ArrayList<Advisor>(candidates);
+			m_eligible = new ArrayList<Advisor>(eligible);
+		}
+	}
 }
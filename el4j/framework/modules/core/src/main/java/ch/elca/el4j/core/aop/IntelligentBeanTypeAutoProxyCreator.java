@@ -20,6 +20,7 @@ import org.springframework.aop.TargetSource;
 import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
 import org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry;
 import org.springframework.aop.framework.autoproxy.AbstractAutoProxyCreator;
+import org.springframework.util.ClassUtils;
 
 /**
  * Intelligent bean type autoproxy creator. Will not create a new
@@ -37,6 +38,19 @@ public class IntelligentBeanTypeAutoProxyCreator extends BeanTypeAutoProxyCreato
 	 */
 	private static final long serialVersionUID = -2417610783882720300L;
 
+	/**
+	 * @see #setLazyProxies(boolean)
+	 */
+	private boolean m_lazyProxies = false;
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * The class loader of the beans, used for the lazy proxies.
+	 */
+	private transient ClassLoader m_beanClassLoader
+		= ClassUtils.getDefaultClassLoader();
+	
 	/**
 	 * COPYIED FROM SUPERCLASS!
 	 *
@@ -69,16 +83,27 @@ public class IntelligentBeanTypeAutoProxyCreator extends BeanTypeAutoProxyCreato
 	 */
 	@SuppressWarnings("unchecked")
 	@Override
-	protected Object createProxy(Class beanClass, String beanName,
-		Object[] specificInterceptors, TargetSource targetSource) {
+	protected Object createProxy(final Class beanClass, final String beanName,
+		final Object[] specificInterceptors, final TargetSource targetSource) {
 		
 		Object proxy = ProxyEnricher.enrichProxy(beanClass, beanName,
 			specificInterceptors, targetSource, getInterceptorNames(),
 			getBeanFactory(), getAdvisorAdapterRegistry(),
 			isApplyCommonInterceptorsFirst());
 		
-		// If no proxy could be enriched create a new one.
-		if (proxy == null) {
+		// If no proxy could be enriched create a new one, on first invocation
+		// in lazy mode.
+		if (proxy == null && isLazyProxies() && LazyProxy.isApplicable(beanClass,
+			specificInterceptors, shouldProxyTargetClass(beanClass, beanName))) {
+			proxy = LazyProxy.create(beanClass, beanName, isOpaque(),
+				m_beanClassLoader,
+				new LazyProxy.RealProxyFactory() {
+					public Object createRealProxy() {
+						return IntelligentBeanTypeAutoProxyCreator.super.createProxy(beanClass, beanName,
+							specificInterceptors, targetSource);
+					}
+				});
+		} else if (proxy == null) {
 			proxy = super.createProxy(beanClass, beanName,
 				specificInterceptors, targetSource);
 		}
@@ -161,4 +186,36 @@ public class IntelligentBeanTypeAutoProxyCreator extends BeanTypeAutoProxyCreato
 		m_applyCommonInterceptorsFirst = applyCommonInterceptorsFirst;
 		super.setApplyCommonInterceptorsFirst(applyCommonInterceptorsFirst);
 	}
+	
+	/**
+	 * @return Returns whether advised proxies are created on first invocation.
+	 */
+	public boolean isLazyProxies() {
+		return m_lazyProxies;
+	}
+
+	/**
+	 * Installs a forwarding stub instead of the advised proxy of a bean and
+	 * creates the advised proxy on first invocation of the bean (see
+	 * {@link LazyProxy} for the restrictions). Default is <code>false</code>.
+	 *
+	 * @param lazyProxies
+	 *            Whether advised proxies are created on first invocation.
+	 */
+	public void setLazyProxies(boolean lazyProxies) {
+		m_lazyProxies = lazyProxies;
+	}
+	
+	/**
+	 * COPYIED FROM SUPERCLASS!
+	 *
+	 * Added to create the lazy proxies in the class loader of the beans.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		m_beanClassLoader = classLoader;
+		super.setBeanClassLoader(classLoader);
+	}
 }
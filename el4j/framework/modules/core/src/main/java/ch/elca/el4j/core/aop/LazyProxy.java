@@ -0,0 +1,243 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.core.aop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.DynamicIntroductionAdvice;
+import org.springframework.aop.IntroductionAdvisor;
+import org.springframework.aop.SpringProxy;
+import org.springframework.aop.framework.Advised;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Forwarding stub installed by the auto proxy creators in lazy proxy mode
+ * instead of the advised proxy of a bean. The advised proxy (with its advisor
+ * chain) is only created when the bean is invoked for the first time, so beans
+ * that are never used in a process do not cost anything but the stub.
+ *
+ * <p>The stub is a JDK dynamic proxy implementing the interfaces of the bean
+ * (and {@link Advised}, which realizes the advised proxy as well). It is only
+ * used if the advised proxy would be a JDK dynamic proxy too and if the
+ * bean-specific interceptors do not introduce further interfaces. Common
+ * interceptors (see <code>interceptorNames</code>) are resolved on first
+ * invocation and must not be introductions either. <code>equals</code> and
+ * <code>hashCode</code> of the stub are based on its identity.
+ *
+ * <p>Once the advised proxy exists, invocations are handed to its invocation
+ * handler directly, with the stub as proxy, so the stub adds no reflective
+ * call to the advised proxy.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public final class LazyProxy implements InvocationHandler {
+	
+	/**
+	 * Creates the advised proxy of a bean.
+	 */
+	public interface RealProxyFactory {
+		/**
+		 * @return Returns the advised proxy.
+		 */
+		Object createRealProxy();
+	}
+	
+	/**
+	 * Private logger.
+	 */
+	private static Logger s_logger = LoggerFactory.getLogger(LazyProxy.class);
+	
+	/**
+	 * The name of the proxied bean.
+	 */
+	private final String m_beanName;
+	
+	/**
+	 * Creates the advised proxy, <code>null</code> once it has been created.
+	 */
+	private RealProxyFactory m_factory;
+	
+	/**
+	 * The invocation handler of the advised proxy, <code>null</code> until the
+	 * first invocation.
+	 */
+	private volatile InvocationHandler m_realHandler;
+	
+	/**
+	 * @param beanName
+	 *            Is the name of the proxied bean.
+	 * @param factory
+	 *            Creates the advised proxy.
+	 */
+	private LazyProxy(String beanName, RealProxyFactory factory) {
+		m_beanName = beanName;
+		m_factory = factory;
+	}
+	
+	/**
+	 * @param beanClass
+	 *            Is the class of the bean.
+	 * @param specificInterceptors
+	 *            Are the interceptors specific to the bean.
+	 * @param proxyTargetClass
+	 *            Whether the target class would be proxied.
+	 * @return Returns whether a stub can stand in for the advised proxy of
+	 *         the bean.
+	 */
+	public static boolean isApplicable(Class<?> beanClass,
+		Object[] specificInterceptors, boolean proxyTargetClass) {
+		if (proxyTargetClass
+			|| ClassUtils.getAllInterfacesForClass(beanClass).length == 0) {
+			return false;
+		}
+		if (specificInterceptors != null) {
+			for (Object interceptor : specificInterceptors) {
+				if (interceptor instanceof IntroductionAdvisor
+					|| interceptor instanceof DynamicIntroductionAdvice) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a stub for the advised proxy of the given bean.
+	 *
+	 * @param beanClass
+	 *            Is the class of the bean.
+	 * @param beanName
+	 *            Is the name of the bean.
+	 * @param opaque
+	 *            Whether the advised proxy will not implement {@link Advised}.
+	 * @param classLoader
+	 *            Is the class loader to define the stub in, the one of the
+	 *            auto proxy creator's beans.
+	 * @param factory
+	 *            Creates the advised proxy on first invocation.
+	 * @return Returns the stub.
+	 */
+	public static Object create(Class<?> beanClass, String beanName,
+		boolean opaque, ClassLoader classLoader, RealProxyFactory factory) {
+		List<Class<?>> interfaces = new ArrayList<Class<?>>(Arrays.asList(
+			ClassUtils.getAllInterfacesForClass(beanClass, classLoader)));
+		if (!interfaces.contains(SpringProxy.class)) {
+			interfaces.add(SpringProxy.class);
+		}
+		if (!opaque && !interfaces.contains(Advised.class)) {
+			interfaces.add(Advised.class);
+		}
+		return Proxy.newProxyInstance(classLoader,
+			interfaces.toArray(new Class<?>[interfaces.size()]),
+			new LazyProxy(beanName, factory));
+	}
+	
+	/**
+	 * @param proxy
+	 *            Is a bean.
+	 * @return Returns whether the given bean is a stub whose advised proxy has
+	 *         not been created yet.
+	 */
+	public static boolean isPending(Object proxy) {
+		if (proxy == null || !Proxy.isProxyClass(proxy.getClass())) {
+			return false;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+		return handler instanceof LazyProxy
+			&& ((LazyProxy) handler).m_realHandler == null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args)
+		throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			if ("equals".equals(method.getName())) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(method.getName())) {
+				return System.identityHashCode(proxy);
+			}
+		}
+		return getRealHandler().invoke(proxy, method, args);
+	}
+	
+	/**
+	 * @return Returns the invocation handler of the advised proxy, creates the
+	 *         advised proxy on first call.
+	 */
+	private InvocationHandler getRealHandler() {
+		InvocationHandler realHandler = m_realHandler;
+		if (realHandler == null) {
+			synchronized (this) {
+				realHandler = m_realHandler;
+				if (realHandler == null) {
+					s_logger.debug("Creating proxy of bean '" + m_beanName
+						+ "' on first invocation.");
+					Object realProxy = m_factory.createRealProxy();
+					if (Proxy.isProxyClass(realProxy.getClass())) {
+						realHandler = Proxy.getInvocationHandler(realProxy);
+					} else {
+						realHandler = new ForwardingHandler(realProxy);
+					}
+					m_realHandler = realHandler;
+					m_factory = null;
+				}
+			}
+		}
+		return realHandler;
+	}
+	
+	/**
+	 * Forwards invocations to an advised proxy that is not a JDK dynamic
+	 * proxy.
+	 */
+	private static final class ForwardingHandler implements InvocationHandler {
+		/**
+		 * The advised proxy.
+		 */
+		private final Object m_realProxy;
+		
+		/**
+		 * @param realProxy
+		 *            Is the advised proxy.
+		 */
+		ForwardingHandler(Object realProxy) {
+			m_realProxy = realProxy;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+			try {
+				return method.invoke(m_realProxy, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.core.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Records when each bean of an application context has been created and how
+ * long it took, to find the beans that slow down the startup.
+ *
+ * <p>The total time of a bean includes the creation of the beans it depends
+ * on, its own time does not. Recording is thread safe.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BeanStartupTimeline {
+	
+	/**
+	 * The time the timeline has been started at, in nanoseconds.
+	 */
+	private final long m_startNanos = System.nanoTime();
+	
+	/**
+	 * The finished bean creations, in the order they finished.
+	 */
+	private final List<Entry> m_entries = new ArrayList<Entry>();
+	
+	/**
+	 * The bean creations in progress on each thread, innermost first.
+	 */
+	private final ThreadLocal<LinkedList<Entry>> m_inProgress
+		= new ThreadLocal<LinkedList<Entry>>() {
+			@Override
+			protected LinkedList<Entry> initialValue() {
+				return new LinkedList<Entry>();
+			}
+		};
+	
+	/**
+	 * Marks the start of a bean creation on the current thread.
+	 *
+	 * @param beanName
+	 *            Is the name of the bean being created.
+	 */
+	public void beanCreationStarted(String beanName) {
+		m_inProgress.get().addFirst(new Entry(beanName,
+			Thread.currentThread().getName(), System.nanoTime() - m_startNanos));
+	}
+	
+	/**
+	 * Marks the end of the innermost bean creation on the current thread.
+	 */
+	public void beanCreationFinished() {
+		LinkedList<Entry> inProgress = m_inProgress.get();
+		if (inProgress.isEmpty()) {
+			m_inProgress.remove();
+			return;
+		}
+		Entry entry = inProgress.removeFirst();
+		entry.m_totalNanos = System.nanoTime() - m_startNanos - entry.m_startNanos;
+		entry.m_ownNanos += entry.m_totalNanos;
+		if (!inProgress.isEmpty()) {
+			inProgress.getFirst().m_ownNanos -= entry.m_totalNanos;
+		} else {
+			// the thread may outlive the timeline, e.g. in a pool
+			m_inProgress.remove();
+		}
+		synchronized (m_entries) {
+			m_entries.add(entry);
+		}
+	}
+	
+	/**
+	 * @return Returns the finished bean creations, in the order they have
+	 *         been started.
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> entries;
+		synchronized (m_entries) {
+			entries = new ArrayList<Entry>(m_entries);
+		}
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				return e1.m_startNanos < e2.m_startNanos ? -1
+					: (e1.m_startNanos == e2.m_startNanos ? 0 : 1);
+			}
+		});
+		return entries;
+	}
+	
+	/**
+	 * @param count
+	 *            Is the maximum number of beans to return.
+	 * @return Returns the bean creations that took the most time on their
+	 *         own, slowest first.
+	 */
+	public List<Entry> getSlowestEntries(int count) {
+		List<Entry> entries = getEntries();
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2) {
+				return e1.m_ownNanos > e2.m_ownNanos ? -1
+					: (e1.m_ownNanos == e2.m_ownNanos ? 0 : 1);
+			}
+		});
+		return entries.subList(0, Math.min(count, entries.size()));
+	}
+	
+	/**
+	 * One bean creation.
+	 */
+	public static class Entry {
+		/**
+		 * @see #getBeanName()
+		 */
+		private final String m_beanName;
+		
+		/**
+		 * @see #getThreadName()
+		 */
+		private final String m_threadName;
+		
+		/**
+		 * Start relative to the start of the timeline, in nanoseconds.
+		 */
+		private final long m_startNanos;
+		
+		/**
+		 * Total duration in nanoseconds.
+		 */
+		private long m_totalNanos;
+		
+		/**
+		 * Duration without nested bean creations in nanoseconds.
+		 */
+		private long m_ownNanos;
+		
+		/**
+		 * @param beanName
+		 *            Is the name of the created bean.
+		 * @param threadName
+		 *            Is the name of the creating thread.
+		 * @param startNanos
+		 *            Is the start relative to the start of the timeline.
+		 */
+		Entry(String beanName, String threadName, long startNanos) {
+			m_beanName = beanName;
+			m_threadName = threadName;
+			m_startNanos = startNanos;
+		}
+		
+		/**
+		 * @return Returns the name of the created bean.
+		 */
+		public String getBeanName() {
+			return m_beanName;
+		}
+		
+		/**
+		 * @return Returns the name of the thread that created the bean.
+		 */
+		public String getThreadName() {
+			return m_threadName;
+		}
+		
+		/**
+		 * @return Returns the start of the creation in milliseconds since the
+		 *         start of the timeline.
+		 */
+		public long getStartMillis() {
+			return m_startNanos / 1000000;
+		}
+		
+		/**
+		 * @return Returns the duration of the creation in milliseconds,
+		 *         including the creation of the beans it depends on.
+		 */
+		public long getTotalMillis() {
+			return m_totalNanos / 1000000;
+		}
+		
+		/**
+		 * @return Returns the duration of the creation in milliseconds,
+		 *         without the creation of the beans it depends on.
+		 */
+		public long getOwnMillis() {
+			return m_ownNanos / 1000000;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public String toString() {
+			return m_beanName + " at " + getStartMillis() + " ms took "
+				+ getOwnMillis() + " ms (" + getTotalMillis()
+				+ " ms with dependencies) on " + m_threadName;
+		}
+	}
+}
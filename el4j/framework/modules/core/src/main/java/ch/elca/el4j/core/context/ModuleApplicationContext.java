@@ -21,18 +21,23 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Collection;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.AbstractXmlApplicationContext;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.util.Assert;
+import org.springframework.util.StopWatch;
 import org.springframework.util.StringUtils;
 
 import ch.elca.el4j.core.io.support.ListResourcePatternResolverDecorator;
@@ -86,6 +91,20 @@ import ch.elca.el4j.util.codingsupport.annotations.FindBugsSuppressWarnings;
  *    More configuration info is available in JMX (only when the jmx module is
  *    active)
  * </li>
+ * <li>
+ *    The time spent in each startup phase is logged (see
+ *    {@link #getStartupReport()}). Module scanning can be avoided with a
+ *    {@link ch.elca.el4j.core.io.support.ModuleIndex}.
+ * </li>
+ * <li>
+ *    The creation time of each bean is recorded (see
+ *    {@link #getBeanStartupTimeline()}).
+ * </li>
+ * <li>
+ *    The config resources can be parsed in parallel (see
+ *    {@link ModuleApplicationContextConfiguration#setBeanDefinitionParsingThreads(int)}
+ *    and {@link #PARSING_THREADS_PROPERTY}).
+ * </li>
  * </ul>
  *
  * @see ModuleWebApplicationContext
@@ -103,6 +122,18 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 */
 	public static final String EL4J_DEBUGGING_LOGGER = "el4j.debugging";
 	
+	/**
+	 * The system property that defines the default number of threads to parse
+	 * the config resources with. Parsing is sequential if it is not set.
+	 */
+	public static final String PARSING_THREADS_PROPERTY
+		= "el4j.context.parsingThreads";
+	
+	/**
+	 * The number of slowest beans that are logged after startup.
+	 */
+	private static final int SLOWEST_BEANS_LOGGED = 10;
+	
 	/**
 	 * This logger is used to print out some global debugging info.
 	 * Consult it for info what is going on.
@@ -168,6 +199,33 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 */
 	private final ModuleApplicationContextCreationListener m_creationListener;
 	
+	/**
+	 * Number of threads to parse the config resources with, sequential
+	 * parsing if less than two.
+	 */
+	private final int m_beanDefinitionParsingThreads;
+	
+	/**
+	 * @see #getBeanStartupTimeline()
+	 */
+	private BeanStartupTimeline m_beanStartupTimeline;
+	
+	/**
+	 * Whether bean creations are recorded in the timeline.
+	 */
+	private volatile boolean m_recordBeanCreations;
+	
+	/**
+	 * Measures the startup phases. Deliberately not initialized here since it
+	 * is already used while the super constructor runs.
+	 */
+	private StopWatch m_startupStopWatch;
+	
+	/**
+	 * @see #getStartupReport()
+	 */
+	private String m_startupReport;
+	
 	/**
 	 * @see ch.elca.el4j.core.context.ModuleApplicationContext#ModuleApplicationContext(
 	 *      String[], boolean)
@@ -307,6 +365,51 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 * @param creationListener
 	 *            Is the listener to hock in while creation of the application context.
 	 */
+	public ModuleApplicationContext(String[] inclusiveConfigLocations,
+			String[] exclusiveConfigLocations,
+			boolean allowBeanDefinitionOverriding, ApplicationContext parent,
+			boolean mergeWithOuterResources,
+			boolean mostSpecificResourceLast,
+			boolean mostSpecificBeanDefinitionCounts,
+			ModuleApplicationContextCreationListener creationListener) {
+		this(inclusiveConfigLocations, exclusiveConfigLocations,
+			allowBeanDefinitionOverriding, parent, mergeWithOuterResources,
+			mostSpecificResourceLast, mostSpecificBeanDefinitionCounts,
+			creationListener, Integer.getInteger(PARSING_THREADS_PROPERTY, 0));
+	}
+	
+	/**
+	 * Create a new ModuleApplicationContext that parses its config resources
+	 * with the given number of threads.
+	 *
+	 * @see #ModuleApplicationContext(String[], String[], boolean,
+	 *      ApplicationContext, boolean, boolean, boolean,
+	 *      ModuleApplicationContextCreationListener)
+	 *
+	 * @param inclusiveConfigLocations
+	 *            array of file paths
+	 * @param exclusiveConfigLocations
+	 *            array of file paths which are excluded
+	 * @param allowBeanDefinitionOverriding
+	 *            a boolean which defines if overriding of bean definitions is
+	 *            allowed
+	 * @param parent
+	 *            the parent context
+	 * @param mergeWithOuterResources
+	 *            a boolean which defines if the resources retrieved by the
+	 *            configuration files section of the manifest files should be
+	 *            merged with resources found by searching in the file system.
+	 * @param mostSpecificResourceLast
+	 *            Indicates if the most specific resource should be the last
+	 *            resource in the fetched resource array.
+	 * @param mostSpecificBeanDefinitionCounts
+	 *            Indicates that the most specific bean definition is used.
+	 * @param creationListener
+	 *            Is the listener to hock in while creation of the application context.
+	 * @param beanDefinitionParsingThreads
+	 *            Is the number of threads to parse the config resources with,
+	 *            less than two to parse them sequentially.
+	 */
 	@FindBugsSuppressWarnings(value = "UR_UNINIT_READ", 
 		justification = "Pattern resolver initialized by a super class.")
 	public ModuleApplicationContext(String[] inclusiveConfigLocations,
@@ -315,7 +418,8 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 			boolean mergeWithOuterResources,
 			boolean mostSpecificResourceLast,
 			boolean mostSpecificBeanDefinitionCounts,
-			ModuleApplicationContextCreationListener creationListener) {
+			ModuleApplicationContextCreationListener creationListener,
+			int beanDefinitionParsingThreads) {
 		super(parent);
 		m_inclusiveConfigLocations = inclusiveConfigLocations;
 		m_exclusiveConfigLocations = exclusiveConfigLocations;
@@ -324,6 +428,7 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 		m_mostSpecificResourceLast = mostSpecificResourceLast;
 		m_mostSpecificBeanDefinitionCounts = mostSpecificBeanDefinitionCounts;
 		m_creationListener = creationListener;
+		m_beanDefinitionParsingThreads = beanDefinitionParsingThreads;
 		
 		/**
 		 * HACK: The pattern resolver is initialized by a super class
@@ -345,8 +450,10 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 			isMostSpecificResourceLast()
 				!= isMostSpecificBeanDefinitionCounts());
 		
+		startPhase("resolve config locations");
 		m_configLocations = utils.calculateInputFiles(inclusiveConfigLocations,
 				exclusiveConfigLocations, allowBeanDefinitionOverriding);
+		stopPhase();
 		
 		additionalLoggingOutput(allowBeanDefinitionOverriding,
 			mergeWithOuterResources, mostSpecificResourceLast,
@@ -370,7 +477,8 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 			config.isMergeWithOuterResources(),
 			config.isMostSpecificResourceLast(),
 			config.isMostSpecificBeanDefinitionCounts(),
-			config.getModuleApplicationContextCreationListener());
+			config.getModuleApplicationContextCreationListener(),
+			config.getBeanDefinitionParsingThreads());
 	}
 	
 	/**
@@ -539,8 +647,25 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 */
 	@Override
 	protected DefaultListableBeanFactory createBeanFactory() {
+		m_beanStartupTimeline = new BeanStartupTimeline();
+		m_recordBeanCreations = true;
 		DefaultListableBeanFactory dlbf = new DefaultListableBeanFactory(
-				getInternalParentBeanFactory());
+				getInternalParentBeanFactory()) {
+			@Override
+			protected Object createBean(String beanName, RootBeanDefinition mbd,
+				Object[] args) {
+				if (!m_recordBeanCreations) {
+					return super.createBean(beanName, mbd, args);
+				}
+				BeanStartupTimeline timeline = m_beanStartupTimeline;
+				timeline.beanCreationStarted(beanName);
+				try {
+					return super.createBean(beanName, mbd, args);
+				} finally {
+					timeline.beanCreationFinished();
+				}
+			}
+		};
 		dlbf.setAllowBeanDefinitionOverriding(
 			isAllowBeanDefinitionOverriding());
 		return dlbf;
@@ -551,9 +676,11 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 */
 	@Override
 	protected ResourcePatternResolver getResourcePatternResolver() {
+		startPhase("scan modules");
 		ListResourcePatternResolverDecorator patternResolver
 			= new ListResourcePatternResolverDecorator(
 				new ManifestOrderedConfigLocationProvider());
+		stopPhase();
 		patternResolver.setMostSpecificResourceLast(
 			isMostSpecificResourceLast());
 		patternResolver.setMergeWithOuterResources(
@@ -571,9 +698,126 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 	 */
 	protected void invokeBeanFactoryPostProcessors(
 		ConfigurableListableBeanFactory beanFactory) {
+		startPhase("invoke bean factory post processors");
 		ModuleApplicationContextUtils ctxUtil
 			= new ModuleApplicationContextUtils(this);
 		ctxUtil.invokeBeanFactoryPostProcessorsStrictlyOrdered(beanFactory);
+		stopPhase();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory)
+		throws BeansException, IOException {
+		startPhase("load bean definitions");
+		String[] configLocations = getConfigLocations();
+		if (m_beanDefinitionParsingThreads > 1 && configLocations != null
+			&& configLocations.length > 1) {
+			new ParallelBeanDefinitionLoader(this, m_beanDefinitionParsingThreads)
+				.loadBeanDefinitions(beanFactory, configLocations);
+		} else {
+			super.loadBeanDefinitions(beanFactory);
+		}
+		stopPhase();
+	}
+	
+	/**
+	 * Configures a reader used by the {@link ParallelBeanDefinitionLoader} like
+	 * the one used to load the bean definitions sequentially.
+	 *
+	 * @param reader
+	 *            Is the reader to configure.
+	 */
+	protected void initParallelBeanDefinitionReader(
+		XmlBeanDefinitionReader reader) {
+		reader.setResourceLoader(this);
+		initBeanDefinitionReader(reader);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void registerBeanPostProcessors(
+		ConfigurableListableBeanFactory beanFactory) {
+		startPhase("register bean post processors");
+		super.registerBeanPostProcessors(beanFactory);
+		stopPhase();
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void finishBeanFactoryInitialization(
+		ConfigurableListableBeanFactory beanFactory) {
+		startPhase("instantiate singletons");
+		super.finishBeanFactoryInitialization(beanFactory);
+		stopPhase();
+	}
+	
+	/**
+	 * Starts measuring the given startup phase. A phase still running (e.g.
+	 * after a failed refresh) is stopped.
+	 *
+	 * @param phase
+	 *            Is the name of the phase.
+	 */
+	protected void startPhase(String phase) {
+		if (m_startupStopWatch == null) {
+			m_startupStopWatch = new StopWatch();
+		}
+		stopPhase();
+		m_startupStopWatch.start(phase);
+	}
+	
+	/**
+	 * Stops measuring the current startup phase.
+	 */
+	protected void stopPhase() {
+		if (m_startupStopWatch != null && m_startupStopWatch.isRunning()) {
+			m_startupStopWatch.stop();
+		}
+	}
+	
+	/**
+	 * @return Returns the time spent in each phase of the last startup or
+	 *         refresh, <code>null</code> if it has not finished yet.
+	 */
+	public String getStartupReport() {
+		return m_startupReport;
+	}
+	
+	/**
+	 * @return Returns the beans created during the last startup or refresh,
+	 *         <code>null</code> if it has not started yet.
+	 */
+	public BeanStartupTimeline getBeanStartupTimeline() {
+		return m_beanStartupTimeline;
+	}
+	
+	/**
+	 * Logs the time spent in the startup phases.
+	 */
+	private void reportStartup() {
+		m_recordBeanCreations = false;
+		if (m_beanStartupTimeline != null && s_el4jLogger.isDebugEnabled()) {
+			List<BeanStartupTimeline.Entry> slowest
+				= m_beanStartupTimeline.getSlowestEntries(SLOWEST_BEANS_LOGGED);
+			s_el4jLogger.debug("Slowest beans to create: "
+				+ StringUtils.collectionToDelimitedString(slowest, "; "));
+		}
+		if (m_startupStopWatch == null) {
+			return;
+		}
+		stopPhase();
+		StringBuilder report = new StringBuilder();
+		report.append("ModuleApplicationContext startup phases took ")
+			.append(m_startupStopWatch.getTotalTimeMillis()).append(" ms:");
+		for (StopWatch.TaskInfo task : m_startupStopWatch.getTaskInfo()) {
+			report.append(' ').append(task.getTaskName()).append(' ')
+				.append(task.getTimeMillis()).append(" ms,");
+		}
+		report.setLength(report.length() - 1);
+		m_startupReport = report.toString();
+		m_startupStopWatch = null;
+		s_el4jLogger.info(m_startupReport);
 	}
 	
 	
@@ -609,6 +853,7 @@ public class ModuleApplicationContext extends AbstractXmlApplicationContext
 		if (m_creationListener != null) {
 			m_creationListener.finishRefresh(this);
 		}
+		reportStartup();
 	}
 	
 	/** {@inheritDoc} */
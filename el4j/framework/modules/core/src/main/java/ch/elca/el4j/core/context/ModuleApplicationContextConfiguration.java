@@ -68,6 +68,12 @@ public class ModuleApplicationContextConfiguration {
 	 * @see #setModuleApplicationContextCreationListener(ModuleApplicationContextCreationListener)
 	 */
 	private ModuleApplicationContextCreationListener m_moduleApplicationContextCreationListener;
+	
+	/**
+	 * @see #setBeanDefinitionParsingThreads(int)
+	 */
+	private int m_beanDefinitionParsingThreads = Integer.getInteger(
+		ModuleApplicationContext.PARSING_THREADS_PROPERTY, 0);
 
 	/**
 	 * @return Returns the allowBeanDefinitionOverriding.
@@ -218,4 +224,27 @@ public class ModuleApplicationContextConfiguration {
 		ModuleApplicationContextCreationListener moduleApplicationContextCreationListener) {
 		m_moduleApplicationContextCreationListener = moduleApplicationContextCreationListener;
 	}
+
+	/**
+	 * @return Returns the number of threads to parse the config resources
+	 *         with.
+	 */
+	public int getBeanDefinitionParsingThreads() {
+		return m_beanDefinitionParsingThreads;
+	}
+
+	/**
+	 * Parses the config resources with the given number of threads instead
+	 * of one after another. The bean definitions are registered in the same
+	 * order as with sequential parsing. Defaults to the value of the system
+	 * property {@link ModuleApplicationContext#PARSING_THREADS_PROPERTY}, or
+	 * sequential parsing if it is not set.
+	 *
+	 * @param beanDefinitionParsingThreads
+	 *            Is the number of threads, less than two to parse the config
+	 *            resources sequentially.
+	 */
+	public void setBeanDefinitionParsingThreads(int beanDefinitionParsingThreads) {
+		m_beanDefinitionParsingThreads = beanDefinitionParsingThreads;
+	}
 }
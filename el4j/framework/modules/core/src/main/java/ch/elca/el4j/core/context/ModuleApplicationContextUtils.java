@@ -20,8 +20,10 @@ package ch.elca.el4j.core.context;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.slf4j.Logger;
@@ -113,26 +115,19 @@ public class ModuleApplicationContextUtils {
 		List<String> inclusiveFileNames
 			= getResolvedFileNames(inclusiveConfigLocations);
 
-		List<String> exclusiveFileNames
-			= getResolvedFileNames(exclusiveConfigLocations);
+		Set<String> exclusiveFileNames = new HashSet<String>(
+			getResolvedFileNames(exclusiveConfigLocations));
 
 		//remove the xml files in inclusiveFileNames which are in
 		// exclusiveFileNames
-		for (int i = 0; i < inclusiveFileNames.size(); i++) {
-			Object obj = inclusiveFileNames.get(i);
-			if (exclusiveFileNames.contains(obj)) {
-				inclusiveFileNames.remove(i);
-				i--;
+		List<String> conLoc = new ArrayList<String>(inclusiveFileNames.size());
+		for (String fileName : inclusiveFileNames) {
+			if (!exclusiveFileNames.contains(fileName)) {
+				conLoc.add(fileName);
 			}
 		}
 
-		String[] conLoc = new String[inclusiveFileNames.size()];
-
-		for (int i = 0; i < inclusiveFileNames.size(); i++) {
-			conLoc[i] = (String) inclusiveFileNames.get(i);
-		}
-
-		return conLoc;
+		return conLoc.toArray(new String[conLoc.size()]);
 	}
 	
 	/**
@@ -0,0 +1,419 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.core.context;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.BeanDefinitionParserDelegate;
+import org.springframework.beans.factory.xml.DefaultBeanDefinitionDocumentReader;
+import org.springframework.beans.factory.xml.DefaultNamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.NamespaceHandlerResolver;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+
+/**
+ * Loads the bean definitions of a {@link ModuleApplicationContext} by parsing
+ * its config resources in parallel.
+ *
+ * <p>The XML documents are read in parallel. A document that only uses the
+ * elements and attributes of the <code>beans</code> namespace is parsed
+ * into a registry of its own, which is merged into the bean factory later.
+ * Documents using other namespaces or imports are registered in the bean
+ * factory itself, on the calling thread: namespace handlers look at the
+ * registry they parse into, e.g. to register an infrastructure bean only
+ * once or to escalate the auto proxy creator of
+ * <code>&lt;aop:config/&gt;</code> and
+ * <code>&lt;aop:aspectj-autoproxy/&gt;</code>, and they refer to the beans
+ * they register by generated names.
+ *
+ * <p>All documents are registered or merged in the order of the config
+ * locations, so bean definition overriding (and therefore
+ * {@link ModuleApplicationContext#isMostSpecificBeanDefinitionCounts()})
+ * behaves as if the resources had been loaded one after another. A generated
+ * name (<code>class#n</code>) of an anonymous bean that is already taken is
+ * generated anew when merging, as the sequential parsing would have done.
+ *
+ * <p>Schemas are resolved once per parsing thread.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ParallelBeanDefinitionLoader {
+	
+	/**
+	 * The namespace of namespace declarations.
+	 */
+	private static final String XMLNS_NAMESPACE_URI
+		= "http://www.w3.org/2000/xmlns/";
+	
+	/**
+	 * The namespace of schema locations.
+	 */
+	private static final String XSI_NAMESPACE_URI
+		= "http://www.w3.org/2001/XMLSchema-instance";
+	
+	/**
+	 * Private logger.
+	 */
+	private static Logger s_logger
+		= LoggerFactory.getLogger(ParallelBeanDefinitionLoader.class);
+	
+	/**
+	 * The context to load the bean definitions for.
+	 */
+	private final ModuleApplicationContext m_context;
+	
+	/**
+	 * The maximum number of parsing threads.
+	 */
+	private final int m_threads;
+	
+	/**
+	 * The namespace handler resolver of each parsing thread.
+	 */
+	private final ThreadLocal<NamespaceHandlerResolver> m_namespaceHandlerResolver
+		= new ThreadLocal<NamespaceHandlerResolver>() {
+			@Override
+			protected NamespaceHandlerResolver initialValue() {
+				return new DefaultNamespaceHandlerResolver(
+					m_context.getClassLoader());
+			}
+		};
+	
+	/**
+	 * The entity resolver of each parsing thread.
+	 */
+	private final ThreadLocal<EntityResolver> m_entityResolver
+		= new ThreadLocal<EntityResolver>() {
+			@Override
+			protected EntityResolver initialValue() {
+				return new ResourceEntityResolver(m_context);
+			}
+		};
+	
+	/**
+	 * @param context
+	 *            The context to load the bean definitions for.
+	 * @param threads
+	 *            The maximum number of parsing threads.
+	 */
+	public ParallelBeanDefinitionLoader(ModuleApplicationContext context,
+		int threads) {
+		m_context = context;
+		m_threads = threads;
+	}
+	
+	/**
+	 * Loads the bean definitions of the given config locations.
+	 *
+	 * @param beanFactory
+	 *            The bean factory to register the bean definitions in.
+	 * @param configLocations
+	 *            The config locations, may contain patterns.
+	 * @return Returns the number of bean definitions found.
+	 * @throws BeansException
+	 *             If a bean definition is invalid.
+	 * @throws IOException
+	 *             If a config location can not be read.
+	 */
+	public int loadBeanDefinitions(DefaultListableBeanFactory beanFactory,
+		String[] configLocations) throws BeansException, IOException {
+		
+		List<Resource> resources = new ArrayList<Resource>();
+		for (String configLocation : configLocations) {
+			resources.addAll(Arrays.asList(m_context.getResources(configLocation)));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(1, Math.min(m_threads, resources.size())),
+			new ParserThreadFactory());
+		try {
+			List<Future<ParsedResource>> parsedResources
+				= new ArrayList<Future<ParsedResource>>();
+			for (final Resource resource : resources) {
+				parsedResources.add(executor.submit(
+					new Callable<ParsedResource>() {
+						public ParsedResource call() throws Exception {
+							return parse(resource);
+						}
+					}));
+			}
+			XmlBeanDefinitionReader reader = null;
+			int count = 0;
+			for (int i = 0; i < parsedResources.size(); i++) {
+				Resource resource = resources.get(i);
+				ParsedResource parsed = getResult(parsedResources.get(i), resource);
+				if (parsed.m_registry != null) {
+					count += merge(parsed.m_registry, beanFactory);
+				} else {
+					if (reader == null) {
+						reader = new XmlBeanDefinitionReader(beanFactory);
+						m_context.initParallelBeanDefinitionReader(reader);
+						reader.setEntityResolver(m_entityResolver.get());
+					}
+					count += reader.registerBeanDefinitions(parsed.m_document,
+						resource);
+				}
+			}
+			s_logger.debug("Loaded " + count + " bean definitions from "
+				+ resources.size() + " resources in parallel.");
+			return count;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Reads the given resource and parses it into a registry of its own if
+	 * it only uses the <code>beans</code> namespace.
+	 *
+	 * @param resource
+	 *            The config resource to parse.
+	 * @return Returns the registry containing the bean definitions of the
+	 *         resource, or the document to register in the bean factory.
+	 */
+	protected ParsedResource parse(Resource resource) {
+		DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+		DeferringBeanDefinitionReader reader
+			= new DeferringBeanDefinitionReader(registry);
+		m_context.initParallelBeanDefinitionReader(reader);
+		reader.setEntityResolver(m_entityResolver.get());
+		reader.setNamespaceHandlerResolver(m_namespaceHandlerResolver.get());
+		reader.loadBeanDefinitions(resource);
+		return reader.m_deferredDocument != null
+			? new ParsedResource(null, reader.m_deferredDocument)
+			: new ParsedResource(registry, null);
+	}
+	
+	/**
+	 * Copies the bean definitions and aliases of the given registry.
+	 *
+	 * @param registry
+	 *            The registry of one resource.
+	 * @param beanFactory
+	 *            The bean factory to register the bean definitions in.
+	 * @return Returns the number of bean definitions in the registry.
+	 */
+	protected int merge(DefaultListableBeanFactory registry,
+		DefaultListableBeanFactory beanFactory) {
+		String[] beanNames = registry.getBeanDefinitionNames();
+		for (String beanName : beanNames) {
+			BeanDefinition beanDefinition = registry.getBeanDefinition(beanName);
+			String name = beanName;
+			boolean generated = beanName.indexOf(
+				BeanDefinitionReaderUtils.GENERATED_BEAN_NAME_SEPARATOR) >= 0;
+			if (generated && beanFactory.containsBeanDefinition(beanName)) {
+				name = BeanDefinitionReaderUtils.generateBeanName(
+					beanDefinition, beanFactory);
+			}
+			beanFactory.registerBeanDefinition(name, beanDefinition);
+			for (String alias : registry.getAliases(beanName)) {
+				// the class name alias of an anonymous bean is only given once
+				if (!generated || !beanFactory.isBeanNameInUse(alias)) {
+					beanFactory.registerAlias(name, alias);
+				}
+			}
+		}
+		return beanNames.length;
+	}
+	
+	/**
+	 * @param root
+	 *            The root element of a config document.
+	 * @return Returns whether the document can be parsed into a registry of
+	 *         its own, i.e. whether it only consists of elements and
+	 *         attributes of the <code>beans</code> namespace and does not
+	 *         import other resources.
+	 */
+	protected boolean isSelfContained(Element root) {
+		if (!isBeansNamespace(root.getNamespaceURI())
+			|| DefaultBeanDefinitionDocumentReader.IMPORT_ELEMENT.equals(
+				root.getLocalName() != null ? root.getLocalName()
+					: root.getNodeName())) {
+			return false;
+		}
+		NamedNodeMap attributes = root.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			String namespace = attributes.item(i).getNamespaceURI();
+			// namespace declarations and schema locations are no content
+			if (namespace != null && !isBeansNamespace(namespace)
+				&& !XMLNS_NAMESPACE_URI.equals(namespace)
+				&& !XSI_NAMESPACE_URI.equals(namespace)) {
+				return false;
+			}
+		}
+		NodeList children = root.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			if (child instanceof Element && !isSelfContained((Element) child)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param namespace
+	 *            The namespace URI of a node, may be <code>null</code>.
+	 * @return Returns whether the namespace is the one of the
+	 *         <code>beans</code> elements, which DTD based documents do not
+	 *         declare.
+	 */
+	private boolean isBeansNamespace(String namespace) {
+		return !StringUtils.hasLength(namespace)
+			|| BeanDefinitionParserDelegate.BEANS_NAMESPACE_URI.equals(namespace);
+	}
+	
+	/**
+	 * @param parsed
+	 *            The resource being parsed.
+	 * @param resource
+	 *            The resource being parsed.
+	 * @return Returns the parsed resource.
+	 * @throws BeansException
+	 *             If the resource could not be parsed.
+	 */
+	private ParsedResource getResult(Future<ParsedResource> parsed,
+		Resource resource) throws BeansException {
+		try {
+			return parsed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BeanDefinitionStoreException(resource.getDescription(),
+				"Interrupted while parsing bean definitions", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new BeanDefinitionStoreException(resource.getDescription(),
+				"Unable to parse bean definitions", cause);
+		}
+	}
+	
+	/**
+	 * A read config resource: either the registry it has been parsed into, or
+	 * the document to register in the bean factory.
+	 */
+	protected static class ParsedResource {
+		/**
+		 * The registry holding the bean definitions of the resource, or
+		 * <code>null</code>.
+		 */
+		private final DefaultListableBeanFactory m_registry;
+		
+		/**
+		 * The document to register in the bean factory, or <code>null</code>.
+		 */
+		private final Document m_document;
+		
+		/**
+		 * @param registry
+		 *            The registry holding the bean definitions of the
+		 *            resource, or <code>null</code>.
+		 * @param document
+		 *            The document to register in the bean factory, or
+		 *            <code>null</code>.
+		 */
+		ParsedResource(DefaultListableBeanFactory registry, Document document) {
+			m_registry = registry;
+			m_document = document;
+		}
+	}
+	
+	/**
+	 * Parses only documents that are self contained and keeps the others to
+	 * be registered in the bean factory.
+	 */
+	private class DeferringBeanDefinitionReader extends XmlBeanDefinitionReader {
+		/**
+		 * The document that has not been parsed, if any.
+		 */
+		private Document m_deferredDocument;
+		
+		/**
+		 * @param registry
+		 *            The registry of the resource.
+		 */
+		DeferringBeanDefinitionReader(DefaultListableBeanFactory registry) {
+			super(registry);
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public int registerBeanDefinitions(Document doc, Resource resource)
+			throws BeanDefinitionStoreException {
+			if (isSelfContained(doc.getDocumentElement())) {
+				return super.registerBeanDefinitions(doc, resource);
+			}
+			m_deferredDocument = doc;
+			return 0;
+		}
+	}
+	
+	/**
+	 * Creates daemon parsing threads with the context class loader of the
+	 * thread that created the factory.
+	 */
+	private static class ParserThreadFactory implements ThreadFactory {
+		/**
+		 * Number of created threads.
+		 */
+		private final AtomicInteger m_count = new AtomicInteger();
+		
+		/**
+		 * The context class loader of the parsing threads.
+		 */
+		private final ClassLoader m_contextClassLoader
+			= Thread.currentThread().getContextClassLoader();
+		
+		/** {@inheritDoc} */
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable,
+				"el4j-bean-definition-parser-" + m_count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setContextClassLoader(m_contextClassLoader);
+			return thread;
+		}
+	}
+}
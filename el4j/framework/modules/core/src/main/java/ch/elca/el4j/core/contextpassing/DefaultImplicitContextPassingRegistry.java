@@ -16,14 +16,24 @@
  */
 package ch.elca.el4j.core.contextpassing;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Default implementation of <code>ImplicitContextPassingRegistry</code>. To
  * register the implicit context passers, their classname is used as id.
  *
+ * <p> The assembled context only contains the non-<code>null</code> contexts,
+ * which keeps the context sent with each invocation small. On the receiving
+ * side, a passer missing in the received context gets <code>null</code>
+ * pushed only if this registry has pushed a context to it on the current
+ * thread before. The passers' <code>getImplicitlyPassedContext</code> methods
+ * are not called on the receiving side.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Andreas Pfenninger (APR)
@@ -31,40 +41,64 @@ import java.util.Map;
 public class DefaultImplicitContextPassingRegistry implements
 		ImplicitContextPassingRegistry {
 
-	/** All registered passers. */
-	private Map<String,ImplicitContextPasser> m_registeredPassers =
-		new HashMap<String,ImplicitContextPasser>();
+	/**
+	 * All registered passers. Copied on registration, so invocations can iterate
+	 * it without locking.
+	 */
+	private volatile Map<String,ImplicitContextPasser> m_registeredPassers =
+		Collections.emptyMap();
+	
+	/**
+	 * The ids of the passers that got a non-<code>null</code> context pushed
+	 * on the current thread. Removed once no such passer is left.
+	 */
+	private final ThreadLocal<Set<String>> m_pushedPassers
+		= new ThreadLocal<Set<String>>();
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public void registerImplicitContextPasser(
+	public synchronized void registerImplicitContextPasser(
 			ImplicitContextPasser passer) {
 		String id = passer.getClass().getName();
-		m_registeredPassers.put(id, passer);
+		Map<String,ImplicitContextPasser> passers
+			= new LinkedHashMap<String,ImplicitContextPasser>(m_registeredPassers);
+		passers.put(id, passer);
+		m_registeredPassers = Collections.unmodifiableMap(passers);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public void unregisterImplicitContextPasser(
+	public synchronized void unregisterImplicitContextPasser(
 			ImplicitContextPasser passer) {
 		String id = passer.getClass().getName();
-		m_registeredPassers.remove(id);
+		Map<String,ImplicitContextPasser> passers
+			= new LinkedHashMap<String,ImplicitContextPasser>(m_registeredPassers);
+		passers.remove(id);
+		m_registeredPassers = Collections.unmodifiableMap(passers);
 	}
 
 	/**
 	 * {@inheritDoc}
+	 *
+	 * <code>null</code> contexts are omitted. The returned map is immutable if
+	 * all contexts are <code>null</code>.
 	 */
 	public Map<String,Object> getAssembledImplicitContext() {
-		Map<String,Object> context = new HashMap<String,Object>();
-		Iterator<String> it = m_registeredPassers.keySet().iterator();
-		while (it.hasNext()) {
-			String id = (String) it.next();
-			ImplicitContextPasser passer
-				= (ImplicitContextPasser) m_registeredPassers.get(id);
-			Object ctx = passer.getImplicitlyPassedContext();
-			context.put(id, ctx);
+		Map<String,Object> context = null;
+		for (Map.Entry<String,ImplicitContextPasser> entry
+			: m_registeredPassers.entrySet()) {
+			Object ctx = entry.getValue().getImplicitlyPassedContext();
+			if (ctx != null) {
+				if (context == null) {
+					context = new HashMap<String,Object>();
+				}
+				context.put(entry.getKey(), ctx);
+			}
+		}
+		if (context == null) {
+			return Collections.emptyMap();
 		}
 		return context;
 	}
@@ -73,13 +107,25 @@ public class DefaultImplicitContextPassingRegistry implements
 	 * {@inheritDoc}
 	 */
 	public void pushAssembledImplicitContext(Map<String,Object> contexts) {
-		Iterator<String> it = m_registeredPassers.keySet().iterator();
-		while (it.hasNext()) {
-			String id = (String) it.next();
-			ImplicitContextPasser passer
-				= (ImplicitContextPasser) m_registeredPassers.get(id);
-			Object ctx = contexts.get(id);
-			passer.pushImplicitlyPassedContext(ctx);
+		Set<String> pushedPassers = m_pushedPassers.get();
+		for (Map.Entry<String,ImplicitContextPasser> entry
+			: m_registeredPassers.entrySet()) {
+			String id = entry.getKey();
+			Object ctx = (contexts == null) ? null : contexts.get(id);
+			if (ctx != null) {
+				entry.getValue().pushImplicitlyPassedContext(ctx);
+				if (pushedPassers == null) {
+					pushedPassers = new HashSet<String>();
+					m_pushedPassers.set(pushedPassers);
+				}
+				pushedPassers.add(id);
+			} else if (pushedPassers != null && pushedPassers.remove(id)) {
+				// reset the context pushed by a previous invocation
+				entry.getValue().pushImplicitlyPassedContext(null);
+			}
+		}
+		if (pushedPassers != null && pushedPassers.isEmpty()) {
+			m_pushedPassers.remove();
 		}
 	}
 }
@@ -56,7 +56,8 @@ public interface ImplicitContextPassingRegistry {
 	 * <code>getImplicitlyPassedContext</code> method of all registered
 	 * implicit context passers.
 	 * It returns a map with the "id -> context" mapping that needs to be
-	 * passed with the remote invocation.
+	 * passed with the remote invocation. Passers without context
+	 * (<code>null</code>) may be omitted.
 	 *
 	 * @return The implicit context map.
 	 */
@@ -68,7 +69,8 @@ public interface ImplicitContextPassingRegistry {
 	 * <code>pushImplicitlyPassedContext</code> method on all registered
 	 * implicit context passers.
 	 * Its context's parameter holds the "id -> context" mappings that are
-	 * passed with the remote invocation.
+	 * passed with the remote invocation. A missing mapping stands for a
+	 * <code>null</code> context.
 	 *
 	 * @param contexts
 	 *            The received implicit context map that holds the
@@ -65,12 +65,27 @@ public abstract class AbstractOrderedConfigLocationProvider
 	 */
 	protected Module[] getSortedModules() throws IOException {
 		if (m_sortedModules == null) {
-			Module[] modules = createModules();
-			m_sortedModules = sortModules(modules);
+			Module[] modules = loadSortedModules();
+			if (modules == null) {
+				modules = sortModules(createModules());
+			}
+			m_sortedModules = modules;
 		}
 		return m_sortedModules;
 	}
 	
+	/**
+	 * Loads an already sorted list of modules, e.g. from an index. Default
+	 * implementation returns <code>null</code>.
+	 *
+	 * @return Returns the sorted list of modules, or <code>null</code> if it
+	 *      has to be created and sorted.
+	 * @throws IOException On any io problem while loading the modules.
+	 */
+	protected Module[] loadSortedModules() throws IOException {
+		return null;
+	}
+	
 	/**
 	 * @return Returns the created list of modules.
 	 * @throws IOException On any io problem while module creation.
@@ -36,7 +36,8 @@ import ch.elca.el4j.core.exceptions.BaseRTException;
 
 /**
  * This configuration location provider extracts module dependency information
- * from manifest files.
+ * from manifest files. If a valid {@link ModuleIndex} is on the classpath, the
+ * modules are loaded from it instead.
  *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
@@ -104,6 +105,17 @@ public class ManifestOrderedConfigLocationProvider
 		return configLocations;
 	}
 	
+	/**
+	 * Loads the modules from the {@link ModuleIndex}, if there is a valid one.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Module[] loadSortedModules() throws IOException {
+		return ModuleIndex.load(getManifestFiles(),
+			ClassUtils.getDefaultClassLoader());
+	}
+	
 	/**
 	 * @return Returns a list of all manifest files which are on the classpath.
 	 *
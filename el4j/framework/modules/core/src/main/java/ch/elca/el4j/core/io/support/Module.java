@@ -144,6 +144,21 @@ public class Module {
 		m_configFileResources.add(getConfigFileAsResource(configFile));
 	}
 	
+	/**
+	 * Adds the given configuration file, which is known to be at the given
+	 * location, to the module.
+	 *
+	 * @param configFile
+	 *      The configuration file to add.
+	 * @param url
+	 *      The location of the configuration file in this module.
+	 */
+	public void addConfigFile(String configFile, URL url) {
+		m_configFiles.add(configFile);
+		m_configFileResources.add(
+			new ExplicitClassPathResource(url, configFile, m_classLoader));
+	}
+	
 	/**
 	 * Adds all item -- separated by {@link #DELIMITER} -- to the dependency
 	 * list.
@@ -0,0 +1,373 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.core.io.support;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+import ch.elca.el4j.core.io.ExplicitClassPathResource;
+
+/**
+ * Precomputed index of the modules on the classpath, in dependency order and
+ * with their configuration files. With a valid index, the
+ * {@link ManifestOrderedConfigLocationProvider} neither parses the manifest
+ * files nor sorts the modules nor searches the classpath for each
+ * configuration file.
+ *
+ * <p>The index is a properties file at {@link #INDEX_FILE}. It records the
+ * classpath entries it has been built from (file name, size and checksum of
+ * the manifest file of jars). It
+ * is only used if the current classpath consists of the same entries in the
+ * same order; otherwise the modules are scanned as before. Directories, e.g.
+ * the output folders of a development environment, change without notice
+ * and are not indexed: a classpath with a manifest file in a directory is
+ * always scanned. The index is
+ * generated with the <code>main</code> method, using the runtime classpath
+ * of the application, e.g. while packaging it:
+ * <pre>
+ * java -cp &lt;runtime classpath&gt; ch.elca.el4j.core.io.support.ModuleIndex \
+ *     target/classes/META-INF/el4j-module-index.properties
+ * </pre>
+ * Setting the system property {@link #DISABLED_PROPERTY} to
+ * <code>true</code> ignores any index.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public final class ModuleIndex {
+	
+	/** The location of the index on the classpath. */
+	public static final String INDEX_FILE
+		= "META-INF/el4j-module-index.properties";
+	
+	/** The system property to disable the index. */
+	public static final String DISABLED_PROPERTY = "el4j.moduleIndex.disabled";
+	
+	/** The version of the index format. */
+	public static final String FORMAT_VERSION = "2";
+	
+	/** The key of the format version. */
+	private static final String KEY_VERSION = "version";
+	
+	/** The key of the classpath entries. */
+	private static final String KEY_CLASSPATH = "classpath";
+	
+	/** The key of the number of modules. */
+	private static final String KEY_MODULES = "modules";
+	
+	/** The key prefix of the module properties. */
+	private static final String KEY_MODULE = "module.";
+	
+	/** Private logger. */
+	private static Logger s_logger = LoggerFactory.getLogger(ModuleIndex.class);
+	
+	/**
+	 * Hide default constructor.
+	 */
+	private ModuleIndex() { }
+	
+	/**
+	 * Loads the modules from the index, if there is a valid one.
+	 *
+	 * @param manifestFiles
+	 *      The manifest files on the current classpath.
+	 *
+	 * @param classLoader
+	 *      The class loader to load the index and resources with.
+	 *
+	 * @return Returns the sorted modules, or <code>null</code> if there is no
+	 *      valid index.
+	 *
+	 * @throws IOException
+	 *      If the index could not be read.
+	 */
+	public static Module[] load(URL[] manifestFiles, ClassLoader classLoader)
+		throws IOException {
+		if (Boolean.getBoolean(DISABLED_PROPERTY)) {
+			return null;
+		}
+		URL indexUrl = classLoader.getResource(INDEX_FILE);
+		if (indexUrl == null) {
+			return null;
+		}
+		Properties index = new Properties();
+		InputStream is = indexUrl.openStream();
+		try {
+			index.load(is);
+		} finally {
+			is.close();
+		}
+		
+		if (!FORMAT_VERSION.equals(index.getProperty(KEY_VERSION))) {
+			s_logger.info("Module index " + indexUrl + " has an unsupported "
+				+ "format, scanning manifest files.");
+			return null;
+		}
+		Map<String, URL> entries = new HashMap<String, URL>();
+		String classpath = getClasspath(manifestFiles, entries);
+		if (classpath == null) {
+			s_logger.info("Classpath contains directories or entries with the "
+				+ "same name, ignoring module index " + indexUrl + ".");
+			return null;
+		}
+		if (!classpath.equals(index.getProperty(KEY_CLASSPATH))) {
+			s_logger.info("Module index " + indexUrl + " does not match the "
+				+ "classpath, scanning manifest files.");
+			return null;
+		}
+		
+		int count = Integer.parseInt(index.getProperty(KEY_MODULES, "0"));
+		Module[] modules = new Module[count];
+		for (int i = 0; i < count; i++) {
+			String prefix = KEY_MODULE + i + ".";
+			URL manifestFile = entries.get(index.getProperty(prefix + "entry"));
+			if (manifestFile == null) {
+				return null;
+			}
+			String base = getEntryBase(manifestFile.toString());
+			Module module = new Module(index.getProperty(prefix + "name"),
+				getEntryBase(manifestFile.getFile()), classLoader);
+			Set<String> external = StringUtils.commaDelimitedListToSet(
+				index.getProperty(prefix + "external", ""));
+			for (String file : StringUtils.commaDelimitedListToStringArray(
+				index.getProperty(prefix + "files", ""))) {
+				if (external.contains(file)) {
+					// not part of the module, looked up like while scanning
+					module.addConfigFile(file);
+				} else {
+					module.addConfigFile(file, new URL(base + file));
+				}
+			}
+			module.addAllDependencies(
+				index.getProperty(prefix + "dependencies", ""));
+			modules[i] = module;
+		}
+		s_logger.debug("Loaded " + count + " modules from index " + indexUrl);
+		return modules;
+	}
+	
+	/**
+	 * Writes an index of the given modules.
+	 *
+	 * @param sortedModules
+	 *      The modules in dependency order.
+	 *
+	 * @param manifestFiles
+	 *      The manifest files on the classpath the modules stem from.
+	 *
+	 * @param out
+	 *      The stream to write the index to.
+	 *
+	 * @throws IOException
+	 *      If the index could not be written, or if the classpath contains
+	 *      directories or entries that can not be distinguished by their
+	 *      name.
+	 */
+	public static void write(Module[] sortedModules, URL[] manifestFiles,
+		OutputStream out) throws IOException {
+		Map<String, URL> entries = new HashMap<String, URL>();
+		String classpath = getClasspath(manifestFiles, entries);
+		if (classpath == null) {
+			throw new IOException("Classpath contains directories or entries "
+				+ "with the same name, can not index them.");
+		}
+		Properties index = new Properties();
+		index.setProperty(KEY_VERSION, FORMAT_VERSION);
+		index.setProperty(KEY_CLASSPATH, classpath);
+		index.setProperty(KEY_MODULES, Integer.toString(sortedModules.length));
+		for (int i = 0; i < sortedModules.length; i++) {
+			Module module = sortedModules[i];
+			String prefix = KEY_MODULE + i + ".";
+			index.setProperty(prefix + "name", module.getName());
+			index.setProperty(prefix + "entry",
+				getEntryKey(module.getModuleLocation()));
+			index.setProperty(prefix + "files",
+				StringUtils.arrayToCommaDelimitedString(module.getConfigFiles()));
+			index.setProperty(prefix + "external",
+				StringUtils.collectionToCommaDelimitedString(
+					getExternalConfigFiles(module)));
+			index.setProperty(prefix + "dependencies",
+				StringUtils.arrayToCommaDelimitedString(module.getDependencies()));
+		}
+		index.store(out, "EL4J module index, generated by "
+			+ ModuleIndex.class.getName());
+	}
+	
+	/**
+	 * Generates the index for the current classpath.
+	 *
+	 * @param args
+	 *      The file to write the index to.
+	 *
+	 * @throws IOException
+	 *      If the modules could not be read or the index not be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: java -cp <classpath> "
+				+ ModuleIndex.class.getName() + " <index file>");
+			return;
+		}
+		System.setProperty(DISABLED_PROPERTY, "true");
+		ManifestOrderedConfigLocationProvider provider
+			= new ManifestOrderedConfigLocationProvider();
+		Module[] modules = provider.getSortedModules();
+		
+		File file = new File(args[0]);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(modules, provider.getManifestFiles(), out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Indexed " + modules.length + " modules in " + file);
+	}
+	
+	/**
+	 * @param module
+	 *      The module to inspect.
+	 *
+	 * @return Returns the configuration files of the module that have not
+	 *      been found in the module itself.
+	 */
+	private static List<String> getExternalConfigFiles(Module module) {
+		List<String> external = new ArrayList<String>();
+		List<String> files = module.getConfigFilesAsList();
+		List<Resource> resources = module.getConfigFileResourcesAsList();
+		for (int i = 0; i < files.size(); i++) {
+			if (!(resources.get(i) instanceof ExplicitClassPathResource)) {
+				external.add(files.get(i));
+			}
+		}
+		return external;
+	}
+	
+	/**
+	 * @param manifestFiles
+	 *      The manifest files on the classpath.
+	 *
+	 * @param entries
+	 *      The map to put the manifest files into by entry key.
+	 *
+	 * @return Returns the comma separated keys of the classpath entries, or
+	 *      <code>null</code> if an entry is no jar or two entries have the
+	 *      same key.
+	 */
+	private static String getClasspath(URL[] manifestFiles,
+		Map<String, URL> entries) {
+		StringBuilder classpath = new StringBuilder();
+		for (URL manifestFile : manifestFiles) {
+			String key = getEntryKey(getEntryBase(manifestFile.toString()));
+			if (key == null || entries.put(key, manifestFile) != null) {
+				return null;
+			}
+			if (classpath.length() > 0) {
+				classpath.append(',');
+			}
+			classpath.append(key);
+		}
+		return classpath.toString();
+	}
+	
+	/**
+	 * @param manifestFile
+	 *      The location of a manifest file.
+	 *
+	 * @return Returns the location of its classpath entry, i.e. without the
+	 *      manifest path.
+	 */
+	private static String getEntryBase(String manifestFile) {
+		return manifestFile.substring(0, manifestFile.length()
+			- ManifestOrderedConfigLocationProvider.MANIFEST_FILE.length());
+	}
+	
+	/**
+	 * @param entryBase
+	 *      The location of a classpath entry, e.g.
+	 *      <code>jar:file:/lib/a.jar!/</code> or <code>/classes/</code>.
+	 *
+	 * @return Returns the key of the entry: the name of the jar with its
+	 *      size and the checksum of its manifest file, or <code>null</code>
+	 *      if the entry is no jar.
+	 */
+	private static String getEntryKey(String entryBase) {
+		if (!entryBase.endsWith("!/")) {
+			// a directory, its content may change without notice
+			return null;
+		}
+		String path = entryBase.substring(0, entryBase.length() - "!/".length());
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		
+		int fileUrlStart = path.indexOf("file:");
+		if (fileUrlStart >= 0) {
+			// a jar file: its size and manifest tell rebuilt versions apart
+			try {
+				File jar = new File(new URL(path.substring(fileUrlStart)).toURI());
+				if (jar.isFile()) {
+					name += ":" + jar.length() + ":" + getManifestChecksum(jar);
+				}
+			} catch (URISyntaxException e) {
+				s_logger.debug("Unable to locate " + path, e);
+			} catch (IOException e) {
+				s_logger.debug("Unable to locate " + path, e);
+			}
+		}
+		return name;
+	}
+	
+	/**
+	 * @param jar
+	 *      The jar file.
+	 *
+	 * @return Returns the CRC of the manifest file as recorded in the central
+	 *      directory of the jar (i.e. without reading the manifest file), or
+	 *      <code>-1</code> if the jar has no manifest file.
+	 *
+	 * @throws IOException
+	 *      If the jar could not be read.
+	 */
+	private static long getManifestChecksum(File jar) throws IOException {
+		ZipFile zip = new ZipFile(jar);
+		try {
+			ZipEntry manifest = zip.getEntry(
+				ManifestOrderedConfigLocationProvider.MANIFEST_FILE);
+			return manifest != null ? manifest.getCrc() : -1;
+		} finally {
+			zip.close();
+		}
+	}
+}
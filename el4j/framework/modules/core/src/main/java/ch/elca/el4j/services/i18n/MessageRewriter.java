@@ -32,6 +32,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -107,6 +109,16 @@ import ch.elca.el4j.util.codingsupport.Reject;
  *we get "A piece of rock called home.". If we look up "Mars.poetic" instead,
  *we get "A piece of rock called Mars."
  *
+ * <h4>Performance</h4>
+ *
+ * The rules read from rule files are indexed by the qualifiers of their
+ * patterns, so looking up a key takes time proportional to its number of
+ * qualifiers rather than to the number of rules. Messages of keys looked up
+ * without arguments are cached until rules are added, provided that no rule
+ * other than the ones read from rule files has been consulted to resolve them
+ * (see {@link #isCacheable(Rule)}). A rewriter may be used by several threads
+ * concurrently.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Adrian Moos (AMS)
@@ -119,11 +131,32 @@ public class MessageRewriter {
 	/** An empty Object[]. */
 	static final Object[] EMPTY = new Object[0];
 	
+	/** The maximum number of cached messages. */
+	public static final int MAX_CACHED_MESSAGES = 10000;
+	
+	/**
+	 * Per thread: has the resolution in progress consulted a rule whose
+	 * messages must not be cached?
+	 */
+	private static final ThreadLocal<boolean[]> s_uncacheable
+		= new ThreadLocal<boolean[]>() {
+			@Override
+			protected boolean[] initialValue() {
+				return new boolean[1];
+			}
+		};
+	
 	
 	/** the list of loaded rules, ordered such that earlier rules superseed
 	 * later ones. */
 	List<Rule> m_rules = new ArrayList<Rule>();
 	
+	/**
+	 * The index of {@link #m_rules}, {@code null} if it must be rebuilt. Each
+	 * index is one generation of the rules and caches its own messages.
+	 */
+	private volatile RuleIndex m_index;
+	
 	/**
 	 * Constructor.
 	 * @param readers readers providing the rule lists to be used.
@@ -234,7 +267,11 @@ public class MessageRewriter {
 		}
 	}
 
-	/** Represents a rewriting rule. */
+	/**
+	 * Represents a rewriting rule. Unless declared cacheable (see
+	 * {@link MessageRewriter#isCacheable(Rule)}), a rule is consulted on every
+	 * look up and may therefore change its behaviour after being added.
+	 */
 	public static interface Rule {
 		/**
 		 * Attempts to rewrite the key with this rule and the provided
@@ -267,6 +304,9 @@ public class MessageRewriter {
 		 * is given a LookupFormatter that uses the argument array to
 		 * format its key, and then looks up the associated value in the lookup
 		 * context.
+		 *
+		 * <p>Used as prototype only, as message formats are not thread-safe.
+		 * Every rewrite formats with a clone of it.
 		 * */
 		private MessageFormat m_format;
 		
@@ -450,30 +490,44 @@ public class MessageRewriter {
 						return null;
 					}
 				}
-				
-				// it matches --> prepare args
-				Object[] args = new Object[
-					m_userVariables
-					+ m_variableLocations.length
-					+ 1
-				];
-				System.arraycopy(arguments, 0, args, 0, m_userVariables);
-				for (int i = 0; i < m_variableLocations.length; i++) {
-					args[m_userVariables + i] = keyparts[m_variableLocations[i]];
-				}
-				args[m_userVariables + m_variableLocations.length] = args;
-				
-				// let the message format work
-				try {
-					return m_format.format(args, target, new FieldPosition(0));
-				} catch (NoSuchMessageException e) {
-					throw new RewritingFailedException(key, this, e);
-				}
+				return rewriteMatching(key, keyparts, arguments, target);
 			} else {
 				return null;
 			}
 		}
 		
+		/**
+		 * Rewrites a key known to match this rule.
+		 *
+		 * @param key the key to rewrite
+		 * @param keyparts the qualifiers of the key
+		 * @param arguments the user arguments (used to replace {0}, {1}, ...)
+		 * @param target the StringBuffer to append to
+		 * @return {@code target}
+		 */
+		StringBuffer rewriteMatching(String key, String[] keyparts,
+			Object[] arguments, StringBuffer target) {
+			
+			Object[] args = new Object[
+				m_userVariables
+				+ m_variableLocations.length
+				+ 1
+			];
+			System.arraycopy(arguments, 0, args, 0, m_userVariables);
+			for (int i = 0; i < m_variableLocations.length; i++) {
+				args[m_userVariables + i] = keyparts[m_variableLocations[i]];
+			}
+			args[m_userVariables + m_variableLocations.length] = args;
+			
+			// let the message format work
+			try {
+				MessageFormat format = (MessageFormat) m_format.clone();
+				return format.format(args, target, new FieldPosition(0));
+			} catch (NoSuchMessageException e) {
+				throw new RewritingFailedException(key, this, e);
+			}
+		}
+		
 		/** {@inheritDoc} */
 		public String toString() {
 			StringBuilder sb = new StringBuilder();
@@ -540,6 +594,162 @@ public class MessageRewriter {
 			Reject.ifCondition(true, "not implemented");
 			return null;
 		}
+		
+		/**
+		 * Copies the key formatter too, so that the copy can be used by
+		 * another thread.
+		 *
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object clone() {
+			LookupFormat copy = (LookupFormat) super.clone();
+			copy.m_keyFormatter = (MessageFormat) m_keyFormatter.clone();
+			return copy;
+		}
+	}
+	
+	/**
+	 * Index of a rule list. The text rules are arranged in a trie whose edges
+	 * are the qualifiers of their patterns, so that the first text rule
+	 * matching a key is found by walking the key's qualifiers. Other rules are
+	 * tried in their list position; consulting one that is not cacheable
+	 * marks the resolution in progress as uncacheable.
+	 */
+	static final class RuleIndex {
+		/** The rules, ordered such that earlier rules superseed later ones. */
+		private final Rule[] m_rules;
+		
+		/** The positions of the rules that are not text rules, ascending. */
+		private final int[] m_otherRules;
+		
+		/** Whether the messages of the rules in {@link #m_otherRules} may be cached. */
+		private final boolean[] m_otherRulesCacheable;
+		
+		/** The root of the trie. */
+		private final Node m_root = new Node();
+		
+		/** The resolved messages of keys looked up without arguments. */
+		private final ConcurrentMap<String, String> m_messages
+			= new ConcurrentHashMap<String, String>();
+		
+		/**
+		 * Constructor.
+		 * @param rewriter the rewriter deciding which rules are cacheable
+		 * @param rules the rules to index
+		 */
+		RuleIndex(MessageRewriter rewriter, List<Rule> rules) {
+			m_rules = rules.toArray(new Rule[rules.size()]);
+			int[] otherRules = new int[m_rules.length];
+			int others = 0;
+			for (int i = 0; i < m_rules.length; i++) {
+				if (m_rules[i] instanceof TextRule) {
+					Node node = m_root;
+					for (String pp : ((TextRule) m_rules[i]).m_patternParts) {
+						node = node.child(pp);
+					}
+					node.m_rule = Math.min(node.m_rule, i);
+				} else {
+					otherRules[others++] = i;
+				}
+			}
+			m_otherRules = new int[others];
+			System.arraycopy(otherRules, 0, m_otherRules, 0, others);
+			m_otherRulesCacheable = new boolean[others];
+			for (int i = 0; i < others; i++) {
+				m_otherRulesCacheable[i] = rewriter.isCacheable(m_rules[m_otherRules[i]]);
+			}
+		}
+		
+		/**
+		 * Rewrites the key with the first rule that matches it.
+		 *
+		 * @param key the key to rewrite
+		 * @param arguments the user arguments
+		 * @param target the StringBuffer to append to
+		 * @return {@code target} if a rule matched, {@code null} otherwise
+		 */
+		StringBuffer rewrite(String key, Object[] arguments,
+			StringBuffer target) {
+			
+			String[] keyparts = qualifiers(key);
+			int textRule = m_root.find(keyparts, 0);
+			for (int j = 0; j < m_otherRules.length; j++) {
+				int i = m_otherRules[j];
+				if (i > textRule) {
+					break;
+				}
+				if (!m_otherRulesCacheable[j]) {
+					s_uncacheable.get()[0] = true;
+				}
+				StringBuffer sb = m_rules[i].rewrite(key, arguments, target);
+				if (sb != null) {
+					return sb;
+				}
+			}
+			if (textRule == Integer.MAX_VALUE) {
+				return null;
+			}
+			return ((TextRule) m_rules[textRule]).rewriteMatching(
+				key, keyparts, arguments, target);
+		}
+	}
+	
+	/** A node of the {@link RuleIndex} trie. */
+	static final class Node {
+		/** The children by literal qualifier, {@code null} if none. */
+		private Map<String, Node> m_literals;
+		
+		/** The child for variable qualifiers, {@code null} if none. */
+		private Node m_variable;
+		
+		/** The first rule whose pattern ends here. */
+		private int m_rule = Integer.MAX_VALUE;
+		
+		/**
+		 * @param patternPart a qualifier of a pattern
+		 * @return the child for the given qualifier, created if needed
+		 */
+		Node child(String patternPart) {
+			if (TextRule.isVariableName(patternPart)) {
+				if (m_variable == null) {
+					m_variable = new Node();
+				}
+				return m_variable;
+			}
+			if (m_literals == null) {
+				m_literals = new HashMap<String, Node>();
+			}
+			Node child = m_literals.get(patternPart);
+			if (child == null) {
+				child = new Node();
+				m_literals.put(patternPart, child);
+			}
+			return child;
+		}
+		
+		/**
+		 * @param keyparts the qualifiers of a key
+		 * @param depth the number of qualifiers leading to this node
+		 * @return the position of the first rule matching the remaining
+		 *         qualifiers, {@link Integer#MAX_VALUE} if none
+		 */
+		int find(String[] keyparts, int depth) {
+			if (depth == keyparts.length) {
+				return m_rule;
+			}
+			int rule = Integer.MAX_VALUE;
+			if (m_literals != null) {
+				Node child = m_literals.get(keyparts[depth]);
+				if (child != null) {
+					rule = child.find(keyparts, depth + 1);
+				}
+			}
+			if (m_variable != null) {
+				rule = Math.min(rule, m_variable.find(keyparts, depth + 1));
+			}
+			return rule;
+		}
 	}
 	
 	/** returns the qualifiers in s, i.e. the list of maximal substrings not
@@ -548,20 +758,18 @@ public class MessageRewriter {
 	 * @return .
 	 */
 	public static String[] qualifiers(String s) {
-		return qualifiers(s, 0);
-	}
-	
-	/** Helper to {@link #qualifiers(String)}. */
-	private static String[] qualifiers(String s, int depth) {
-		int i = s.indexOf(".");
-		String[] r;
-		if (i == -1) {
-			i = s.length();
-			r = new String[depth + 1];
-		} else {
-			r = qualifiers(s.substring(i + 1), depth + 1);
-		}
-		r[depth] = s.substring(0, i);
+		int count = 1;
+		for (int i = s.indexOf('.'); i != -1; i = s.indexOf('.', i + 1)) {
+			count++;
+		}
+		String[] r = new String[count];
+		int begin = 0;
+		for (int depth = 0; depth < count - 1; depth++) {
+			int end = s.indexOf('.', begin);
+			r[depth] = s.substring(begin, end);
+			begin = end + 1;
+		}
+		r[count - 1] = s.substring(begin);
 		return r;
 	}
 
@@ -569,15 +777,54 @@ public class MessageRewriter {
 	/**
 	 * Adds the provided rules to the list of rewriting rules used.
 	 */
-	public void add(Rule...rules) {
+	public synchronized void add(Rule...rules) {
 		m_rules.addAll(Arrays.asList(rules));
+		rulesChanged();
 	}
 	
 	/**
 	 * Adds the provided rules to the list of rewriting rules used.
 	 */
-	public void add(List<? extends Rule> rules) {
+	public synchronized void add(List<? extends Rule> rules) {
 		m_rules.addAll(rules);
+		rulesChanged();
+	}
+	
+	/**
+	 * Decides whether the messages resolved by the given rule may be cached.
+	 * This is only the case if the rule is immutable and deterministic, i.e.
+	 * always rewrites a key the same way. By default, only the rules read
+	 * from rule files are cacheable.
+	 *
+	 * @param rule the rule
+	 * @return {@code true} if messages resolved by consulting the rule may be
+	 *         cached
+	 */
+	protected boolean isCacheable(Rule rule) {
+		return rule instanceof TextRule;
+	}
+	
+	/**
+	 * Discards the rule index and the cached messages. Resolutions still in
+	 * flight cache their messages in the discarded index only.
+	 */
+	private void rulesChanged() {
+		m_index = null;
+	}
+	
+	/** Returns the index of the rules, building it if needed. */
+	private RuleIndex getIndex() {
+		RuleIndex index = m_index;
+		if (index == null) {
+			synchronized (this) {
+				index = m_index;
+				if (index == null) {
+					index = new RuleIndex(this, m_rules);
+					m_index = index;
+				}
+			}
+		}
+		return index;
 	}
 
 	
@@ -594,16 +841,50 @@ public class MessageRewriter {
 		StringBuffer target) {
 		
 		Object[] args = arguments == null ? EMPTY : arguments;
-		for (Rule r : m_rules) {
-			StringBuffer sb = r.rewrite(key, args, target);
-			if (sb != null) {
-				if (s_logger.isDebugEnabled()) {
-					s_logger.debug(key + " -> " + sb);
-				}
-				return sb;
+		RuleIndex index = getIndex();
+		if (args.length > 0) {
+			return resolveAndAppendUncached(index, key, args, target);
+		}
+		String message = index.m_messages.get(key);
+		if (message != null) {
+			return target.append(message);
+		}
+		int start = target.length();
+		// lookups nested in this resolution report to their own flag first
+		boolean[] uncacheable = s_uncacheable.get();
+		boolean enclosingUncacheable = uncacheable[0];
+		uncacheable[0] = false;
+		try {
+			StringBuffer sb = resolveAndAppendUncached(index, key, args, target);
+			if (!uncacheable[0] && index.m_messages.size() < MAX_CACHED_MESSAGES) {
+				index.m_messages.put(key, sb.substring(start));
 			}
+			return sb;
+		} finally {
+			// an enclosing resolution depends on this one
+			uncacheable[0] |= enclosingUncacheable;
+		}
+	}
+	
+	/** Like {@link #resolveAndAppend(String, Object[], StringBuffer)}, but
+	 * without looking up or caching the message.
+	 * @param index the index of the rules to use
+	 * @param key .
+	 * @param args the user arguments. must not be null, but may be empty.
+	 * @param target .
+	 * @return {@code target}
+	 */
+	private StringBuffer resolveAndAppendUncached(RuleIndex index, String key,
+		Object[] args, StringBuffer target) {
+		
+		StringBuffer sb = index.rewrite(key, args, target);
+		if (sb == null) {
+			throw new NoDefinitionException(key);
+		}
+		if (s_logger.isDebugEnabled()) {
+			s_logger.debug(key + " -> " + sb);
 		}
-		throw new NoDefinitionException(key);
+		return sb;
 	}
 	
 	
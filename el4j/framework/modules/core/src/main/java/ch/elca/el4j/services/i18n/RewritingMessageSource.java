@@ -21,9 +21,9 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,8 +51,8 @@ public class RewritingMessageSource implements MessageSource {
 	protected MessageRewriter.Rule[] m_additionalRules;
 	
 	/** The already loaded rewriters. */
-	protected Map<Locale, MessageRewriter> m_rewriters
-		= new HashMap<Locale, MessageRewriter>();
+	protected ConcurrentMap<Locale, MessageRewriter> m_rewriters
+		= new ConcurrentHashMap<Locale, MessageRewriter>();
 	
 	/** The logger. (duh!) */
 	protected static final Logger s_logger
@@ -144,7 +144,10 @@ public class RewritingMessageSource implements MessageSource {
 		MessageRewriter r = m_rewriters.get(loc);
 		if (r == null) {
 			r = createRewriter(loc);
-			m_rewriters.put(loc, r);
+			MessageRewriter existing = m_rewriters.putIfAbsent(loc, r);
+			if (existing != null) {
+				r = existing;
+			}
 		}
 		return r;
 	}
@@ -29,6 +29,8 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.commons.collections.map.AbstractReferenceMap;
@@ -118,8 +120,12 @@ public abstract class AbstractIdentityFixer {
 	protected static final Object ANONYMOUS = new Object();
 	
 	/** Cache for {@link #fields(Class)}. */
-	static Map<Class<?>, List<Field>> s_cachedFields
-		= new HashMap<Class<?>, List<Field>>();
+	static ConcurrentMap<Class<?>, List<Field>> s_cachedFields
+		= new ConcurrentHashMap<Class<?>, List<Field>>();
+	
+	/** Cache for {@link #mergePlan(Class)}. */
+	final ConcurrentMap<Class<?>, MergePlan> m_mergePlans
+		= new ConcurrentHashMap<Class<?>, MergePlan>();
 
 	/** The logger. */
 	static Logger s_logger = LoggerFactory.getLogger(AbstractIdentityFixer.class);
@@ -252,7 +258,6 @@ public abstract class AbstractIdentityFixer {
 		List<Field> fields = s_cachedFields.get(c);
 		if (fields == null) {
 			fields = instanceFields(c);
-			s_cachedFields.put(c, fields);
 			
 			for (Field f : fields) {
 				if (!Modifier.isPublic(f.getModifiers())) {
@@ -266,12 +271,49 @@ public abstract class AbstractIdentityFixer {
 							}
 						}
 					);
+					break;
 				}
 			}
+			
+			// publish the fields only once they are accessible
+			List<Field> cached = s_cachedFields.putIfAbsent(c, fields);
+			if (cached != null) {
+				fields = cached;
+			}
 		}
 		return fields;
 	}
 	
+	/**
+	 * Returns the merge plan for objects of class {@code c}, i.e. its fields
+	 * split into fields of immutable type (see {@link #immutableType(Class)}),
+	 * which are copied as they are, and all other fields, which are merged
+	 * recursively. The plan is built once per class and shared between threads.
+	 * 
+	 * @param c the class whose merge plan is desired
+	 * @return see above.
+	 */
+	MergePlan mergePlan(Class<?> c) {
+		MergePlan plan = m_mergePlans.get(c);
+		if (plan == null) {
+			List<Field> valueFields = new ArrayList<Field>();
+			List<Field> referenceFields = new ArrayList<Field>();
+			for (Field f : fields(c)) {
+				if (immutableType(f.getType())) {
+					valueFields.add(f);
+				} else {
+					referenceFields.add(f);
+				}
+			}
+			plan = new MergePlan(valueFields, referenceFields);
+			MergePlan cached = m_mergePlans.putIfAbsent(c, plan);
+			if (cached != null) {
+				plan = cached;
+			}
+		}
+		return plan;
+	}
+	
 	/**
 	 * Actually performs the merge.
 	 *
@@ -554,6 +596,16 @@ public abstract class AbstractIdentityFixer {
 			if (isNew || identical) {
 				m_representatives.put(valueHolderId, referenceHolder);
 			}
+			
+			// dirty tracking: skip the subgraph if the version did not change
+			if (policy.isSkipUnchanged() && !isNew && referenceHolder != valueHolder) {
+				Object version = version(valueHolder);
+				if (version != null && version.equals(version(referenceHolder))) {
+					trace("", valueHolder, " is unchanged, keeping ", referenceHolder);
+					reached.put(valueHolder, referenceHolder);
+					return referenceHolder;
+				}
+			}
 		}
 		
 		// register representative
@@ -584,12 +636,7 @@ public abstract class AbstractIdentityFixer {
 			List mergedEntries;
 			
 			// Check the update policy, or take new list if new or old is immutable
-			boolean isInPolicy = false;
-			try {
-				isInPolicy = policy.getObjectsToUpdate().contains(savedCollection);
-			} catch (Exception e) {
-				isInPolicy = false;
-			}
+			boolean isInPolicy = policy.isObjectToUpdate(savedCollection);
 			if (policy.getUpdatePolicy() == UpdatePolicy.UPDATE_ALL 
 				|| (policy.getUpdatePolicy() == UpdatePolicy.UPDATE_CHOSEN 
 					&& isInPolicy) 
@@ -645,9 +692,18 @@ public abstract class AbstractIdentityFixer {
 		} else {
 			boolean isUpdateNeeded = policy.getUpdatePolicy() == UpdatePolicy.UPDATE_ALL 
 				|| (policy.getUpdatePolicy() == UpdatePolicy.UPDATE_CHOSEN 
-					&& policy.getObjectsToUpdate().contains(referenceHolder))
+					&& policy.isObjectToUpdate(referenceHolder))
 				|| isNew;
-			for (Field f : fields(valueHolder.getClass())) {
+			MergePlan plan = mergePlan(valueHolder.getClass());
+			if (isUpdateNeeded && referenceHolder != valueHolder) {
+				try {
+					// values of immutable type are neither fixed nor traversed, just copied
+					for (Field f : plan.m_valueFields) {
+						f.set(referenceHolder, f.get(valueHolder));
+					}
+				} catch (IllegalAccessException e) { assert false : e; }
+			}
+			for (Field f : plan.m_referenceFields) {
 				try {
 					Object fieldValueNew = f.get(valueHolder);
 					Object fieldValueOld = f.get(referenceHolder);
@@ -730,7 +786,7 @@ public abstract class AbstractIdentityFixer {
 			updated,
 			IdentityFixerMergePolicy.reloadAllPolicy(),
 			anchor != null,
-			new IdentityHashMap<Object, Object>(),
+			new ReachedMap(),
 			locked
 		);
 		return result;
@@ -771,7 +827,7 @@ public abstract class AbstractIdentityFixer {
 			updated,
 			policy,
 			anchor != null,
-			new IdentityHashMap<Object, Object>(),
+			new ReachedMap(),
 			locked
 		);
 		return result;
@@ -807,8 +863,8 @@ public abstract class AbstractIdentityFixer {
 			reached.put(object, object);
 		}
 		
-		// check for collections in the fields
-		for (Field f : fields(object.getClass())) {
+		// check for collections in the fields (fields of immutable type can't hold any)
+		for (Field f : mergePlan(object.getClass()).m_referenceFields) {
 			try {
 				Object fieldValue = f.get(object);
 				if (fieldValue instanceof Collection) {
@@ -941,6 +997,37 @@ public abstract class AbstractIdentityFixer {
 	 */
 	protected abstract boolean immutableValue(Object o);
 	
+	/**
+	 * Returns the version of the given object, used by the dirty tracking mode
+	 * of {@link IdentityFixerMergePolicy#setSkipUnchanged(boolean)}: an object
+	 * with the same (non-null) version as its representative is considered
+	 * unchanged. The default implementation returns {@code null}, i.e. all objects
+	 * are considered changed.
+	 *
+	 * @param o
+	 *            The concerned object, not null
+	 * @return The version of the given object, or {@code null} if unknown
+	 */
+	protected Object version(Object o) {
+		return null;
+	}
+	
+	/**
+	 * Returns whether all values of fields declared with type {@code c} are
+	 * immutable values (see {@link #immutableValue(Object)}) that are returned
+	 * unchanged by {@link #prepareObject(Object)}. Such fields are copied
+	 * without being merged. By default, only primitive types are considered
+	 * immutable; subclasses may extend this to other types.
+	 * 
+	 * @param c
+	 *            The declared type of a field
+	 * @return <code>True</code> if all values of the given type are immutable
+	 *         values, <code>false</code> otherwise
+	 */
+	protected boolean immutableType(Class<?> c) {
+		return c.isPrimitive();
+	}
+	
 	/**
 	 * Returns the prepared Object, is called before checked for immutability
 	 * to give the id fixer the chance to convert immutable values to usable ones.
@@ -1021,6 +1108,93 @@ public abstract class AbstractIdentityFixer {
 	}
 	
 	
+	/**
+	 * The map of reached objects [updated -> representative] used during a merge.
+	 * In addition to an ordinary identity map, it counts the references to its values
+	 * to answer {@link #containsValue(Object)} in constant time instead of scanning
+	 * all entries. It must only be modified through {@link #put(Object, Object)},
+	 * {@link #remove(Object)} and {@link #clear()}, not through its views.
+	 */
+	static final class ReachedMap extends IdentityHashMap<Object, Object> {
+		/** Serial version UID. */
+		private static final long serialVersionUID = 1L;
+		
+		/** The values of this map [value -> number of keys mapped to it]. */
+		private final IdentityHashMap<Object, Integer> m_values = new IdentityHashMap<Object, Integer>();
+		
+		/** {@inheritDoc} */
+		@Override
+		public Object put(Object key, Object value) {
+			boolean existed = containsKey(key);
+			Object old = super.put(key, value);
+			if (!existed || old != value) {
+				if (existed) {
+					releaseValue(old);
+				}
+				Integer count = m_values.get(value);
+				m_values.put(value, count == null ? 1 : count + 1);
+			}
+			return old;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public boolean containsValue(Object value) {
+			return m_values.containsKey(value);
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public Object remove(Object key) {
+			boolean existed = containsKey(key);
+			Object old = super.remove(key);
+			if (existed) {
+				releaseValue(old);
+			}
+			return old;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public void clear() {
+			m_values.clear();
+			super.clear();
+		}
+		
+		/**
+		 * @param value    a value that is no longer mapped by one of the keys
+		 */
+		private void releaseValue(Object value) {
+			int count = m_values.get(value);
+			if (count == 1) {
+				m_values.remove(value);
+			} else {
+				m_values.put(value, count - 1);
+			}
+		}
+	}
+	
+	/**
+	 * The merge plan of a class, see {@link AbstractIdentityFixer#mergePlan(Class)}.
+	 * Instances are immutable.
+	 */
+	static final class MergePlan {
+		/** The accessible fields of immutable type. */
+		final Field[] m_valueFields;
+		
+		/** The accessible fields that have to be merged recursively. */
+		final Field[] m_referenceFields;
+		
+		/**
+		 * @param valueFields        the accessible fields of immutable type
+		 * @param referenceFields    the accessible fields that have to be merged recursively
+		 */
+		MergePlan(List<Field> valueFields, List<Field> referenceFields) {
+			m_valueFields = valueFields.toArray(new Field[valueFields.size()]);
+			m_referenceFields = referenceFields.toArray(new Field[referenceFields.size()]);
+		}
+	}
+	
 	////////////
 	// Tracing
 	////////////
@@ -0,0 +1,32 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.generic.dao;
+
+/**
+ * Receives the progress of a bulk operation that writes entities in batches
+ * (e.g. <code>saveOrUpdateAll</code>).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface BatchProgressListener {
+	/**
+	 * Invoked after each batch has been written to the database.
+	 *
+	 * @param processed    the number of entities written so far
+	 */
+	void batchCompleted(int processed);
+}
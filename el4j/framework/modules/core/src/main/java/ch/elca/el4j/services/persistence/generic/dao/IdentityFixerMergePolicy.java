@@ -17,8 +17,11 @@
 package ch.elca.el4j.services.persistence.generic.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class represents a policy on how to merge object graphs in the identity fixer.
@@ -34,12 +37,18 @@ public class IdentityFixerMergePolicy {
 	/** The update policy. */
 	private UpdatePolicy m_updatePolicy;
 	
-	/** The objects to update, only set when <code>m_updatePolicy == UpdatePolicy.UPDATE_CHOSEN</code>. */
-	private List<Object> m_objectsToUpdate;
+	/**
+	 * The objects to update (without duplicates by identity), only set when
+	 * <code>m_updatePolicy == UpdatePolicy.UPDATE_CHOSEN</code>.
+	 */
+	private ObjectsToUpdate m_objectsToUpdate;
 	
 	/** Should Preparation be performed. */
 	private boolean m_performPreparation;
 	
+	/** Should objects whose version did not change be skipped (including the objects reachable from them). */
+	private boolean m_skipUnchanged = false;
+	
 	/**
 	 *	A map of [updated -> anchor] used to correctly merge collections.
 	 */
@@ -66,7 +75,7 @@ public class IdentityFixerMergePolicy {
 	protected IdentityFixerMergePolicy(UpdatePolicy updatePolicy, List<Object> objectsToUpdate,
 		boolean performPreparation, IdentityHashMap<Object, Object> collectionEntryMapping) {
 		m_updatePolicy = updatePolicy;
-		m_objectsToUpdate = objectsToUpdate;
+		setObjectsToUpdate(objectsToUpdate);
 		m_performPreparation = performPreparation;
 		m_collectionEntryMapping = collectionEntryMapping;
 	}
@@ -79,21 +88,51 @@ public class IdentityFixerMergePolicy {
 	}
 	
 	/**
-	 * Set the objects to update explicitly.
+	 * Set the objects to update explicitly. The objects are copied, dropping duplicates (by identity).
 	 * @param objectsToUpdate the list of objects to update.
 	 */
 	public void setObjectsToUpdate(List<Object> objectsToUpdate) {
-		m_objectsToUpdate = objectsToUpdate;
+		m_objectsToUpdate = objectsToUpdate != null ? new ObjectsToUpdate(objectsToUpdate) : null;
 	}
 	
 	/**
 	 * @return  The objects to update, 
 	 *     only set when <code>getUpdatePolicy == UpdatePolicy.UPDATE_CHOSEN</code>.
+	 *     Adding an object already contained (by identity) leaves the list unchanged.
 	 */
 	public List<Object> getObjectsToUpdate() {
 		return m_objectsToUpdate;
 	}
 	
+	/**
+	 * @param object    the object to check
+	 * @return  <code>true</code> if the object is (by identity) one of the objects to update.
+	 */
+	public boolean isObjectToUpdate(Object object) {
+		return m_objectsToUpdate != null && m_objectsToUpdate.containsIdentical(object);
+	}
+	
+	/**
+	 * @return if objects whose version did not change are skipped.
+	 * @see #setSkipUnchanged(boolean)
+	 */
+	public boolean isSkipUnchanged() {
+		return m_skipUnchanged;
+	}
+	
+	/**
+	 * Enables or disables dirty tracking: if enabled, an object having a representative
+	 * with the same version (see {@link AbstractIdentityFixer#version(Object)}) is not merged
+	 * at all, i.e. neither the representative nor the objects only reachable through it
+	 * are updated. Use this mode only if the version of an object changes whenever
+	 * the part of the graph reachable from it changes (or if such changes may be ignored).
+	 * 
+	 * @param skipUnchanged    should objects whose version did not change be skipped.
+	 */
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		m_skipUnchanged = skipUnchanged;
+	}
+	
 	/**
 	 * @return if preparation is needed.
 	 */
@@ -145,7 +184,7 @@ public class IdentityFixerMergePolicy {
 	 */
 	public static IdentityFixerMergePolicy reloadObjectsPolicy(List<Object> objectsToUpdate) {
 		IdentityFixerMergePolicy obj = new IdentityFixerMergePolicy(UpdatePolicy.UPDATE_CHOSEN, 
-			new ArrayList<Object>(objectsToUpdate), true, new IdentityHashMap<Object, Object>());
+			objectsToUpdate, true, new IdentityHashMap<Object, Object>());
 		return obj;
 	}
 	
@@ -180,7 +219,20 @@ public class IdentityFixerMergePolicy {
 	public static IdentityFixerMergePolicy reloadObjectsPolicy(List<Object> objectsToUpdate,
 		IdentityHashMap<Object, Object> collectionEntryMapping) {
 		IdentityFixerMergePolicy obj = new IdentityFixerMergePolicy(UpdatePolicy.UPDATE_CHOSEN, 
-			new ArrayList<Object>(objectsToUpdate), true, collectionEntryMapping);
+			objectsToUpdate, true, collectionEntryMapping);
+		return obj;
+	}
+	
+	/**
+	 * @param collectionEntryMapping  the collectionEntryMapping [updated -> anchor] 
+	 *              used to correctly merge collections.
+	 * @return a policy updating all objects whose version changed,
+	 *      skipping the unchanged ones (see {@link #setSkipUnchanged(boolean)}).
+	 */
+	public static IdentityFixerMergePolicy reloadChangedPolicy(IdentityHashMap<Object, Object> collectionEntryMapping) {
+		IdentityFixerMergePolicy obj = new IdentityFixerMergePolicy(UpdatePolicy.UPDATE_ALL, null, 
+			true, collectionEntryMapping);
+		obj.setSkipUnchanged(true);
 		return obj;
 	}
 	
@@ -209,14 +261,100 @@ public class IdentityFixerMergePolicy {
 		
 		List<Object> objs = null;
 		if (updatePolicy == UpdatePolicy.UPDATE_CHOSEN) {
-			objs = new ArrayList<Object>(objectsToUpdate);
+			objs = objectsToUpdate;
 		}
 		IdentityFixerMergePolicy obj = new IdentityFixerMergePolicy(updatePolicy, objs, 
 			performPreparation, collectionEntryMapping);
 		return obj;
 	}
-		
 	
+	/**
+	 * The list of objects to update. Duplicates (by identity) are dropped when adding. It answers
+	 * {@link #containsIdentical(Object)} in constant time using an identity set, which is
+	 * rebuilt whenever the list has been modified other than by appending.
+	 */
+	private static final class ObjectsToUpdate extends ArrayList<Object> {
+		/** Serial version UID. */
+		private static final long serialVersionUID = 1L;
+		
+		/** The objects of this list, valid if <code>m_indexModCount == modCount</code>. */
+		private final Set<Object> m_index = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		
+		/** The modification count the index corresponds to. */
+		private int m_indexModCount;
+		
+		/**
+		 * @param objects    the initial objects
+		 */
+		ObjectsToUpdate(Collection<?> objects) {
+			super(objects.size());
+			m_indexModCount = modCount;
+			addAll(objects);
+		}
+		
+		/**
+		 * @param object    the object to check
+		 * @return <code>true</code> if the object is (by identity) contained in this list
+		 */
+		boolean containsIdentical(Object object) {
+			if (m_indexModCount != modCount) {
+				m_index.clear();
+				m_index.addAll(this);
+				m_indexModCount = modCount;
+			}
+			return m_index.contains(object);
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public boolean add(Object object) {
+			if (containsIdentical(object)) {
+				return false;
+			}
+			super.add(object);
+			m_index.add(object);
+			m_indexModCount = modCount;
+			return true;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public void add(int index, Object object) {
+			if (!containsIdentical(object)) {
+				super.add(index, object);
+			}
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public boolean addAll(Collection<?> objects) {
+			boolean changed = false;
+			for (Object object : objects) {
+				changed |= add(object);
+			}
+			return changed;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public boolean addAll(int index, Collection<?> objects) {
+			int position = index;
+			for (Object object : objects) {
+				if (!containsIdentical(object)) {
+					super.add(position++, object);
+				}
+			}
+			return position != index;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public Object set(int index, Object object) {
+			// invalidate the index
+			modCount++;
+			return super.set(index, object);
+		}
+	}
 	
 }
 
@@ -0,0 +1,85 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.generic.dao;
+
+/**
+ * A cache for query results, placed in front of the query methods of a DAO
+ * (e.g. <code>findByQuery</code> and <code>findCountByQuery</code>).
+ *
+ * <p> Results are cached per key (typically the query object itself) and per entity type.
+ * They are invalidated whenever an entity of a related type changes, see
+ * {@link #invalidate(Class)}.
+ *
+ * <p> Cached results are shared between callers and threads. They must therefore not be
+ * modified and must not be bound to a session, i.e. DAOs cache ids or counts rather
+ * than managed entities.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface QueryResultCache {
+
+	/**
+	 * Loads the result of a query on a cache miss.
+	 *
+	 * @param <V> the type of the result
+	 */
+	public abstract static class Loader<V> {
+		/**
+		 * @return the result of the query
+		 */
+		public abstract V load();
+
+		/**
+		 * Called before a key is stored in the cache. Mutable keys (like query objects)
+		 * must be copied here, so later modifications of the caller's instance do
+		 * not corrupt the cache.
+		 *
+		 * @param key    the key passed to {@link QueryResultCache#get(Class, Object, Loader)}
+		 * @return the key to store
+		 */
+		public Object copyKey(Object key) {
+			return key;
+		}
+	}
+
+	/**
+	 * Returns the cached result for the given key or loads it.
+	 *
+	 * @param <V>           the type of the result
+	 * @param entityType    the entity type the query is about
+	 * @param key           the key identifying the query. Must implement
+	 *                      <code>equals</code> and <code>hashCode</code>.
+	 * @param loader        the loader to use on a cache miss
+	 * @return the (possibly cached) result
+	 */
+	public <V> V get(Class<?> entityType, Object key, Loader<V> loader);
+
+	/**
+	 * Removes all cached results concerning the given entity type, its
+	 * super types or its sub types. Within a transaction, implementations
+	 * should invalidate once it has completed, when the change becomes visible
+	 * to other transactions.
+	 *
+	 * @param entityType    the entity type that has changed
+	 */
+	public void invalidate(Class<?> entityType);
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void invalidateAll();
+}
@@ -0,0 +1,35 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.generic.dao;
+
+/**
+ * Visits the results of a streaming query one by one (e.g. <code>scrollByQuery</code>),
+ * so the whole result never has to be held in memory.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ *
+ * @param <T> the type of the visited results
+ */
+public interface ResultVisitor<T> {
+	/**
+	 * Visits the next result.
+	 *
+	 * @param result    the result
+	 * @return <code>true</code> to continue, <code>false</code> to stop the query
+	 */
+	boolean visit(T result);
+}
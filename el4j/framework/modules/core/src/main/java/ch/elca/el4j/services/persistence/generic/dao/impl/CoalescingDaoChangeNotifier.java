@@ -0,0 +1,274 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.generic.dao.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * A change notifier delivering changes asynchronously in batches.
+ * 
+ * <p> Announced changes are collected during a short delay (see {@link #setDelay(long)})
+ * and then delivered to the listeners at once. Within such a batch, all changes of the
+ * same entity are coalesced into one notification: the last change announced for
+ * the entity wins, except that an insertion stays an insertion unless the entity
+ * gets deleted, and a deletion stays a deletion unless the entity gets inserted again.
+ * Changes not concerning a specific entity are coalesced by type.
+ * 
+ * <p> By default, changes are delivered by the notifier's timer thread. To deliver
+ * them on another thread (e.g. the Swing event dispatch thread), set a
+ * delivery executor (see {@link #setDeliveryExecutor(Executor)}).
+ * 
+ * <p> Once the notifier has been destroyed, announced changes are delivered
+ * synchronously and uncoalesced.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class CoalescingDaoChangeNotifier extends DefaultDaoChangeNotifier implements DisposableBean {
+	
+	/**
+	 * The default delay in milliseconds during which changes are collected.
+	 */
+	public static final long DEFAULT_DELAY = 50;
+	
+	/**
+	 * The delay in milliseconds during which changes are collected.
+	 */
+	private long m_delay = DEFAULT_DELAY;
+	
+	/**
+	 * The executor delivering the changes, or <code>null</code> to deliver them on the timer thread.
+	 */
+	private Executor m_deliveryExecutor;
+	
+	/**
+	 * The timer, created on first use.
+	 */
+	private ScheduledExecutorService m_timer;
+	
+	/**
+	 * The pending changes, keyed by entity (or by type). Guarded by <code>this</code>.
+	 */
+	private final Map<Object, Change> m_pendingChanges = new LinkedHashMap<Object, Change>();
+	
+	/**
+	 * Is a delivery of the pending changes scheduled? Guarded by <code>this</code>.
+	 */
+	private boolean m_deliveryScheduled = false;
+	
+	/**
+	 * Has the notifier been destroyed? Guarded by <code>this</code>.
+	 */
+	private boolean m_destroyed = false;
+	
+	/**
+	 * The task delivering the pending changes.
+	 */
+	private final Runnable m_flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The change is delivered asynchronously, coalesced with other changes of the same entity.
+	 * After {@link #destroy()}, it is delivered synchronously.
+	 */
+	@Override
+	public void announce(Change change) {
+		Object key = getKey(change);
+		boolean destroyed;
+		synchronized (this) {
+			destroyed = m_destroyed;
+			if (!destroyed) {
+				m_pendingChanges.put(key, coalesce(m_pendingChanges.get(key), change));
+				if (!m_deliveryScheduled) {
+					m_deliveryScheduled = true;
+					getTimer().schedule(m_flushTask, m_delay, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		if (destroyed) {
+			deliver(change);
+		}
+	}
+	
+	/**
+	 * Delivers all pending changes now (using the delivery executor, if set).
+	 */
+	public void flush() {
+		final List<Change> changes;
+		synchronized (this) {
+			changes = new ArrayList<Change>(m_pendingChanges.values());
+			m_pendingChanges.clear();
+			m_deliveryScheduled = false;
+		}
+		if (changes.isEmpty()) {
+			return;
+		}
+		
+		Runnable delivery = new Runnable() {
+			public void run() {
+				for (Change change : changes) {
+					deliver(change);
+				}
+			}
+		};
+		if (m_deliveryExecutor != null) {
+			m_deliveryExecutor.execute(delivery);
+		} else {
+			delivery.run();
+		}
+	}
+	
+	/**
+	 * Delivers a (coalesced) change to the listeners.
+	 * 
+	 * @param change    the change to deliver
+	 */
+	protected void deliver(Change change) {
+		super.announce(change);
+	}
+	
+	/**
+	 * @param previous    the pending change for the same key, or <code>null</code>
+	 * @param change      the newly announced change
+	 * @return the change to deliver instead of both changes
+	 */
+	protected Change coalesce(Change previous, Change change) {
+		if (previous instanceof EntityInserted && !(change instanceof EntityDeleted)) {
+			return previous;
+		}
+		if (previous instanceof EntityDeleted && !(change instanceof EntityInserted)) {
+			return previous;
+		}
+		return change;
+	}
+	
+	/**
+	 * @param change    the change
+	 * @return the key under which changes are coalesced
+	 */
+	private Object getKey(Change change) {
+		if (change instanceof EntityChange && ((EntityChange) change).getChangee() != null) {
+			return new IdentityKey(((EntityChange) change).getChangee());
+		} else {
+			return change.getClass();
+		}
+	}
+	
+	/**
+	 * @return the timer, created on first use
+	 */
+	private synchronized ScheduledExecutorService getTimer() {
+		if (m_timer == null) {
+			m_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, CoalescingDaoChangeNotifier.class.getSimpleName());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return m_timer;
+	}
+	
+	/**
+	 * Stops the timer. Pending changes are discarded, later changes are delivered synchronously.
+	 */
+	public synchronized void destroy() {
+		m_destroyed = true;
+		if (m_timer != null) {
+			m_timer.shutdownNow();
+			m_timer = null;
+		}
+		m_pendingChanges.clear();
+		m_deliveryScheduled = false;
+	}
+	
+	/**
+	 * @return the delay in milliseconds during which changes are collected
+	 */
+	public long getDelay() {
+		return m_delay;
+	}
+	
+	/**
+	 * @param delay    the delay in milliseconds during which changes are collected
+	 *                 (default: {@link #DEFAULT_DELAY})
+	 */
+	public void setDelay(long delay) {
+		Reject.ifFalse(delay >= 0, "The delay must not be negative.");
+		m_delay = delay;
+	}
+	
+	/**
+	 * @return the executor delivering the changes, or <code>null</code> if they are
+	 *         delivered on the timer thread
+	 */
+	public Executor getDeliveryExecutor() {
+		return m_deliveryExecutor;
+	}
+	
+	/**
+	 * @param deliveryExecutor    the executor delivering the changes, or <code>null</code>
+	 *                            to deliver them on the timer thread
+	 */
+	public void setDeliveryExecutor(Executor deliveryExecutor) {
+		m_deliveryExecutor = deliveryExecutor;
+	}
+	
+	/**
+	 * A key comparing the wrapped object by identity.
+	 */
+	private static final class IdentityKey {
+		/** The wrapped object. */
+		private final Object m_object;
+		
+		/**
+		 * @param object    the object to wrap
+		 */
+		IdentityKey(Object object) {
+			m_object = object;
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(m_object);
+		}
+		
+		/** {@inheritDoc} */
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).m_object == m_object;
+		}
+	}
+}
@@ -16,14 +16,18 @@
  */
 package ch.elca.el4j.services.persistence.generic.dao.impl;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import ch.elca.el4j.services.persistence.generic.dao.DaoChangeListener;
 import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier;
 
 /**
  * A default implementation with no notable features.
+ * 
+ * The listeners are kept in a copy-on-write list: subscribing and unsubscribing
+ * may happen concurrently to announcements, and announcing does not need to
+ * copy the listeners.
  *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
@@ -36,7 +40,7 @@ public class DefaultDaoChangeNotifier
 	 * The presently subscribed listeners.
 	 */
 	protected List<DaoChangeListener> m_listeners
-		= new ArrayList<DaoChangeListener>();
+		= new CopyOnWriteArrayList<DaoChangeListener>();
 	
 	/**
 	 * {@inheritDoc}
@@ -56,9 +60,8 @@ public class DefaultDaoChangeNotifier
 	 * {@inheritDoc}
 	 */
 	public void announce(Change change) {
-		List<DaoChangeListener> snapshot
-			= new ArrayList<DaoChangeListener>(m_listeners);
-		for (DaoChangeListener cl : snapshot) {
+		// iterating a copy-on-write list works on a snapshot
+		for (DaoChangeListener cl : m_listeners) {
 			cl.changed(change);
 		}
 	}
@@ -0,0 +1,341 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.generic.dao.impl;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeListener;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.Change;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityChange;
+import ch.elca.el4j.services.persistence.generic.dao.QueryResultCache;
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * A size and time bounded {@link QueryResultCache}.
+ *
+ * <p> At most {@link #getMaxSize()} results are kept; the least recently used one is
+ * evicted first. Results older than {@link #getTimeToLive()} milliseconds are reloaded.
+ *
+ * <p> The cache listens to DAO changes: an entity change invalidates the results
+ * of the changee's type, any other change invalidates everything. To receive the
+ * changes, subscribe the cache to a {@link DaoChangeNotifier}, e.g. by
+ * {@link #setChangeNotifier(DaoChangeNotifier)}.
+ *
+ * <p> A result is not stored if the cache has been invalidated while it was loaded,
+ * so a concurrent change never leaves a stale result behind.
+ *
+ * <p> Changes made within a transaction are only visible to others once it is
+ * committed. An invalidation within a transaction is therefore deferred until the
+ * transaction has completed, and until then the transaction neither reads nor
+ * stores results of the changed types (it would see, respectively share, its own
+ * uncommitted changes).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class DefaultQueryResultCache implements QueryResultCache, DaoChangeListener {
+
+	/**
+	 * The default maximal number of cached results.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	/**
+	 * The default time to live of a cached result in milliseconds.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+	/**
+	 * The maximal number of cached results.
+	 */
+	private int m_maxSize = DEFAULT_MAX_SIZE;
+
+	/**
+	 * The time to live of a cached result in milliseconds, or <code>0</code> for no limit.
+	 */
+	private long m_timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	/**
+	 * The cached results in access order. Guarded by <code>this</code>.
+	 */
+	private final Map<Object, CacheEntry> m_entries = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+			return size() > m_maxSize;
+		}
+	};
+
+	/**
+	 * Incremented on each invalidation. Guarded by <code>this</code>.
+	 */
+	private long m_generation = 0;
+
+	/**
+	 * The number of cache hits. Guarded by <code>this</code>.
+	 */
+	private long m_hits = 0;
+
+	/**
+	 * The number of cache misses. Guarded by <code>this</code>.
+	 */
+	private long m_misses = 0;
+
+	/** {@inheritDoc} */
+	@SuppressWarnings("unchecked")
+	public <V> V get(Class<?> entityType, Object key, Loader<V> loader) {
+		Reject.ifNull(entityType);
+		Reject.ifNull(key);
+		Reject.ifNull(loader);
+
+		if (isChangedInTransaction(entityType)) {
+			return loader.load();
+		}
+
+		long generation;
+		synchronized (this) {
+			CacheEntry entry = m_entries.get(key);
+			if (entry != null) {
+				if (!entry.isExpired()) {
+					m_hits++;
+					return (V) entry.m_value;
+				}
+				m_entries.remove(key);
+			}
+			m_misses++;
+			generation = m_generation;
+		}
+
+		// load outside the lock, concurrent misses for the same key may load twice
+		V value = loader.load();
+		Object storedKey = loader.copyKey(key);
+
+		synchronized (this) {
+			if (generation == m_generation) {
+				m_entries.put(storedKey, new CacheEntry(entityType, value));
+			}
+		}
+		return value;
+	}
+
+	/** {@inheritDoc} */
+	public void invalidate(Class<?> entityType) {
+		Reject.ifNull(entityType);
+		if (!deferToTransactionCompletion(entityType)) {
+			remove(entityType);
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void invalidateAll() {
+		if (!deferToTransactionCompletion(Object.class)) {
+			remove(Object.class);
+		}
+	}
+
+	/**
+	 * Removes all cached results concerning the given entity type, its super types
+	 * or its sub types.
+	 *
+	 * @param entityType    the entity type that has changed, <code>Object</code> for all
+	 */
+	private synchronized void remove(Class<?> entityType) {
+		m_generation++;
+		Iterator<CacheEntry> it = m_entries.values().iterator();
+		while (it.hasNext()) {
+			Class<?> cachedType = it.next().m_entityType;
+			if (cachedType.isAssignableFrom(entityType) || entityType.isAssignableFrom(cachedType)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Records a change of the current transaction, if any, to invalidate the cached
+	 * results when it has completed.
+	 *
+	 * @param entityType    the entity type that has changed, <code>Object</code> for all
+	 * @return whether a transaction is active, i.e. the invalidation has been deferred
+	 */
+	private boolean deferToTransactionCompletion(Class<?> entityType) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return false;
+		}
+		TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			changes = new TransactionChanges();
+			TransactionSynchronizationManager.bindResource(this, changes);
+			TransactionSynchronizationManager.registerSynchronization(changes);
+		}
+		changes.m_entityTypes.add(entityType);
+		return true;
+	}
+
+	/**
+	 * @param entityType    the entity type a query is about
+	 * @return whether the current transaction has changed entities related to the given type
+	 */
+	private boolean isChangedInTransaction(Class<?> entityType) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return false;
+		}
+		TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+		if (changes != null) {
+			for (Class<?> changedType : changes.m_entityTypes) {
+				if (changedType.isAssignableFrom(entityType) || entityType.isAssignableFrom(changedType)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	public void changed(Change change) {
+		if (change instanceof EntityChange && ((EntityChange) change).getChangee() != null) {
+			invalidate(((EntityChange) change).getChangee().getClass());
+		} else {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Subscribes this cache to the given notifier.
+	 *
+	 * @param changeNotifier    the notifier announcing the changes that invalidate this cache
+	 */
+	public void setChangeNotifier(DaoChangeNotifier changeNotifier) {
+		Reject.ifNull(changeNotifier);
+		changeNotifier.subscribe(this);
+	}
+
+	/**
+	 * @return the maximal number of cached results
+	 */
+	public synchronized int getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * @param maxSize    the maximal number of cached results (default: {@link #DEFAULT_MAX_SIZE})
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		Reject.ifFalse(maxSize > 0, "The maximal size must be positive.");
+		m_maxSize = maxSize;
+	}
+
+	/**
+	 * @return the time to live of a cached result in milliseconds, <code>0</code> for no limit
+	 */
+	public synchronized long getTimeToLive() {
+		return m_timeToLive;
+	}
+
+	/**
+	 * @param timeToLive    the time to live of a cached result in milliseconds, <code>0</code>
+	 *                      for no limit (default: {@link #DEFAULT_TIME_TO_LIVE})
+	 */
+	public synchronized void setTimeToLive(long timeToLive) {
+		Reject.ifFalse(timeToLive >= 0, "The time to live must not be negative.");
+		m_timeToLive = timeToLive;
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return m_entries.size();
+	}
+
+	/**
+	 * @return the number of cache hits
+	 */
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	/**
+	 * @return the number of cache misses
+	 */
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	/**
+	 * The entity types changed by a transaction, invalidated when it has completed
+	 * (committed or not, as results loaded concurrently may be based on either state).
+	 */
+	private final class TransactionChanges extends TransactionSynchronizationAdapter {
+		/**
+		 * The changed entity types. Only accessed by the transaction's thread.
+		 */
+		final Set<Class<?>> m_entityTypes = new HashSet<Class<?>>();
+
+		/** {@inheritDoc} */
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(DefaultQueryResultCache.this);
+			for (Class<?> entityType : m_entityTypes) {
+				remove(entityType);
+			}
+		}
+	}
+
+	/**
+	 * A cached result.
+	 */
+	private final class CacheEntry {
+		/**
+		 * The entity type the query is about.
+		 */
+		final Class<?> m_entityType;
+
+		/**
+		 * The cached result.
+		 */
+		final Object m_value;
+
+		/**
+		 * The time the result has been loaded.
+		 */
+		final long m_created = System.currentTimeMillis();
+
+		/**
+		 * @param entityType    the entity type the query is about
+		 * @param value         the cached result
+		 */
+		CacheEntry(Class<?> entityType, Object value) {
+			m_entityType = entityType;
+			m_value = value;
+		}
+
+		/**
+		 * @return whether this entry is older than the time to live
+		 */
+		boolean isExpired() {
+			return m_timeToLive > 0 && System.currentTimeMillis() - m_created > m_timeToLive;
+		}
+	}
+}
@@ -18,12 +18,19 @@ package ch.elca.el4j.services.search;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.util.ObjectUtils;
+
 import ch.elca.el4j.services.persistence.generic.dao.GenericDao;
 import ch.elca.el4j.services.search.criterias.AndCriteria;
+import ch.elca.el4j.services.search.criterias.ComparisonCriteria;
 import ch.elca.el4j.services.search.criterias.Criteria;
 import ch.elca.el4j.services.search.criterias.CriteriaHelper;
+import ch.elca.el4j.services.search.criterias.OrCriteria;
 import ch.elca.el4j.services.search.criterias.Order;
 import ch.elca.el4j.util.codingsupport.Reject;
 
@@ -39,6 +46,11 @@ import ch.elca.el4j.util.codingsupport.Reject;
  *   <li> paging support (see methods {@link setFirstResult}
  *         {@link setMaxResults} and {@link setDefaultMaxResults}
  *   <li> ordering support (often required when doing paging)
+ *   <li> keyset paging: instead of skipping <code>firstResult</code> rows, the
+ *         next page starts after the sort key of the last result seen (see
+ *         {@link #setKeyset(Object...)} and {@link #setKeysetFrom(Object)}).
+ *         This lets the database seek in an index instead of scanning all
+ *         skipped rows.
  *  </ul>
  *
  * Example on how to use this (with paging, ordering and criteria): <br> <br>
@@ -191,6 +203,12 @@ public class QueryObject implements Serializable {
 
 	List<Order> m_orderConstraints = new ArrayList<Order>();
 	
+	/**
+	 * The sort key of the last result seen (one value per order constraint),
+	 * or <code>null</code> if keyset paging is not used.
+	 */
+	private Object[] m_keyset;
+	
 	/**
 	 * What is the id of the first result we want to get back?
 	 * By default there is no constraint on the first result.
@@ -263,4 +281,127 @@ public class QueryObject implements Serializable {
 		return m_orderConstraints;
 	}
 	
+	///////// keyset paging support ////////////////////
+	
+	/**
+	 * Makes the query return only the results following the given sort key in the
+	 * order defined by the order constraints, e.g. to fetch the next page after the
+	 * last result seen. The order constraints must define a unique order (add the id
+	 * as last order constraint if needed). Usually combined with a first result of
+	 * <code>0</code>.
+	 * 
+	 * @param lastSortKey    the values of the order constraint properties of the last
+	 *                       result seen (all non-<code>null</code>), or no value to
+	 *                       start at the beginning
+	 */
+	public void setKeyset(Object... lastSortKey) {
+		if (lastSortKey == null || lastSortKey.length == 0) {
+			m_keyset = null;
+		} else {
+			Reject.ifFalse(lastSortKey.length == m_orderConstraints.size(),
+				"The keyset needs one value per order constraint.");
+			m_keyset = lastSortKey.clone();
+		}
+	}
+	
+	/**
+	 * Makes the query return only the results following the given one, see
+	 * {@link #setKeyset(Object...)}. The sort key is read from the properties
+	 * named by the order constraints.
+	 * 
+	 * @param lastResult    the last result seen, or <code>null</code> to start at the beginning
+	 */
+	public void setKeysetFrom(Object lastResult) {
+		if (lastResult == null) {
+			m_keyset = null;
+			return;
+		}
+		Reject.ifFalse(m_orderConstraints.size() > 0, "Keyset paging requires order constraints.");
+		BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(lastResult);
+		Object[] keyset = new Object[m_orderConstraints.size()];
+		for (int i = 0; i < keyset.length; i++) {
+			keyset[i] = wrapper.getPropertyValue(m_orderConstraints.get(i).getPropertyName());
+		}
+		setKeyset(keyset);
+	}
+	
+	/**
+	 * @return the sort key of the last result seen, or <code>null</code> if keyset
+	 *         paging is not used
+	 */
+	public Object[] getKeyset() {
+		return m_keyset == null ? null : m_keyset.clone();
+	}
+	
+	/**
+	 * Returns the criteria selecting the results after the keyset. For order
+	 * constraints <code>(a asc, b desc)</code> and keyset <code>(x, y)</code>, this is
+	 * <code>a &gt;= x AND (a &gt; x OR (a = x AND b &lt; y))</code>. The leading range
+	 * condition lets the database use an index on <code>a</code>.
+	 * 
+	 * @return the keyset criteria, or <code>null</code> if keyset paging is not used
+	 */
+	public Criteria getKeysetCriteria() {
+		if (m_keyset == null) {
+			return null;
+		}
+		Reject.ifFalse(m_keyset.length == m_orderConstraints.size(),
+			"The keyset needs one value per order constraint.");
+		
+		Criteria[] alternatives = new Criteria[m_keyset.length];
+		for (int i = 0; i < m_keyset.length; i++) {
+			Criteria[] conjunction = new Criteria[i + 1];
+			for (int j = 0; j < i; j++) {
+				conjunction[j] = new ComparisonCriteria(
+					m_orderConstraints.get(j).getPropertyName(), m_keyset[j], "=", "Object");
+			}
+			Order order = m_orderConstraints.get(i);
+			conjunction[i] = new ComparisonCriteria(
+				order.getPropertyName(), m_keyset[i], order.isAscending() ? ">" : "<", "Object");
+			alternatives[i] = new AndCriteria(conjunction);
+		}
+		
+		Order first = m_orderConstraints.get(0);
+		return new AndCriteria(
+			new ComparisonCriteria(first.getPropertyName(), m_keyset[0], first.isAscending() ? ">=" : "<=", "Object"),
+			new OrCriteria(alternatives));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Two query objects are equal if they query the same type with equal criterias,
+	 * paging and ordering constraints (e.g. to use them as cache keys).
+	 */
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = ObjectUtils.nullSafeHashCode(m_beanClass);
+		result = prime * result + m_criterias.hashCode();
+		result = prime * result + m_firstResult;
+		result = prime * result + m_maxResults;
+		result = prime * result + m_orderConstraints.hashCode();
+		result = prime * result + Arrays.hashCode(m_keyset);
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		QueryObject other = (QueryObject) obj;
+		return ObjectUtils.nullSafeEquals(m_beanClass, other.m_beanClass)
+			&& m_criterias.equals(other.m_criterias)
+			&& m_firstResult == other.m_firstResult
+			&& m_maxResults == other.m_maxResults
+			&& m_orderConstraints.equals(other.m_orderConstraints)
+			&& Arrays.equals(m_keyset, other.m_keyset);
+	}
 }
@@ -16,6 +16,8 @@
  */
 package ch.elca.el4j.services.search.criterias;
 
+import org.springframework.util.ObjectUtils;
+
 import ch.elca.el4j.util.codingsupport.Reject;
 
 
@@ -124,4 +126,34 @@ public abstract class AbstractCriteria implements Criteria {
 	public final Float getFloatValue() {
 		return (Float) getValue();
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = getClass().hashCode();
+		result = prime * result + ObjectUtils.nullSafeHashCode(getType());
+		result = prime * result + ObjectUtils.nullSafeHashCode(m_field);
+		result = prime * result + ObjectUtils.nullSafeHashCode(m_value);
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		AbstractCriteria other = (AbstractCriteria) obj;
+		return ObjectUtils.nullSafeEquals(getType(), other.getType())
+			&& ObjectUtils.nullSafeEquals(m_field, other.m_field)
+			&& ObjectUtils.nullSafeEquals(m_value, other.m_value);
+	}
 }
@@ -66,4 +66,26 @@ public class AndCriteria implements Criteria {
 	public List<Criteria> getCriterias() {
 		return m_criterias;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * getClass().hashCode() + m_criterias.hashCode();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		return m_criterias.equals(((AndCriteria) obj).m_criterias);
+	}
 }
@@ -16,6 +16,7 @@
  */
 package ch.elca.el4j.services.search.criterias;
 
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import ch.elca.el4j.util.codingsupport.Reject;
@@ -195,4 +196,20 @@ public class ComparisonCriteria extends AbstractCriteria {
 		return " ( "+getField()+" "+getOperator()+" "+getValue()+ " ) ";
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + ObjectUtils.nullSafeHashCode(m_operator);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj)
+			&& ObjectUtils.nullSafeEquals(m_operator, ((ComparisonCriteria) obj).m_operator);
+	}
 }
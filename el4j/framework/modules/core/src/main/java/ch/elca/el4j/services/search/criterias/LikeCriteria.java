@@ -16,6 +16,8 @@
  */
 package ch.elca.el4j.services.search.criterias;
 
+import org.springframework.util.ObjectUtils;
+
 /**
  * Criteria for the like pattern.
  *
@@ -87,4 +89,20 @@ public class LikeCriteria extends AbstractCriteria {
 		return " ( "+getField()+" LIKE "+getValue()+ " ) ";
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + ObjectUtils.nullSafeHashCode(m_caseSensitive);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj)
+			&& ObjectUtils.nullSafeEquals(m_caseSensitive, ((LikeCriteria) obj).m_caseSensitive);
+	}
 }
@@ -16,6 +16,8 @@
  */
 package ch.elca.el4j.services.search.criterias;
 
+import org.springframework.util.ObjectUtils;
+
 /**
  * A Criteria that negates the Criteria it wraps.
  *
@@ -49,4 +51,25 @@ public class NotCriteria implements Criteria {
 		return m_criteria;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * getClass().hashCode() + ObjectUtils.nullSafeHashCode(m_criteria);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		return ObjectUtils.nullSafeEquals(m_criteria, ((NotCriteria) obj).m_criteria);
+	}
 }
@@ -18,6 +18,8 @@ package ch.elca.el4j.services.search.criterias;
 
 import java.io.Serializable;
 
+import org.springframework.util.ObjectUtils;
+
 /**
  * Represents an order imposed upon a {@link QueryObject} result set.
  *   Simplification of Order class of hibernate
@@ -71,5 +73,28 @@ public class Order implements Serializable {
 	public String getPropertyName() {
 		return propertyName;
 	}
-
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * ObjectUtils.nullSafeHashCode(propertyName) + (ascending ? 1231 : 1237);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		Order other = (Order) obj;
+		return ascending == other.ascending
+			&& ObjectUtils.nullSafeEquals(propertyName, other.propertyName);
+	}
 }
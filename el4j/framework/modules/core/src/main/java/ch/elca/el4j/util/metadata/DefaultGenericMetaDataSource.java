@@ -22,9 +22,9 @@ import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.aop.support.AopUtils;
 import org.springframework.core.BridgeMethodResolver;
@@ -35,6 +35,11 @@ import ch.elca.el4j.util.codingsupport.CollectionUtils;
 /**
  * The default implementation of the GenericAttributeSource interface.
  *
+ * <p>The metadata are cached by method and target class. A cache hit neither
+ * allocates nor locks, as the metadata are looked up on every invocation of
+ * an advised method. The cache is filled while the advised beans are proxied
+ * (see {@link GenericMetaDataAdvisor#matches(Method, Class)}).
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Raphael Boog (RBO)
@@ -50,8 +55,8 @@ public class DefaultGenericMetaDataSource implements GenericMetaDataSource {
 	/**
 	 * Cache of Attributes, keyed by Method and target class.
 	 */
-	protected final Map<String, Collection> m_cache
-		= Collections.synchronizedMap(new HashMap<String, Collection>());
+	protected final ConcurrentMap<Method, ConcurrentMap<Class, Collection>> m_cache
+		= new ConcurrentHashMap<Method, ConcurrentMap<Class, Collection>>();
 
 	/**
 	 * Used to delegate metadata requests.
@@ -64,33 +69,24 @@ public class DefaultGenericMetaDataSource implements GenericMetaDataSource {
 	private List<Class> m_interceptingMetaData;
 
 	/**
-	 * Calculates the cache key of a certain method in a certain class.
+	 * Calculates the class under which the metadata of a certain class are
+	 * computed. All JDK proxy classes share their metadata, as well as all
+	 * CGLIB proxy classes.
 	 *
-	 * @param method
-	 *            method for the current invocation.
 	 * @param targetClass
 	 *            targetClass for this invocation. May be null.
-	 * @return Returns the cache key string.
+	 * @return Returns the class to compute the metadata for.
 	 */
-	protected String getCacheKey(Method method, Class targetClass) {
-		// Class may be null, method can't
-		// Must not produce same key for overloaded methods
-		// Must produce same key for different instances of the same method
-		StringBuffer key = new StringBuffer();
-		if (targetClass != null) {
-			if (Proxy.isProxyClass(targetClass)) {
-				key.append("JdkProxy");
-			} else if (AopUtils.isCglibProxyClass(targetClass)) {
-				key.append("CglibProxy");
-			} else {
-				key.append(targetClass);
-			}
+	protected Class getCacheTargetClass(Class targetClass) {
+		if (targetClass == null) {
+			return UnknownTargetClass.class;
+		} else if (Proxy.isProxyClass(targetClass)) {
+			return JdkProxyClass.class;
+		} else if (AopUtils.isCglibProxyClass(targetClass)) {
+			return CglibProxyClass.class;
 		} else {
-			key.append("unknown");
+			return targetClass;
 		}
-		key.append(';');
-		key.append(method);
-		return key.toString();
 	}
 
 	/**
@@ -98,21 +94,39 @@ public class DefaultGenericMetaDataSource implements GenericMetaDataSource {
 	 */
 	public Collection getMetaData(Method method, Class targetClass) {
 		// First, see if we have a cached value
-		String cacheKey = getCacheKey(method, targetClass);
-		Collection cachedMetaData = m_cache.get(cacheKey);
-
-		if (cachedMetaData != null) {
-			// Value will either be canonical value indicating there is no
-			// metadata or an actual metadata
-			return cachedMetaData == NULL_METADATA ? null : cachedMetaData;
-		} else {
-			// We need to work it out
-			Collection metaData = computeMetaData(method, targetClass);
+		Class cacheClass = targetClass == null
+			? UnknownTargetClass.class : targetClass;
+		ConcurrentMap<Class, Collection> cacheOfMethod = m_cache.get(method);
+		if (cacheOfMethod == null) {
+			cacheOfMethod = new ConcurrentHashMap<Class, Collection>(4);
+			ConcurrentMap<Class, Collection> existing
+				= m_cache.putIfAbsent(method, cacheOfMethod);
+			if (existing != null) {
+				cacheOfMethod = existing;
+			}
+		}
+		Collection cachedMetaData = cacheOfMethod.get(cacheClass);
+		
+		if (cachedMetaData == null) {
+			// Proxy classes share the metadata of the first one
+			Class sharedClass = getCacheTargetClass(targetClass);
+			if (sharedClass != cacheClass) {
+				cachedMetaData = cacheOfMethod.get(sharedClass);
+			}
+			if (cachedMetaData == null) {
+				// We need to work it out
+				Collection metaData = computeMetaData(method, targetClass);
+				cachedMetaData = metaData == null ? NULL_METADATA : metaData;
+				if (sharedClass != cacheClass) {
+					cacheOfMethod.putIfAbsent(sharedClass, cachedMetaData);
+				}
+			}
 			// Put it in the cache
-			m_cache.put(cacheKey, metaData == null ? NULL_METADATA : metaData);
-			// Return the metadata collection
-			return metaData;
+			cacheOfMethod.put(cacheClass, cachedMetaData);
 		}
+		// Value will either be canonical value indicating there is no
+		// metadata or an actual metadata
+		return cachedMetaData == NULL_METADATA ? null : cachedMetaData;
 	}
 
 	/**
@@ -252,4 +266,19 @@ public class DefaultGenericMetaDataSource implements GenericMetaDataSource {
 	public void setInterceptingMetaData(List<Class> interceptedAttributes) {
 		m_interceptingMetaData = interceptedAttributes;
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Stands for an unknown target class in the cache.
+	 */
+	private static final class UnknownTargetClass { }
+	
+	/**
+	 * Stands for all JDK proxy classes in the cache.
+	 */
+	private static final class JdkProxyClass { }
+	
+	/**
+	 * Stands for all CGLIB proxy classes in the cache.
+	 */
+	private static final class CglibProxyClass { }
+}
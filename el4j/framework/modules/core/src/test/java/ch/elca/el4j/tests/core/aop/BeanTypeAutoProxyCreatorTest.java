@@ -18,10 +18,13 @@
 package ch.elca.el4j.tests.core.aop;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 
+import ch.elca.el4j.core.aop.LazyProxy;
 import ch.elca.el4j.core.context.ModuleApplicationContext;
 
 /**
@@ -109,4 +112,27 @@ public class BeanTypeAutoProxyCreatorTest {
 		assertEquals("Interceptor was not invoked (registered 2 interceptors).",
 				m_shortcutB.getResult(), d.doitB());
 	}
+
+	/**
+	 * Tests that the {@link ch.elca.el4j.core.aop.IntelligentBeanTypeAutoProxyCreator}
+	 * creates the proxies only on first invocation in lazy proxy mode.
+	 */
+	@Test
+	public void testLazyProxies() {
+		ApplicationContext appContext = new ModuleApplicationContext(
+				"classpath:scenarios/core/aop/lazyBeanTypeProxies.xml", false);
+		Bean beanA = (Bean) appContext.getBean("beanA");
+		Bean beanB = (Bean) appContext.getBean("beanB");
+		assertTrue(LazyProxy.isPending(beanA));
+		assertTrue(LazyProxy.isPending(beanB));
+		
+		assertEquals("Bean has not been advised.",
+				ExclusiveBeanNameAutoProxyCreatorTest.PROXIED,
+				beanA.getBeanName());
+		assertFalse(LazyProxy.isPending(beanA));
+		assertTrue(LazyProxy.isPending(beanB));
+		assertTrue("Stub is not equal to itself.", beanA.equals(beanA));
+		assertFalse("Stubs of different beans are equal.",
+				beanA.equals(beanB));
+	}
 }
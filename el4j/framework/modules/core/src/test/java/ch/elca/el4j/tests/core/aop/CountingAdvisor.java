@@ -0,0 +1,86 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.core.aop;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.support.StaticMethodMatcherPointcutAdvisor;
+
+/**
+ * Advisor for the methods with a given name that counts how often it has
+ * been matched against each target class.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class CountingAdvisor extends StaticMethodMatcherPointcutAdvisor
+	implements ClassFilter {
+	
+	/** Serial version UID. */
+	private static final long serialVersionUID = 1L;
+	
+	/** Method name of methods to advise. */
+	private String m_methodName;
+	
+	/** How often the advisor has been matched, by target class. */
+	private final Map<Class<?>, Integer> m_classMatches
+		= new HashMap<Class<?>, Integer>();
+	
+	/**
+	 * @param methodName
+	 *      The name of methods to advise.
+	 */
+	public void setMethodName(String methodName) {
+		m_methodName = methodName;
+	}
+	
+	/**
+	 * @param targetClass
+	 *      The target class.
+	 * @return Returns how often the advisor has been matched against the
+	 *      given target class.
+	 */
+	public synchronized int getClassMatches(Class<?> targetClass) {
+		Integer matches = m_classMatches.get(targetClass);
+		return matches == null ? 0 : matches;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ClassFilter getClassFilter() {
+		return this;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized boolean matches(Class<?> targetClass) {
+		m_classMatches.put(targetClass, getClassMatches(targetClass) + 1);
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean matches(Method method, Class<?> targetClass) {
+		return method.getName().equals(m_methodName);
+	}
+}
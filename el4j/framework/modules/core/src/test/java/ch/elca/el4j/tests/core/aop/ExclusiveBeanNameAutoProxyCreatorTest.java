@@ -18,10 +18,13 @@
 package ch.elca.el4j.tests.core.aop;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 
+import ch.elca.el4j.core.aop.LazyProxy;
 import ch.elca.el4j.core.context.ModuleApplicationContext;
 
 /**
@@ -86,6 +89,10 @@ public class ExclusiveBeanNameAutoProxyCreatorTest {
 		= "classpath:scenarios/core/aop/"
 		+ "includeAllStartingWithBeanButSuffixA.xml";
 	
+	/** Configuration that creates the proxies on first invocation. */
+	private static final String LAZY_PROXIES_CONFIG
+		= "classpath:scenarios/core/aop/lazyProxies.xml";
+	
 	/**
 	 * Tests the configuration that doesn't exclude any beans.
 	 */
@@ -175,6 +182,23 @@ public class ExclusiveBeanNameAutoProxyCreatorTest {
 		assertNotAdvised(appCtx, FOOBAR);
 	}
 
+	/**
+	 * Tests that the proxies are only created on first invocation in lazy
+	 * proxy mode.
+	 */
+	@Test
+	public void testLazyProxies() {
+		ApplicationContext appCtx = createAppContext(LAZY_PROXIES_CONFIG);
+		
+		for (int i = 0; i < BEAN_NAMES.length; i++) {
+			assertTrue(LazyProxy.isPending(appCtx.getBean(BEAN_NAMES[i])));
+		}
+		assertAdvised(appCtx, BEAN_A);
+		assertFalse(LazyProxy.isPending(appCtx.getBean(BEAN_A)));
+		assertTrue(LazyProxy.isPending(appCtx.getBean(BEAN_B)));
+		assertAdvised(appCtx, BEAN_B);
+	}
+
 	/**
 	 * Asserts that the bean with the given name is advised in the given
 	 * application context.
@@ -0,0 +1,119 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.core.aop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import ch.elca.el4j.core.aop.LazyProxy;
+import ch.elca.el4j.core.context.ModuleApplicationContext;
+
+/**
+ * This class tests the lazy proxies and the cached advisor matching of the
+ * {@link ch.elca.el4j.core.aop.IntelligentAdvisorAutoProxyCreator}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class IntelligentAdvisorAutoProxyCreatorTest {
+	
+	/** Configuration with lazy proxies and cached advisor matching. */
+	private static final String LAZY_CONFIG
+		= "classpath:scenarios/core/aop/lazyAdvisorProxies.xml";
+	
+	/** Configuration with neither lazy proxies nor cached advisor matching. */
+	private static final String EAGER_CONFIG
+		= "classpath:scenarios/core/aop/eagerAdvisorProxies.xml";
+	
+	/** The advised beans, all of the same class. */
+	private static final String[] BEAN_NAMES = {
+		"beanA", "beanB", "foo", "bar", "foobar"
+	};
+	
+	/** The name of the advisor. */
+	private static final String ADVISOR = "advisorAutoProxy.shortcutAdvisor";
+	
+	/**
+	 * Tests that the proxies are only created on first invocation in lazy
+	 * proxy mode.
+	 */
+	@Test
+	public void testLazyProxies() {
+		ApplicationContext appCtx = new ModuleApplicationContext(
+			LAZY_CONFIG, false);
+		for (String beanName : BEAN_NAMES) {
+			assertTrue(LazyProxy.isPending(appCtx.getBean(beanName)));
+		}
+		
+		Bean bean = (Bean) appCtx.getBean(BEAN_NAMES[0]);
+		assertEquals("Bean has not been advised.",
+			ExclusiveBeanNameAutoProxyCreatorTest.PROXIED, bean.getBeanName());
+		assertFalse(LazyProxy.isPending(bean));
+		assertTrue(LazyProxy.isPending(appCtx.getBean(BEAN_NAMES[1])));
+	}
+	
+	/**
+	 * Tests that the proxies are created eagerly by default.
+	 */
+	@Test
+	public void testEagerProxies() {
+		ApplicationContext appCtx = new ModuleApplicationContext(
+			EAGER_CONFIG, false);
+		for (String beanName : BEAN_NAMES) {
+			Bean bean = (Bean) appCtx.getBean(beanName);
+			assertFalse(LazyProxy.isPending(bean));
+			assertEquals("Bean '" + beanName + "' has not been advised.",
+				ExclusiveBeanNameAutoProxyCreatorTest.PROXIED,
+				bean.getBeanName());
+		}
+	}
+	
+	/**
+	 * Tests that the advisors are matched only once per bean class if the
+	 * advisor matching is cached, and the cached match is applied to all beans
+	 * of the class.
+	 */
+	@Test
+	public void testCacheAdvisorMatching() {
+		ApplicationContext appCtx = new ModuleApplicationContext(
+			LAZY_CONFIG, false);
+		CountingAdvisor advisor = (CountingAdvisor) appCtx.getBean(ADVISOR);
+		assertEquals("Advisor not matched once.",
+			1, advisor.getClassMatches(BeanImpl.class));
+		for (String beanName : BEAN_NAMES) {
+			assertEquals("Bean '" + beanName + "' has not been advised.",
+				ExclusiveBeanNameAutoProxyCreatorTest.PROXIED,
+				((Bean) appCtx.getBean(beanName)).getBeanName());
+		}
+	}
+	
+	/**
+	 * Tests that the advisors are matched for each bean if the advisor
+	 * matching is not cached.
+	 */
+	@Test
+	public void testUncachedAdvisorMatching() {
+		ApplicationContext appCtx = new ModuleApplicationContext(
+			EAGER_CONFIG, false);
+		CountingAdvisor advisor = (CountingAdvisor) appCtx.getBean(ADVISOR);
+		assertEquals("Advisor not matched per bean.",
+			BEAN_NAMES.length, advisor.getClassMatches(BeanImpl.class));
+	}
+}
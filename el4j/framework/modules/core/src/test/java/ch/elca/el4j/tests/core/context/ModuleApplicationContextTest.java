@@ -17,6 +17,7 @@
 
 package ch.elca.el4j.tests.core.context;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import org.slf4j.Logger;
@@ -310,6 +311,31 @@ public class ModuleApplicationContextTest {
 		// Checkstyle: EmptyBlock on
 	}
 	
+	/**
+	 * This test parses the configuration files in parallel and checks that
+	 * the beans are loaded, that overriding is still detected and that the
+	 * bean creations are recorded.
+	 */
+	@Test
+	public void testParallelParsing() {
+		ModuleApplicationContext tac = new ModuleApplicationContext(
+			new String[] {m_fileName1, m_fileName2, m_fileName3}, new String[0],
+			false, null, true, false, true, null, 2);
+		tac.getBean("Bean1");
+		tac.getBean("Bean4");
+		assertEquals(4, tac.getBeanStartupTimeline().getEntries().size());
+		
+		// Checkstyle: EmptyBlock off
+		try {
+			new ModuleApplicationContext(
+				new String[] {m_fileName1, m_fileName1}, new String[0],
+				false, null, true, false, true, null, 2);
+			fail("BeanDefinitionStoreException should have been thrown.");
+		} catch (BeanDefinitionStoreException e) {
+		}
+		// Checkstyle: EmptyBlock on
+	}
+	
 	/**
 	 * This test has to be verified by the user. Between the two warn logger
 	 * outputs, no other warn logger should appear. Especially not the one
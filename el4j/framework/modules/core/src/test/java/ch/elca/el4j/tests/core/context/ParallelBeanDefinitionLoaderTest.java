@@ -0,0 +1,169 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.core.context;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.aop.config.AopConfigUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+
+import ch.elca.el4j.core.context.ModuleApplicationContext;
+import ch.elca.el4j.core.context.ParallelBeanDefinitionLoader;
+
+/**
+ * This class tests that the {@link ParallelBeanDefinitionLoader} registers
+ * the same bean definitions as the sequential loading, also for resources
+ * using namespace handlers.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ParallelBeanDefinitionLoaderTest {
+	
+	/** The name of an anonymous bean's class. */
+	private static final String FOO = Foo.class.getName();
+	
+	/**
+	 * The config locations. Both declare an auto proxy creator, the first
+	 * with class proxying, the second one with a lower priority.
+	 */
+	private String[] m_configLocations = {
+		"classpath:scenarios/core/parallelparsing/autoproxy.xml",
+		"classpath:scenarios/core/parallelparsing/config.xml",
+		"classpath:scenarios/core/parallelparsing/anonymous.xml"};
+	
+	/** The context to load the bean definitions for. */
+	private ModuleApplicationContext m_context = new ModuleApplicationContext(
+		"classpath:scenarios/core/context/beans1.xml", false);
+	
+	/**
+	 * Checks that the auto proxy creator is escalated and keeps class
+	 * proxying, as with sequential loading.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testAutoProxyCreator() throws Exception {
+		DefaultListableBeanFactory sequential = loadSequentially(true);
+		DefaultListableBeanFactory parallel = loadInParallel(true);
+		assertSameBeanDefinitions(sequential, parallel);
+		
+		BeanDefinition creator = parallel.getBeanDefinition(
+			AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME);
+		assertEquals("Auto proxy creator not escalated.",
+			"org.springframework.aop.aspectj.annotation."
+				+ "AnnotationAwareAspectJAutoProxyCreator",
+			creator.getBeanClassName());
+		assertEquals("Class proxying lost.", Boolean.TRUE,
+			creator.getPropertyValues().getPropertyValue("proxyTargetClass")
+				.getValue());
+	}
+	
+	/**
+	 * Checks that the resources can be loaded in parallel if bean definition
+	 * overriding is disabled.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testOverridingDisabled() throws Exception {
+		assertSameBeanDefinitions(loadSequentially(false),
+			loadInParallel(false));
+	}
+	
+	/**
+	 * Checks that the generated names of anonymous beans of several
+	 * resources are unique and that the class name alias is given to the
+	 * first one.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testGeneratedNames() throws Exception {
+		DefaultListableBeanFactory parallel = loadInParallel(true);
+		assertTrue(parallel.containsBeanDefinition(FOO + "#0"));
+		assertTrue(parallel.containsBeanDefinition(FOO + "#1"));
+		assertArrayEquals(new String[] {FOO},
+			parallel.getAliases(FOO + "#0"));
+		assertEquals(0, parallel.getAliases(FOO + "#1").length);
+	}
+	
+	/**
+	 * @param allowOverriding
+	 *      Whether bean definition overriding is allowed.
+	 *
+	 * @return Returns the bean definitions loaded one resource after another.
+	 */
+	private DefaultListableBeanFactory loadSequentially(boolean allowOverriding) {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.setAllowBeanDefinitionOverriding(allowOverriding);
+		XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+		reader.setResourceLoader(m_context);
+		reader.loadBeanDefinitions(m_configLocations);
+		return beanFactory;
+	}
+	
+	/**
+	 * @param allowOverriding
+	 *      Whether bean definition overriding is allowed.
+	 *
+	 * @return Returns the bean definitions loaded in parallel.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	private DefaultListableBeanFactory loadInParallel(boolean allowOverriding)
+		throws Exception {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.setAllowBeanDefinitionOverriding(allowOverriding);
+		new ParallelBeanDefinitionLoader(m_context, 2)
+			.loadBeanDefinitions(beanFactory, m_configLocations);
+		return beanFactory;
+	}
+	
+	/**
+	 * Checks that both bean factories hold the same bean definitions.
+	 *
+	 * @param expected
+	 *      The expected bean definitions.
+	 *
+	 * @param actual
+	 *      The actual bean definitions.
+	 */
+	private void assertSameBeanDefinitions(
+		DefaultListableBeanFactory expected, DefaultListableBeanFactory actual) {
+		String[] names = expected.getBeanDefinitionNames();
+		Arrays.sort(names);
+		String[] actualNames = actual.getBeanDefinitionNames();
+		Arrays.sort(actualNames);
+		assertArrayEquals("Different bean names.", names, actualNames);
+		for (String name : names) {
+			assertEquals("Different class of " + name,
+				expected.getBeanDefinition(name).getBeanClassName(),
+				actual.getBeanDefinition(name).getBeanClassName());
+		}
+	}
+}
@@ -19,6 +19,8 @@ package ch.elca.el4j.tests.core.contextpassing;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -175,4 +177,47 @@ public class ContextPassingTest {
 		assertFalse("Sent and received data of passer B is the same!",
 				sentDataB == receivedDataB);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * This test checks that <code>null</code> contexts are not sent and that
+	 * the receiving side only resets contexts that are not <code>null</code>.
+	 */
+	@Test
+	public void testNullContextsAreOmitted() {
+		ImplicitContextPasserC passerClientC = new ImplicitContextPasserC();
+		DefaultImplicitContextPassingRegistry registryClient
+			= new DefaultImplicitContextPassingRegistry();
+		passerClientC.setImplicitContextPassingRegistry(registryClient);
+
+		ImplicitContextPasserC passerServerC = new ImplicitContextPasserC();
+		DefaultImplicitContextPassingRegistry registryServer
+			= new DefaultImplicitContextPassingRegistry();
+		passerServerC.setImplicitContextPassingRegistry(registryServer);
+
+		Map contextClient = registryClient.getAssembledImplicitContext();
+		assertTrue("Null context has been sent.", contextClient.isEmpty());
+
+		registryServer.pushAssembledImplicitContext(contextClient);
+		assertEquals("Null context has been pushed needlessly.",
+				0, passerServerC.getPushCount());
+
+		passerClientC.setContext("context");
+		registryServer.pushAssembledImplicitContext(
+			registryClient.getAssembledImplicitContext());
+		assertEquals("context", passerServerC.getContext());
+
+		// the stale context of the previous invocation must be reset
+		passerClientC.setContext(null);
+		registryServer.pushAssembledImplicitContext(
+			registryClient.getAssembledImplicitContext());
+		assertNull("Context has not been reset.", passerServerC.getContext());
+		assertEquals(2, passerServerC.getPushCount());
+
+		// the reset is done once only
+		registryServer.pushAssembledImplicitContext(
+			registryClient.getAssembledImplicitContext());
+		assertEquals(2, passerServerC.getPushCount());
+		assertEquals("Context assembled on the receiving side.",
+			0, passerServerC.getGetCount());
+	}
+}
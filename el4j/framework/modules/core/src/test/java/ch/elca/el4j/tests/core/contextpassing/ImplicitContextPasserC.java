@@ -0,0 +1,88 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+
+package ch.elca.el4j.tests.core.contextpassing;
+
+import ch.elca.el4j.core.contextpassing.AbstractImplicitContextPasser;
+
+/**
+ * This is the test implicit context passer C, whose context may be
+ * <code>null</code>. Pushed contexts (including <code>null</code>) replace the
+ * current one, like a thread local held context would.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ImplicitContextPasserC extends AbstractImplicitContextPasser {
+	/**
+	 * The current context.
+	 */
+	private Object m_context = null;
+
+	/**
+	 * Number of pushed contexts.
+	 */
+	private int m_pushCount = 0;
+
+	/**
+	 * Number of assembled contexts.
+	 */
+	private int m_getCount = 0;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getImplicitlyPassedContext() {
+		m_getCount++;
+		return m_context;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void pushImplicitlyPassedContext(Object context) {
+		m_context = context;
+		m_pushCount++;
+	}
+
+	/**
+	 * @param context The current context to set.
+	 */
+	public void setContext(Object context) {
+		m_context = context;
+	}
+
+	/**
+	 * @return Returns the current context, without counting it as assembled.
+	 */
+	public Object getContext() {
+		return m_context;
+	}
+
+	/**
+	 * @return Returns the number of pushed contexts.
+	 */
+	public int getPushCount() {
+		return m_pushCount;
+	}
+
+	/**
+	 * @return Returns the number of assembled contexts.
+	 */
+	public int getGetCount() {
+		return m_getCount;
+	}
+}
@@ -0,0 +1,385 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.core.io.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.core.io.support.ManifestOrderedConfigLocationProvider;
+import ch.elca.el4j.core.io.support.Module;
+import ch.elca.el4j.core.io.support.ModuleIndex;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This class tests the {@link ModuleIndex} and its use by the
+ * {@link ManifestOrderedConfigLocationProvider}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ModuleIndexTest {
+	
+	/** The directory holding the modules and the index. */
+	private File m_dir;
+	
+	/** The directory holding the index, a classpath entry. */
+	private File m_indexDir;
+	
+	/** The context class loader of the test. */
+	private ClassLoader m_contextClassLoader;
+	
+	/**
+	 * Creates the module jars: <code>b</code> depends on <code>a</code>.
+	 *
+	 * @throws IOException
+	 *      Whenever something goes wrong.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		m_contextClassLoader = Thread.currentThread().getContextClassLoader();
+		m_dir = File.createTempFile("moduleIndexTest", "");
+		m_dir.delete();
+		m_indexDir = new File(m_dir, "index");
+		new File(m_indexDir, "META-INF").mkdirs();
+		
+		createModuleJar("a.jar", "a", "a/a-config.xml", "");
+		createModuleJar("b.jar", "b", "b/b-config.xml", "a");
+	}
+	
+	/**
+	 * Restores the context class loader and deletes the files.
+	 */
+	@After
+	public void tearDown() {
+		Thread.currentThread().setContextClassLoader(m_contextClassLoader);
+		System.clearProperty(ModuleIndex.DISABLED_PROPERTY);
+		delete(m_dir);
+	}
+	
+	/**
+	 * Checks that the modules loaded from an index equal the scanned ones.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testLoad() throws Exception {
+		useClasspath("b.jar", "a.jar");
+		ScanCountingProvider scanner = new ScanCountingProvider();
+		Module[] scanned = scanner.getModules();
+		writeIndex(scanner);
+		
+		Module[] indexed = ModuleIndex.load(scanner.getManifests(),
+			Thread.currentThread().getContextClassLoader());
+		assertEquals("Wrong number of modules.", 2, indexed.length);
+		for (int i = 0; i < scanned.length; i++) {
+			assertEquals(scanned[i].getName(), indexed[i].getName());
+			assertArrayEquals(scanned[i].getConfigFiles(),
+				indexed[i].getConfigFiles());
+			assertArrayEquals(scanned[i].getDependencies(),
+				indexed[i].getDependencies());
+		}
+		assertEquals("Modules not in dependency order.",
+			"a", indexed[0].getName());
+	}
+	
+	/**
+	 * Checks that the provider uses a valid index instead of scanning.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testProviderUsesIndex() throws Exception {
+		useClasspath("a.jar", "b.jar");
+		ScanCountingProvider scanner = new ScanCountingProvider();
+		String[] scanned = scanner.getConfigLocations();
+		assertEquals("Modules not scanned without index.", 1, scanner.m_scans);
+		writeIndex(scanner);
+		
+		ScanCountingProvider provider = new ScanCountingProvider();
+		assertArrayEquals("Wrong config locations from index.",
+			scanned, provider.getConfigLocations());
+		assertEquals("Index not used.", 0, provider.m_scans);
+		
+		System.setProperty(ModuleIndex.DISABLED_PROPERTY, "true");
+		provider = new ScanCountingProvider();
+		assertArrayEquals(scanned, provider.getConfigLocations());
+		assertEquals("Disabled index used.", 1, provider.m_scans);
+	}
+	
+	/**
+	 * Checks that an index is ignored if a jar has been rebuilt or the
+	 * classpath order has changed.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testStaleIndex() throws Exception {
+		useClasspath("a.jar", "b.jar");
+		writeIndex(new ScanCountingProvider());
+		
+		useClasspath("b.jar", "a.jar");
+		assertNull("Index used for another classpath order.",
+			ModuleIndex.load(new ScanCountingProvider().getManifests(),
+				Thread.currentThread().getContextClassLoader()));
+		
+		// rebuilt elsewhere, jars in use may be cached
+		createModuleJar("rebuilt/a.jar", "a",
+			"a/a-config.xml,a/a-other-config.xml", "");
+		useClasspath("rebuilt/a.jar", "b.jar");
+		ScanCountingProvider provider = new ScanCountingProvider();
+		provider.getConfigLocations();
+		assertEquals("Index used for a rebuilt jar.", 1, provider.m_scans);
+	}
+	
+	/**
+	 * Checks that an index is ignored if a jar has been rebuilt with another
+	 * manifest file but the same size.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testStaleIndexOfJarWithSameSize() throws Exception {
+		useClasspath("a.jar", "b.jar");
+		writeIndex(new ScanCountingProvider());
+		
+		createModuleJar("rebuilt/a.jar", "a", "a/z-config.xml", "");
+		assertEquals("Rebuilt jar differs in size, test is meaningless.",
+			new File(m_dir, "a.jar").length(),
+			new File(m_dir, "rebuilt/a.jar").length());
+		useClasspath("rebuilt/a.jar", "b.jar");
+		ScanCountingProvider provider = new ScanCountingProvider();
+		provider.getConfigLocations();
+		assertEquals("Index used for a rebuilt jar of the same size.",
+			1, provider.m_scans);
+	}
+	
+	/**
+	 * Checks that modules in directories are not indexed, since their
+	 * content may change without notice.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testDirectoriesNotIndexed() throws Exception {
+		useClasspath("a.jar", "b.jar");
+		writeIndex(new ScanCountingProvider());
+		
+		File classes = new File(m_dir, "classes");
+		File metaInf = new File(classes, "META-INF");
+		metaInf.mkdirs();
+		OutputStream out = new FileOutputStream(new File(metaInf, "MANIFEST.MF"));
+		try {
+			createManifest("c", "c/c-config.xml", "b").write(out);
+		} finally {
+			out.close();
+		}
+		useClasspath("a.jar", "b.jar", "classes");
+		ScanCountingProvider provider = new ScanCountingProvider();
+		Module[] modules = provider.getModules();
+		assertEquals("Index used with a module in a directory.",
+			1, provider.m_scans);
+		assertEquals("Module in directory not found.", 3, modules.length);
+		
+		try {
+			writeIndex(provider);
+			fail("Indexed a module in a directory.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Sets a class loader with the given entries and the index directory as
+	 * context class loader.
+	 *
+	 * @param entries
+	 *      The names of the classpath entries in the test directory.
+	 *
+	 * @throws IOException
+	 *      Whenever something goes wrong.
+	 */
+	private void useClasspath(String... entries) throws IOException {
+		URL[] urls = new URL[entries.length + 1];
+		for (int i = 0; i < entries.length; i++) {
+			urls[i] = new File(m_dir, entries[i]).toURI().toURL();
+		}
+		urls[entries.length] = m_indexDir.toURI().toURL();
+		// no parent, the manifest files of the test classpath would interfere
+		Thread.currentThread().setContextClassLoader(
+			new URLClassLoader(urls, null));
+	}
+	
+	/**
+	 * Writes the index of the modules the given provider has found.
+	 *
+	 * @param provider
+	 *      The provider to take the modules from.
+	 *
+	 * @throws IOException
+	 *      Whenever something goes wrong.
+	 */
+	private void writeIndex(ScanCountingProvider provider) throws IOException {
+		Module[] modules = provider.getModules();
+		OutputStream out = new FileOutputStream(
+			new File(m_indexDir, ModuleIndex.INDEX_FILE));
+		try {
+			ModuleIndex.write(modules, provider.getManifests(), out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Creates a module jar holding its configuration files.
+	 *
+	 * @param jarName
+	 *      The path of the jar in the test directory.
+	 *
+	 * @param module
+	 *      The name of the module.
+	 *
+	 * @param files
+	 *      The comma separated configuration files.
+	 *
+	 * @param dependencies
+	 *      The comma separated module dependencies.
+	 *
+	 * @throws IOException
+	 *      Whenever something goes wrong.
+	 */
+	private void createModuleJar(String jarName, String module, String files,
+		String dependencies) throws IOException {
+		File file = new File(m_dir, jarName);
+		file.getParentFile().mkdirs();
+		JarOutputStream jar = new JarOutputStream(new FileOutputStream(file),
+			createManifest(module, files, dependencies));
+		try {
+			for (String configFile : files.split(",")) {
+				jar.putNextEntry(new JarEntry(configFile));
+				jar.write("<beans/>".getBytes("UTF-8"));
+				jar.closeEntry();
+			}
+		} finally {
+			jar.close();
+		}
+	}
+	
+	/**
+	 * @param module
+	 *      The name of the module.
+	 *
+	 * @param files
+	 *      The comma separated configuration files.
+	 *
+	 * @param dependencies
+	 *      The comma separated module dependencies.
+	 *
+	 * @return Returns the manifest of the given module.
+	 */
+	private Manifest createManifest(String module, String files,
+		String dependencies) {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		Attributes config = new Attributes();
+		config.putValue(ManifestOrderedConfigLocationProvider.CONFIG_MODULE,
+			module);
+		config.putValue(ManifestOrderedConfigLocationProvider.CONFIG_FILES,
+			files);
+		config.putValue(ManifestOrderedConfigLocationProvider.CONFIG_DEPENDENCIES,
+			dependencies.length() == 0 ? "null" : dependencies);
+		manifest.getEntries().put(
+			ManifestOrderedConfigLocationProvider.CONFIG_SECTION, config);
+		return manifest;
+	}
+	
+	/**
+	 * @param file
+	 *      The file or directory to delete recursively.
+	 */
+	private void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+	
+	/**
+	 * Counts how often the modules are scanned instead of loaded from the
+	 * index.
+	 */
+	private static class ScanCountingProvider
+		extends ManifestOrderedConfigLocationProvider {
+		
+		/** The number of scans. */
+		int m_scans;
+		
+		/**
+		 * @return Returns the sorted modules.
+		 *
+		 * @throws IOException
+		 *      Whenever something goes wrong.
+		 */
+		Module[] getModules() throws IOException {
+			return getSortedModules();
+		}
+		
+		/**
+		 * @return Returns the manifest files on the classpath.
+		 *
+		 * @throws IOException
+		 *      Whenever something goes wrong.
+		 */
+		URL[] getManifests() throws IOException {
+			return getManifestFiles();
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Module[] createModules() throws IOException {
+			m_scans++;
+			return super.createModules();
+		}
+	}
+}
+//Checkstyle: MagicNumber on
@@ -0,0 +1,259 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.i18n;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.elca.el4j.services.i18n.MessageRewriter;
+import ch.elca.el4j.services.i18n.MessageRewriter.NoDefinitionException;
+import ch.elca.el4j.services.i18n.MessageRewriter.Rule;
+import ch.elca.el4j.services.i18n.RewritingUtilities;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This class tests the rule precedence and the message cache of the
+ * {@link MessageRewriter}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class MessageRewriterTest {
+	
+	/**
+	 * Tests that the last matching line of a rule file wins, whether its
+	 * qualifiers are literals or variables.
+	 */
+	@Test
+	public void testLiteralAndVariableQualifiers() {
+		MessageRewriter rewriter = createRewriter(
+			"{planet}.name = {planet}",
+			"earth.name = home",
+			"{planet}.poetic = A piece of rock called {{planet}.name}.");
+		assertEquals("home", rewriter.resolve("earth.name"));
+		assertEquals("Mars", rewriter.resolve("Mars.name"));
+		assertEquals("A piece of rock called home.",
+			rewriter.resolve("earth.poetic"));
+		assertEquals("A piece of rock called Mars.",
+			rewriter.resolve("Mars.poetic"));
+		
+		rewriter = createRewriter(
+			"earth.name = home",
+			"{planet}.name = {planet}");
+		assertEquals("earth", rewriter.resolve("earth.name"));
+	}
+	
+	/**
+	 * Tests that a literal qualifier does not hide a later variable one that
+	 * matches the rest of the key.
+	 */
+	@Test
+	public void testBacktracking() {
+		MessageRewriter rewriter = createRewriter(
+			"{planet}.{property} = {property} of {planet}",
+			"earth.name.short = home");
+		assertEquals("name of earth", rewriter.resolve("earth.name"));
+		assertEquals("home", rewriter.resolve("earth.name.short"));
+		assertEquals("size of earth", rewriter.resolve("earth.size"));
+	}
+	
+	/**
+	 * Tests that added rules are tried at their list position: after the text
+	 * rules, in the order they were added.
+	 */
+	@Test
+	public void testOtherRules() {
+		MessageRewriter rewriter = createRewriter(
+			"Utils.capitalize.earth = Home");
+		CountingRule first = new CountingRule("first");
+		rewriter.add(new RewritingUtilities(), first,
+			new CountingRule("second"));
+		
+		assertEquals("Home", rewriter.resolve("Utils.capitalize.earth"));
+		assertEquals("Mars", rewriter.resolve("Utils.capitalize.mars"));
+		assertEquals(0, first.getRewrites());
+		assertEquals("first", rewriter.resolve("earth.name"));
+		assertEquals(1, first.getRewrites());
+	}
+	
+	/**
+	 * Tests that messages depending on added rules are not cached, so that
+	 * such rules may change after being added.
+	 */
+	@Test
+	public void testMessagesOfAddedRulesNotCached() {
+		MessageRewriter rewriter = createRewriter(
+			"{planet}.poetic = A piece of rock called {{planet}.name}.");
+		CountingRule rule = new CountingRule("home");
+		rewriter.add(rule);
+		assertEquals("home", rewriter.resolve("earth.name"));
+		assertEquals("home", rewriter.resolve("earth.name"));
+		assertEquals("Message of added rule cached.", 2, rule.getRewrites());
+		assertEquals("A piece of rock called home.",
+			rewriter.resolve("earth.poetic"));
+		assertEquals("A piece of rock called home.",
+			rewriter.resolve("earth.poetic"));
+		assertEquals("Message depending on added rule cached.",
+			4, rule.getRewrites());
+		
+		rewriter = createRewriter();
+		RewritingUtilities utilities = new RewritingUtilities();
+		rewriter.add(utilities);
+		assertEquals("Earth", rewriter.resolve("Utils.capitalize.earth"));
+		utilities.remove("capitalize");
+		try {
+			rewriter.resolve("Utils.capitalize.earth");
+			fail("Message of removed function cached.");
+		} catch (NoDefinitionException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Tests that the messages of keys looked up without arguments are cached,
+	 * up to {@link MessageRewriter#MAX_CACHED_MESSAGES}.
+	 */
+	@Test
+	public void testCacheBound() {
+		MessageRewriter rewriter = new CachingRewriter();
+		CountingRule rule = new CountingRule("message");
+		rewriter.add(rule);
+		
+		for (int i = 0; i <= MessageRewriter.MAX_CACHED_MESSAGES; i++) {
+			rewriter.resolve("key" + i);
+		}
+		int rewrites = MessageRewriter.MAX_CACHED_MESSAGES + 1;
+		assertEquals(rewrites, rule.getRewrites());
+		
+		rewriter.resolve("key0");
+		assertEquals("Message not cached.", rewrites, rule.getRewrites());
+		rewriter.resolve("key" + MessageRewriter.MAX_CACHED_MESSAGES);
+		assertEquals("Cache not bounded.", ++rewrites, rule.getRewrites());
+		rewriter.resolve("key0", new Object[] {"argument"});
+		assertEquals("Message with arguments cached.",
+			++rewrites, rule.getRewrites());
+	}
+	
+	/**
+	 * Tests that adding rules discards the cached messages, also the ones of
+	 * resolutions in flight.
+	 */
+	@Test
+	public void testCacheDiscardedOnAdd() {
+		final MessageRewriter rewriter = new CachingRewriter();
+		CountingRule rule = new CountingRule("message") {
+			@Override
+			public StringBuffer rewrite(String key, Object[] arguments,
+				StringBuffer target) {
+				if (getRewrites() == 0) {
+					// rules change while resolving
+					rewriter.add(new CountingRule("unused"));
+				}
+				return super.rewrite(key, arguments, target);
+			}
+		};
+		rewriter.add(rule);
+		
+		assertEquals("message", rewriter.resolve("key"));
+		assertEquals("message", rewriter.resolve("key"));
+		assertEquals("Stale message cached.", 2, rule.getRewrites());
+		assertEquals("message", rewriter.resolve("key"));
+		assertEquals("Message not cached.", 2, rule.getRewrites());
+		
+		rewriter.add(new CountingRule("unused"));
+		assertEquals("message", rewriter.resolve("key"));
+		assertEquals("Message not discarded.", 3, rule.getRewrites());
+	}
+	
+	/**
+	 * @param lines
+	 *      The lines of the rule file.
+	 * @return Returns a rewriter using the given rules.
+	 */
+	private MessageRewriter createRewriter(String... lines) {
+		StringBuilder rules = new StringBuilder();
+		for (String line : lines) {
+			rules.append(line).append('\n');
+		}
+		List<Reader> readers = new ArrayList<Reader>();
+		readers.add(new StringReader(rules.toString()));
+		return new MessageRewriter(readers);
+	}
+	
+	/**
+	 * Rewriter without rule files caching the messages of all rules.
+	 */
+	private static class CachingRewriter extends MessageRewriter {
+		/**
+		 * Creates a rewriter without rules.
+		 */
+		public CachingRewriter() {
+			super(new ArrayList<Reader>());
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected boolean isCacheable(Rule rule) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Rule that rewrites every key to a fixed message and counts its rewrites.
+	 */
+	private static class CountingRule implements MessageRewriter.Rule {
+		/** The message. */
+		private final String m_message;
+		
+		/** How often a key has been rewritten. */
+		private int m_rewrites = 0;
+		
+		/**
+		 * @param message
+		 *      The message.
+		 */
+		public CountingRule(String message) {
+			m_message = message;
+		}
+		
+		/**
+		 * @return Returns how often a key has been rewritten.
+		 */
+		public int getRewrites() {
+			return m_rewrites;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		public StringBuffer rewrite(String key, Object[] arguments,
+			StringBuffer target) {
+			m_rewrites++;
+			return target.append(m_message);
+		}
+	}
+}
+// Checkstyle: MagicNumber on
@@ -0,0 +1,158 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.persistence.generic.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeListener;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.Change;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityChange;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityDeleted;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityInserted;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityStateChanged;
+import ch.elca.el4j.services.persistence.generic.dao.impl.CoalescingDaoChangeNotifier;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This is the unit test for <code>CoalescingDaoChangeNotifier</code>.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class CoalescingDaoChangeNotifierTest {
+	
+	/** The notifier under test. */
+	private CoalescingDaoChangeNotifier m_notifier;
+	
+	/** The changes received by the listener. */
+	private List<Change> m_received;
+	
+	/**
+	 * Sets up a notifier that only delivers on explicit flush.
+	 */
+	@Before
+	public void setUp() {
+		m_received = new ArrayList<Change>();
+		m_notifier = new CoalescingDaoChangeNotifier();
+		m_notifier.setDelay(60 * 1000);
+		m_notifier.subscribe(new DaoChangeListener() {
+			public void changed(Change change) {
+				m_received.add(change);
+			}
+		});
+	}
+	
+	/**
+	 * Stops the notifier.
+	 */
+	@After
+	public void tearDown() {
+		m_notifier.destroy();
+	}
+	
+	/**
+	 * Tests that a burst of changes is delivered once per entity.
+	 */
+	@Test
+	public void testCoalescing() {
+		Object a = new Object();
+		Object b = new Object();
+		for (int i = 0; i < 100; i++) {
+			m_notifier.announce(stateChanged(a));
+			m_notifier.announce(stateChanged(b));
+			m_notifier.announce(DaoChangeNotifier.FUZZY_CHANGE);
+		}
+		assertTrue("Changes delivered synchronously", m_received.isEmpty());
+		
+		m_notifier.flush();
+		assertEquals("Changes not coalesced", 3, m_received.size());
+		assertSame(a, ((EntityChange) m_received.get(0)).getChangee());
+		assertSame(b, ((EntityChange) m_received.get(1)).getChangee());
+		assertSame(DaoChangeNotifier.FUZZY_CHANGE, m_received.get(2));
+	}
+	
+	/**
+	 * Tests that insertions and deletions are not lost by coalescing.
+	 */
+	@Test
+	public void testInsertionAndDeletion() {
+		Object a = new Object();
+		EntityInserted inserted = new EntityInserted();
+		inserted.setChangee(a);
+		m_notifier.announce(inserted);
+		m_notifier.announce(stateChanged(a));
+		m_notifier.flush();
+		assertEquals(1, m_received.size());
+		assertSame("Insertion lost", inserted, m_received.get(0));
+		
+		m_received.clear();
+		EntityDeleted deleted = new EntityDeleted();
+		deleted.setChangee(a);
+		m_notifier.announce(inserted);
+		m_notifier.announce(deleted);
+		m_notifier.flush();
+		assertEquals(1, m_received.size());
+		assertSame("Deletion lost", deleted, m_received.get(0));
+		
+		m_received.clear();
+		m_notifier.announce(deleted);
+		m_notifier.announce(stateChanged(a));
+		m_notifier.flush();
+		assertEquals(1, m_received.size());
+		assertSame("Deletion overridden by a later change", deleted, m_received.get(0));
+		
+		m_received.clear();
+		m_notifier.announce(deleted);
+		m_notifier.announce(inserted);
+		m_notifier.flush();
+		assertEquals(1, m_received.size());
+		assertSame("Re-insertion lost", inserted, m_received.get(0));
+	}
+	
+	/**
+	 * Tests that changes announced after destruction are delivered synchronously.
+	 */
+	@Test
+	public void testAnnounceAfterDestroy() {
+		m_notifier.destroy();
+		Change change = stateChanged(new Object());
+		m_notifier.announce(change);
+		assertEquals("Change not delivered synchronously", 1, m_received.size());
+		assertSame(change, m_received.get(0));
+	}
+	
+	/**
+	 * @param changee    the changed entity
+	 * @return a state change of the given entity
+	 */
+	private EntityStateChanged stateChanged(Object changee) {
+		EntityStateChanged change = new EntityStateChanged();
+		change.setChangee(changee);
+		return change;
+	}
+}
+//Checkstyle: MagicNumber on
@@ -0,0 +1,241 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.persistence.generic.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier;
+import ch.elca.el4j.services.persistence.generic.dao.DaoChangeNotifier.EntityStateChanged;
+import ch.elca.el4j.services.persistence.generic.dao.QueryResultCache.Loader;
+import ch.elca.el4j.services.persistence.generic.dao.impl.DefaultDaoChangeNotifier;
+import ch.elca.el4j.services.persistence.generic.dao.impl.DefaultQueryResultCache;
+import ch.elca.el4j.services.search.QueryObject;
+import ch.elca.el4j.services.search.criterias.ComparisonCriteria;
+import ch.elca.el4j.services.search.criterias.LikeCriteria;
+import ch.elca.el4j.services.search.criterias.Order;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This is the unit test for <code>DefaultQueryResultCache</code>.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class DefaultQueryResultCacheTest {
+	
+	/** The cache under test. */
+	private DefaultQueryResultCache m_cache;
+	
+	/** The number of loads performed. */
+	private int m_loads;
+	
+	/**
+	 * Sets up an empty cache.
+	 */
+	@Before
+	public void setUp() {
+		m_cache = new DefaultQueryResultCache();
+		m_loads = 0;
+	}
+	
+	/**
+	 * Tests that equal query objects share one cached result.
+	 */
+	@Test
+	public void testEqualQueriesHitCache() {
+		assertEquals(Integer.valueOf(1), m_cache.get(String.class, createQuery("a"), new CountingLoader()));
+		assertEquals(Integer.valueOf(1), m_cache.get(String.class, createQuery("a"), new CountingLoader()));
+		assertEquals(Integer.valueOf(2), m_cache.get(String.class, createQuery("b"), new CountingLoader()));
+		assertEquals(2, m_loads);
+		assertEquals(1, m_cache.getHitCount());
+		assertEquals(2, m_cache.getMissCount());
+	}
+	
+	/**
+	 * Tests that paging is part of the query identity.
+	 */
+	@Test
+	public void testPagingIsPartOfKey() {
+		QueryObject first = createQuery("a");
+		QueryObject second = createQuery("a");
+		second.setFirstResult(10);
+		assertFalse(first.equals(second));
+		
+		m_cache.get(String.class, first, new CountingLoader());
+		m_cache.get(String.class, second, new CountingLoader());
+		assertEquals(2, m_loads);
+	}
+	
+	/**
+	 * Tests the least recently used eviction.
+	 */
+	@Test
+	public void testSizeBound() {
+		m_cache.setMaxSize(2);
+		m_cache.get(String.class, "a", new CountingLoader());
+		m_cache.get(String.class, "b", new CountingLoader());
+		m_cache.get(String.class, "a", new CountingLoader());
+		m_cache.get(String.class, "c", new CountingLoader());
+		assertEquals(2, m_cache.size());
+		
+		// "b" was the least recently used
+		m_cache.get(String.class, "a", new CountingLoader());
+		assertEquals(3, m_loads);
+		m_cache.get(String.class, "b", new CountingLoader());
+		assertEquals(4, m_loads);
+	}
+	
+	/**
+	 * Tests that expired results are reloaded.
+	 */
+	@Test
+	public void testTimeToLive() throws InterruptedException {
+		m_cache.setTimeToLive(10);
+		m_cache.get(String.class, "a", new CountingLoader());
+		Thread.sleep(50);
+		m_cache.get(String.class, "a", new CountingLoader());
+		assertEquals(2, m_loads);
+	}
+	
+	/**
+	 * Tests that entity changes only invalidate the results of related types.
+	 */
+	@Test
+	public void testInvalidationByChange() {
+		DefaultDaoChangeNotifier notifier = new DefaultDaoChangeNotifier();
+		m_cache.setChangeNotifier(notifier);
+		m_cache.get(String.class, "strings", new CountingLoader());
+		m_cache.get(Integer.class, "integers", new CountingLoader());
+		
+		EntityStateChanged change = new EntityStateChanged();
+		change.setChangee("changed");
+		notifier.announce(change);
+		assertEquals(1, m_cache.size());
+		
+		notifier.announce(DaoChangeNotifier.FUZZY_CHANGE);
+		assertEquals(0, m_cache.size());
+	}
+	
+	/**
+	 * Tests that a result loaded during an invalidation is not stored.
+	 */
+	@Test
+	public void testNoStaleResultAfterConcurrentInvalidation() {
+		m_cache.get(String.class, "a", new Loader<Integer>() {
+			@Override
+			public Integer load() {
+				m_cache.invalidate(String.class);
+				return 0;
+			}
+		});
+		assertEquals(0, m_cache.size());
+	}
+	
+	/**
+	 * Tests that an invalidation within a transaction takes effect when the transaction
+	 * has completed, and that the transaction does not use or share results of the
+	 * types it has changed in the meantime.
+	 */
+	@Test
+	public void testInvalidationDeferredToTransactionCompletion() throws InterruptedException {
+		m_cache.get(String.class, "strings", new CountingLoader());
+		m_cache.get(Integer.class, "integers", new CountingLoader());
+		
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			m_cache.invalidate(String.class);
+			
+			// other transactions still see the committed state
+			final Object[] seenByOther = new Object[1];
+			Thread other = new Thread() {
+				@Override
+				public void run() {
+					seenByOther[0] = m_cache.get(String.class, "strings", new CountingLoader());
+				}
+			};
+			other.start();
+			other.join();
+			assertEquals(Integer.valueOf(1), seenByOther[0]);
+			
+			// this transaction sees its own changes, and does not cache them
+			assertEquals(Integer.valueOf(3), m_cache.get(String.class, "strings", new CountingLoader()));
+			assertEquals(Integer.valueOf(4), m_cache.get(String.class, "strings", new CountingLoader()));
+			assertEquals(Integer.valueOf(2), m_cache.get(Integer.class, "integers", new CountingLoader()));
+			assertEquals(2, m_cache.size());
+			
+			for (TransactionSynchronization synchronization
+				: TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertFalse(TransactionSynchronizationManager.hasResource(m_cache));
+		assertEquals(1, m_cache.size());
+		assertEquals(Integer.valueOf(5), m_cache.get(String.class, "strings", new CountingLoader()));
+		assertEquals(Integer.valueOf(5), m_cache.get(String.class, "strings", new CountingLoader()));
+	}
+	
+	/**
+	 * Tests that a query modified after being cached does not corrupt the cache.
+	 */
+	@Test
+	public void testKeyIsCopied() {
+		final QueryObject query = createQuery("a");
+		Loader<Integer> loader = new CountingLoader() {
+			@Override
+			public Object copyKey(Object key) {
+				return Arrays.asList(createQuery("a"));
+			}
+		};
+		m_cache.get(String.class, Arrays.asList(query), loader);
+		query.addCriteria(LikeCriteria.caseSensitive("name", "x%"));
+		m_cache.get(String.class, Arrays.asList(createQuery("a")), new CountingLoader());
+		assertEquals(1, m_loads);
+	}
+	
+	/**
+	 * @param value    the value to compare the name with
+	 * @return a query object
+	 */
+	private QueryObject createQuery(String value) {
+		QueryObject query = new QueryObject(String.class);
+		query.addCriteria(ComparisonCriteria.equals("name", value));
+		query.addOrder(Order.asc("name"));
+		return query;
+	}
+	
+	/**
+	 * Loader returning the number of loads.
+	 */
+	private class CountingLoader extends Loader<Integer> {
+		/** {@inheritDoc} */
+		@Override
+		public Integer load() {
+			return ++m_loads;
+		}
+	}
+}
+//Checkstyle: MagicNumber on
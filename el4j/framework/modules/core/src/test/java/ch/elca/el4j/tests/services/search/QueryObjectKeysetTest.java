@@ -0,0 +1,146 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import ch.elca.el4j.services.search.QueryObject;
+import ch.elca.el4j.services.search.criterias.AndCriteria;
+import ch.elca.el4j.services.search.criterias.ComparisonCriteria;
+import ch.elca.el4j.services.search.criterias.OrCriteria;
+import ch.elca.el4j.services.search.criterias.Order;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This is the unit test for the keyset paging support of <code>QueryObject</code>.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class QueryObjectKeysetTest {
+
+	/**
+	 * Tests the criteria built for a keyset over two order constraints.
+	 */
+	@Test
+	public void testKeysetCriteria() {
+		QueryObject query = new QueryObject();
+		query.addOrder(Order.asc("name"));
+		query.addOrder(Order.desc("key"));
+		assertNull(query.getKeysetCriteria());
+
+		query.setKeyset("Bob", 7L);
+		AndCriteria keyset = (AndCriteria) query.getKeysetCriteria();
+		assertEquals(2, keyset.getCriterias().size());
+
+		ComparisonCriteria range = (ComparisonCriteria) keyset.getCriterias().get(0);
+		assertEquals("name", range.getField());
+		assertEquals(">=", range.getOperator());
+
+		OrCriteria alternatives = (OrCriteria) keyset.getCriterias().get(1);
+		assertEquals(new AndCriteria(
+			new ComparisonCriteria("name", "Bob", ">", "Object")), alternatives.getCriterias().get(0));
+		assertEquals(new AndCriteria(
+			new ComparisonCriteria("name", "Bob", "=", "Object"),
+			new ComparisonCriteria("key", 7L, "<", "Object")), alternatives.getCriterias().get(1));
+	}
+
+	/**
+	 * Tests reading the keyset from the last result seen.
+	 */
+	@Test
+	public void testKeysetFromResult() {
+		QueryObject query = new QueryObject();
+		query.addOrder(Order.asc("name"));
+		query.addOrder(Order.asc("key"));
+
+		query.setKeysetFrom(new Item("Alice", 3L));
+		assertArrayEquals(new Object[] {"Alice", 3L}, query.getKeyset());
+
+		query.setKeysetFrom(null);
+		assertNull(query.getKeyset());
+	}
+
+	/**
+	 * Tests that queries on different pages are not equal (e.g. as cache keys).
+	 */
+	@Test
+	public void testKeysetEquality() {
+		QueryObject first = new QueryObject();
+		first.addOrder(Order.asc("key"));
+		QueryObject second = new QueryObject();
+		second.addOrder(Order.asc("key"));
+		assertEquals(first, second);
+
+		second.setKeyset(10L);
+		assertFalse(first.equals(second));
+
+		first.setKeyset(10L);
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+	}
+
+	/**
+	 * Tests that a keyset not matching the order constraints is rejected.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testKeysetSizeMismatch() {
+		QueryObject query = new QueryObject();
+		query.addOrder(Order.asc("key"));
+		query.setKeyset("Bob", 7L);
+	}
+
+	/**
+	 * A simple bean to read the keyset from.
+	 */
+	public static class Item {
+		/** The name. */
+		private final String m_name;
+
+		/** The key. */
+		private final Long m_key;
+
+		/**
+		 * @param name    the name
+		 * @param key     the key
+		 */
+		public Item(String name, Long key) {
+			m_name = name;
+			m_key = key;
+		}
+
+		/**
+		 * @return the name
+		 */
+		public String getName() {
+			return m_name;
+		}
+
+		/**
+		 * @return the key
+		 */
+		public Long getKey() {
+			return m_key;
+		}
+	}
+}
+//Checkstyle: MagicNumber on
@@ -0,0 +1,219 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.util.metadata.annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import ch.elca.el4j.util.metadata.DefaultGenericMetaDataSource;
+import ch.elca.el4j.util.metadata.annotations.Annotations;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * JUnit test for the metadata lookup and caching of the
+ * {@link DefaultGenericMetaDataSource}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class DefaultGenericMetaDataSourceTest {
+	
+	/**
+	 * The metadata source to test.
+	 */
+	private CountingMetaDataSource m_source;
+	
+	/**
+	 * The method <code>test(int)</code> of {@link Foo}.
+	 */
+	private Method m_test;
+	
+	/**
+	 * The method <code>test(int, Bar)</code> of {@link Foo}.
+	 */
+	private Method m_testWithBar;
+	
+	/**
+	 * Creates the metadata source.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		m_source = new CountingMetaDataSource();
+		m_source.setMetaDataDelegator(new Annotations());
+		List<Class> interceptingMetaData = new ArrayList<Class>();
+		interceptingMetaData.add(ExampleAnnotationOne.class);
+		interceptingMetaData.add(ExampleAnnotationTwo.class);
+		m_source.setInterceptingMetaData(interceptingMetaData);
+		
+		m_test = Foo.class.getMethod("test", int.class);
+		m_testWithBar = Foo.class.getMethod("test", int.class,
+			FooImpl.Bar.class);
+	}
+	
+	/**
+	 * Tests that the metadata of the method itself are found and cached if
+	 * the target class is unknown, separately from the ones of a known
+	 * target class.
+	 */
+	@Test
+	public void testNullTargetClass() {
+		Collection metaData = m_source.getMetaData(m_test, null);
+		assertArrayEquals(new int[] {16, 478}, getFactors(metaData));
+		assertSame("Metadata not cached.", metaData,
+			m_source.getMetaData(m_test, null));
+		assertEquals(1, m_source.getComputations());
+		
+		assertArrayEquals("Metadata of target class not found.",
+			new int[] {5, 9}, getFactors(
+				m_source.getMetaData(m_test, FooImpl.class)));
+		assertArrayEquals("Metadata of unknown target class overwritten.",
+			new int[] {16, 478}, getFactors(m_source.getMetaData(m_test, null)));
+		assertEquals(2, m_source.getComputations());
+	}
+	
+	/**
+	 * Tests that all JDK proxy classes share their metadata, as well as all
+	 * CGLIB proxy classes.
+	 */
+	@Test
+	public void testProxyClassesShareMetaData() {
+		ClassLoader classLoader = getClass().getClassLoader();
+		Class<?> jdkProxyClass = Proxy.getProxyClass(classLoader, Foo.class);
+		Class<?> otherJdkProxyClass = Proxy.getProxyClass(classLoader,
+			Foo.class, Serializable.class);
+		assertNotSame(jdkProxyClass, otherJdkProxyClass);
+		
+		Collection metaData = m_source.getMetaData(m_test, jdkProxyClass);
+		assertArrayEquals(new int[] {16, 478}, getFactors(metaData));
+		assertSame("JDK proxy classes do not share metadata.", metaData,
+			m_source.getMetaData(m_test, otherJdkProxyClass));
+		assertEquals(1, m_source.getComputations());
+		
+		Class<?> cglibProxyClass = createCglibProxyClass();
+		Class<?> otherCglibProxyClass = createCglibProxyClass(
+			Serializable.class);
+		assertNotSame(cglibProxyClass, otherCglibProxyClass);
+		
+		metaData = m_source.getMetaData(m_test, cglibProxyClass);
+		assertSame("CGLIB proxy classes do not share metadata.", metaData,
+			m_source.getMetaData(m_test, otherCglibProxyClass));
+		assertEquals(2, m_source.getComputations());
+		
+		assertSame("Metadata not cached for JDK proxy class.",
+			m_source.getMetaData(m_test, jdkProxyClass),
+			m_source.getMetaData(m_test, otherJdkProxyClass));
+		assertEquals(2, m_source.getComputations());
+	}
+	
+	/**
+	 * Tests that overloaded methods do not share their metadata.
+	 */
+	@Test
+	public void testOverloadedMethods() {
+		assertArrayEquals(new int[] {16, 478},
+			getFactors(m_source.getMetaData(m_test, null)));
+		assertArrayEquals(new int[] {25, 998},
+			getFactors(m_source.getMetaData(m_testWithBar, null)));
+		assertArrayEquals(new int[] {16, 478},
+			getFactors(m_source.getMetaData(m_test, null)));
+		assertEquals(2, m_source.getComputations());
+		
+		assertNotSame(m_source.getMetaData(m_test, FooImpl.class),
+			m_source.getMetaData(m_testWithBar, FooImpl.class));
+		assertEquals(4, m_source.getComputations());
+	}
+	
+	/**
+	 * @param interfaces
+	 *      The additional interfaces of the proxy.
+	 * @return Returns the class of a CGLIB proxy of {@link FooImpl}.
+	 */
+	private Class<?> createCglibProxyClass(Class<?>... interfaces) {
+		ProxyFactory proxyFactory = new ProxyFactory(new FooImpl());
+		proxyFactory.setProxyTargetClass(true);
+		for (Class<?> proxyInterface : interfaces) {
+			proxyFactory.addInterface(proxyInterface);
+		}
+		return proxyFactory.getProxy().getClass();
+	}
+	
+	/**
+	 * @param metaData
+	 *      The metadata.
+	 * @return Returns the factors of the example annotations, in order.
+	 */
+	private int[] getFactors(Collection metaData) {
+		List<Integer> factors = new ArrayList<Integer>();
+		for (Object annotation : metaData) {
+			if (annotation instanceof ExampleAnnotationOne) {
+				factors.add(((ExampleAnnotationOne) annotation).factor());
+			} else if (annotation instanceof ExampleAnnotationTwo) {
+				factors.add(((ExampleAnnotationTwo) annotation).factor());
+			}
+		}
+		int[] result = new int[factors.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = factors.get(i);
+		}
+		return result;
+	}
+	
+	/**
+	 * Metadata source that counts how often it computes metadata.
+	 */
+	private static class CountingMetaDataSource
+		extends DefaultGenericMetaDataSource {
+		
+		/**
+		 * How often metadata have been computed.
+		 */
+		private int m_computations = 0;
+		
+		/**
+		 * @return Returns how often metadata have been computed.
+		 */
+		public int getComputations() {
+			return m_computations;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Collection computeMetaData(Method method, Class targetClass) {
+			m_computations++;
+			return super.computeMetaData(method, targetClass);
+		}
+	}
+}
+// Checkstyle: MagicNumber on
@@ -16,15 +16,33 @@
  */
 package ch.elca.el4j.services.statistics.detailed.cache;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.elca.el4j.util.codingsupport.Reject;
 
 /**
  *
- * This class is a simple, generic FIFO Cache restricted to a certain size.
+ * This class is a generic, thread-safe LRU cache restricted to a certain weight.
+ *
+ * <p> The cache is split into segments, each guarded by its own lock, so threads
+ * accessing different keys rarely block each other. Each segment keeps its entries
+ * in access order, hence <code>get</code>, <code>put</code> and <code>update</code>
+ * take constant time. When a segment exceeds its share of the maximum weight, its
+ * least recently used entries are evicted. The entry just written is never evicted,
+ * even if it alone exceeds the share.
+ *
+ * <p> By default, each element weighs <code>1</code>, i.e. the maximum weight is the
+ * maximum number of entries. A {@link Weigher} allows to bound the cache by something
+ * else (e.g. the total size of the cached collections). The weight of an element is
+ * computed when it is written, so mutable elements should only be changed through
+ * {@link #update(Object, Updater)}.
  *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
@@ -36,19 +54,84 @@ import java.util.Set;
 public class LRUCache<K, E> {
 
 	/**
-	 * Internal representation of key queue.
+	 * The default number of segments.
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	/**
+	 * The minimal weight share of a segment. Small caches use fewer segments, so
+	 * uneven key distributions do not evict entries much too early.
 	 */
-	private LinkedList<K> m_keyList;
-	
+	private static final long MIN_SEGMENT_WEIGHT = 16;
+
 	/**
-	 * Internal bag for cache elements.
+	 * Computes the weight of cache elements.
+	 *
+	 * @param <E> Generic type of Element.
 	 */
-	private Map<K, E> m_items;
-	
+	public interface Weigher<E> {
+		/**
+		 * @param element    the element to weigh
+		 * @return the weight of the element (non-negative)
+		 */
+		int weigh(E element);
+	}
+
 	/**
-	 * Maximum size of queue.
+	 * Atomically computes the new element of an entry, see {@link LRUCache#update(Object, Updater)}.
+	 *
+	 * @param <E> Generic type of Element.
 	 */
-	private int m_maxCacheSize;
+	public interface Updater<E> {
+		/**
+		 * @param element    the current element, <code>null</code> if there is none
+		 * @return the new element, <code>null</code> to remove the entry
+		 */
+		E update(E element);
+	}
+
+	/**
+	 * Copies cache elements, see {@link LRUCache#getAll(Copier)}.
+	 *
+	 * @param <E> Generic type of Element.
+	 */
+	public interface Copier<E> {
+		/**
+		 * @param element    the element to copy
+		 * @return the copy
+		 */
+		E copy(E element);
+	}
+
+	/**
+	 * The segments. Their number is a power of two.
+	 */
+	private final List<Segment> m_segments;
+
+	/**
+	 * Maximum weight of the cache.
+	 */
+	private final long m_maxWeight;
+
+	/**
+	 * Computes the weight of the elements.
+	 */
+	private final Weigher<? super E> m_weigher;
+
+	/**
+	 * Number of lookups that found an element.
+	 */
+	private final AtomicLong m_hitCount = new AtomicLong();
+
+	/**
+	 * Number of lookups that found no element.
+	 */
+	private final AtomicLong m_missCount = new AtomicLong();
+
+	/**
+	 * Number of evicted entries.
+	 */
+	private final AtomicLong m_evictionCount = new AtomicLong();
 
 	/**
 	 * Creates a new LRU cache.
@@ -57,9 +140,37 @@ public class LRUCache<K, E> {
 	 *            the maximum number of entries that will be kept in this cache.
 	 */
 	public LRUCache(int cacheSize) {
-		this.m_maxCacheSize = cacheSize;
-		m_keyList = new LinkedList<K>();
-		m_items = new HashMap<K, E>();
+		this(cacheSize, null, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a new weight bounded LRU cache.
+	 *
+	 * @param maxWeight
+	 *            the maximum total weight of the entries kept in this cache.
+	 * @param weigher
+	 *            computes the weight of an element, <code>null</code> to weigh
+	 *            each element <code>1</code>.
+	 * @param concurrencyLevel
+	 *            the expected number of concurrently writing threads.
+	 */
+	public LRUCache(long maxWeight, Weigher<? super E> weigher, int concurrencyLevel) {
+		Reject.ifFalse(maxWeight >= 0, "The maximum weight must not be negative.");
+		Reject.ifFalse(concurrencyLevel > 0, "The concurrency level must be positive.");
+		m_maxWeight = maxWeight;
+		m_weigher = weigher;
+
+		int segmentCount = 1;
+		while (segmentCount * 2 <= concurrencyLevel
+			&& maxWeight / (segmentCount * 2) >= MIN_SEGMENT_WEIGHT) {
+			segmentCount *= 2;
+		}
+		m_segments = new ArrayList<Segment>(segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			// distribute the remainder on the first segments
+			long share = maxWeight / segmentCount + (i < maxWeight % segmentCount ? 1 : 0);
+			m_segments.add(new Segment(share));
+		}
 	}
 
 	/**
@@ -70,13 +181,13 @@ public class LRUCache<K, E> {
 	 * @param element
 	 *            Element to add
 	 */
-	public synchronized void put(K key, E element) {
-		// check for size. If cache is full, throw LRU element away
-		if (m_keyList.size() >= m_maxCacheSize) {
-			m_items.remove(m_keyList.removeFirst());
+	public void put(K key, E element) {
+		Reject.ifNull(key);
+		Reject.ifNull(element);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.write(key, element);
 		}
-		updateKeyList(key);
-		m_items.put(key, element);
 	}
 
 	/**
@@ -86,49 +197,288 @@ public class LRUCache<K, E> {
 	 *            Key of the element to get
 	 * @return Element from cache
 	 */
-	public synchronized E get(K key) {
-		updateKeyList(key);
-		return m_items.get(key);
+	public E get(K key) {
+		Reject.ifNull(key);
+		Segment segment = segmentFor(key);
+		Node<E> node;
+		synchronized (segment) {
+			node = segment.m_entries.get(key);
+		}
+		(node == null ? m_missCount : m_hitCount).incrementAndGet();
+		return node == null ? null : node.m_element;
+	}
+
+	/**
+	 * Atomically replaces the element of the given key by the one computed by the
+	 * updater (e.g. to add an item to a cached collection). Other threads accessing
+	 * the same segment wait until the updater has finished, so it should be fast.
+	 *
+	 * @param key
+	 *            Key of the element to update
+	 * @param updater
+	 *            Computes the new element
+	 * @return the new element, <code>null</code> if the entry has been removed
+	 */
+	public E update(K key, Updater<E> updater) {
+		Reject.ifNull(key);
+		Reject.ifNull(updater);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Node<E> node = segment.m_entries.get(key);
+			(node == null ? m_missCount : m_hitCount).incrementAndGet();
+			E element = updater.update(node == null ? null : node.m_element);
+			if (element == null) {
+				segment.remove(key);
+			} else {
+				segment.write(key, element);
+			}
+			return element;
+		}
 	}
-	
+
+	/**
+	 * Remove element from cache.
+	 *
+	 * @param key
+	 *            Key of the element to remove
+	 * @return the removed element, <code>null</code> if there was none
+	 */
+	public E remove(K key) {
+		Reject.ifNull(key);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
 	/**
 	 * Get all elements of cache.
 	 *
-	 * @return Collection of all cache elements
+	 * @return Collection of all cache elements (a snapshot)
+	 */
+	public Collection<E> getAll() {
+		List<E> result = new ArrayList<E>();
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				for (Node<E> node : segment.m_entries.values()) {
+					result.add(node.m_element);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get copies of all elements of cache. The elements are copied while the lock of
+	 * their segment is held, so mutable elements changed through
+	 * {@link #update(Object, Updater)} can be read consistently.
+	 *
+	 * @param copier
+	 *            Copies an element
+	 * @return Collection of the copied cache elements
 	 */
-	public synchronized Collection<E> getAll() {
-		return m_items.values();
+	public Collection<E> getAll(Copier<E> copier) {
+		Reject.ifNull(copier);
+		List<E> result = new ArrayList<E>();
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				for (Node<E> node : segment.m_entries.values()) {
+					result.add(copier.copy(node.m_element));
+				}
+			}
+		}
+		return result;
 	}
-	
+
 	/**
 	 * Get all keys of bag.
-	 * @return key set of bag
+	 * @return key set of bag (a snapshot)
 	 */
-	public synchronized Set<K> getKeys() {
-		return m_items.keySet();
+	public Set<K> getKeys() {
+		Set<K> result = new HashSet<K>();
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				result.addAll(segment.m_entries.keySet());
+			}
+		}
+		return result;
 	}
-	
 
 	/**
 	 * Clear the cache.
 	 */
-	public synchronized void clear() {
-		m_keyList.clear();
+	public void clear() {
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				segment.m_entries.clear();
+				segment.m_weight = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				size += segment.m_entries.size();
+			}
+		}
+		return size;
 	}
-	
+
+	/**
+	 * @return the total weight of the entries in the cache
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : m_segments) {
+			synchronized (segment) {
+				weight += segment.m_weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * @return the maximum total weight of the entries in the cache
+	 */
+	public long getMaxWeight() {
+		return m_maxWeight;
+	}
+
+	/**
+	 * @return the number of lookups (<code>get</code> and <code>update</code>) that found an element
+	 */
+	public long getHitCount() {
+		return m_hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups (<code>get</code> and <code>update</code>) that found no element
+	 */
+	public long getMissCount() {
+		return m_missCount.get();
+	}
+
 	/**
-	 * Moves key to last position in keyList when it's written or read, because
-	 * it is now the most recently used.
+	 * @return the number of entries evicted to respect the maximum weight
+	 */
+	public long getEvictionCount() {
+		return m_evictionCount.get();
+	}
+
+	/**
+	 * @param key    the key
+	 * @return the segment responsible for the given key
+	 */
+	private Segment segmentFor(Object key) {
+		int hash = key.hashCode();
+		// spread the high bits, the segment index is taken from the low ones
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return m_segments.get(hash & (m_segments.size() - 1));
+	}
+
+	/**
+	 * @param element    the element
+	 * @return the weight of the element
+	 */
+	private int weigh(E element) {
+		if (m_weigher == null) {
+			return 1;
+		}
+		int weight = m_weigher.weigh(element);
+		Reject.ifFalse(weight >= 0, "The weight of an element must not be negative.");
+		return weight;
+	}
+
+	/**
+	 * A cached element with its weight.
 	 *
-	 * @param key Key to update in list
+	 * @param <E> Generic type of Element.
+	 */
+	private static final class Node<E> {
+		/**
+		 * The element.
+		 */
+		final E m_element;
+
+		/**
+		 * The weight of the element when it was written.
+		 */
+		final int m_weight;
+
+		/**
+		 * @param element    the element
+		 * @param weight     the weight of the element
+		 */
+		Node(E element, int weight) {
+			m_element = element;
+			m_weight = weight;
+		}
+	}
+
+	/**
+	 * A part of the cache with its own lock and its share of the maximum weight.
+	 * All fields are guarded by the segment itself.
 	 */
-	private void updateKeyList(K key) {
-		// remove key in case it was in the list
-		m_keyList.remove(key);
-		// append it to the list
-		m_keyList.add(key);
+	private final class Segment {
+		/**
+		 * The entries in access order, the least recently used one first.
+		 */
+		final LinkedHashMap<K, Node<E>> m_entries = new LinkedHashMap<K, Node<E>>(16, 0.75f, true);
+
+		/**
+		 * The maximum weight of this segment.
+		 */
+		final long m_segmentMaxWeight;
+
+		/**
+		 * The total weight of the entries.
+		 */
+		long m_weight;
+
+		/**
+		 * @param maxWeight    the maximum weight of this segment
+		 */
+		Segment(long maxWeight) {
+			m_segmentMaxWeight = maxWeight;
+		}
+
+		/**
+		 * Writes an entry and evicts the least recently used ones if necessary.
+		 *
+		 * @param key        the key
+		 * @param element    the element
+		 */
+		void write(K key, E element) {
+			Node<E> node = new Node<E>(element, weigh(element));
+			Node<E> old = m_entries.put(key, node);
+			m_weight += node.m_weight - (old == null ? 0 : old.m_weight);
+
+			// the entry just written is the most recently used one, it comes last
+			Iterator<Node<E>> it = m_entries.values().iterator();
+			while (m_weight > m_segmentMaxWeight && m_entries.size() > 1) {
+				m_weight -= it.next().m_weight;
+				it.remove();
+				m_evictionCount.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @param key    the key
+		 * @return the removed element, <code>null</code> if there was none
+		 */
+		E remove(Object key) {
+			Node<E> old = m_entries.remove(key);
+			if (old == null) {
+				return null;
+			}
+			m_weight -= old.m_weight;
+			return old.m_element;
+		}
 	}
-	
-	
 }
-
@@ -86,6 +86,13 @@ public class DataRepository {
 		return aList;
 	}
 	
+	/**
+	 * @return The local MeasureCollectorService, may be <code>null</code>.
+	 */
+	public MeasureCollectorService getLocalCollectorService() {
+		return m_localCollectorService;
+	}
+	
 	/**
 	 * Returns the MeasureIds of the locally collected MeasureItems.
 	 * @return List of the first MeasureItem of each entry.
@@ -17,8 +17,8 @@
 package ch.elca.el4j.services.statistics.detailed.processing;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import ch.elca.el4j.services.statistics.detailed.MeasureItem;
@@ -33,6 +33,14 @@ import ch.elca.el4j.util.codingsupport.Reject;
  * the no of MeasureIDs, exceeds the cacheSize all MeasureItems belonging to one
  * MeasureId will be removed. This MeasureId for removal is chosen by a
  * least-recently-used strategy.
+ * <p>
+ * Alternatively, the cache can be bounded by the total number of MeasureItems
+ * instead of the number of MeasureIDs (see
+ * {@link #NonPersistentMeasureCollectorService(long, int)}), which bounds the
+ * memory used independently of the length of the individual measures.
+ * <p>
+ * Measures are collected concurrently: the cache is segmented, so only threads
+ * adding items to MeasureIDs of the same segment wait for each other.
  *
  *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
@@ -49,6 +57,63 @@ public class NonPersistentMeasureCollectorService implements
 	 */
 	private LRUCache<String, List<MeasureItem>> m_cache;
 
+	/**
+	 * Appends a MeasureItem to the list of its MeasureID.
+	 */
+	private static final class AddItemUpdater implements LRUCache.Updater<List<MeasureItem>> {
+		/**
+		 * The item to add.
+		 */
+		private final MeasureItem m_item;
+
+		/**
+		 * @param item    the item to add
+		 */
+		AddItemUpdater(MeasureItem item) {
+			m_item = item;
+		}
+
+		/** {@inheritDoc} */
+		public List<MeasureItem> update(List<MeasureItem> list) {
+			if (list == null) {
+				// guarded by the cache segment, readers copy it (see ITEM_COPIER)
+				list = new ArrayList<MeasureItem>();
+			}
+			list.add(m_item);
+			return list;
+		}
+	}
+
+	/**
+	 * Copies a list of MeasureItems, while the cache segment holding it is locked.
+	 */
+	private static final LRUCache.Copier<List<MeasureItem>> ITEM_COPIER
+		= new LRUCache.Copier<List<MeasureItem>>() {
+			public List<MeasureItem> copy(List<MeasureItem> list) {
+				return new ArrayList<MeasureItem>(list);
+			}
+		};
+
+	/**
+	 * Copies the first MeasureItem of a list, while the cache segment holding it is locked.
+	 */
+	private static final LRUCache.Copier<List<MeasureItem>> FIRST_ITEM_COPIER
+		= new LRUCache.Copier<List<MeasureItem>>() {
+			public List<MeasureItem> copy(List<MeasureItem> list) {
+				return Collections.singletonList(list.get(0));
+			}
+		};
+
+	/**
+	 * Weighs a list of MeasureItems by its size.
+	 */
+	private static final LRUCache.Weigher<List<MeasureItem>> ITEM_COUNT_WEIGHER
+		= new LRUCache.Weigher<List<MeasureItem>>() {
+			public int weigh(List<MeasureItem> list) {
+				return list.size();
+			}
+		};
+
 	/**
 	 * Construtor.
 	 *
@@ -60,6 +125,21 @@ public class NonPersistentMeasureCollectorService implements
 		m_cache = new LRUCache<String, List<MeasureItem>>(maxCacheSize);
 	}
 
+	/**
+	 * Constructor for a cache bounded by the number of MeasureItems.
+	 *
+	 * @param maxMeasureItems
+	 *            The maximum number of MeasureItems in the cache. If exceeded,
+	 *            the least recently used Measurements are removed.
+	 * @param concurrencyLevel
+	 *            The expected number of concurrently measured threads.
+	 */
+	public NonPersistentMeasureCollectorService(long maxMeasureItems, int concurrencyLevel) {
+		Reject.ifCondition(maxMeasureItems < 0);
+		m_cache = new LRUCache<String, List<MeasureItem>>(
+			maxMeasureItems, ITEM_COUNT_WEIGHER, concurrencyLevel);
+	}
+
 	/**
 	 * Won't do anything, as this is a non-persistant MeasureCollectorService.
 	 */
@@ -71,15 +151,7 @@ public class NonPersistentMeasureCollectorService implements
 	 * {@inheritDoc}
 	 */
 	public void add(MeasureItem item) {
-		List<MeasureItem> list = m_cache.get(item.getID().getFormattedString());
-
-		if (list == null) {
-			list = new LinkedList<MeasureItem>();
-		}
-		synchronized (this) {
-			list.add(item);
-			m_cache.put(item.getID().getFormattedString(), list);
-		}
+		m_cache.update(item.getID().getFormattedString(), new AddItemUpdater(item));
 	}
 
 	/**
@@ -94,11 +166,9 @@ public class NonPersistentMeasureCollectorService implements
 	 */
 	public List<MeasureItem> getAllMeasureItems() {
 		List<MeasureItem> result = new ArrayList<MeasureItem>();
-		synchronized (this) {
-			Iterator<List<MeasureItem>> iter = m_cache.getAll().iterator();
-			while (iter.hasNext()) {
-				result = mergeLists(result, iter.next());
-			}
+		Iterator<List<MeasureItem>> iter = m_cache.getAll(ITEM_COPIER).iterator();
+		while (iter.hasNext()) {
+			result.addAll(iter.next());
 		}
 		return result;
 	}
@@ -110,37 +180,53 @@ public class NonPersistentMeasureCollectorService implements
 	public List<MeasureItem> getFirstMeasureItems() {
 		List<MeasureItem> list = new ArrayList<MeasureItem>();
 
-		synchronized (this) {
-			Iterator<String> iter = m_cache.getKeys().iterator();
-			while (iter.hasNext()) {
-				list.add((m_cache.get(iter.next())).get(0));
-			}
+		Iterator<List<MeasureItem>> iter = m_cache.getAll(FIRST_ITEM_COPIER).iterator();
+		while (iter.hasNext()) {
+			list.add(iter.next().get(0));
 		}
 		return list;
 	}
 
-	
 	/**
-	 * Merge two lists.
-	 *
-	 * @param list1
-	 *            First list.
-	 * @param list2
-	 *            Second list.
-	 * @return The resulting list.
+	 * @return The number of MeasureItems added to an already cached Measurement.
 	 */
-	private List<MeasureItem> mergeLists(List<MeasureItem> list1,
-		List<MeasureItem> list2) {
+	public long getCacheHitCount() {
+		return m_cache.getHitCount();
+	}
 
-		List<MeasureItem> result = new ArrayList<MeasureItem>();
-		Iterator iter = list1.iterator();
-		while (iter.hasNext()) {
-			result.add((MeasureItem) iter.next());
-		}
-		iter = list2.iterator();
-		while (iter.hasNext()) {
-			result.add((MeasureItem) iter.next());
-		}
-		return result;
+	/**
+	 * @return The number of MeasureItems that started a new Measurement in the cache.
+	 */
+	public long getCacheMissCount() {
+		return m_cache.getMissCount();
+	}
+
+	/**
+	 * @return The number of Measurements evicted from the cache.
+	 */
+	public long getCacheEvictionCount() {
+		return m_cache.getEvictionCount();
+	}
+
+	/**
+	 * @return The number of Measurements in the cache.
+	 */
+	public int getCachedMeasureCount() {
+		return m_cache.size();
+	}
+
+	/**
+	 * @return The weight of the cache, i.e. the number of Measurements or of
+	 *         MeasureItems, depending on the constructor used.
+	 */
+	public long getCacheWeight() {
+		return m_cache.getWeight();
+	}
+
+	/**
+	 * @return The maximum weight of the cache.
+	 */
+	public long getMaxCacheWeight() {
+		return m_cache.getMaxWeight();
 	}
-}
\ No newline at end of file
+}
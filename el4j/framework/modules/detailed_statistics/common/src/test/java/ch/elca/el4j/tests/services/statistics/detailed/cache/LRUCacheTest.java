@@ -0,0 +1,191 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.statistics.detailed.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import ch.elca.el4j.services.statistics.detailed.cache.LRUCache;
+
+// Checkstyle: MagicNumber off
+
+/**
+ * This is the unit test for <code>LRUCache</code>.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class LRUCacheTest {
+	
+	/**
+	 * Weighs a list by its size.
+	 */
+	private static final LRUCache.Weigher<List<Integer>> SIZE_WEIGHER = new LRUCache.Weigher<List<Integer>>() {
+		public int weigh(List<Integer> list) {
+			return list.size();
+		}
+	};
+	
+	/**
+	 * Tests that the least recently used entry is evicted, where reads count as use.
+	 */
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		LRUCache<String, Integer> cache = new LRUCache<String, Integer>(3);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		cache.get("a");
+		cache.put("d", 4);
+		
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+		assertEquals(Integer.valueOf(4), cache.get("d"));
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	/**
+	 * Tests that a weight bounded cache evicts by weight, but never the entry just written.
+	 */
+	@Test
+	public void testWeightBound() {
+		LRUCache<String, List<Integer>> cache = new LRUCache<String, List<Integer>>(5, SIZE_WEIGHER, 1);
+		cache.put("a", Arrays.asList(1, 2));
+		cache.put("b", Arrays.asList(1, 2));
+		assertEquals(4, cache.getWeight());
+		
+		cache.put("c", Arrays.asList(1, 2));
+		assertEquals(2, cache.size());
+		assertEquals(4, cache.getWeight());
+		assertNull(cache.get("a"));
+		
+		cache.put("d", Arrays.asList(1, 2, 3, 4, 5, 6));
+		assertEquals(1, cache.size());
+		assertEquals(6, cache.getWeight());
+		
+		cache.remove("d");
+		assertEquals(0, cache.getWeight());
+	}
+	
+	/**
+	 * Tests that updates are atomic and reweigh the element.
+	 */
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final LRUCache<String, List<Integer>> cache = new LRUCache<String, List<Integer>>(
+			1000000, SIZE_WEIGHER, 16);
+		final int threads = 8;
+		final int updates = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < updates; j++) {
+						cache.update("key" + (j % 10), new LRUCache.Updater<List<Integer>>() {
+							public List<Integer> update(List<Integer> list) {
+								List<Integer> result = list == null ? new ArrayList<Integer>() : list;
+								result.add(1);
+								return result;
+							}
+						});
+					}
+				}
+			};
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		
+		assertEquals(10, cache.size());
+		assertEquals(threads * updates, cache.getWeight());
+		assertEquals(threads * updates / 10, cache.get("key3").size());
+	}
+	
+	/**
+	 * Tests that an update returning <code>null</code> removes the entry.
+	 */
+	@Test
+	public void testUpdateRemoves() {
+		LRUCache<String, Integer> cache = new LRUCache<String, Integer>(10);
+		cache.put("a", 1);
+		assertNull(cache.update("a", new LRUCache.Updater<Integer>() {
+			public Integer update(Integer element) {
+				return null;
+			}
+		}));
+		assertEquals(0, cache.size());
+	}
+	
+	/**
+	 * Tests that a segmented cache respects its maximum weight.
+	 */
+	@Test
+	public void testSegmentsRespectMaxWeight() {
+		LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(1000, null, 16);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(i, i);
+		}
+		assertTrue(cache.size() <= 1000);
+		assertTrue(cache.size() > 900);
+		assertEquals(cache.size(), cache.getWeight());
+		assertEquals(cache.size(), cache.getKeys().size());
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+	
+	/**
+	 * Tests that elements are copied while their segment is locked.
+	 */
+	@Test
+	public void testGetAllCopies() {
+		LRUCache<String, List<Integer>> cache = new LRUCache<String, List<Integer>>(10);
+		List<Integer> list = new ArrayList<Integer>(Arrays.asList(1, 2));
+		cache.put("a", list);
+		Collection<List<Integer>> copies = cache.getAll(new LRUCache.Copier<List<Integer>>() {
+			public List<Integer> copy(List<Integer> element) {
+				return new ArrayList<Integer>(element);
+			}
+		});
+		list.add(3);
+		assertEquals(Arrays.asList(Arrays.asList(1, 2)), new ArrayList<List<Integer>>(copies));
+	}
+}
+//Checkstyle: MagicNumber on
@@ -27,6 +27,8 @@ import org.springframework.beans.factory.InitializingBean;
 import ch.elca.el4j.services.monitoring.jmx.JmxHtmlFormatter;
 import ch.elca.el4j.services.statistics.detailed.MeasureItem;
 import ch.elca.el4j.services.statistics.detailed.processing.DataRepository;
+import ch.elca.el4j.services.statistics.detailed.processing.MeasureCollectorService;
+import ch.elca.el4j.services.statistics.detailed.processing.NonPersistentMeasureCollectorService;
 import ch.elca.el4j.services.statistics.detailed.processing.StatisticsOutputter;
 import ch.elca.el4j.util.codingsupport.Reject;
 
@@ -168,4 +170,64 @@ public class DetailedStatisticsReporter implements
 		sv.createDiagFile(filename, measureId, width, height);
 		
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCacheHitCount() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getCacheHitCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCacheMissCount() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getCacheMissCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCacheEvictionCount() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getCacheEvictionCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getCachedMeasureCount() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getCachedMeasureCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCacheWeight() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getCacheWeight();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getMaxCacheWeight() {
+		NonPersistentMeasureCollectorService collector = getLocalCollector();
+		return collector == null ? -1 : collector.getMaxCacheWeight();
+	}
+	
+	/**
+	 * @return The local collector if it keeps its measures in memory, <code>null</code> otherwise.
+	 */
+	private NonPersistentMeasureCollectorService getLocalCollector() {
+		MeasureCollectorService collector
+			= m_dataRepository == null ? null : m_dataRepository.getLocalCollectorService();
+		if (collector instanceof NonPersistentMeasureCollectorService) {
+			return (NonPersistentMeasureCollectorService) collector;
+		}
+		return null;
+	}
 }
\ No newline at end of file
@@ -57,4 +57,39 @@ public interface DetailedStatisticsReporterMBean {
 	 */
 	public void createDiagramFile(String filename, String measureId,
 		int width, int height);
+	
+	/**
+	 * @return Number of MeasureItems added to an already cached measurement
+	 *         by the local collector, -1 if not available.
+	 */
+	public long getCacheHitCount();
+	
+	/**
+	 * @return Number of MeasureItems that started a new cached measurement
+	 *         in the local collector, -1 if not available.
+	 */
+	public long getCacheMissCount();
+	
+	/**
+	 * @return Number of measurements evicted from the cache of the local
+	 *         collector, -1 if not available.
+	 */
+	public long getCacheEvictionCount();
+	
+	/**
+	 * @return Number of measurements in the cache of the local collector,
+	 *         -1 if not available.
+	 */
+	public int getCachedMeasureCount();
+	
+	/**
+	 * @return Weight of the cache of the local collector (measurements or
+	 *         measure items, depending on its configuration), -1 if not available.
+	 */
+	public long getCacheWeight();
+	
+	/**
+	 * @return Maximum weight of the cache of the local collector, -1 if not available.
+	 */
+	public long getMaxCacheWeight();
 }
\ No newline at end of file
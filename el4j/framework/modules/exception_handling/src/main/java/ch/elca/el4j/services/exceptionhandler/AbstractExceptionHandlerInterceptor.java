@@ -146,15 +146,17 @@ public abstract class AbstractExceptionHandlerInterceptor
 			while (true) {
 				try {
 					if (swapper == null) {
-						/* Clones the invocation before each execution. This
-						 * allows to execute the MethodInvocation.proceed()
-						 * several times (see p. 163 in Java Development with
-						 * the Spring Framework, Rod Johnson et al., 2005,
-						 * Wiley, ISBN 0-7645-7483-3).
+						/* Clones the invocation before each execution if a
+						 * retry may be requested. This allows to execute the
+						 * MethodInvocation.proceed() several times (see p. 163
+						 * in Java Development with the Spring Framework, Rod
+						 * Johnson et al., 2005, Wiley, ISBN 0-7645-7483-3).
 						 */
-						MethodInvocation localInvocation
-							= ((ReflectiveMethodInvocation) invocation).
-								invocableClone();
+						MethodInvocation localInvocation = invocation;
+						if (isRetryPossible()) {
+							localInvocation = ((ReflectiveMethodInvocation)
+								invocation).invocableClone();
+						}
 						
 						result = doInvoke(localInvocation);
 						
@@ -168,7 +170,12 @@ public abstract class AbstractExceptionHandlerInterceptor
 						retries = re.getRetries();
 						setRetries(retries);
 					}
-					if (retries > 0) {
+					if (retries > 0 && !isRetryPossible()
+						&& re.getSwapper() == null) {
+						s_logger.warn("Retry requested although no exception "
+							+ "handler of this interceptor can retry.");
+						break;
+					} else if (retries > 0) {
 						setRetries(retries - 1);
 						swapper = re.getSwapper();
 						
@@ -185,6 +192,17 @@ public abstract class AbstractExceptionHandlerInterceptor
 		return result;
 	}
 	
+	/**
+	 * Tells whether the exception handlers of this interceptor may request a
+	 * retry. If not, the invocation is not cloned before it is executed.
+	 * Retries requested nevertheless are not executed.
+	 *
+	 * @return Returns <code>true</code> (default) if a retry may be requested.
+	 */
+	protected boolean isRetryPossible() {
+		return true;
+	}
+	
 	/**
 	 * Performs the actual invocation of the
 	 * <code>MethodInvocation.prceed()</code> method.
@@ -205,7 +223,7 @@ public abstract class AbstractExceptionHandlerInterceptor
 		throws RetryException, Throwable {
 		Object result = null;
 		try {
-			result = invocation.proceed();
+			result = attempt(invocation);
 			
 		} catch (RetryException re) {
 			throw re;
@@ -218,6 +236,24 @@ public abstract class AbstractExceptionHandlerInterceptor
 		return result;
 	}
 	
+	/**
+	 * Attempts the given invocation once by calling its
+	 * <code>proceed()</code> method. Subclasses may override this method to
+	 * observe single attempts, which include neither the handling of their
+	 * exceptions nor the delays between retries.
+	 *
+	 * @param invocation
+	 *      The <code>MethodInvocation</code> to call <code>proceed()</code> on.
+	 *
+	 * @return Returns the target's result.
+	 *
+	 * @throws Throwable
+	 *      Any exception thrown by the original method's invocation.
+	 */
+	protected Object attempt(MethodInvocation invocation) throws Throwable {
+		return invocation.proceed();
+	}
+	
 	/**
 	 * Handles the given exception that was thrown in the given method
 	 * invocation's execution.
@@ -293,9 +329,38 @@ public abstract class AbstractExceptionHandlerInterceptor
 	protected Object doHandleException(Throwable t, MethodInvocation invocation,
 		ExceptionConfiguration[] exceptionConfigurations)
 		throws RetryException, Throwable {
-		for (int i = 0; i < exceptionConfigurations.length; i++) {
+		return doHandleException(t, invocation,
+			new ExceptionRouter(exceptionConfigurations));
+	}
+	
+	/**
+	 * Handles the given exception that was thrown given method invocation using
+	 * the exception configurations the given router selects for it.
+	 *
+	 * @param t
+	 *      The exception to handle.
+	 *
+	 * @param invocation
+	 *      The method invocation that threw the exception.
+	 *
+	 * @param router
+	 *      The router holding the exception handler configuration to use.
+	 *
+	 * @return Returns an object which is treated as the original invocation's
+	 *      result.
+	 *
+	 * @throws RetryException
+	 *      Signals that the complete invocation has to be rerun.
+	 *
+	 * @throws Throwable
+	 *      Any exception thrown by a exception handler.
+	 */
+	protected Object doHandleException(Throwable t, MethodInvocation invocation,
+		ExceptionRouter router) throws RetryException, Throwable {
+		ExceptionConfiguration[] candidates = router.getCandidates(t);
+		for (int i = 0; i < candidates.length; i++) {
 			
-			ExceptionConfiguration next = exceptionConfigurations[i];
+			ExceptionConfiguration next = candidates[i];
 			
 			if (next.handlesExceptions(t, invocation)) {
 				s_logger.debug(
@@ -0,0 +1,578 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.exceptionhandler;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.remoting.RemoteAccessException;
+
+import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
+
+/**
+ * Limits the number of concurrent invocations of a target (bulkhead). The
+ * limit adapts to the observed latency, similar to TCP Vegas: the lowest
+ * latency of a probe window is taken as the latency of the unloaded target,
+ * and the number of invocations queuing in the target is estimated as
+ * <code>limit * (1 - minLatency / latency)</code>. While this estimate is
+ * small, the limit grows by one; when it is large, the limit shrinks by one.
+ * Failed attempts shrink the limit multiplicatively (AIMD). Only timeouts and
+ * infrastructure failures count as failed, see {@link #setFailureTypes}. A
+ * slow target thereby gets fewer concurrent invocations instead of tying up
+ * all threads of its callers.
+ *
+ * <p>All state is held in atomic variables; only invocations waiting for a
+ * free slot take a lock.
+ *
+ * <p>Invocations beyond the limit wait for a free slot if the queue is not
+ * full and up to <code>maxWaitMillis</code>, otherwise they are shed. By
+ * default, they are shed immediately.
+ *
+ * <p>Use one instance per target, e.g. as inner bean of a
+ * {@link SafetyFacadeFactoryBean}:
+ * <pre>
+ * &lt;property name="concurrencyLimiter"&gt;
+ *     &lt;bean class="ch.elca.el4j.services.exceptionhandler.AdaptiveConcurrencyLimiter"&gt;
+ *         &lt;property name="maxLimit" value="50"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/property&gt;
+ * </pre>
+ * If an MBean server is set, the statistics are published through JMX, see
+ * {@link AdaptiveConcurrencyLimiterMBean}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class AdaptiveConcurrencyLimiter
+	implements AdaptiveConcurrencyLimiterMBean, InitializingBean, DisposableBean {
+
+	/** The default initial limit. */
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	
+	/** The default upper bound of the limit. */
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	
+	/** The default number of invocations after which the minimum latency is probed again. */
+	public static final int DEFAULT_PROBE_INTERVAL = 1000;
+	
+	/** Estimated queue size below which the limit is increased. */
+	private static final int ALPHA = 3;
+	
+	/** Estimated queue size above which the limit is decreased. */
+	private static final int BETA = 6;
+	
+	/** The factor the limit is multiplied by on failures. */
+	private static final double BACKOFF_RATIO = 0.9;
+	
+	/** The weight of a new sample in the average latency. */
+	private static final double SMOOTHING = 0.1;
+	
+	/** Nanoseconds per millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	/** The default exceptions that shrink the limit. */
+	private static final Class<?>[] DEFAULT_FAILURE_TYPES = {
+		TimeoutException.class, InterruptedIOException.class,
+		SocketException.class, RemoteAccessException.class,
+		TransientDataAccessResourceException.class,
+		DataAccessResourceFailureException.class};
+	
+	/** The current limit, as bits of a <code>double</code>. */
+	private final AtomicLong m_limit
+		= new AtomicLong(Double.doubleToLongBits(DEFAULT_INITIAL_LIMIT));
+	
+	/** @see #setMinLimit(int) */
+	private volatile int m_minLimit = 1;
+	
+	/** @see #setMaxLimit(int) */
+	private volatile int m_maxLimit = DEFAULT_MAX_LIMIT;
+	
+	/** @see #setMaxQueueSize(int) */
+	private volatile int m_maxQueueSize = 0;
+	
+	/** @see #setMaxWaitMillis(long) */
+	private volatile long m_maxWaitMillis = 0;
+	
+	/** @see #setProbeInterval(int) */
+	private volatile int m_probeInterval = DEFAULT_PROBE_INTERVAL;
+	
+	/** @see #setFailureTypes(Class[]) */
+	private volatile Class<?>[] m_failureTypes = DEFAULT_FAILURE_TYPES;
+	
+	/** Number of invocations in flight. */
+	private final AtomicInteger m_inFlight = new AtomicInteger();
+	
+	/** Number of waiting invocations. */
+	private final AtomicInteger m_waiting = new AtomicInteger();
+	
+	/** Number of shed invocations. */
+	private final AtomicLong m_rejected = new AtomicLong();
+	
+	/** Number of completed attempts. */
+	private final AtomicLong m_completed = new AtomicLong();
+	
+	/** The minimum latency of the probe window. */
+	private final AtomicLong m_minLatency = new AtomicLong(Long.MAX_VALUE);
+	
+	/** The average latency in nanoseconds, as bits of a <code>double</code>. */
+	private final AtomicLong m_averageLatency = new AtomicLong();
+	
+	/** Samples left in the current probe window. */
+	private final AtomicInteger m_probeCountdown
+		= new AtomicInteger(DEFAULT_PROBE_INTERVAL);
+	
+	/**
+	 * The monitor waiting invocations wait on. Only taken if invocations
+	 * are waiting, the other paths are lock-free.
+	 */
+	private final Object m_waitLock = new Object();
+	
+	/** The MBean server to publish the statistics, if any. */
+	private MBeanServer m_server;
+	
+	/** The name to publish the statistics with. */
+	private String m_objectName;
+	
+	/**
+	 * Takes a slot for an invocation, waiting for one if configured so.
+	 *
+	 * @return Returns <code>true</code> if the invocation may proceed, and
+	 *      {@link #release()} has to be called after it; <code>false</code>
+	 *      if it has to be shed.
+	 *
+	 * @throws InterruptedException
+	 *      If the thread has been interrupted while waiting.
+	 */
+	public boolean acquire() throws InterruptedException {
+		if (tryAcquire()) {
+			return true;
+		}
+		long maxWaitMillis = m_maxWaitMillis;
+		if (maxWaitMillis <= 0) {
+			m_rejected.incrementAndGet();
+			return false;
+		}
+		if (m_waiting.incrementAndGet() > m_maxQueueSize) {
+			m_waiting.decrementAndGet();
+			m_rejected.incrementAndGet();
+			return false;
+		}
+		try {
+			long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+			synchronized (m_waitLock) {
+				// releases notify under the lock, so no wake up is lost
+				while (!tryAcquire()) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						m_rejected.incrementAndGet();
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(m_waitLock, remaining);
+				}
+				return true;
+			}
+		} finally {
+			m_waiting.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Takes a slot if one is free.
+	 *
+	 * @return Returns <code>true</code> if a slot has been taken.
+	 */
+	private boolean tryAcquire() {
+		while (true) {
+			int inFlight = m_inFlight.get();
+			if (inFlight >= (int) limit()) {
+				return false;
+			}
+			if (m_inFlight.compareAndSet(inFlight, inFlight + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Adapts the limit to an attempt of an invocation holding a slot. An
+	 * invocation may be attempted several times, e.g. if it is retried; the
+	 * latency is the one of the attempt, without any delay between attempts.
+	 *
+	 * @param latencyNanos
+	 *      The duration of the attempt in nanoseconds.
+	 *
+	 * @param failed
+	 *      Whether the attempt failed by a timeout or an infrastructure
+	 *      failure, see {@link #isFailure(Throwable)}.
+	 */
+	public void recordAttempt(long latencyNanos, boolean failed) {
+		m_completed.incrementAndGet();
+		if (!failed) {
+			updateLatency(latencyNanos);
+		}
+		if (adaptLimit(latencyNanos, failed)) {
+			// wake up a waiter for the additional slot
+			wakeUpWaiter();
+		}
+	}
+	
+	/**
+	 * Releases the slot of a finished invocation.
+	 */
+	public void release() {
+		m_inFlight.decrementAndGet();
+		wakeUpWaiter();
+	}
+	
+	/**
+	 * Adapts the limit to the only attempt of a finished invocation and
+	 * releases its slot.
+	 *
+	 * @param latencyNanos
+	 *      The duration of the invocation in nanoseconds.
+	 *
+	 * @param failed
+	 *      Whether the invocation failed.
+	 */
+	public void release(long latencyNanos, boolean failed) {
+		recordAttempt(latencyNanos, failed);
+		release();
+	}
+	
+	/**
+	 * Tells whether the given exception of an attempt is a failure that
+	 * shrinks the limit. Exceptions of the application, e.g. validation
+	 * errors, say nothing about the load of the target and are not.
+	 *
+	 * @param t
+	 *      The exception thrown by the attempt.
+	 *
+	 * @return Returns <code>true</code> if the exception or one of its
+	 *      causes is of one of the failure types.
+	 */
+	public boolean isFailure(Throwable t) {
+		Class<?>[] failureTypes = m_failureTypes;
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			for (Class<?> type : failureTypes) {
+				if (type.isInstance(cause)) {
+					return true;
+				}
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Wakes up a waiting invocation, if any.
+	 */
+	private void wakeUpWaiter() {
+		if (m_waiting.get() > 0) {
+			synchronized (m_waitLock) {
+				m_waitLock.notify();
+			}
+		}
+	}
+	
+	/**
+	 * Adapts the limit to the given sample.
+	 *
+	 * @param latencyNanos
+	 *      The latency of an attempt in nanoseconds.
+	 *
+	 * @param failed
+	 *      Whether the attempt failed.
+	 *
+	 * @return Returns <code>true</code> if the limit has been increased.
+	 */
+	private boolean adaptLimit(long latencyNanos, boolean failed) {
+		while (true) {
+			long bits = m_limit.get();
+			double limit = Double.longBitsToDouble(bits);
+			double newLimit = limit;
+			if (failed) {
+				newLimit = Math.max(limit * BACKOFF_RATIO, m_minLimit);
+			} else {
+				double queue = limit * (1 - (double) m_minLatency.get()
+					/ Math.max(latencyNanos, 1));
+				if (queue < ALPHA && m_inFlight.get() * 2 >= limit) {
+					// only grow if the limit is actually used
+					newLimit = Math.min(limit + 1, m_maxLimit);
+				} else if (queue > BETA) {
+					newLimit = Math.max(limit - 1, m_minLimit);
+				}
+			}
+			if (newLimit == limit) {
+				return false;
+			}
+			if (m_limit.compareAndSet(bits, Double.doubleToLongBits(newLimit))) {
+				return newLimit > limit;
+			}
+		}
+	}
+	
+	/**
+	 * Updates the latency statistics with the given sample.
+	 *
+	 * @param latencyNanos
+	 *      The latency of an attempt in nanoseconds.
+	 */
+	private void updateLatency(long latencyNanos) {
+		if (m_probeCountdown.decrementAndGet() <= 0) {
+			// the target may have become faster or slower permanently
+			m_probeCountdown.set(m_probeInterval);
+			m_minLatency.set(latencyNanos);
+		} else {
+			long minLatency = m_minLatency.get();
+			while (latencyNanos < minLatency
+				&& !m_minLatency.compareAndSet(minLatency, latencyNanos)) {
+				minLatency = m_minLatency.get();
+			}
+		}
+		while (true) {
+			long bits = m_averageLatency.get();
+			double average = Double.longBitsToDouble(bits);
+			average = average == 0 ? latencyNanos
+				: average + SMOOTHING * (latencyNanos - average);
+			if (m_averageLatency.compareAndSet(bits,
+				Double.doubleToLongBits(average))) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @return Returns the current limit.
+	 */
+	private double limit() {
+		return Double.longBitsToDouble(m_limit.get());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getLimit() {
+		return (int) limit();
+	}
+	
+	/**
+	 * @param initialLimit
+	 *      The limit to start with. Default is {@link #DEFAULT_INITIAL_LIMIT}.
+	 */
+	public void setInitialLimit(int initialLimit) {
+		m_limit.set(Double.doubleToLongBits(initialLimit));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getInFlight() {
+		return m_inFlight.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getQueueLength() {
+		return m_waiting.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getRejectedCount() {
+		return m_rejected.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCompletedCount() {
+		return m_completed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double getMinLatencyMillis() {
+		long minLatency = m_minLatency.get();
+		return minLatency == Long.MAX_VALUE ? 0 : minLatency / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double getAverageLatencyMillis() {
+		return Double.longBitsToDouble(m_averageLatency.get()) / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getMinLimit() {
+		return m_minLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setMinLimit(int minLimit) {
+		m_minLimit = minLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getMaxLimit() {
+		return m_maxLimit;
+	}
+
+	/**
+	 * Sets the upper bound of the limit. Default is
+	 * {@link #DEFAULT_MAX_LIMIT}.
+	 *
+	 * {@inheritDoc}
+	 */
+	public void setMaxLimit(int maxLimit) {
+		m_maxLimit = maxLimit;
+		while (true) {
+			long bits = m_limit.get();
+			double limit = Double.longBitsToDouble(bits);
+			if (limit <= maxLimit || m_limit.compareAndSet(bits,
+				Double.doubleToLongBits(maxLimit))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getMaxQueueSize() {
+		return m_maxQueueSize;
+	}
+
+	/**
+	 * Sets the number of invocations that may wait for a free slot. Default
+	 * is <code>0</code>.
+	 *
+	 * {@inheritDoc}
+	 */
+	public void setMaxQueueSize(int maxQueueSize) {
+		m_maxQueueSize = maxQueueSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getMaxWaitMillis() {
+		return m_maxWaitMillis;
+	}
+
+	/**
+	 * Sets the time an invocation waits for a free slot at most. Default is
+	 * <code>0</code>, i.e. invocations beyond the limit are shed
+	 * immediately.
+	 *
+	 * {@inheritDoc}
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		m_maxWaitMillis = maxWaitMillis;
+	}
+	
+	/**
+	 * @param probeInterval
+	 *      The number of invocations after which the minimum latency is
+	 *      measured anew. Default is {@link #DEFAULT_PROBE_INTERVAL}.
+	 */
+	public void setProbeInterval(int probeInterval) {
+		m_probeInterval = probeInterval;
+		if (m_probeCountdown.get() > probeInterval) {
+			m_probeCountdown.set(probeInterval);
+		}
+	}
+	
+	/**
+	 * Sets the exceptions that shrink the limit, see
+	 * {@link #isFailure(Throwable)}. Default are timeouts, I/O errors of
+	 * sockets, remote access and data access resource failures.
+	 *
+	 * @param failureTypes
+	 *      The exception types to set.
+	 */
+	public void setFailureTypes(Class<?>[] failureTypes) {
+		m_failureTypes = failureTypes == null
+			? new Class<?>[0] : failureTypes.clone();
+	}
+	
+	/**
+	 * @param server
+	 *      The MBean server to publish the statistics with, <code>null</code>
+	 *      (default) not to publish them.
+	 */
+	public void setServer(MBeanServer server) {
+		m_server = server;
+	}
+	
+	/**
+	 * @param objectName
+	 *      The name to publish the statistics with. Required if a server is
+	 *      set.
+	 */
+	public void setObjectName(String objectName) {
+		m_objectName = objectName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void afterPropertiesSet() throws Exception {
+		if (m_minLimit < 1 || m_maxLimit < m_minLimit) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"The limits must satisfy 1 <= minLimit <= maxLimit.");
+		}
+		m_limit.set(Double.doubleToLongBits(
+			Math.min(Math.max(limit(), m_minLimit), m_maxLimit)));
+		if (m_server != null) {
+			CoreNotificationHelper.notifyIfEssentialPropertyIsEmpty(
+				m_objectName, "objectName", this);
+			m_server.registerMBean(this, new ObjectName(m_objectName));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void destroy() throws Exception {
+		if (m_server != null) {
+			m_server.unregisterMBean(new ObjectName(m_objectName));
+		}
+	}
+}
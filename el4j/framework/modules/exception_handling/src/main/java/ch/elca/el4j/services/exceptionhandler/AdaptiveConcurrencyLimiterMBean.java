@@ -0,0 +1,105 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.exceptionhandler;
+
+/**
+ * Publishes the limit and queue statistics of an
+ * {@link AdaptiveConcurrencyLimiter} through JMX (MBean Interface).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface AdaptiveConcurrencyLimiterMBean {
+
+	/**
+	 * @return The current limit of concurrent invocations.
+	 */
+	public int getLimit();
+
+	/**
+	 * @return Number of invocations in flight.
+	 */
+	public int getInFlight();
+
+	/**
+	 * @return Number of invocations waiting for a free slot.
+	 */
+	public int getQueueLength();
+
+	/**
+	 * @return Number of invocations that have been shed.
+	 */
+	public long getRejectedCount();
+
+	/**
+	 * @return Number of completed attempts of invocations. An invocation is
+	 *         attempted more than once if it is retried.
+	 */
+	public long getCompletedCount();
+
+	/**
+	 * @return The lowest latency in milliseconds observed in the current
+	 *         probe window, taken as the latency of the unloaded target.
+	 */
+	public double getMinLatencyMillis();
+
+	/**
+	 * @return The exponentially weighted average latency in milliseconds.
+	 */
+	public double getAverageLatencyMillis();
+
+	/**
+	 * @return The lower bound of the limit.
+	 */
+	public int getMinLimit();
+
+	/**
+	 * @param minLimit The lower bound of the limit.
+	 */
+	public void setMinLimit(int minLimit);
+
+	/**
+	 * @return The upper bound of the limit.
+	 */
+	public int getMaxLimit();
+
+	/**
+	 * @param maxLimit The upper bound of the limit.
+	 */
+	public void setMaxLimit(int maxLimit);
+
+	/**
+	 * @return Maximum number of invocations waiting for a free slot.
+	 */
+	public int getMaxQueueSize();
+
+	/**
+	 * @param maxQueueSize Maximum number of invocations waiting for a free
+	 *                     slot.
+	 */
+	public void setMaxQueueSize(int maxQueueSize);
+
+	/**
+	 * @return Milliseconds an invocation waits for a free slot at most.
+	 */
+	public long getMaxWaitMillis();
+
+	/**
+	 * @param maxWaitMillis Milliseconds an invocation waits for a free slot at
+	 *                      most.
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis);
+}
@@ -0,0 +1,38 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.exceptionhandler;
+
+/**
+ * This exception is thrown if a safety facade sheds an invocation because its
+ * concurrency limit has been reached.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ *
+ * @see ch.elca.el4j.services.exceptionhandler.AdaptiveConcurrencyLimiter
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param message
+	 *      The exception's message.
+	 */
+	public ConcurrencyLimitExceededException(String message) {
+		super(message);
+	}
+}
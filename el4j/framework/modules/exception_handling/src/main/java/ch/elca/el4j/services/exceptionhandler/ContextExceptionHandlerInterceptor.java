@@ -17,6 +17,8 @@
 
 package ch.elca.el4j.services.exceptionhandler;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -91,6 +93,13 @@ public class ContextExceptionHandlerInterceptor
 
 	/** The policies. */
 	private Map m_policies;
+	
+	/** The exception routers of the policies by context. */
+	private Map<Object, ExceptionRouter> m_routers
+		= new HashMap<Object, ExceptionRouter>();
+	
+	/** Whether an exception handler of any policy may request a retry. */
+	private boolean m_retryPossible;
 
 	/**
 	 * Default constructor. Configures the interceptor to handle only those
@@ -127,6 +136,30 @@ public class ContextExceptionHandlerInterceptor
 	 */
 	public void setPolicies(Map policies) {
 		m_policies = policies;
+		
+		Map<Object, ExceptionRouter> routers
+			= new HashMap<Object, ExceptionRouter>();
+		boolean retryPossible = false;
+		if (policies != null) {
+			for (Iterator i = policies.entrySet().iterator(); i.hasNext();) {
+				Map.Entry entry = (Map.Entry) i.next();
+				List list = (List) entry.getValue();
+				ExceptionRouter router = new ExceptionRouter(list == null
+					? null : (ExceptionConfiguration[]) list.toArray(
+						new ExceptionConfiguration[list.size()]));
+				routers.put(entry.getKey(), router);
+				retryPossible |= router.isRetryPossible();
+			}
+		}
+		m_routers = routers;
+		m_retryPossible = retryPossible;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	protected boolean isRetryPossible() {
+		return m_retryPossible;
 	}
 
 	/**
@@ -144,10 +177,12 @@ public class ContextExceptionHandlerInterceptor
 			throw new MissingContextException("No context has been set.", t);
 		}
 		
-		List list = (List) m_policies.get(context);
-		
-		ExceptionConfiguration[] config = (ExceptionConfiguration[]) list.
-		toArray(new ExceptionConfiguration[list.size()]);
-		return doHandleException(t, invocation, config);
+		ExceptionRouter router = m_routers.get(context);
+		if (router == null) {
+			// no policy for this context, apply the default behaviour
+			s_logger.debug("No policy for context '" + context + "'.");
+			router = new ExceptionRouter(null);
+		}
+		return doHandleException(t, invocation, router);
 	}
 }
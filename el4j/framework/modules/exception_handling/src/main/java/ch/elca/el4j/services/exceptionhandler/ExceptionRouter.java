@@ -0,0 +1,141 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.exceptionhandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.elca.el4j.services.exceptionhandler.handler.ExceptionHandler;
+import ch.elca.el4j.services.exceptionhandler.handler.RethrowExceptionHandler;
+import ch.elca.el4j.services.exceptionhandler.handler.SimpleLogExceptionHandler;
+
+/**
+ * Routes exceptions to the exception configurations that may handle them.
+ * The candidates of an exception class are computed once from the exception
+ * types of the {@link ClassExceptionConfiguration}s and cached; other
+ * exception configurations, including subclasses of
+ * {@link ClassExceptionConfiguration} which may override
+ * {@link ExceptionConfiguration#handlesExceptions}, are candidates for all
+ * exceptions. The candidates keep the order of the configurations and still
+ * have to be asked with {@link ExceptionConfiguration#handlesExceptions}.
+ *
+ * <p>The router also tells whether any of the exception handlers is able to
+ * request a retry, which allows exception handler interceptors to skip the
+ * preparation of retries if not.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ExceptionRouter {
+
+	/** The exception configurations in the order they are asked. */
+	private final ExceptionConfiguration[] m_configurations;
+	
+	/** The candidate configurations by exception class. */
+	private final ConcurrentMap<Class<?>, ExceptionConfiguration[]> m_routes
+		= new ConcurrentHashMap<Class<?>, ExceptionConfiguration[]>();
+	
+	/** Whether any of the exception handlers may request a retry. */
+	private final boolean m_retryPossible;
+	
+	/**
+	 * Creates a router for the given exception configurations.
+	 *
+	 * @param configurations
+	 *      The exception configurations, may be <code>null</code>.
+	 */
+	public ExceptionRouter(ExceptionConfiguration[] configurations) {
+		m_configurations = configurations == null
+			? new ExceptionConfiguration[0] : configurations.clone();
+		
+		boolean retryPossible = false;
+		for (ExceptionConfiguration configuration : m_configurations) {
+			retryPossible |= isRetryPossible(configuration.getExceptionHandler());
+		}
+		m_retryPossible = retryPossible;
+	}
+	
+	/**
+	 * @return Returns <code>true</code> if any of the exception handlers may
+	 *      request a retry.
+	 */
+	public boolean isRetryPossible() {
+		return m_retryPossible;
+	}
+	
+	/**
+	 * @param t
+	 *      The exception to route.
+	 *
+	 * @return Returns the exception configurations that may handle the given
+	 *      exception, in configuration order.
+	 */
+	public ExceptionConfiguration[] getCandidates(Throwable t) {
+		Class<?> exceptionClass = t.getClass();
+		ExceptionConfiguration[] candidates = m_routes.get(exceptionClass);
+		if (candidates == null) {
+			candidates = computeCandidates(exceptionClass);
+			m_routes.putIfAbsent(exceptionClass, candidates);
+		}
+		return candidates;
+	}
+	
+	/**
+	 * @param exceptionClass
+	 *      The class of the exception to route.
+	 *
+	 * @return Returns the exception configurations that may handle exceptions
+	 *      of the given class.
+	 */
+	private ExceptionConfiguration[] computeCandidates(Class<?> exceptionClass) {
+		List<ExceptionConfiguration> candidates
+			= new ArrayList<ExceptionConfiguration>();
+		for (ExceptionConfiguration configuration : m_configurations) {
+			// exact class only, subclasses may handle other exceptions
+			if (configuration.getClass() == ClassExceptionConfiguration.class) {
+				Class[] types
+					= ((ClassExceptionConfiguration) configuration).getExceptionTypes();
+				if (types != null) {
+					for (Class type : types) {
+						if (type.isAssignableFrom(exceptionClass)) {
+							candidates.add(configuration);
+							break;
+						}
+					}
+				}
+			} else {
+				candidates.add(configuration);
+			}
+		}
+		return candidates.toArray(new ExceptionConfiguration[candidates.size()]);
+	}
+	
+	/**
+	 * @param handler
+	 *      The exception handler, may be <code>null</code>.
+	 *
+	 * @return Returns <code>false</code> if the exception handler is known to
+	 *      never request a retry.
+	 */
+	private static boolean isRetryPossible(ExceptionHandler handler) {
+		// exact classes only, subclasses could request retries
+		return handler == null
+			|| !(handler.getClass() == RethrowExceptionHandler.class
+				|| handler.getClass() == SimpleLogExceptionHandler.class);
+	}
+}
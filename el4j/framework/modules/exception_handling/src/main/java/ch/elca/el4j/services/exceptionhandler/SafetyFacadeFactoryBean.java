@@ -17,6 +17,7 @@
 
 package ch.elca.el4j.services.exceptionhandler;
 
+import ch.elca.el4j.services.exceptionhandler.handler.ExceptionHandler;
 import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
 
 /**
@@ -31,6 +32,12 @@ public class SafetyFacadeFactoryBean extends
 
 	/** The exception configurations to use. */
 	private ExceptionConfiguration[] m_exceptionConfigurations;
+	
+	/** The limiter of concurrent invocations. */
+	private AdaptiveConcurrencyLimiter m_concurrencyLimiter;
+	
+	/** The handler of shed invocations. */
+	private ExceptionHandler m_bulkheadFallback;
 
 	/**
 	 * Default constructor. Configures the proxy to handle only those exceptions
@@ -52,6 +59,21 @@ public class SafetyFacadeFactoryBean extends
 			ExceptionConfiguration[] exceptionConfigurations) {
 		m_exceptionConfigurations = exceptionConfigurations;
 	}
+	
+	/**
+	 * @see SafetyFacadeInterceptor#setConcurrencyLimiter(AdaptiveConcurrencyLimiter)
+	 */
+	public void setConcurrencyLimiter(
+			AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		m_concurrencyLimiter = concurrencyLimiter;
+	}
+	
+	/**
+	 * @see SafetyFacadeInterceptor#setBulkheadFallback(ExceptionHandler)
+	 */
+	public void setBulkheadFallback(ExceptionHandler bulkheadFallback) {
+		m_bulkheadFallback = bulkheadFallback;
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -71,6 +93,8 @@ public class SafetyFacadeFactoryBean extends
 		
 		SafetyFacadeInterceptor interceptor = new SafetyFacadeInterceptor();
 		interceptor.setExceptionConfigurations(m_exceptionConfigurations);
+		interceptor.setConcurrencyLimiter(m_concurrencyLimiter);
+		interceptor.setBulkheadFallback(m_bulkheadFallback);
 		return interceptor;
 	}
 }
@@ -19,6 +19,8 @@ package ch.elca.el4j.services.exceptionhandler;
 
 import org.aopalliance.intercept.MethodInvocation;
 
+import ch.elca.el4j.services.exceptionhandler.handler.ExceptionHandler;
+
 /**
  * This interceptor implements a safety facade. It allows to catch any
  * exceptions thrown by the proxied bean and to handle them by exception
@@ -28,6 +30,13 @@ import org.aopalliance.intercept.MethodInvocation;
  * it. Instead use the {@link
  * ch.elca.el4j.services.exceptionhandler.SafetyFacadeFactoryBean}.
  *
+ * <p/>If a {@link AdaptiveConcurrencyLimiter} is set, the safety facade also
+ * acts as bulkhead: invocations beyond the concurrency limit are not passed
+ * to the target but shed with a {@link ConcurrencyLimitExceededException},
+ * which is handed to the bulkhead fallback handler if one is set. The
+ * invocation holds its slot until it is finished, but the limit adapts to
+ * each attempt of it alone, without the delays between retries.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Andreas Bur (ABU)
@@ -39,6 +48,15 @@ public class SafetyFacadeInterceptor
 	/** The exception configurations. */
 	ExceptionConfiguration[] m_exceptionConfigurations;
 	
+	/** Routes the exceptions to the exception configurations. */
+	private ExceptionRouter m_router = new ExceptionRouter(null);
+	
+	/** Limits the concurrent invocations, <code>null</code> for no limit. */
+	private AdaptiveConcurrencyLimiter m_concurrencyLimiter;
+	
+	/** Handles shed invocations, <code>null</code> to throw the exception. */
+	private ExceptionHandler m_bulkheadFallback;
+	
 	/**
 	 * Default constructor. Configures the interceptor to handle only those
 	 * exceptions that are <b>not</b> defined in the signature (excluding
@@ -61,6 +79,108 @@ public class SafetyFacadeInterceptor
 	public void setExceptionConfigurations(
 			ExceptionConfiguration[] exceptionConfigurations) {
 		m_exceptionConfigurations = exceptionConfigurations;
+		m_router = new ExceptionRouter(exceptionConfigurations);
+	}
+	
+	/**
+	 * Sets the limiter of concurrent invocations. Each target needs its own
+	 * limiter.
+	 *
+	 * @param concurrencyLimiter
+	 *      The limiter to set, <code>null</code> (default) for no limit.
+	 */
+	public void setConcurrencyLimiter(
+			AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		m_concurrencyLimiter = concurrencyLimiter;
+	}
+	
+	/**
+	 * Sets the handler of invocations shed by the concurrency limiter. It
+	 * gets a {@link ConcurrencyLimitExceededException} and must not request
+	 * retries.
+	 *
+	 * @param bulkheadFallback
+	 *      The handler to set, <code>null</code> (default) to throw the
+	 *      exception to the caller.
+	 */
+	public void setBulkheadFallback(ExceptionHandler bulkheadFallback) {
+		m_bulkheadFallback = bulkheadFallback;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		AdaptiveConcurrencyLimiter limiter = m_concurrencyLimiter;
+		if (limiter == null) {
+			return super.invoke(invocation);
+		}
+		if (!limiter.acquire()) {
+			return shed(invocation, limiter);
+		}
+		try {
+			return super.invoke(invocation);
+		} finally {
+			limiter.release();
+		}
+	}
+	
+	/**
+	 * Attempts the given invocation and adapts the concurrency limit to the
+	 * attempt, if there is a limiter.
+	 *
+	 * {@inheritDoc}
+	 */
+	protected Object attempt(MethodInvocation invocation) throws Throwable {
+		AdaptiveConcurrencyLimiter limiter = m_concurrencyLimiter;
+		if (limiter == null) {
+			return super.attempt(invocation);
+		}
+		long start = System.nanoTime();
+		try {
+			Object result = super.attempt(invocation);
+			limiter.recordAttempt(System.nanoTime() - start, false);
+			return result;
+		} catch (Throwable t) {
+			limiter.recordAttempt(System.nanoTime() - start,
+				limiter.isFailure(t));
+			throw t;
+		}
+	}
+	
+	/**
+	 * Sheds the given invocation.
+	 *
+	 * @param invocation
+	 *      The invocation that exceeds the concurrency limit.
+	 *
+	 * @param limiter
+	 *      The limiter that rejected the invocation.
+	 *
+	 * @return Returns the result of the bulkhead fallback handler.
+	 *
+	 * @throws Throwable
+	 *      The {@link ConcurrencyLimitExceededException} if there is no
+	 *      fallback handler, or any exception of the handler.
+	 */
+	protected Object shed(MethodInvocation invocation,
+			AdaptiveConcurrencyLimiter limiter) throws Throwable {
+		
+		ConcurrencyLimitExceededException e
+			= new ConcurrencyLimitExceededException("Concurrency limit of "
+				+ limiter.getLimit() + " reached, invocation of method '"
+				+ invocation.getMethod().getName() + "' shed.");
+		if (m_bulkheadFallback == null) {
+			throw e;
+		}
+		return m_bulkheadFallback.handleException(e, this, invocation);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	protected boolean isRetryPossible() {
+		return m_router.isRetryPossible();
 	}
 
 	/**
@@ -69,6 +189,6 @@ public class SafetyFacadeInterceptor
 	protected Object handleException(Throwable t, MethodInvocation invocation)
 		throws Throwable {
 		
-		return doHandleException(t, invocation, m_exceptionConfigurations);
+		return doHandleException(t, invocation, m_router);
 	}
 }
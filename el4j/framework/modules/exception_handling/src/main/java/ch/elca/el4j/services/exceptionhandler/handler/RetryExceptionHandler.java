@@ -17,6 +17,8 @@
 
 package ch.elca.el4j.services.exceptionhandler.handler;
 
+import java.util.Random;
+
 import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 
@@ -27,18 +29,56 @@ import ch.elca.el4j.services.exceptionhandler.RetryException;
  * This class implements an exception handler that tries to call the target
  * several times after waiting a configurable delay.
  *
+ * <p>The delay can grow exponentially with each retry of an invocation
+ * (<code>backoffMultiplier</code>, capped by <code>maxSleepMillis</code>) and
+ * be randomized (<code>jitter</code>), so that clients failing at the same
+ * time do not retry at the same time. A retry budget limits the number of
+ * retries over all invocations per period: if a service is down, further
+ * failures are passed on instead of multiplying the load by the number of
+ * retries.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Andreas Bur (ABU)
  */
 public class RetryExceptionHandler extends AbstractRetryExceptionHandler {
 
+	/** The default period of the retry budget in milli seconds. */
+	private static final long DEFAULT_BUDGET_PERIOD_MILLIS = 1000;
+	
+	/** Randomizes the delays. */
+	private static Random s_random = new Random();
+	
 	/**
 	 * Time to wait between two successive invocations in milli seconds. Default
 	 * is <code>0</code>.
 	 */
 	private int m_sleepMillis = 0;
 	
+	/** The factor the delay grows by with each retry. Default is <code>1</code>. */
+	private double m_backoffMultiplier = 1;
+	
+	/** The maximum delay in milli seconds, <code>0</code> for none. */
+	private int m_maxSleepMillis = 0;
+	
+	/** The randomized fraction of the delay. Default is <code>0</code>. */
+	private double m_jitter = 0;
+	
+	/** The number of retries allowed per period, <code>0</code> for any. */
+	private int m_retryBudget = 0;
+	
+	/** The period of the retry budget in milli seconds. */
+	private long m_budgetPeriodMillis = DEFAULT_BUDGET_PERIOD_MILLIS;
+	
+	/** Guards the retry budget. */
+	private final Object m_budgetLock = new Object();
+	
+	/** The start of the current budget period. */
+	private long m_budgetPeriodStart;
+	
+	/** The number of retries in the current budget period. */
+	private int m_budgetUsed;
+	
 	/**
 	 * Sets the amount of time in milli seconds between two successive
 	 * invocations.
@@ -49,6 +89,62 @@ public class RetryExceptionHandler extends AbstractRetryExceptionHandler {
 	public void setSleepMillis(int sleepMillis) {
 		m_sleepMillis = sleepMillis;
 	}
+	
+	/**
+	 * Sets the factor the delay is multiplied with for each further retry of
+	 * an invocation. Default is <code>1</code>, i.e. a constant delay.
+	 *
+	 * @param backoffMultiplier
+	 *      The factor to set, at least <code>1</code>.
+	 */
+	public void setBackoffMultiplier(double backoffMultiplier) {
+		m_backoffMultiplier = Math.max(backoffMultiplier, 1);
+	}
+	
+	/**
+	 * Sets the maximum delay between two successive invocations.
+	 *
+	 * @param maxSleepMillis
+	 *      The maximum time in milli seconds to wait, <code>0</code> (default)
+	 *      for no limit.
+	 */
+	public void setMaxSleepMillis(int maxSleepMillis) {
+		m_maxSleepMillis = maxSleepMillis;
+	}
+	
+	/**
+	 * Sets the fraction of the delay that is randomized. The actual delay is
+	 * between <code>(1 - jitter) * delay</code> and <code>delay</code>.
+	 *
+	 * @param jitter
+	 *      The fraction between <code>0</code> (default) and <code>1</code>.
+	 */
+	public void setJitter(double jitter) {
+		m_jitter = Math.min(Math.max(jitter, 0), 1);
+	}
+	
+	/**
+	 * Sets the number of retries this handler allows over all invocations
+	 * per budget period. When the budget is spent, the exception is passed
+	 * on instead of being retried.
+	 *
+	 * @param retryBudget
+	 *      The number of retries per period, <code>0</code> (default) for no
+	 *      limit.
+	 */
+	public void setRetryBudget(int retryBudget) {
+		m_retryBudget = retryBudget;
+	}
+	
+	/**
+	 * Sets the period of the retry budget. Default is one second.
+	 *
+	 * @param budgetPeriodMillis
+	 *      The period in milli seconds.
+	 */
+	public void setBudgetPeriodMillis(long budgetPeriodMillis) {
+		m_budgetPeriodMillis = budgetPeriodMillis;
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -57,10 +153,66 @@ public class RetryExceptionHandler extends AbstractRetryExceptionHandler {
 			AbstractExceptionHandlerInterceptor exceptionInvoker,
 			MethodInvocation invocation, Logger logger) throws Throwable {
 		
-		if (m_sleepMillis > 0) {
-			Thread.sleep(m_sleepMillis);
+		if (!acquireRetryBudget()) {
+			logger.debug("Retry budget spent, not retrying "
+				+ getInvocationDescription(invocation) + ".");
+			throw t;
+		}
+		
+		long sleepMillis = getSleepMillis(getAttempt());
+		if (sleepMillis > 0) {
+			Thread.sleep(sleepMillis);
 		}
 		
 		throw new RetryException(getRetries());
 	}
+	
+	/**
+	 * @return Returns the number of retries of the current invocation so far.
+	 */
+	protected int getAttempt() {
+		int retriesLeft = AbstractExceptionHandlerInterceptor.getRetries();
+		return retriesLeft == -1 ? 0 : Math.max(getRetries() - retriesLeft, 0);
+	}
+	
+	/**
+	 * @param attempt
+	 *      The number of retries of the invocation so far.
+	 *
+	 * @return Returns the time in milli seconds to wait before the next retry.
+	 */
+	protected long getSleepMillis(int attempt) {
+		double sleepMillis = m_sleepMillis * Math.pow(m_backoffMultiplier, attempt);
+		if (m_maxSleepMillis > 0) {
+			sleepMillis = Math.min(sleepMillis, m_maxSleepMillis);
+		}
+		if (m_jitter > 0) {
+			sleepMillis *= 1 - m_jitter * s_random.nextDouble();
+		}
+		return (long) sleepMillis;
+	}
+	
+	/**
+	 * Takes a retry from the retry budget.
+	 *
+	 * @return Returns <code>false</code> if the budget of the current period
+	 *      is spent.
+	 */
+	protected boolean acquireRetryBudget() {
+		if (m_retryBudget <= 0) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (m_budgetLock) {
+			if (now - m_budgetPeriodStart >= m_budgetPeriodMillis) {
+				m_budgetPeriodStart = now;
+				m_budgetUsed = 0;
+			}
+			if (m_budgetUsed >= m_retryBudget) {
+				return false;
+			}
+			m_budgetUsed++;
+			return true;
+		}
+	}
 }
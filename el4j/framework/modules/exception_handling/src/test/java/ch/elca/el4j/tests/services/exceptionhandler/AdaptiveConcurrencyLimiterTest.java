@@ -0,0 +1,285 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.exceptionhandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import ch.elca.el4j.services.exceptionhandler.AdaptiveConcurrencyLimiter;
+import ch.elca.el4j.services.exceptionhandler.ClassExceptionConfiguration;
+import ch.elca.el4j.services.exceptionhandler.ExceptionConfiguration;
+import ch.elca.el4j.services.exceptionhandler.SafetyFacadeInterceptor;
+import ch.elca.el4j.services.exceptionhandler.handler.RetryExceptionHandler;
+
+// Checkstyle: MagicNumber off
+// Checkstyle: EmptyBlock off
+
+/**
+ * This class tests the {@link AdaptiveConcurrencyLimiter}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	/** One millisecond in nanoseconds. */
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	/**
+	 * Checks that invocations beyond the limit are shed.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testShedding() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = createLimiter(2);
+		assertTrue(limiter.acquire());
+		assertTrue(limiter.acquire());
+		assertFalse("Invocation beyond the limit not shed.", limiter.acquire());
+		assertEquals(1, limiter.getRejectedCount());
+		
+		limiter.release(MILLI, false);
+		assertTrue("Released slot not available.", limiter.acquire());
+		assertEquals(2, limiter.getInFlight());
+	}
+	
+	/**
+	 * Checks that the limit shrinks if the latency grows and on failures.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testAdaptation() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = createLimiter(20);
+		
+		// establish the latency of the unloaded target
+		limiter.acquire();
+		limiter.release(MILLI, false);
+		
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire();
+			limiter.release(10 * MILLI, false);
+		}
+		assertEquals("Limit not decreased on high latency.",
+			10, limiter.getLimit());
+		
+		limiter.acquire();
+		limiter.release(MILLI, true);
+		assertEquals("Limit not decreased on failure.", 9, limiter.getLimit());
+		
+		// grows again if the target is used and fast
+		for (int i = 0; i < 9; i++) {
+			limiter.acquire();
+		}
+		limiter.release(MILLI, false);
+		assertEquals("Limit not increased on low latency.",
+			10, limiter.getLimit());
+	}
+	
+	/**
+	 * Checks that queued invocations get a released slot.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testQueue() throws Exception {
+		final AdaptiveConcurrencyLimiter limiter = createLimiter(1);
+		limiter.setMaxQueueSize(1);
+		limiter.setMaxWaitMillis(10000);
+		limiter.acquire();
+		
+		final boolean[] acquired = new boolean[1];
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					acquired[0] = limiter.acquire();
+				} catch (InterruptedException e) {
+					acquired[0] = false;
+				}
+			}
+		};
+		waiter.start();
+		while (limiter.getQueueLength() == 0) {
+			Thread.sleep(10);
+		}
+		limiter.release(MILLI, false);
+		waiter.join(10000);
+		assertTrue("Queued invocation did not get the slot.", acquired[0]);
+		assertEquals(0, limiter.getRejectedCount());
+	}
+	
+	/**
+	 * Checks that only timeouts and infrastructure failures count as failed.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testFailureTypes() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = createLimiter(10);
+		assertTrue(limiter.isFailure(new SocketTimeoutException()));
+		assertTrue("Cause not inspected.", limiter.isFailure(
+			new IllegalStateException(new TimeoutException())));
+		assertFalse("Application exception counted as failure.",
+			limiter.isFailure(new IllegalArgumentException()));
+		
+		limiter.setFailureTypes(new Class<?>[] {IllegalArgumentException.class});
+		assertTrue(limiter.isFailure(new IllegalArgumentException()));
+		assertFalse(limiter.isFailure(new SocketTimeoutException()));
+	}
+	
+	/**
+	 * Checks that a safety facade shrinks the limit on infrastructure
+	 * failures only.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testSafetyFacadeFailures() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = createLimiter(10);
+		final RuntimeException[] exception = new RuntimeException[1];
+		Adder adder = createSafetyFacade(new Adder() {
+			public int add(int a, int b) {
+				throw exception[0];
+			}
+		}, limiter, null);
+		
+		exception[0] = new IllegalArgumentException();
+		try {
+			adder.add(1, 2);
+			fail("Exception not passed on.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals("Limit decreased on application exception.",
+			10, limiter.getLimit());
+		
+		exception[0] = new IllegalStateException(new SocketTimeoutException());
+		try {
+			adder.add(1, 2);
+			fail("Exception not passed on.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("Limit not decreased on timeout.", 9, limiter.getLimit());
+		assertEquals("Slots not released.", 0, limiter.getInFlight());
+	}
+	
+	/**
+	 * Checks that a safety facade measures each attempt of an invocation,
+	 * without the delays between retries, and holds the slot over all
+	 * attempts.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	@Test
+	public void testSafetyFacadeMeasuresAttempts() throws Exception {
+		final AdaptiveConcurrencyLimiter limiter = createLimiter(10);
+		final int[] inFlight = new int[1];
+		final int[] failures = {1};
+		Adder target = new Adder() {
+			public int add(int a, int b) {
+				inFlight[0] = limiter.getInFlight();
+				if (failures[0]-- > 0) {
+					throw new IllegalArgumentException();
+				}
+				return a + b;
+			}
+		};
+		RetryExceptionHandler retry = new RetryExceptionHandler();
+		retry.setRetries(1);
+		retry.setSleepMillis(300);
+		ClassExceptionConfiguration configuration
+			= new ClassExceptionConfiguration();
+		configuration.setExceptionTypes(
+			new Class[] {IllegalArgumentException.class});
+		configuration.setExceptionHandler(retry);
+		
+		Adder adder = createSafetyFacade(target, limiter, configuration);
+		assertEquals(3, adder.add(1, 2));
+		
+		assertEquals("Attempts not counted.", 2, limiter.getCompletedCount());
+		assertEquals("Slot not held by the retry.", 1, inFlight[0]);
+		assertEquals("Slot not released.", 0, limiter.getInFlight());
+		assertTrue("Delay between retries measured: "
+			+ limiter.getAverageLatencyMillis(),
+			limiter.getAverageLatencyMillis() < 100);
+	}
+	
+	/**
+	 * @param target
+	 *      The bean to guard.
+	 *
+	 * @param limiter
+	 *      The concurrency limiter of the safety facade.
+	 *
+	 * @param configuration
+	 *      The exception configuration of the safety facade, may be
+	 *      <code>null</code>.
+	 *
+	 * @return Returns a safety facade for the given bean that passes on
+	 *      unhandled exceptions.
+	 */
+	private Adder createSafetyFacade(Adder target,
+		AdaptiveConcurrencyLimiter limiter,
+		ExceptionConfiguration configuration) {
+		SafetyFacadeInterceptor interceptor = new SafetyFacadeInterceptor();
+		interceptor.setDefaultBehaviourConsume(false);
+		interceptor.setConcurrencyLimiter(limiter);
+		if (configuration != null) {
+			interceptor.setExceptionConfigurations(
+				new ExceptionConfiguration[] {configuration});
+		}
+		
+		ProxyFactory factory = new ProxyFactory(target);
+		factory.addAdvice(interceptor);
+		return (Adder) factory.getProxy();
+	}
+	
+	/**
+	 * @param limit
+	 *      The initial limit.
+	 *
+	 * @return Returns a new limiter.
+	 *
+	 * @throws Exception
+	 *      Whenever something goes wrong.
+	 */
+	private AdaptiveConcurrencyLimiter createLimiter(int limit)
+		throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+		limiter.setInitialLimit(limit);
+		limiter.afterPropertiesSet();
+		return limiter;
+	}
+}
+
+//Checkstyle: MagicNumber on
+//Checkstyle: EmptyBlock on
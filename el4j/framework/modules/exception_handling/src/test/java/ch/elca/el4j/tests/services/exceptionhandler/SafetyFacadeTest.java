@@ -18,12 +18,23 @@
 package ch.elca.el4j.tests.services.exceptionhandler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+
+import org.aopalliance.intercept.MethodInvocation;
 import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.context.ApplicationContext;
 
 import ch.elca.el4j.core.context.ModuleApplicationContext;
+import ch.elca.el4j.services.exceptionhandler.ClassExceptionConfiguration;
+import ch.elca.el4j.services.exceptionhandler.ExceptionConfiguration;
+import ch.elca.el4j.services.exceptionhandler.ExceptionRouter;
+import ch.elca.el4j.services.exceptionhandler.SafetyFacadeInterceptor;
+import ch.elca.el4j.services.exceptionhandler.handler.RethrowExceptionHandler;
+import ch.elca.el4j.services.exceptionhandler.handler.RetryExceptionHandler;
 
 // Checkstyle: MagicNumber off
 // Checkstyle: EmptyBlock off
@@ -236,6 +247,140 @@ public class SafetyFacadeTest {
 			fail("Caught unexpected exception (second call): " + t);
 		}
 	}
+	
+	/**
+	 * Checks that the delay grows with each retry and is capped.
+	 */
+	@Test
+	public void testRetryBackoff() {
+		BackoffRetryExceptionHandler handler = new BackoffRetryExceptionHandler();
+		handler.setSleepMillis(10);
+		handler.setBackoffMultiplier(2);
+		handler.setMaxSleepMillis(25);
+		
+		assertEquals("Wrong delay of first retry.", 10, handler.getSleepMillis(0));
+		assertEquals("Wrong delay of second retry.", 20, handler.getSleepMillis(1));
+		assertEquals("Delay not capped.", 25, handler.getSleepMillis(2));
+		assertEquals("Delay not capped.", 25, handler.getSleepMillis(10));
+	}
+	
+	/**
+	 * Checks that the jitter randomizes the delay within its fraction.
+	 */
+	@Test
+	public void testRetryJitter() {
+		BackoffRetryExceptionHandler handler = new BackoffRetryExceptionHandler();
+		handler.setSleepMillis(100);
+		handler.setJitter(0.5);
+		
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < 200; i++) {
+			long sleepMillis = handler.getSleepMillis(0);
+			min = Math.min(min, sleepMillis);
+			max = Math.max(max, sleepMillis);
+		}
+		assertTrue("Delay below the jitter fraction: " + min, min >= 50);
+		assertTrue("Delay above the configured delay: " + max, max <= 100);
+		assertTrue("Delay not randomized.", min < max);
+	}
+	
+	/**
+	 * Checks that the retries of all invocations are limited by the retry
+	 * budget and that the exception is passed on once it is spent.
+	 */
+	@Test
+	public void testRetryBudget() {
+		RetryExceptionHandler handler = new RetryExceptionHandler();
+		handler.setRetries(5);
+		handler.setRetryBudget(3);
+		handler.setBudgetPeriodMillis(60 * 60 * 1000);
+		
+		ClassExceptionConfiguration configuration
+			= new ClassExceptionConfiguration();
+		configuration.setExceptionTypes(
+			new Class[] {IllegalArgumentException.class});
+		configuration.setExceptionHandler(handler);
+		
+		AImpl target = new AImpl();
+		A a = createSafetyFacade(target, configuration);
+		
+		target.setRetries(2);
+		assertEquals("Calculated wrong value (first call)", 2, a.sub(10, 8));
+		
+		// one retry left in the budget, but two needed
+		target.setRetries(2);
+		try {
+			a.sub(10, 8);
+			fail("Retried although the retry budget is spent.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Checks that subclasses of {@link ClassExceptionConfiguration} are asked
+	 * for all exceptions, since they may override
+	 * {@link ExceptionConfiguration#handlesExceptions}.
+	 */
+	@Test
+	public void testRoutingOfSubclassedConfiguration() {
+		ClassExceptionConfiguration plain = new ClassExceptionConfiguration();
+		plain.setExceptionTypes(new Class[] {IllegalStateException.class});
+		plain.setExceptionHandler(new RethrowExceptionHandler());
+		
+		ClassExceptionConfiguration subclassed = new ClassExceptionConfiguration() {
+			@Override
+			public boolean handlesExceptions(Throwable t,
+				MethodInvocation invocation) {
+				return true;
+			}
+		};
+		subclassed.setExceptionTypes(new Class[] {IllegalStateException.class});
+		subclassed.setExceptionHandler(new RethrowExceptionHandler());
+		
+		ExceptionRouter router = new ExceptionRouter(
+			new ExceptionConfiguration[] {plain, subclassed});
+		assertEquals("Wrong candidates.", Arrays.asList(subclassed),
+			Arrays.asList(router.getCandidates(new IllegalArgumentException())));
+		assertEquals("Wrong candidates.", Arrays.asList(plain, subclassed),
+			Arrays.asList(router.getCandidates(new IllegalStateException())));
+	}
+	
+	/**
+	 * @param target
+	 *      The bean to guard.
+	 *
+	 * @param configuration
+	 *      The exception configuration of the safety facade.
+	 *
+	 * @return Returns a safety facade for the given bean.
+	 */
+	private A createSafetyFacade(A target,
+		ExceptionConfiguration configuration) {
+		SafetyFacadeInterceptor interceptor = new SafetyFacadeInterceptor();
+		interceptor.setExceptionConfigurations(
+			new ExceptionConfiguration[] {configuration});
+		
+		ProxyFactory factory = new ProxyFactory(target);
+		factory.addAdvice(interceptor);
+		return (A) factory.getProxy();
+	}
+	
+	/**
+	 * Exposes the delays of the retry exception handler.
+	 */
+	private static class BackoffRetryExceptionHandler
+		extends RetryExceptionHandler {
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long getSleepMillis(int attempt) {
+			return super.getSleepMillis(attempt);
+		}
+	}
 }
 //Checkstyle: MagicNumber on
 //Checkstyle: EmptyBlock on
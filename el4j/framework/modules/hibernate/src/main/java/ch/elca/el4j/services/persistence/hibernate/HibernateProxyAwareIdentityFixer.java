@@ -18,18 +18,21 @@ package ch.elca.el4j.services.persistence.hibernate;
 
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Version;
 
 import org.hibernate.collection.PersistentCollection;
 import org.hibernate.proxy.HibernateProxy;
@@ -104,8 +107,15 @@ public class HibernateProxyAwareIdentityFixer
 	}
 	
 	/** Cache for {@link #idAccessibleObject(Class)}. */
-	private static Map<Class<?>, AccessibleObject> s_cachedAccessibleObjects
-		= new HashMap<Class<?>, AccessibleObject>();
+	private static ConcurrentMap<Class<?>, AccessibleObject> s_cachedAccessibleObjects
+		= new ConcurrentHashMap<Class<?>, AccessibleObject>();
+	
+	/**
+	 * Cache for {@link #versionAccessibleObject(Class)}. Holds an empty array
+	 * for classes without version.
+	 */
+	private static ConcurrentMap<Class<?>, AccessibleObject[]> s_cachedVersionAccessibleObjects
+		= new ConcurrentHashMap<Class<?>, AccessibleObject[]>();
 	
 	/**
 	 * Returns the AccessibleObject holding the identifier in objects of class {@code c}.
@@ -153,6 +163,55 @@ public class HibernateProxyAwareIdentityFixer
 		return cachedAo;
 	}
 	
+	/**
+	 * Returns the AccessibleObject annotated with {@link Version} in objects of class {@code c}.
+	 * @param c see above
+	 * @return see above, or {@code null} if objects of this class are not versioned
+	 */
+	private static AccessibleObject versionAccessibleObject(Class<?> c) {
+		AccessibleObject[] cachedAo = s_cachedVersionAccessibleObjects.get(c);
+		if (cachedAo == null) {
+			cachedAo = new AccessibleObject[0];
+			for (AccessibleObject ao : instanceAccessibleObjects(c)) {
+				if (ao.getAnnotation(Version.class) != null) {
+					cachedAo = new AccessibleObject[] {ao};
+					break;
+				}
+			}
+			if (cachedAo.length > 0 && !Modifier.isPublic(((Member) cachedAo[0]).getModifiers())) {
+				final AccessibleObject AO = cachedAo[0];
+				AccessController.doPrivileged(new PrivilegedAction<Object>() {
+					public Object run() {
+						AO.setAccessible(true);
+						return null;
+					}
+				});
+			}
+			s_cachedVersionAccessibleObjects.put(c, cachedAo);
+		}
+		return cachedAo.length > 0 ? cachedAo[0] : null;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected Object version(Object o) {
+		if (!o.getClass().isAnnotationPresent(Entity.class)) {
+			return null;
+		}
+		AccessibleObject ao = versionAccessibleObject(o.getClass());
+		try {
+			if (ao instanceof Field) {
+				return ((Field) ao).get(o);
+			} else if (ao instanceof Method) {
+				return ((Method) ao).invoke(o, (Object[]) null);
+			} else {
+				return null;
+			}
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	protected Object id(Object o) {
@@ -237,6 +296,27 @@ public class HibernateProxyAwareIdentityFixer
 		return iv;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p> Besides primitives, all final (and enum) types that are neither
+	 * entities, arrays, collections nor maps are immutable values for this
+	 * identity fixer, e.g. String, Integer or BigDecimal.
+	 */
+	@Override
+	protected boolean immutableType(Class<?> c) {
+		if (c.isPrimitive() || c.isEnum()) {
+			return true;
+		} else if (!Modifier.isFinal(c.getModifiers()) || c.isArray()) {
+			return false;
+		} else {
+			return !c.isAnnotationPresent(Entity.class)
+				&& !Iterable.class.isAssignableFrom(c)
+				&& !Map.class.isAssignableFrom(c)
+				&& !Map.Entry.class.isAssignableFrom(c);
+		}
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	protected Object prepareObject(Object o) {
@@ -91,6 +91,12 @@ public class CriteriaTransformer {
 			}
 		}
 		
+		// keyset paging: only the results after the last sort key seen
+		Criteria keysetCriteria = query.getKeysetCriteria();
+		if (keysetCriteria != null) {
+			hibernateCriteria.add(el4jCriteria2HibernateCriterion(keysetCriteria));
+		}
+		
 		addOrderConstraints(hibernateCriteria, query);
 		
 		return hibernateCriteria;
@@ -27,7 +27,9 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.OptimisticLockingFailureException;
 
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
 import ch.elca.el4j.services.persistence.generic.dao.ConvenienceGenericDao;
+import ch.elca.el4j.services.persistence.generic.dao.ResultVisitor;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
 import ch.elca.el4j.services.search.QueryObject;
 
@@ -57,6 +59,60 @@ public interface ConvenienceGenericHibernateDao<T, ID extends Serializable>
 	public T saveOrUpdateAndFlush(T entity) throws DataAccessException,
 		DataIntegrityViolationException, OptimisticLockingFailureException;
 	
+	/**
+	 * Saves or updates a (possibly large) number of entities. The session is flushed
+	 * and cleared after each batch, so the first-level cache does not grow and the
+	 * statements of a batch can be sent using JDBC batching (set
+	 * <code>hibernate.jdbc.batch_size</code> accordingly).
+	 * 
+	 * Note: clearing the session detaches all the entities it contains, including
+	 * entities loaded before in the same transaction.
+	 * 
+	 * @param entities     The domain objects to save or update
+	 * @param batchSize    The number of entities written per batch
+	 * @return             The number of entities saved or updated
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 * @throws OptimisticLockingFailureException
+	 */
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize) throws DataAccessException,
+		DataIntegrityViolationException, OptimisticLockingFailureException;
+	
+	/**
+	 * Same as {@link #saveOrUpdateAll(Iterable, int)}, reporting the progress after each batch.
+	 * 
+	 * @param entities     The domain objects to save or update
+	 * @param batchSize    The number of entities written per batch
+	 * @param listener     The listener to report the progress to, may be <code>null</code>
+	 * @return             The number of entities saved or updated
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 * @throws OptimisticLockingFailureException
+	 */
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException, OptimisticLockingFailureException;
+	
+	/**
+	 * Inserts a (possibly large) number of new entities. The session is flushed after
+	 * each batch, so the inserts of a batch can be sent using JDBC batching (set
+	 * <code>hibernate.jdbc.batch_size</code> accordingly), and the inserted entities are
+	 * evicted from it afterwards, so the first-level cache does not grow and dirty
+	 * checking only concerns the current batch.
+	 * 
+	 * Unlike {@link #saveOrUpdateAll(Iterable, int, BatchProgressListener)}, the other
+	 * entities of the session stay attached. The inserted entities are detached when
+	 * this method returns.
+	 * 
+	 * @param entities     The new domain objects to insert
+	 * @param batchSize    The number of entities written per batch
+	 * @param listener     The listener to report the progress to, may be <code>null</code>
+	 * @return             The number of entities inserted
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 */
+	public int insertAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException;
+	
 	/** 
 	 * Deletes all available <code>T</code> using a HQL query.
 	 * 
@@ -87,6 +143,23 @@ public interface ConvenienceGenericHibernateDao<T, ID extends Serializable>
 	 */
 	public void deleteNoCascade(Collection<T> entities) throws DataAccessException,
 		DataIntegrityViolationException, OptimisticLockingFailureException;
+	
+	/**
+	 * Deletes all the domain objects matching the given query using HQL queries,
+	 * without loading them (only their ids are queried). Paging and ordering
+	 * constraints of the query are ignored.
+	 * 
+	 * Like {@link #deleteNoCascade(Collection)}, this method does no cascade deletion.
+	 * 
+	 * @param query The query selecting the domain objects to delete.
+	 * @return The number of deleted domain objects.
+	 * @throws OptimisticLockingFailureException
+	 *             If domain object has been modified/deleted in the meantime
+	 * @throws DataAccessException
+	 *             If general data access problem occurred
+	 */
+	public int deleteByQueryNoCascade(QueryObject query) throws DataAccessException,
+		DataIntegrityViolationException, OptimisticLockingFailureException;
 
 	/**
 	 * Retrieves all the domain objects matching the Hibernate criteria.
@@ -158,6 +231,56 @@ public interface ConvenienceGenericHibernateDao<T, ID extends Serializable>
 	public List<T> findByCriteria(DetachedCriteria hibernateCriteria, int firstResult,
 		int maxResults, DataExtent extent) throws DataAccessException;
 	
+	/**
+	 * Checks whether at least one domain object matches the given query, e.g. to
+	 * find out whether there is a next page (set the keyset of the query to the last
+	 * result of the current page, see {@link QueryObject#setKeysetFrom(Object)}).
+	 * Much cheaper than {@link #findCountByQuery(QueryObject)}, as at most one id is read.
+	 * 
+	 * The first result of the query is respected, its maximal number of results is not.
+	 * 
+	 * @param q            the search query object
+	 * @return             whether a domain object matches the query
+	 * @throws DataAccessException
+	 */
+	public boolean existsByQuery(QueryObject q) throws DataAccessException;
+	
+	/**
+	 * Streams the domain objects matching the given query to the visitor instead of
+	 * returning them as a list. The results are read using a forward-only
+	 * <code>ScrollableResults</code> and processed in chunks: the extent is loaded per
+	 * chunk and, once visited, the objects of the chunk (and their extent) are evicted
+	 * from the session, so memory consumption does not depend on the result size.
+	 * 
+	 * Paging constraints of the query are respected (set the maximal number of results
+	 * to {@link QueryObject#NO_CONSTRAINT} to visit all results). As the objects are
+	 * evicted, changes made by the visitor must be saved explicitly and flushed.
+	 * 
+	 * @param q            the search query object
+	 * @param extent       the extent to load per chunk, may be <code>null</code>
+	 * @param chunkSize    the number of objects fetched and processed at once
+	 * @param visitor      the visitor receiving the objects
+	 * @return             the number of visited objects
+	 * @throws DataAccessException
+	 */
+	public int scrollByQuery(QueryObject q, DataExtent extent, int chunkSize,
+		ResultVisitor<? super T> visitor) throws DataAccessException;
+	
+	/**
+	 * Streams the domain objects matching the Hibernate criteria to the visitor,
+	 * see {@link #scrollByQuery(QueryObject, DataExtent, int, ResultVisitor)}.
+	 * 
+	 * @param hibernateCriteria    the criteria that the result has to fulfill. The criteria
+	 *                             must return root entities.
+	 * @param extent               the extent to load per chunk, may be <code>null</code>
+	 * @param chunkSize            the number of objects fetched and processed at once
+	 * @param visitor              the visitor receiving the objects
+	 * @return                     the number of visited objects
+	 * @throws DataAccessException
+	 */
+	public int scrollByCriteria(DetachedCriteria hibernateCriteria, DataExtent extent, int chunkSize,
+		ResultVisitor<? super T> visitor) throws DataAccessException;
+	
 	/**
 	 * Retrieves the number of domain objects matching the Hibernate criteria.
 	 * 
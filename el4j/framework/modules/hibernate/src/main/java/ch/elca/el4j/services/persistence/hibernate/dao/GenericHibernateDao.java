@@ -18,22 +18,30 @@
 package ch.elca.el4j.services.persistence.hibernate.dao;
 
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.commons.lang.SerializationUtils;
 import org.hibernate.Criteria;
 import org.hibernate.EntityMode;
-import org.hibernate.FetchMode;
-import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.TransientObjectException;
 import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.DetachedCriteria;
@@ -45,8 +53,6 @@ import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.metadata.CollectionMetadata;
 import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.type.CollectionType;
-import org.hibernate.type.EntityType;
-import org.hibernate.type.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -54,14 +60,19 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.hibernate3.HibernateCallback;
+import org.springframework.orm.hibernate3.SessionFactoryUtils;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
+import ch.elca.el4j.services.persistence.generic.dao.QueryResultCache;
+import ch.elca.el4j.services.persistence.generic.dao.ResultVisitor;
 import ch.elca.el4j.services.persistence.generic.dao.annotations.ReturnsUnchangedParameter;
 import ch.elca.el4j.services.persistence.hibernate.criteria.CriteriaTransformer;
+import ch.elca.el4j.services.persistence.hibernate.dao.extent.BatchExtentLoader;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
-import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentCollection;
-import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentEntity;
 import ch.elca.el4j.services.search.QueryObject;
 import ch.elca.el4j.util.codingsupport.Reject;
 
@@ -85,10 +96,10 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	implements ConvenienceGenericHibernateDao<T, ID>, InitializingBean {
 		
 	/**
-	 * Maximal number of entities which are deleted
+	 * Default number of entities which are deleted
 	 * with a single HQL statement.
 	 */
-	private static final int MAX_BULK_DELETE = 100;
+	public static final int MAX_BULK_DELETE = 100;
 
 	/**
 	 * The logger.
@@ -105,6 +116,32 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	 */
 	private Order[] m_defaultOrder = null;
 	
+	/**
+	 * The maximal number of ids loaded with one query during extent-based fetching.
+	 */
+	private int m_extentBatchSize = BatchExtentLoader.DEFAULT_BATCH_SIZE;
+	
+	/**
+	 * The cache for the results of {@link #findByQuery(QueryObject)} and
+	 * {@link #findCountByQuery(QueryObject)}, or <code>null</code> to not cache them.
+	 */
+	private QueryResultCache m_queryResultCache;
+	
+	/**
+	 * The number of entities deleted with a single HQL statement.
+	 */
+	private int m_bulkDeleteChunkSize = MAX_BULK_DELETE;
+	
+	/**
+	 * The executor deleting the chunks of a bulk delete in parallel, or <code>null</code>.
+	 */
+	private ExecutorService m_bulkDeleteExecutor;
+	
+	/**
+	 * The Hibernate metadata of the persistent class, looked up on first use.
+	 */
+	private volatile ClassMetadata m_classMetadata;
+	
 	/**
 	 * Set up the Generic Dao. Auto-derive the parametrized type.
 	 */
@@ -265,9 +302,68 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	 *  how to use this).
 	 *
 	 */
-	@SuppressWarnings("unchecked")
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
-	public List<T> findByQuery(QueryObject q) throws DataAccessException {
+	public List<T> findByQuery(final QueryObject q) throws DataAccessException {
+		final ClassMetadata metadata = getSimpleIdMetadata();
+		if (m_queryResultCache == null || metadata == null) {
+			return doFindByQuery(q);
+		}
+		// the cache holds ids only, entities are bound to the session that loaded them
+		final List<List<T>> loaded = new ArrayList<List<T>>(1);
+		List<Serializable> ids = m_queryResultCache.get(getPersistentClass(),
+			Arrays.asList("list", getPersistentClass(), q), new QueryObjectLoader<List<Serializable>>() {
+				@Override
+				public List<Serializable> load() {
+					List<T> entities = doFindByQuery(q);
+					loaded.add(entities);
+					List<Serializable> entityIds = new ArrayList<Serializable>(entities.size());
+					for (T entity : entities) {
+						entityIds.add(getIdentifier(entity, metadata));
+					}
+					return entityIds;
+				}
+			});
+		return loaded.isEmpty() ? findByIds(ids, metadata) : loaded.get(0);
+	}
+	
+	/**
+	 * Loads the entities with the given ids in the current session, using <code>IN</code>-list
+	 * queries of at most {@link #getExtentBatchSize()} ids.
+	 * 
+	 * @param ids         the ids of the entities to load
+	 * @param metadata    the metadata of the persistent class
+	 * @return the entities in the order of the ids, without the ones that no longer exist
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> findByIds(List<Serializable> ids, ClassMetadata metadata) {
+		Map<Serializable, T> entitiesById = new HashMap<Serializable, T>();
+		List<Serializable> distinctIds = new ArrayList<Serializable>(new LinkedHashSet<Serializable>(ids));
+		for (int i = 0; i < distinctIds.size(); i += m_extentBatchSize) {
+			DetachedCriteria criteria = DetachedCriteria.forClass(getPersistentClass()).add(
+				Restrictions.in(metadata.getIdentifierPropertyName(),
+					distinctIds.subList(i, Math.min(i + m_extentBatchSize, distinctIds.size()))));
+			for (T entity : (List<T>) getConvenienceHibernateTemplate().findByCriteria(criteria)) {
+				entitiesById.put(getIdentifier(entity, metadata), entity);
+			}
+		}
+		List<T> result = new ArrayList<T>(ids.size());
+		for (Serializable id : ids) {
+			T entity = entitiesById.get(id);
+			if (entity != null) {
+				result.add(entity);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Executes {@link #findByQuery(QueryObject)} without caching.
+	 * 
+	 * @param q    the query object
+	 * @return the found entities
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> doFindByQuery(QueryObject q) {
 		DetachedCriteria hibernateCriteria = getCriteria(q);
 		
 		ConvenienceHibernateTemplate template = getConvenienceHibernateTemplate();
@@ -302,7 +398,26 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	 * @return how many elements do we find with the given query
 	 */
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
-	public int findCountByQuery(QueryObject q) throws DataAccessException {
+	public int findCountByQuery(final QueryObject q) throws DataAccessException {
+		if (m_queryResultCache == null) {
+			return doFindCountByQuery(q);
+		}
+		return m_queryResultCache.get(getPersistentClass(),
+			Arrays.asList("count", getPersistentClass(), q), new QueryObjectLoader<Integer>() {
+				@Override
+				public Integer load() {
+					return doFindCountByQuery(q);
+				}
+			});
+	}
+	
+	/**
+	 * Executes {@link #findCountByQuery(QueryObject)} without caching.
+	 * 
+	 * @param q    the query object
+	 * @return how many elements do we find with the given query
+	 */
+	private int doFindCountByQuery(QueryObject q) {
 		DetachedCriteria hibernateCriteria = getCriteria(q);
 		
 		ConvenienceHibernateTemplate template = getConvenienceHibernateTemplate();
@@ -354,6 +469,91 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		return fetchExtent(template.findByCriteria(hibernateCriteria, firstResult, maxResults), extent);
 	}
 	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public boolean existsByQuery(QueryObject q) throws DataAccessException {
+		DetachedCriteria hibernateCriteria = CriteriaTransformer.transform(q, getPersistentClass());
+		hibernateCriteria.setProjection(Projections.id());
+		
+		ConvenienceHibernateTemplate template = getConvenienceHibernateTemplate();
+		
+		return !template.findByCriteria(hibernateCriteria, Math.max(q.getFirstResult(), 0), 1).isEmpty();
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED, readOnly = true)
+	public int scrollByQuery(QueryObject q, DataExtent extent, int chunkSize,
+		ResultVisitor<? super T> visitor) throws DataAccessException {
+		
+		// no distinct root entity transformer: it cannot work on a stream of rows
+		DetachedCriteria hibernateCriteria = CriteriaTransformer.transform(q, getPersistentClass());
+		if (q.getOrderConstraints().size() == 0) {
+			hibernateCriteria = addOrder(hibernateCriteria);
+		}
+		return scroll(hibernateCriteria, q.getFirstResult(), q.getMaxResults(), extent, chunkSize, visitor);
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED, readOnly = true)
+	public int scrollByCriteria(DetachedCriteria hibernateCriteria, DataExtent extent, int chunkSize,
+		ResultVisitor<? super T> visitor) throws DataAccessException {
+		
+		return scroll(hibernateCriteria, QueryObject.NO_CONSTRAINT, QueryObject.NO_CONSTRAINT,
+			extent, chunkSize, visitor);
+	}
+	
+	/**
+	 * Streams the results of the given criteria to the visitor, chunk by chunk.
+	 * 
+	 * @param hibernateCriteria    the criteria that the result has to fulfill
+	 * @param firstResult          the index of the first result, or {@link QueryObject#NO_CONSTRAINT}
+	 * @param maxResults           the maximal number of results, or {@link QueryObject#NO_CONSTRAINT}
+	 * @param extent               the extent to load per chunk, may be <code>null</code>
+	 * @param chunkSize            the number of objects fetched and processed at once
+	 * @param visitor              the visitor receiving the objects
+	 * @return                     the number of visited objects
+	 */
+	private int scroll(final DetachedCriteria hibernateCriteria, final int firstResult, final int maxResults,
+		final DataExtent extent, final int chunkSize, final ResultVisitor<? super T> visitor) {
+		
+		Reject.ifNull(hibernateCriteria);
+		Reject.ifNull(visitor);
+		Reject.ifFalse(chunkSize > 0, "The chunk size must be positive.");
+		
+		return (Integer) getConvenienceHibernateTemplate().executeWithNativeSession(new HibernateCallback() {
+			@SuppressWarnings("unchecked")
+			public Object doInHibernate(Session session) throws HibernateException {
+				Criteria criteria = hibernateCriteria.getExecutableCriteria(session);
+				criteria.setFetchSize(chunkSize);
+				if (firstResult >= 0) {
+					criteria.setFirstResult(firstResult);
+				}
+				if (maxResults > 0) {
+					criteria.setMaxResults(maxResults);
+				}
+				
+				ChunkVisitor chunkVisitor = new ChunkVisitor(session, extent, visitor);
+				List<T> chunk = new ArrayList<T>(chunkSize);
+				ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+				try {
+					while (!chunkVisitor.isStopped() && results.next()) {
+						chunk.add((T) results.get(0));
+						if (chunk.size() == chunkSize) {
+							chunkVisitor.visit(chunk);
+							chunk.clear();
+						}
+					}
+					if (!chunkVisitor.isStopped() && !chunk.isEmpty()) {
+						chunkVisitor.visit(chunk);
+					}
+				} finally {
+					results.close();
+				}
+				return chunkVisitor.getVisited();
+			}
+		});
+	}
+	
 	/** {@inheritDoc} */
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public int findCountByCriteria(DetachedCriteria hibernateCriteria)
@@ -371,6 +571,7 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		DataIntegrityViolationException, OptimisticLockingFailureException {
 		
 		getConvenienceHibernateTemplate().saveOrUpdateStrong(entity, getPersistentClassName());
+		invalidateQueryResultCache();
 		return entity;
 	}
 	
@@ -386,10 +587,108 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		return tmp;
 	}
 
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize) throws DataAccessException,
+		DataIntegrityViolationException, OptimisticLockingFailureException {
+		
+		return saveOrUpdateAll(entities, batchSize, null);
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException, OptimisticLockingFailureException {
+		
+		Reject.ifNull(entities);
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		
+		ConvenienceHibernateTemplate template = getConvenienceHibernateTemplate();
+		int count = 0;
+		try {
+			for (T entity : entities) {
+				template.saveOrUpdateStrong(entity, getPersistentClassName());
+				count++;
+				if (count % batchSize == 0) {
+					template.flush();
+					template.clear();
+					if (listener != null) {
+						listener.batchCompleted(count);
+					}
+				}
+			}
+			if (count % batchSize != 0) {
+				template.flush();
+				template.clear();
+				if (listener != null) {
+					listener.batchCompleted(count);
+				}
+			}
+		} finally {
+			if (count > 0) {
+				invalidateQueryResultCache();
+			}
+		}
+		return count;
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int insertAll(final Iterable<T> entities, final int batchSize, final BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException {
+		
+		Reject.ifNull(entities);
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		
+		Integer count = (Integer) getConvenienceHibernateTemplate().executeWithNativeSession(
+			new HibernateCallback() {
+				public Object doInHibernate(Session session) throws HibernateException {
+					List<T> batch = new ArrayList<T>(batchSize);
+					int inserted = 0;
+					for (T entity : entities) {
+						session.save(entity);
+						batch.add(entity);
+						inserted++;
+						if (batch.size() == batchSize) {
+							flushAndEvict(session, batch);
+							if (listener != null) {
+								listener.batchCompleted(inserted);
+							}
+						}
+					}
+					if (!batch.isEmpty()) {
+						flushAndEvict(session, batch);
+						if (listener != null) {
+							listener.batchCompleted(inserted);
+						}
+					}
+					return inserted;
+				}
+			});
+		invalidateQueryResultCache();
+		return count;
+	}
+	
+	/**
+	 * Sends the inserts of a batch to the database and evicts the inserted entities
+	 * from the session, leaving the other entities of the session attached.
+	 * 
+	 * @param session    the session
+	 * @param batch      the inserted entities, cleared afterwards
+	 */
+	private void flushAndEvict(Session session, List<T> batch) {
+		session.flush();
+		for (T entity : batch) {
+			session.evict(entity);
+		}
+		batch.clear();
+	}
+	
 	/** {@inheritDoc} */
 	@Transactional(propagation = Propagation.REQUIRED)
 	public void delete(T entity) throws DataAccessException {
 		getConvenienceHibernateTemplate().delete(entity);
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -436,6 +735,7 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	public void delete(ID id) throws DataAccessException {
 		getConvenienceHibernateTemplate().deleteStrong(getPersistentClass(),
 			id, getPersistentClassName());
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -443,97 +743,192 @@ public class GenericHibernateDao<T, ID extends Serializable>
 	public void deleteById(ID id) throws DataAccessException {
 		getConvenienceHibernateTemplate().deleteStrong(getPersistentClass(),
 			id, getPersistentClassName());
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
 	public void delete(Collection<T> entities) throws DataAccessException,
 			DataIntegrityViolationException, OptimisticLockingFailureException {
 		getConvenienceHibernateTemplate().deleteAll(entities);
+		invalidateQueryResultCache();
 	}
 
 	/** {@inheritDoc} */
 	public void deleteNoCascade(Collection<T> entities) throws DataAccessException,
-			DataIntegrityViolationException, OptimisticLockingFailureException {	
-
-		//search for method with @Id annotation
-		Method[] methods = getPersistentClass().getMethods();
-		Method idMethod = null;
-		for (Method m : methods) {
-			if (m.isAnnotationPresent(javax.persistence.Id.class)) {
-				idMethod = m;
+			DataIntegrityViolationException, OptimisticLockingFailureException {
+		
+		Reject.ifNull(entities);
+		ClassMetadata metadata = getSimpleIdMetadata();
+		if (metadata == null) {
+			s_logger.warn("No simple identifier property was found in " + getPersistentClassName()
+				+ ". Not using HQL bulk delete for all entities.");
+			getConvenienceHibernateTemplate().deleteAll(entities);
+		} else {
+			List<Serializable> ids = new ArrayList<Serializable>(entities.size());
+			for (T entity : entities) {
+				Serializable id = getIdentifier(entity, metadata);
+				if (id != null) {
+					ids.add(id);
+				} else {
+					// transient entity: let hibernate decide
+					getConvenienceHibernateTemplate().delete(entity);
+				}
 			}
+			deleteByIds(metadata, ids);
 		}
+		invalidateQueryResultCache();
+	}
+	
+	/** {@inheritDoc} */
+	public int deleteByQueryNoCascade(QueryObject query) throws DataAccessException,
+			DataIntegrityViolationException, OptimisticLockingFailureException {
 		
-		if (idMethod != null) {
-			
-			ArrayList<Object> hqlParameter = new ArrayList<Object>();
-			StringBuilder hqlQuery = new StringBuilder("delete ");
-			hqlQuery.append(getPersistentClassName());
-			hqlQuery.append(" where ");
-			
-			Iterator<T> it = entities.iterator();
-			T entity;
-			boolean fallback;
-			int querycount = 0;
-			//creating hql bulk delete statement for all entities
-			//by calling the annotated method to get @Id value
-			while (it.hasNext()) {
-				fallback = false;
-				entity = it.next();
-				Object o = null;
-				try {
-					o = idMethod.invoke(entity);
-				} catch (IllegalArgumentException e) {
-					fallback = true;
-				} catch (IllegalAccessException e) {
-					fallback = true;
-				} catch (InvocationTargetException e) {
-					fallback = true;
-				}
-				if (o == null) {
-					fallback = true;
-				}
-				//if we encountered an error, use the given delete method for this entity object
-				if (!fallback) {
-					
-					//check if maximal query length is reached
-					if (querycount >= MAX_BULK_DELETE) {
-						//execute present query
-						getHibernateTemplate().bulkUpdate(hqlQuery.toString(), hqlParameter.toArray());
-						//reinitialize new vars
-						hqlParameter.clear();
-						hqlQuery = new StringBuilder("delete ");
-						hqlQuery.append(getPersistentClassName());
-						hqlQuery.append(" where ");
-						querycount = 0;
+		Reject.ifNull(query);
+		ClassMetadata metadata = getSimpleIdMetadata();
+		Reject.ifNull(metadata, "Deleting by query requires a simple identifier property in "
+			+ getPersistentClassName() + ".");
+		
+		DetachedCriteria idCriteria = CriteriaTransformer.transform(query, getPersistentClass());
+		idCriteria.setProjection(Projections.id());
+		
+		// joins may return the same id several times
+		List<Serializable> ids = new ArrayList<Serializable>(new LinkedHashSet<Serializable>(
+			getConvenienceHibernateTemplate().findByCriteria(idCriteria)));
+		int deleted = deleteByIds(metadata, ids);
+		invalidateQueryResultCache();
+		return deleted;
+	}
+	
+	/**
+	 * Deletes the entities with the given ids using <code>IN</code>-list HQL statements
+	 * of exactly {@link #getBulkDeleteChunkSize()} parameters (the last chunk is padded
+	 * by repeating its last id), so all statements share the same query plan.
+	 * 
+	 * @param metadata    the metadata of the persistent class
+	 * @param ids         the ids of the entities to delete
+	 * @return the number of deleted entities
+	 */
+	protected int deleteByIds(ClassMetadata metadata, List<Serializable> ids) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		
+		final String hqlQuery = "delete from " + metadata.getEntityName()
+			+ " where " + metadata.getIdentifierPropertyName() + " in (:ids)";
+		
+		List<List<Serializable>> chunks = new ArrayList<List<Serializable>>();
+		for (int i = 0; i < ids.size(); i += m_bulkDeleteChunkSize) {
+			List<Serializable> chunk = new ArrayList<Serializable>(
+				ids.subList(i, Math.min(i + m_bulkDeleteChunkSize, ids.size())));
+			Serializable last = chunk.get(chunk.size() - 1);
+			while (chunk.size() < m_bulkDeleteChunkSize) {
+				chunk.add(last);
+			}
+			chunks.add(chunk);
+		}
+		
+		// parallel chunks use their own transactions, so never do this within a transaction
+		if (m_bulkDeleteExecutor != null && chunks.size() > 1
+			&& !TransactionSynchronizationManager.isActualTransactionActive()) {
+			return deleteChunksInParallel(hqlQuery, chunks);
+		}
+		
+		int deleted = 0;
+		for (final List<Serializable> chunk : chunks) {
+			deleted += (Integer) getConvenienceHibernateTemplate().executeWithNativeSession(
+				new HibernateCallback() {
+					public Object doInHibernate(Session session) throws HibernateException {
+						return session.createQuery(hqlQuery).setParameterList("ids", chunk).executeUpdate();
+					}
+				});
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Deletes the given chunks in parallel using the bulk delete executor. Each chunk
+	 * is deleted in its own session and transaction.
+	 * 
+	 * @param hqlQuery    the delete statement
+	 * @param chunks      the id chunks
+	 * @return the number of deleted entities
+	 */
+	private int deleteChunksInParallel(final String hqlQuery, List<List<Serializable>> chunks) {
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>(chunks.size());
+		for (final List<Serializable> chunk : chunks) {
+			results.add(m_bulkDeleteExecutor.submit(new Callable<Integer>() {
+				public Integer call() {
+					Session session = getSessionFactory().openSession();
+					Transaction transaction = session.beginTransaction();
+					try {
+						int deleted = session.createQuery(hqlQuery).setParameterList("ids", chunk).executeUpdate();
+						transaction.commit();
+						return deleted;
+					} catch (RuntimeException e) {
+						transaction.rollback();
+						throw e;
+					} finally {
+						session.close();
 					}
-					if (querycount > 0) {
-						hqlQuery.append("or ");
+				}
+			}));
+		}
+		
+		int deleted = 0;
+		RuntimeException failure = null;
+		for (Future<Integer> result : results) {
+			try {
+				deleted += result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for the bulk delete.", e);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					Throwable cause = e.getCause();
+					if (cause instanceof HibernateException) {
+						failure = SessionFactoryUtils.convertHibernateAccessException((HibernateException) cause);
+					} else if (cause instanceof RuntimeException) {
+						failure = (RuntimeException) cause;
+					} else {
+						failure = new RuntimeException(cause);
 					}
-					hqlQuery.append("id = ? ");
-					hqlParameter.add(o);
-					querycount++;
-				} else {
-					//something went wrong (in the reflective method call)
-					//use the given delete method to delete this entity
-					s_logger.warn(idMethod.getName() + "could not be called in " + getPersistentClassName()
-						+ ". Not using HQL bulk delete for this entity.");
-					getConvenienceHibernateTemplate().delete(entity);
 				}
 			}
-			
-			//check if there is (still) something to do
-			if (querycount > 0) {
-				getHibernateTemplate().bulkUpdate(hqlQuery.toString(), hqlParameter.toArray());
-			}
-			
-		} else {
-			//if no method with @Id annotation found, delete
-			//all entities with the given delete method
-			s_logger.warn("No @Id annotation was found in " + getPersistentClassName()
-				+ ". Not using HQL bulk delete for all entities.");
-			getConvenienceHibernateTemplate().deleteAll(entities);
 		}
+		if (failure != null) {
+			throw failure;
+		}
+		return deleted;
+	}
+	
+	/**
+	 * @param entity      the entity, possibly a proxy
+	 * @param metadata    the metadata of the persistent class
+	 * @return the identifier of the entity, <code>null</code> if it is transient
+	 */
+	private Serializable getIdentifier(Object entity, ClassMetadata metadata) {
+		if (entity instanceof HibernateProxy) {
+			return ((HibernateProxy) entity).getHibernateLazyInitializer().getIdentifier();
+		}
+		return metadata.getIdentifier(entity, EntityMode.POJO);
+	}
+	
+	/**
+	 * @return the metadata of the persistent class if it has a simple identifier
+	 *         property usable in HQL bulk deletes and <code>IN</code>-list queries,
+	 *         <code>null</code> otherwise
+	 */
+	private ClassMetadata getSimpleIdMetadata() {
+		ClassMetadata metadata = m_classMetadata;
+		if (metadata == null) {
+			metadata = getSessionFactory().getClassMetadata(getPersistentClass());
+			m_classMetadata = metadata;
+		}
+		if (metadata == null || metadata.getIdentifierPropertyName() == null
+			|| metadata.getIdentifierType().isComponentType()) {
+			return null;
+		}
+		return metadata;
 	}
 	
 
@@ -553,6 +948,7 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		
 		String hqlQuery = "delete " + getPersistentClassName();
 		getHibernateTemplate().bulkUpdate(hqlQuery);
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -568,10 +964,89 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		return addOrder(makeDistinct(criteria));
 	}
 
+	/**
+	 * @return the maximal number of ids loaded with one query during extent-based fetching
+	 */
+	public int getExtentBatchSize() {
+		return m_extentBatchSize;
+	}
+
+	/**
+	 * @param extentBatchSize    the maximal number of ids loaded with one query during
+	 *                           extent-based fetching (default: {@link BatchExtentLoader#DEFAULT_BATCH_SIZE})
+	 */
+	public void setExtentBatchSize(int extentBatchSize) {
+		Reject.ifFalse(extentBatchSize > 0, "The extent batch size must be positive.");
+		m_extentBatchSize = extentBatchSize;
+	}
+
+	/**
+	 * @return the number of entities deleted with a single HQL statement
+	 */
+	public int getBulkDeleteChunkSize() {
+		return m_bulkDeleteChunkSize;
+	}
+
+	/**
+	 * @param bulkDeleteChunkSize    the number of entities deleted with a single HQL
+	 *                               statement (default: {@link #MAX_BULK_DELETE})
+	 */
+	public void setBulkDeleteChunkSize(int bulkDeleteChunkSize) {
+		Reject.ifFalse(bulkDeleteChunkSize > 0, "The bulk delete chunk size must be positive.");
+		m_bulkDeleteChunkSize = bulkDeleteChunkSize;
+	}
+
+	/**
+	 * @return the executor deleting the chunks of a bulk delete in parallel, or <code>null</code>
+	 */
+	public ExecutorService getBulkDeleteExecutor() {
+		return m_bulkDeleteExecutor;
+	}
+
+	/**
+	 * Lets {@link #deleteNoCascade(Collection)} and {@link #deleteByQueryNoCascade(QueryObject)}
+	 * delete their chunks in parallel. As every chunk is deleted in its own transaction,
+	 * this is only done if no transaction is active; a failure leaves the other chunks deleted.
+	 * 
+	 * @param bulkDeleteExecutor    the executor to use, <code>null</code> to delete sequentially
+	 */
+	public void setBulkDeleteExecutor(ExecutorService bulkDeleteExecutor) {
+		m_bulkDeleteExecutor = bulkDeleteExecutor;
+	}
+
+	/**
+	 * @return the cache for query results, <code>null</code> if results are not cached
+	 */
+	public QueryResultCache getQueryResultCache() {
+		return m_queryResultCache;
+	}
+
+	/**
+	 * Caches the results of {@link #findByQuery(QueryObject)} and {@link #findCountByQuery(QueryObject)}.
+	 * The ids of the found entities are cached (if the persistent class has a simple identifier
+	 * property), and the entities are loaded by id in the caller's session on a cache hit.
+	 * The cache is invalidated by the write methods of this DAO; to also see changes made
+	 * through other DAOs, subscribe the cache to their change notifier.
+	 * 
+	 * @param queryResultCache    the cache for query results, <code>null</code> to not cache them
+	 */
+	public void setQueryResultCache(QueryResultCache queryResultCache) {
+		m_queryResultCache = queryResultCache;
+	}
+
+	/**
+	 * Invalidates the cached query results of the persistent class, if any.
+	 */
+	protected void invalidateQueryResultCache() {
+		if (m_queryResultCache != null) {
+			m_queryResultCache.invalidate(getPersistentClass());
+		}
+	}
+
 	/** 
-	 * Prototype of Extent-based fetching,
-	 * steps through all the retrieved objects and calls
-	 * the methods of the extent to ensure loading from db.
+	 * Extent-based fetching: loads the extent for all the retrieved objects
+	 * level by level, using <code>IN</code>-list queries of at most
+	 * {@link #getExtentBatchSize()} ids (see {@link BatchExtentLoader}).
 	 * 
 	 * @param objects	list of objects to load in given extent
 	 * @param extent	the fetch-extent
@@ -583,18 +1058,14 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		throws DataAccessException {
 		
 		if (extent != null) {
-			ReferenceMap fetchedObjects = new ReferenceMap();
-			for (Object obj : objects) {
-				fetchExtentObject(obj, extent.getRootEntity(), fetchedObjects);
-			}
+			new BatchExtentLoader(getSession(), m_extentBatchSize).load(objects, extent.getRootEntity());
 		}
 		return objects;
 	}
 	
 	/** 
-	 * Prototype of Extent-based fetching,
-	 * steps through all the retrieved objects and calls
-	 * the methods of the extent to ensure loading from db.
+	 * Extent-based fetching: loads the extent for the retrieved object
+	 * (see {@link BatchExtentLoader}).
 	 * 
 	 * @param object	object to load in given extent
 	 * @param extent	the fetch-extent
@@ -606,179 +1077,12 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		throws DataAccessException {
 		
 		if (extent != null) {
-			ReferenceMap fetchedObjects = new ReferenceMap();
-			fetchExtentObject(object, extent.getRootEntity(), fetchedObjects);
+			new BatchExtentLoader(getSession(), m_extentBatchSize).load(
+				Collections.singletonList(object), extent.getRootEntity());
 		}
 		return object;
 	}
 	
-	/**
-	 * Sub-method of the extent-based fetching, steps
-	 * through the entities and calls the required methods.
-	 * @param object			the object to load in given extent
-	 * @param entity			the extent entity
-	 * @param fetchedObjects	the HashMap with all the already fetched objects
-	 * 
-	 * @throws DataAccessException
-	 */
-	private void fetchExtentObject(Object object, ExtentEntity entity, ReferenceMap fetchedObjects)
-		throws DataAccessException {
-		
-		Object[] nullArg = null;
-		if (object == null || entity == null || fetchedObjects == null) {
-			return;
-		}
-		fetchedObjects.put(object, entity);
-		try {
-			// fetch the majority of all data using join queries
-			if (entity.isRoot()) {
-				fetchExtentUsingJoinQuery(object, entity);
-			}
-			
-			// we still need to fetch individual fields, e.g. if transient getters (included in the DataExtent)
-			// access some fields (that were not included in the DataExtent)
-			for (ExtentEntity ent : entity.getChildEntities()) {
-				Object obj = ent.getMethod().invoke(object, nullArg);
-				// Initialize the object if it is a proxy
-				if (obj instanceof HibernateProxy && !Hibernate.isInitialized(obj)) {
-					Hibernate.initialize(obj);
-				}
-				if (!fetchedObjects.containsKey(obj) || !fetchedObjects.get(obj).equals(ent)) {
-					fetchExtentObject(obj, ent, fetchedObjects);
-				}
-			}
-			
-			// Fetch the collections. Since we assume batch fetching for collections
-			for (ExtentCollection c : entity.getCollections()) {
-				Collection<?> coll = (Collection<?>) c.getMethod().invoke(object, nullArg);
-				if (coll != null) {
-					for (Object o : coll) {
-						// Initialize the object if it is a proxy
-						if (o instanceof HibernateProxy && !Hibernate.isInitialized(o)) {
-							Hibernate.initialize(o);
-						}
-						if (!fetchedObjects.containsKey(o) || !fetchedObjects.get(o).equals(c.getContainedEntity())) {
-							fetchExtentObject(o, c.getContainedEntity(), fetchedObjects);
-						}
-					}
-				}
-			}
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-		
-	}
-	
-	/**
-	 * builds and executes an efficient CriteriaQuery to fetch almost all data in the given ExtentEntity
-	 * and its sub-entities.
-	 * 
-	 * This method cannot fetch ALL data since transient getters are unknown to Hibernate, therefore we
-	 * cannot use a JOIN to get data that would otherwise be retrieved when a transient getter is called.
-	 * 
-	 * @param object the object to load in the given extent
-	 * @param entity the entity entity
-	 */
-	private void fetchExtentUsingJoinQuery(Object object, ExtentEntity entity) {
-		ID id;
-		ClassMetadata metadata = getSessionFactory().getClassMetadata(object.getClass());
-		if (metadata == null) {
-			// object is not a hibernate-entity, so skip it.
-			return;
-		}
-		id = (ID) metadata.getIdentifier(object, EntityMode.POJO);
-		// Fetch the child entities via JOINs wherever possible
-		Criteria criteria = getSession().createCriteria(entity.getEntityClass());
-		criteria.add(Restrictions.idEq(id));
-		if (buildJoinCriteria(criteria, entity)) {
-			// Execute the query to fetch all listed data
-			criteria.setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
-			criteria.list();
-		}
-	}
-	
-	/**
-	 * Starts the recursive buildJoinCriteria with the initial value for the alias argument.
-	 * 
-	 * @see GenericHibernateDao#buildJoinCriteria(Criteria, ExtentEntity, String)
-	 * 
-	 * @param criteria the criteria object to modify
-	 * @param rootEntity the ExtentEntity
-	 * @return true if at least one JOIN could be added to the Criteria
-	 */
-	private boolean buildJoinCriteria(Criteria criteria, ExtentEntity rootEntity) {
-		// call the recursive builder with initial alias = null
-		return buildJoinCriteria(criteria, rootEntity, null);
-	}
-
-	/**
-	 * Builds the Criteria Query. 
-	 * Recursively traverses the ExtentEntity structure and creates aliases for JOINed tables . 
-	 * 
-	 * @param criteria the criteria object to modify
-	 * @param entity the ExtentEntity
-	 * @param alias the prefix to use when creating a new alias for an indirectly accessible property 
-	 * @return true if at least one JOIN could be added to the Criteria
-	 */
-	private boolean buildJoinCriteria(Criteria criteria, ExtentEntity entity, String alias) {
-		ClassMetadata metadata = getSessionFactory().getClassMetadata(entity.getEntityClass());
-		
-		boolean couldJoin = false;
-		
-		if (metadata == null) {
-			// entity not mapped, nothing to do here
-			return false;
-		}
-		
-		String prefix;
-		String aliasPrefix;
-		if (alias == null) {
-			prefix = "";
-			aliasPrefix = "ALIAS_";
-		} else {
-			aliasPrefix = alias + "_";
-			prefix = alias + ".";
-		}
-		
-		// fetch the primitive fields of the object
-		for (String field : entity.getFields()) {
-			try {
-				metadata.getPropertyType(field);
-			} catch (HibernateException e) {
-				// skip this field
-				continue;
-			}
-			criteria.setFetchMode(prefix + field, FetchMode.JOIN);
-		}
-		
-		// fetch the other associations of the object 
-		for (ExtentEntity e : entity.getChildEntities()) {
-			Type type;
-			try {
-				type = metadata.getPropertyType(e.getName());
-			} catch (HibernateException he) {
-				// not a property that is managed by Hibernate
-				// it could be a transient field though which fetches data, 
-				// so just skip it and let fetchExtentObject() call the getter
-				continue;
-			}
-			if (type instanceof EntityType) {
-				String fieldAlias = aliasPrefix + e.getName();
-				criteria.createAlias(prefix + e.getName(), fieldAlias, Criteria.LEFT_JOIN);
-				couldJoin = true;
-				criteria.setFetchMode(prefix + e.getName(), FetchMode.JOIN);
-				buildJoinCriteria(criteria, e, fieldAlias);
-			} else {
-				criteria.setFetchMode(prefix + e.getName(), FetchMode.JOIN);
-			}
-		}
-		
-		// don't optimize queries on collections, since we assume that 
-		// batch fetching is enabled there
-		
-		return couldJoin;
-	}
-	
 	/**
 	 * Returns the simple name of the persistent class this DAO is responsible
 	 * for.
@@ -827,5 +1131,99 @@ public class GenericHibernateDao<T, ID extends Serializable>
 		
 		return criteria;
 	}
-
+	
+	/**
+	 * Loader for query results whose cache key contains a {@link QueryObject}.
+	 * The query object is copied when the key is stored.
+	 *
+	 * @param <V> the type of the result
+	 */
+	private abstract static class QueryObjectLoader<V> extends QueryResultCache.Loader<V> {
+		/** {@inheritDoc} */
+		@Override
+		public Object copyKey(Object key) {
+			List<?> parts = (List<?>) key;
+			return Arrays.asList(parts.get(0), parts.get(1),
+				SerializationUtils.clone((QueryObject) parts.get(2)));
+		}
+	}
+	
+	/**
+	 * Processes the chunks of a streamed result: loads their extent, hands the objects
+	 * to the visitor and evicts them from the session afterwards.
+	 */
+	private final class ChunkVisitor {
+		/**
+		 * The session the objects are loaded in.
+		 */
+		private final Session m_session;
+		
+		/**
+		 * The extent to load per chunk, may be <code>null</code>.
+		 */
+		private final DataExtent m_extent;
+		
+		/**
+		 * The visitor receiving the objects.
+		 */
+		private final ResultVisitor<? super T> m_visitor;
+		
+		/**
+		 * The number of visited objects.
+		 */
+		private int m_visited = 0;
+		
+		/**
+		 * Has the visitor asked to stop?
+		 */
+		private boolean m_stopped = false;
+		
+		/**
+		 * @param session    the session the objects are loaded in
+		 * @param extent     the extent to load per chunk, may be <code>null</code>
+		 * @param visitor    the visitor receiving the objects
+		 */
+		ChunkVisitor(Session session, DataExtent extent, ResultVisitor<? super T> visitor) {
+			m_session = session;
+			m_extent = extent;
+			m_visitor = visitor;
+		}
+		
+		/**
+		 * @param chunk    the objects to process
+		 */
+		void visit(List<T> chunk) {
+			BatchExtentLoader loader = new BatchExtentLoader(m_session, m_extentBatchSize);
+			if (m_extent != null) {
+				loader.load(chunk, m_extent.getRootEntity());
+			}
+			for (T object : chunk) {
+				m_visited++;
+				if (!m_visitor.visit(object)) {
+					m_stopped = true;
+					break;
+				}
+			}
+			loader.evictLoaded();
+			for (T object : chunk) {
+				if (m_session.contains(object)) {
+					m_session.evict(object);
+				}
+			}
+		}
+		
+		/**
+		 * @return the number of visited objects
+		 */
+		int getVisited() {
+			return m_visited;
+		}
+		
+		/**
+		 * @return whether the visitor has asked to stop
+		 */
+		boolean isStopped() {
+			return m_stopped;
+		}
+	}
 }
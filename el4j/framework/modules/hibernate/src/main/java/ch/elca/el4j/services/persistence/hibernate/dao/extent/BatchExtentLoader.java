@@ -0,0 +1,466 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.hibernate.dao.extent;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Criteria;
+import org.hibernate.EntityMode;
+import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.criterion.CriteriaSpecification;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * Loads a {@link DataExtent} for a whole list of objects at once.
+ *
+ * Instead of walking the extent object by object, the loader walks it level
+ * by level: all objects reached through the same {@link ExtentEntity} or
+ * {@link ExtentCollection} are collected first, and the uninitialized proxies
+ * and collections among them are then loaded with <code>IN</code>-list
+ * queries of at most <code>batchSize</code> ids. The number of queries is
+ * therefore proportional to the number of extent levels (times the number of
+ * pages), not to the number of loaded objects.
+ *
+ * Getters of the extent are still invoked on every object, so data accessed
+ * by transient getters is loaded as well (then possibly one by one).
+ *
+ * A loader is bound to a session and is not thread-safe.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchExtentLoader {
+
+	/**
+	 * The default maximal number of ids in one <code>IN</code>-list query.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 * The logger.
+	 */
+	private static Logger s_logger = LoggerFactory.getLogger(BatchExtentLoader.class);
+
+	/**
+	 * The session used to load the data.
+	 */
+	private final Session m_session;
+
+	/**
+	 * The maximal number of ids in one <code>IN</code>-list query.
+	 */
+	private final int m_batchSize;
+
+	/**
+	 * The objects already visited, per extent entity.
+	 */
+	private final Map<ExtentEntity, Set<Object>> m_visited = new HashMap<ExtentEntity, Set<Object>>();
+
+	/**
+	 * @param session      the session used to load the data
+	 * @param batchSize    the maximal number of ids in one <code>IN</code>-list query
+	 */
+	public BatchExtentLoader(Session session, int batchSize) {
+		Reject.ifNull(session);
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		m_session = session;
+		m_batchSize = batchSize;
+	}
+
+	/**
+	 * Loads the given extent for all the given objects.
+	 *
+	 * @param objects    the objects to load in the given extent
+	 * @param entity     the extent entity the objects correspond to
+	 * @throws DataAccessException
+	 */
+	public void load(Collection<?> objects, ExtentEntity entity) throws DataAccessException {
+		if (objects == null || entity == null) {
+			return;
+		}
+		Map<ExtentEntity, List<Object>> level = new LinkedHashMap<ExtentEntity, List<Object>>();
+		addToLevel(level, entity, objects);
+
+		try {
+			while (!level.isEmpty()) {
+				Map<ExtentEntity, List<Object>> nextLevel = new LinkedHashMap<ExtentEntity, List<Object>>();
+				for (Map.Entry<ExtentEntity, List<Object>> entry : level.entrySet()) {
+					loadLevel(entry.getKey(), entry.getValue(), nextLevel);
+				}
+				level = nextLevel;
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Evicts all the objects loaded so far from the session (e.g. when streaming
+	 * large results) and forgets about them.
+	 */
+	public void evictLoaded() {
+		for (Set<Object> visited : m_visited.values()) {
+			for (Object object : visited) {
+				if (m_session.contains(object)) {
+					m_session.evict(object);
+				}
+			}
+		}
+		m_visited.clear();
+	}
+
+	/**
+	 * Loads one extent entity for a list of objects and collects the objects
+	 * of the next level.
+	 *
+	 * @param entity       the extent entity
+	 * @param objects      the objects corresponding to the extent entity
+	 * @param nextLevel    the map to collect the objects of the next level in
+	 * @throws Exception
+	 */
+	private void loadLevel(ExtentEntity entity, List<Object> objects,
+		Map<ExtentEntity, List<Object>> nextLevel) throws Exception {
+
+		Object[] nullArg = null;
+
+		initializeProxies(objects);
+		ClassMetadata metadata = m_session.getSessionFactory().getClassMetadata(entity.getEntityClass());
+		if (metadata != null && metadata.getIdentifierPropertyName() != null) {
+			// fetch the majority of all data using join queries
+			if (entity.isRoot()) {
+				fetchUsingJoinQuery(entity, metadata, objects);
+			}
+			for (ExtentCollection c : entity.getCollections()) {
+				initializeCollections(entity, metadata, c, objects);
+			}
+		}
+
+		// we still need to call the getters, e.g. if transient getters (included in the DataExtent)
+		// access some fields (that were not included in the DataExtent)
+		for (ExtentEntity child : entity.getChildEntities()) {
+			Method method = child.getMethod();
+			List<Object> children = new ArrayList<Object>(objects.size());
+			for (Object object : objects) {
+				children.add(method.invoke(object, nullArg));
+			}
+			addToLevel(nextLevel, child, children);
+		}
+		for (ExtentCollection c : entity.getCollections()) {
+			Method method = c.getMethod();
+			List<Object> elements = new ArrayList<Object>();
+			for (Object object : objects) {
+				Collection<?> coll = (Collection<?>) method.invoke(object, nullArg);
+				if (coll != null) {
+					elements.addAll(coll);
+				}
+			}
+			addToLevel(nextLevel, c.getContainedEntity(), elements);
+		}
+	}
+
+	/**
+	 * Adds all not yet visited objects to the given level.
+	 *
+	 * @param level      the level to add the objects to
+	 * @param entity     the extent entity the objects correspond to
+	 * @param objects    the objects to add
+	 */
+	private void addToLevel(Map<ExtentEntity, List<Object>> level, ExtentEntity entity,
+		Collection<?> objects) {
+
+		if (entity == null) {
+			return;
+		}
+		Set<Object> visited = m_visited.get(entity);
+		if (visited == null) {
+			visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			m_visited.put(entity, visited);
+		}
+		List<Object> levelObjects = level.get(entity);
+		for (Object object : objects) {
+			if (object != null && visited.add(object)) {
+				if (levelObjects == null) {
+					levelObjects = new ArrayList<Object>();
+					level.put(entity, levelObjects);
+				}
+				levelObjects.add(object);
+			}
+		}
+	}
+
+	/**
+	 * Initializes all uninitialized proxies in the given list, using one
+	 * <code>IN</code>-list query per entity name and page.
+	 *
+	 * @param objects    the objects to initialize
+	 */
+	private void initializeProxies(List<Object> objects) {
+		Map<String, List<HibernateProxy>> proxiesByEntity = new LinkedHashMap<String, List<HibernateProxy>>();
+		for (Object object : objects) {
+			if (object instanceof HibernateProxy && !Hibernate.isInitialized(object)) {
+				String entityName = ((HibernateProxy) object).getHibernateLazyInitializer().getEntityName();
+				List<HibernateProxy> proxies = proxiesByEntity.get(entityName);
+				if (proxies == null) {
+					proxies = new ArrayList<HibernateProxy>();
+					proxiesByEntity.put(entityName, proxies);
+				}
+				proxies.add((HibernateProxy) object);
+			}
+		}
+
+		for (Map.Entry<String, List<HibernateProxy>> entry : proxiesByEntity.entrySet()) {
+			ClassMetadata metadata = m_session.getSessionFactory().getClassMetadata(entry.getKey());
+			if (metadata != null && isBatchable(metadata)) {
+				List<Serializable> ids = new ArrayList<Serializable>(entry.getValue().size());
+				for (HibernateProxy proxy : entry.getValue()) {
+					ids.add(proxy.getHibernateLazyInitializer().getIdentifier());
+				}
+				for (List<Serializable> page : pages(ids)) {
+					// loads the entities into the session, the proxies below are then resolved without query
+					m_session.createCriteria(entry.getKey())
+						.add(Restrictions.in(metadata.getIdentifierPropertyName(), page))
+						.list();
+				}
+			} else {
+				s_logger.debug("Cannot batch load " + entry.getKey() + ", initializing proxies one by one.");
+			}
+			for (HibernateProxy proxy : entry.getValue()) {
+				Hibernate.initialize(proxy);
+			}
+		}
+	}
+
+	/**
+	 * Builds and executes efficient Criteria queries to fetch almost all data
+	 * in the given root ExtentEntity and its sub-entities, one query per page of ids.
+	 *
+	 * @param entity      the root extent entity
+	 * @param metadata    the metadata of the entity class
+	 * @param objects     the objects to load
+	 */
+	private void fetchUsingJoinQuery(ExtentEntity entity, ClassMetadata metadata, List<Object> objects) {
+		if (!isBatchable(metadata)) {
+			return;
+		}
+		List<Serializable> ids = getIdentifiers(metadata, objects);
+		for (List<Serializable> page : pages(ids)) {
+			// Fetch the child entities via JOINs wherever possible
+			Criteria criteria = m_session.createCriteria(entity.getEntityClass());
+			criteria.add(Restrictions.in(metadata.getIdentifierPropertyName(), page));
+			if (!buildJoinCriteria(criteria, entity, null)) {
+				return;
+			}
+			// Execute the query to fetch all listed data
+			criteria.setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
+			criteria.list();
+		}
+	}
+
+	/**
+	 * Initializes the given collection of all given owners, using one
+	 * fetch join query per page of owners whose collection is not yet initialized.
+	 *
+	 * @param entity        the extent entity of the owners
+	 * @param metadata      the metadata of the owner class
+	 * @param collection    the extent collection
+	 * @param owners        the owners of the collection
+	 */
+	private void initializeCollections(ExtentEntity entity, ClassMetadata metadata,
+		ExtentCollection collection, List<Object> owners) {
+
+		if (!isBatchable(metadata)) {
+			return;
+		}
+		try {
+			if (!(metadata.getPropertyType(collection.getName()) instanceof CollectionType)) {
+				return;
+			}
+		} catch (HibernateException e) {
+			// not a property that is managed by Hibernate, let the getter do its job
+			return;
+		}
+
+		List<Object> uninitializedOwners = new ArrayList<Object>();
+		for (Object owner : owners) {
+			Object implementation = unproxy(owner);
+			if (metadata.getMappedClass(EntityMode.POJO).isInstance(implementation)) {
+				Object value = metadata.getPropertyValue(implementation, collection.getName(), EntityMode.POJO);
+				if (value instanceof PersistentCollection && !((PersistentCollection) value).wasInitialized()) {
+					uninitializedOwners.add(implementation);
+				}
+			}
+		}
+
+		for (List<Serializable> page : pages(getIdentifiers(metadata, uninitializedOwners))) {
+			m_session.createCriteria(entity.getEntityClass())
+				.add(Restrictions.in(metadata.getIdentifierPropertyName(), page))
+				.setFetchMode(collection.getName(), FetchMode.JOIN)
+				.setResultTransformer(CriteriaSpecification.DISTINCT_ROOT_ENTITY)
+				.list();
+		}
+	}
+
+	/**
+	 * Builds the Criteria Query.
+	 * Recursively traverses the ExtentEntity structure and creates aliases for JOINed tables .
+	 *
+	 * @param criteria the criteria object to modify
+	 * @param entity the ExtentEntity
+	 * @param alias the prefix to use when creating a new alias for an indirectly accessible property
+	 * @return true if at least one JOIN could be added to the Criteria
+	 */
+	private boolean buildJoinCriteria(Criteria criteria, ExtentEntity entity, String alias) {
+		ClassMetadata metadata = m_session.getSessionFactory().getClassMetadata(entity.getEntityClass());
+
+		boolean couldJoin = false;
+
+		if (metadata == null) {
+			// entity not mapped, nothing to do here
+			return false;
+		}
+
+		String prefix;
+		String aliasPrefix;
+		if (alias == null) {
+			prefix = "";
+			aliasPrefix = "ALIAS_";
+		} else {
+			aliasPrefix = alias + "_";
+			prefix = alias + ".";
+		}
+
+		// fetch the primitive fields of the object
+		for (String field : entity.getFields()) {
+			try {
+				metadata.getPropertyType(field);
+			} catch (HibernateException e) {
+				// skip this field
+				continue;
+			}
+			criteria.setFetchMode(prefix + field, FetchMode.JOIN);
+		}
+
+		// fetch the other associations of the object
+		for (ExtentEntity e : entity.getChildEntities()) {
+			Type type;
+			try {
+				type = metadata.getPropertyType(e.getName());
+			} catch (HibernateException he) {
+				// not a property that is managed by Hibernate
+				// it could be a transient field though which fetches data,
+				// so just skip it and let the getter be called later on
+				continue;
+			}
+			if (type instanceof EntityType) {
+				String fieldAlias = aliasPrefix + e.getName();
+				criteria.createAlias(prefix + e.getName(), fieldAlias, Criteria.LEFT_JOIN);
+				couldJoin = true;
+				criteria.setFetchMode(prefix + e.getName(), FetchMode.JOIN);
+				buildJoinCriteria(criteria, e, fieldAlias);
+			} else {
+				criteria.setFetchMode(prefix + e.getName(), FetchMode.JOIN);
+			}
+		}
+
+		// collections are initialized level by level (see initializeCollections)
+
+		return couldJoin;
+	}
+
+	/**
+	 * @param metadata    the class metadata
+	 * @return whether entities of this class can be loaded by an <code>IN</code>-list of ids
+	 */
+	private boolean isBatchable(ClassMetadata metadata) {
+		return metadata.getIdentifierPropertyName() != null
+			&& !metadata.getIdentifierType().isComponentType();
+	}
+
+	/**
+	 * @param metadata    the class metadata
+	 * @param objects     the objects (or proxies)
+	 * @return the identifiers of all objects that are instances of the mapped class
+	 */
+	private List<Serializable> getIdentifiers(ClassMetadata metadata, List<Object> objects) {
+		List<Serializable> ids = new ArrayList<Serializable>(objects.size());
+		Class<?> mappedClass = metadata.getMappedClass(EntityMode.POJO);
+		for (Object object : objects) {
+			Serializable id = null;
+			if (object instanceof HibernateProxy) {
+				LazyInitializer initializer = ((HibernateProxy) object).getHibernateLazyInitializer();
+				if (mappedClass.isAssignableFrom(initializer.getPersistentClass())) {
+					id = initializer.getIdentifier();
+				}
+			} else if (mappedClass.isInstance(object)) {
+				id = metadata.getIdentifier(object, EntityMode.POJO);
+			}
+			if (id != null) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @param object    an object or a proxy
+	 * @return the object or the implementation behind the proxy
+	 */
+	private Object unproxy(Object object) {
+		if (object instanceof HibernateProxy) {
+			return ((HibernateProxy) object).getHibernateLazyInitializer().getImplementation();
+		}
+		return object;
+	}
+
+	/**
+	 * @param ids    the ids to split
+	 * @return the ids split into pages of at most <code>batchSize</code> elements
+	 */
+	private List<List<Serializable>> pages(List<Serializable> ids) {
+		List<List<Serializable>> pages = new ArrayList<List<Serializable>>();
+		for (int i = 0; i < ids.size(); i += m_batchSize) {
+			pages.add(ids.subList(i, Math.min(i + m_batchSize, ids.size())));
+		}
+		return pages;
+	}
+}
@@ -32,6 +32,8 @@ import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.lang.StringUtils;
 
+import ch.elca.el4j.util.codingsupport.Reject;
+
 /**
  * SQL Query Builder. 
  * 
@@ -118,6 +120,12 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 	 */
 	private List<String> orderBy = new ArrayList<String>();
 	
+	/**
+	 * The sort key of the last result seen (one value per ORDER BY restriction), used for keyset
+	 *  paging. Empty if the query starts at the first result.
+	 */
+	private List<Serializable> seekValues = new ArrayList<Serializable>();
+	
 	/**
 	 * JOIN elements.
 	 */
@@ -206,6 +214,10 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		joins = new ArrayList<String>(original.joins);
 		orderBy = new ArrayList<String>(original.orderBy);
 		
+		for (Serializable el : original.seekValues) {
+			seekValues.add((Serializable) SerializationUtils.clone(el));
+		}
+		
 		for (Serializable el : original.bodyParameters) {
 			bodyParameters.add((Serializable) SerializationUtils.clone(el));
 		}
@@ -234,6 +246,7 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		result = prime * result
 				+ ((m_beanClass == null) ? 0 : m_beanClass.hashCode());
 		result = prime * result + ((orderBy == null) ? 0 : orderBy.hashCode());
+		result = prime * result + ((seekValues == null) ? 0 : seekValues.hashCode());
 		result = prime
 				* result
 				+ ((selectParameters == null) ? 0 : selectParameters.hashCode());
@@ -309,6 +322,13 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		} else if (!orderBy.equals(other.orderBy)) {
 			return false;
 		}
+		if (seekValues == null) {
+			if (other.seekValues != null) {
+				return false;
+			}
+		} else if (!seekValues.equals(other.seekValues)) {
+			return false;
+		}
 		if (selectParameters == null) {
 			if (other.selectParameters != null) {
 				return false;
@@ -653,6 +673,94 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		return this;
 	}
 
+	/**
+	 * Restricts the query to the results following the given sort key (keyset paging). Instead of
+	 * skipping the first rows of a large result (which the database still has to read), pass the
+	 * values of the ORDER BY restrictions of the last result of the previous page. For a stable
+	 * paging, the last ORDER BY restriction must be unique (e.g. the id).
+	 * 
+	 * <pre>
+	 *      builder.orderBy(SortOrder.ASCENDING, "e.name").orderBy(SortOrder.ASCENDING, "e.id");
+	 *      builder.seekAfter(last.getName(), last.getId());
+	 * </pre>
+	 * 
+	 * @param lastSortKey the values of the ORDER BY restrictions of the last result seen, in the
+	 *                    same order as the restrictions. No values start at the first result again.
+	 * @return this
+	 */
+	public QueryBuilder seekAfter(Serializable... lastSortKey) {
+		seekValues.clear();
+		if (lastSortKey != null && lastSortKey.length > 0) {
+			Reject.ifFalse(lastSortKey.length == orderBy.size(),
+				"One value per ORDER BY restriction is required.");
+			for (Serializable value : lastSortKey) {
+				Reject.ifNull(value, "The sort key must not contain null values.");
+				seekValues.add(value);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Builds the keyset predicate for {@link #seekAfter(Serializable...)}: for ORDER BY a, b it is
+	 * <code>a &gt;= {p} AND ((a &gt; {p}) OR (a = {p} AND b &gt; {p}))</code>, the same predicate
+	 * as {@link ch.elca.el4j.services.search.QueryObject#getKeysetCriteria()}. The leading range
+	 * condition (<code>&lt;=</code> for a descending first column) lets the database use an index
+	 * on <code>a</code>. The parameters are returned by {@link #getSeekParameters()} in the same
+	 * order.
+	 * 
+	 * @return the predicate, <code>null</code> if no sort key is set
+	 */
+	private String getSeekPredicate() {
+		if (seekValues.isEmpty()) {
+			return null;
+		}
+		List<String> alternatives = new ArrayList<String>();
+		for (int i = 0; i < seekValues.size(); i++) {
+			List<String> conds = new ArrayList<String>();
+			for (int j = 0; j < i; j++) {
+				conds.add(getOrderExpression(orderBy.get(j)) + " = " + PARAM_KEY);
+			}
+			String order = orderBy.get(i);
+			String operator = isDescending(order) ? " < " : " > ";
+			conds.add(getOrderExpression(order) + operator + PARAM_KEY);
+			alternatives.add("(" + StringUtils.join(conds, AND) + ")");
+		}
+		String first = orderBy.get(0);
+		String range = getOrderExpression(first) + (isDescending(first) ? " <= " : " >= ") + PARAM_KEY;
+		return range + AND + "(" + StringUtils.join(alternatives, OR) + ")";
+	}
+
+	/**
+	 * @return the parameters of the keyset predicate, see {@link #getSeekPredicate()}
+	 */
+	public List<Serializable> getSeekParameters() {
+		List<Serializable> parameters = new ArrayList<Serializable>();
+		if (!seekValues.isEmpty()) {
+			parameters.add(seekValues.get(0));
+		}
+		for (int i = 0; i < seekValues.size(); i++) {
+			parameters.addAll(seekValues.subList(0, i + 1));
+		}
+		return parameters;
+	}
+
+	/**
+	 * @param order an ORDER BY restriction
+	 * @return whether the restriction sorts descending
+	 */
+	private boolean isDescending(String order) {
+		return order.endsWith(" " + SortOrder.DESCENDING);
+	}
+
+	/**
+	 * @param order an ORDER BY restriction
+	 * @return the ordered expression without the sort order
+	 */
+	private String getOrderExpression(String order) {
+		return order.substring(0, order.lastIndexOf(' '));
+	}
+
 	/**
 	 * Condition of QueryBuilder.
 	 * 
@@ -905,6 +1013,7 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 			allParameters.addAll(unionQuery.getBodyParameters());
 		}
 		allParameters.addAll(bodyParameters);
+		allParameters.addAll(getSeekParameters());
 		return allParameters;
 	}
 
@@ -995,6 +1104,14 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		return query.getResultList();
 	}
 
+	/**
+	 * @return the JPA query prepared by the last call of an <code>apply...</code> method,
+	 *         e.g. to set hints or to iterate over the results in a provider specific way
+	 */
+	public Query getJpaQuery() {
+		return query;
+	}
+
 	/**
 	 * @param <T> entity type
 	 * @param clazz entity class
@@ -1086,9 +1203,21 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 		result.append(fromStr);
 		result.append(" ");
 		result.append(StringUtils.join(joins, " "));
-		if (StringUtils.isNotBlank(where)) {
+		String seekPredicate = getSeekPredicate();
+		if (StringUtils.isNotBlank(where) && seekPredicate != null) {
+			result.append(" WHERE (");
+			result.append(where);
+			result.append(")");
+			result.append(AND);
+			result.append("(");
+			result.append(seekPredicate);
+			result.append(")");
+		} else if (StringUtils.isNotBlank(where)) {
 			result.append(" WHERE ");
 			result.append(where);
+		} else if (seekPredicate != null) {
+			result.append(" WHERE ");
+			result.append(seekPredicate);
 		}
 		result.append(orderStr);
 		
@@ -1125,11 +1254,12 @@ public final class QueryBuilder implements Expression, SelectQuery, CountQuery,
 	}
 
 	/**
-	 * drops all ordering constraints.
+	 * drops all ordering constraints (and the sort key set by {@link #seekAfter(Serializable...)}).
 	 * @return this
 	 */
 	public QueryBuilder clearOrderBy() {
 		this.orderBy.clear();
+		this.seekValues.clear();
 		return this;
 	}
 
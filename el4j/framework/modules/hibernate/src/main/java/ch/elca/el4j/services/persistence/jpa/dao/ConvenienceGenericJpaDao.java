@@ -28,7 +28,9 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.OptimisticLockingFailureException;
 
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
 import ch.elca.el4j.services.persistence.generic.dao.ConvenienceGenericDao;
+import ch.elca.el4j.services.persistence.generic.dao.ResultVisitor;
 import ch.elca.el4j.services.persistence.generic.dao.annotations.ReturnsUnchangedParameter;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
 import ch.elca.el4j.services.persistence.jpa.criteria.QueryBuilder;
@@ -248,6 +250,54 @@ public interface ConvenienceGenericJpaDao<T, ID extends Serializable> {
 	public T persist(T entity) throws DataAccessException,
 		DataIntegrityViolationException, OptimisticLockingFailureException;
 	
+	/**
+	 * Merges a (possibly large) number of entities. The persistence context is flushed
+	 * and cleared after each batch, so it does not grow and the statements of a batch
+	 * can be sent using JDBC batching (e.g. set <code>hibernate.jdbc.batch_size</code>).
+	 * 
+	 * Note: the merged copies are not returned, and clearing the persistence context
+	 * detaches all the entities it contains, including entities loaded before in the
+	 * same transaction.
+	 * 
+	 * @param entities     the entities to merge
+	 * @param batchSize    the number of entities written per batch
+	 * @return the number of merged entities
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 * @throws OptimisticLockingFailureException
+	 */
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize) throws DataAccessException,
+		DataIntegrityViolationException, OptimisticLockingFailureException;
+	
+	/**
+	 * Same as {@link #saveOrUpdateAll(Iterable, int)}, reporting the progress after each batch.
+	 * 
+	 * @param entities     the entities to merge
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @return the number of merged entities
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 * @throws OptimisticLockingFailureException
+	 */
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException, OptimisticLockingFailureException;
+	
+	/**
+	 * Persists a (possibly large) number of new entities, flushing and clearing the
+	 * persistence context after each batch. Cheaper than
+	 * {@link #saveOrUpdateAll(Iterable, int, BatchProgressListener)} as no copies are made.
+	 * 
+	 * @param entities     the new entities to persist
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @return the number of persisted entities
+	 * @throws DataAccessException
+	 * @throws DataIntegrityViolationException
+	 */
+	public int persistAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException;
+	
 	/** 
 	 * Deletes all available <code>T</code> using a JPQL query.
 	 * 
@@ -305,6 +355,33 @@ public interface ConvenienceGenericJpaDao<T, ID extends Serializable> {
 	public List<T> findByQuery(QueryBuilder criteria,
 		DataExtent extent) throws DataAccessException;
 	
+	/**
+	 * Streams the domain objects matching the JPA criteria to the visitor instead of
+	 * returning them as a list. The results are processed in chunks: the extent is loaded
+	 * per chunk, and the persistence context is flushed and the objects of the chunk are
+	 * detached after each chunk, so memory consumption does not depend on the result size.
+	 * 
+	 * If the persistence context held no entities when streaming started (e.g. the call
+	 * has its own transaction), it is cleared after each chunk. Otherwise, the caller's
+	 * entities stay attached, except those that are part of the result, which become
+	 * detached like all visited objects; entities loaded with the extent then stay
+	 * attached until the persistence context ends. Pending changes of the caller and
+	 * changes made by the visitor up to the end of a chunk are flushed.
+	 * 
+	 * With Hibernate as JPA provider, the results are read using a forward-only
+	 * <code>ScrollableResults</code> with the chunk size as fetch size. With other
+	 * providers, they are read page by page.
+	 * 
+	 * @param criteria             the criteria that the result has to fulfill
+	 * @param extent               the extent to load per chunk, may be <code>null</code>
+	 * @param chunkSize            the number of objects fetched and processed at once
+	 * @param visitor              the visitor receiving the objects
+	 * @return                     the number of visited objects
+	 * @throws DataAccessException
+	 */
+	public int scrollByQuery(QueryBuilder criteria, DataExtent extent, int chunkSize,
+		ResultVisitor<? super T> visitor) throws DataAccessException;
+	
 	/**
 	 * Retrieves a range of domain objects matching the JPA criteria.
 	 * 
@@ -350,6 +427,18 @@ public interface ConvenienceGenericJpaDao<T, ID extends Serializable> {
 	public int findCountByQuery(QueryBuilder criteria)
 		throws DataAccessException;
 	
+	/**
+	 * Checks whether at least one domain object matches the JPA criteria, e.g. to find
+	 * out whether there is a next page (see {@link QueryBuilder#seekAfter(java.io.Serializable...)}).
+	 * Much cheaper than {@link #findCountByQuery(QueryBuilder)}, as at most one row is read.
+	 * 
+	 * @param criteria             the criteria that the result has to fulfill
+	 * @return                     whether an object fulfills the criteria
+	 * @throws DataAccessException
+	 */
+	public boolean existsByQuery(QueryBuilder criteria)
+		throws DataAccessException;
+	
 	/**
 	 * Retrieves a domain object by identifier. This method gets the object from
 	 * the hibernate cache. It might be that you don't get the actual version
@@ -19,15 +19,29 @@ package ch.elca.el4j.services.persistence.jpa.dao;
 
 import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Type;
 
 import org.apache.commons.collections.map.ReferenceMap;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.ejb.HibernateQuery;
+import org.hibernate.stat.SessionStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -39,10 +53,15 @@ import org.springframework.orm.jpa.JpaCallback;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
+import ch.elca.el4j.services.persistence.generic.dao.QueryResultCache;
+import ch.elca.el4j.services.persistence.generic.dao.ResultVisitor;
 import ch.elca.el4j.services.persistence.generic.dao.annotations.ReturnsUnchangedParameter;
+import ch.elca.el4j.services.persistence.hibernate.dao.extent.BatchExtentLoader;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentEntity;
 import ch.elca.el4j.services.persistence.jpa.criteria.QueryBuilder;
+import ch.elca.el4j.services.persistence.jpa.dao.extentstrategies.BatchExtentFetcher;
 import ch.elca.el4j.services.persistence.jpa.dao.extentstrategies.ExtentFetcher;
 import ch.elca.el4j.util.codingsupport.Reject;
 
@@ -78,6 +97,12 @@ public class GenericJpaDao<T, ID extends Serializable>
 	 * Injected by JpaExtentFetcherInjectorBeanPostprocessor.
 	 */
 	private ExtentFetcher extentFetcher;
+	
+	/**
+	 * The cache for the results of the <code>findByQuery</code> and
+	 * <code>findCountByQuery</code> methods, or <code>null</code> to not cache them.
+	 */
+	private QueryResultCache queryResultCache;
 
 	/**
 	 * Set up the Generic Dao. Auto-derive the parametrized type.
@@ -148,6 +173,25 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public List<T> findByQuery(final QueryBuilder criteria)
 		throws DataAccessException {
 		
+		if (queryResultCache == null) {
+			return doFindByQuery(criteria);
+		}
+		return findByQueryCached(Arrays.asList("list", getPersistentClass(), criteria),
+			new QueryBuilderLoader<List<T>>() {
+				@Override
+				public List<T> load() {
+					return doFindByQuery(criteria);
+				}
+			});
+	}
+	
+	/**
+	 * Executes {@link #findByQuery(QueryBuilder)} without caching.
+	 * 
+	 * @param criteria    the query
+	 * @return the found entities
+	 */
+	private List<T> doFindByQuery(final QueryBuilder criteria) {
 		ConvenienceJpaTemplate template = getConvenienceJpaTemplate();
 		
 		return template.execute(new JpaCallback<List<T>>() {
@@ -165,6 +209,107 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public List<T> findByQuery(final QueryBuilder criteria, final int firstResult, final int maxResults)
 		throws DataAccessException {
 		
+		if (queryResultCache == null) {
+			return doFindByQuery(criteria, firstResult, maxResults);
+		}
+		return findByQueryCached(Arrays.asList("page", getPersistentClass(), criteria, firstResult, maxResults),
+			new QueryBuilderLoader<List<T>>() {
+				@Override
+				public List<T> load() {
+					return doFindByQuery(criteria, firstResult, maxResults);
+				}
+			});
+	}
+	
+	/**
+	 * Looks up the ids of the entities found by a query in the query result cache and
+	 * loads them in the current persistence context. Entities are not cached themselves,
+	 * as they are bound to the persistence context that loaded them.
+	 * 
+	 * @param key       the cache key of the query
+	 * @param loader    executes the query on a cache miss
+	 * @return the found entities
+	 */
+	private List<T> findByQueryCached(Object key, final QueryBuilderLoader<List<T>> loader) {
+		final EntityType<T> entityType = getEntityType();
+		if (!entityType.hasSingleIdAttribute()
+			|| entityType.getIdType().getPersistenceType() != Type.PersistenceType.BASIC) {
+			return loader.load();
+		}
+		final List<List<T>> loaded = new ArrayList<List<T>>(1);
+		List<Object> ids = queryResultCache.get(getPersistentClass(), key, new QueryBuilderLoader<List<Object>>() {
+			@Override
+			public List<Object> load() {
+				List<T> entities = loader.load();
+				loaded.add(entities);
+				PersistenceUnitUtil util = getConvenienceJpaTemplate().getEntityManagerFactory()
+					.getPersistenceUnitUtil();
+				List<Object> entityIds = new ArrayList<Object>(entities.size());
+				for (T entity : entities) {
+					entityIds.add(util.getIdentifier(entity));
+				}
+				return entityIds;
+			}
+		});
+		return loaded.isEmpty() ? findByIds(ids, entityType) : loaded.get(0);
+	}
+	
+	/**
+	 * Loads the entities with the given ids in the current persistence context, using
+	 * <code>IN</code>-list queries of at most {@link BatchExtentLoader#DEFAULT_BATCH_SIZE} ids.
+	 * 
+	 * @param ids           the ids of the entities to load
+	 * @param entityType    the metamodel of the persistent class, having a single basic id
+	 * @return the entities in the order of the ids, without the ones that no longer exist
+	 */
+	private List<T> findByIds(final List<Object> ids, final EntityType<T> entityType) {
+		final String jpql = "select e from " + entityType.getName() + " e where e."
+			+ entityType.getId(entityType.getIdType().getJavaType()).getName() + " in (:ids)";
+		
+		return getConvenienceJpaTemplate().execute(new JpaCallback<List<T>>() {
+			
+			@Override
+			public List<T> doInJpa(EntityManager em) throws PersistenceException {
+				PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
+				Map<Object, T> entitiesById = new HashMap<Object, T>();
+				List<Object> distinctIds = new ArrayList<Object>(new LinkedHashSet<Object>(ids));
+				for (int i = 0; i < distinctIds.size(); i += BatchExtentLoader.DEFAULT_BATCH_SIZE) {
+					TypedQuery<T> query = em.createQuery(jpql, getPersistentClass());
+					query.setParameter("ids", distinctIds.subList(i,
+						Math.min(i + BatchExtentLoader.DEFAULT_BATCH_SIZE, distinctIds.size())));
+					for (T entity : query.getResultList()) {
+						entitiesById.put(util.getIdentifier(entity), entity);
+					}
+				}
+				List<T> result = new ArrayList<T>(ids.size());
+				for (Object id : ids) {
+					T entity = entitiesById.get(id);
+					if (entity != null) {
+						result.add(entity);
+					}
+				}
+				return result;
+			}
+			
+		});
+	}
+	
+	/**
+	 * @return the metamodel of the persistent class
+	 */
+	private EntityType<T> getEntityType() {
+		return getConvenienceJpaTemplate().getEntityManagerFactory().getMetamodel().entity(getPersistentClass());
+	}
+	
+	/**
+	 * Executes {@link #findByQuery(QueryBuilder, int, int)} without caching.
+	 * 
+	 * @param criteria       the query
+	 * @param firstResult    the index of the first result
+	 * @param maxResults     the maximal number of results
+	 * @return the found entities
+	 */
+	private List<T> doFindByQuery(final QueryBuilder criteria, final int firstResult, final int maxResults) {
 		ConvenienceJpaTemplate template = getConvenienceJpaTemplate();
 		
 		return template.execute(new JpaCallback<List<T>>() {
@@ -177,11 +322,86 @@ public class GenericJpaDao<T, ID extends Serializable>
 		});
 	}
 
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED, readOnly = true)
+	public int scrollByQuery(final QueryBuilder criteria, final DataExtent extent, final int chunkSize,
+		final ResultVisitor<? super T> visitor) throws DataAccessException {
+		
+		Reject.ifNull(criteria);
+		Reject.ifNull(visitor);
+		Reject.ifFalse(chunkSize > 0, "The chunk size must be positive.");
+		
+		return getConvenienceJpaTemplate().execute(new JpaCallback<Integer>() {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Integer doInJpa(EntityManager em) throws PersistenceException {
+				criteria.applySelect(em);
+				Query query = criteria.getJpaQuery();
+				query.setHint("org.hibernate.fetchSize", chunkSize);
+				
+				ChunkVisitor chunkVisitor = new ChunkVisitor(em, isEmpty(em), extent, visitor);
+				if (query instanceof HibernateQuery) {
+					List<T> chunk = new ArrayList<T>(chunkSize);
+					ScrollableResults results = ((HibernateQuery) query).getHibernateQuery()
+						.scroll(ScrollMode.FORWARD_ONLY);
+					try {
+						while (!chunkVisitor.isStopped() && results.next()) {
+							chunk.add((T) results.get(0));
+							if (chunk.size() == chunkSize) {
+								chunkVisitor.visit(chunk);
+								chunk.clear();
+							}
+						}
+						if (!chunkVisitor.isStopped() && !chunk.isEmpty()) {
+							chunkVisitor.visit(chunk);
+						}
+					} finally {
+						results.close();
+					}
+				} else {
+					int firstResult = 0;
+					List<T> chunk;
+					do {
+						query.setFirstResult(firstResult);
+						query.setMaxResults(chunkSize);
+						chunk = query.getResultList();
+						if (!chunk.isEmpty()) {
+							chunkVisitor.visit(chunk);
+						}
+						firstResult += chunkSize;
+					} while (!chunkVisitor.isStopped() && chunk.size() == chunkSize);
+				}
+				return chunkVisitor.getVisited();
+			}
+			
+		});
+	}
+
 	/** {@inheritDoc} */
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public int findCountByQuery(final QueryBuilder criteria)
 		throws DataAccessException {
 		
+		if (queryResultCache == null) {
+			return doFindCountByQuery(criteria);
+		}
+		return queryResultCache.get(getPersistentClass(),
+			Arrays.asList("count", getPersistentClass(), criteria), new QueryBuilderLoader<Integer>() {
+				@Override
+				public Integer load() {
+					return doFindCountByQuery(criteria);
+				}
+			});
+	}
+	
+	/**
+	 * Executes {@link #findCountByQuery(QueryBuilder)} without caching.
+	 * 
+	 * @param criteria    the query
+	 * @return how many elements do we find with the given query
+	 */
+	private int doFindCountByQuery(final QueryBuilder criteria) {
 		ConvenienceJpaTemplate template = getConvenienceJpaTemplate();
 
 		return template.execute(new JpaCallback<Integer>() {
@@ -194,6 +414,22 @@ public class GenericJpaDao<T, ID extends Serializable>
 		});
 	}
 	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public boolean existsByQuery(final QueryBuilder criteria)
+		throws DataAccessException {
+		ConvenienceJpaTemplate template = getConvenienceJpaTemplate();
+
+		return template.execute(new JpaCallback<Boolean>() {
+
+			@Override
+			public Boolean doInJpa(EntityManager em) throws PersistenceException {
+				return !criteria.applySelect(em).getResultList(getPersistentClass(), 0, 1).isEmpty();
+			}
+			
+		});
+	}
+	
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	@ReturnsUnchangedParameter
@@ -201,7 +437,9 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public T merge(T entity) throws DataAccessException,
 		DataIntegrityViolationException, OptimisticLockingFailureException {
 		
-		return (T) getConvenienceJpaTemplate().mergeStrong(entity, getPersistentClassName());
+		T merged = (T) getConvenienceJpaTemplate().mergeStrong(entity, getPersistentClassName());
+		invalidateQueryResultCache();
+		return merged;
 	}
 	
 	/**
@@ -213,9 +451,97 @@ public class GenericJpaDao<T, ID extends Serializable>
 		DataIntegrityViolationException, OptimisticLockingFailureException {
 		
 		getConvenienceJpaTemplate().persist(entity);
+		invalidateQueryResultCache();
 		return entity;
 	}
 	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize) throws DataAccessException,
+		DataIntegrityViolationException, OptimisticLockingFailureException {
+		
+		return saveOrUpdateAll(entities, batchSize, null);
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException, OptimisticLockingFailureException {
+		
+		return writeAll(entities, batchSize, listener, false);
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int persistAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws DataAccessException, DataIntegrityViolationException {
+		
+		return writeAll(entities, batchSize, listener, true);
+	}
+	
+	/**
+	 * Merges or persists the given entities, flushing and clearing the entity manager
+	 * after each batch.
+	 * 
+	 * @param entities     the entities to write
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @param persist      whether to persist (or merge) the entities
+	 * @return the number of written entities
+	 */
+	private int writeAll(Iterable<T> entities, int batchSize, BatchProgressListener listener,
+		boolean persist) {
+		
+		Reject.ifNull(entities);
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		
+		ConvenienceJpaTemplate template = getConvenienceJpaTemplate();
+		int count = 0;
+		try {
+			for (T entity : entities) {
+				if (persist) {
+					template.persist(entity);
+				} else {
+					template.mergeStrong(entity, getPersistentClassName());
+				}
+				count++;
+				if (count % batchSize == 0) {
+					flushAndClear(template);
+					if (listener != null) {
+						listener.batchCompleted(count);
+					}
+				}
+			}
+			if (count % batchSize != 0) {
+				flushAndClear(template);
+				if (listener != null) {
+					listener.batchCompleted(count);
+				}
+			}
+		} finally {
+			if (count > 0) {
+				invalidateQueryResultCache();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Flushes and clears the entity manager of the current transaction.
+	 * 
+	 * @param template    the template to use
+	 */
+	private void flushAndClear(ConvenienceJpaTemplate template) {
+		template.execute(new JpaCallback<Object>() {
+			@Override
+			public Object doInJpa(EntityManager em) throws PersistenceException {
+				em.flush();
+				em.clear();
+				return null;
+			}
+		});
+	}
+	
 	/**
 	 * Deprecated: Use merge instead.
 	 * 
@@ -248,6 +574,7 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public void delete(T entity) throws DataAccessException {
 		T e = getConvenienceJpaTemplate().merge(entity);
 		getConvenienceJpaTemplate().remove(e);
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -265,6 +592,7 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public void delete(ID id) throws DataAccessException {
 		getConvenienceJpaTemplate().removeStrong(getPersistentClass(),
 			id, getPersistentClassName());
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -272,6 +600,7 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public void deleteById(ID id) throws DataAccessException {
 		getConvenienceJpaTemplate().removeStrong(getPersistentClass(),
 			id, getPersistentClassName());
+		invalidateQueryResultCache();
 	}
 	
 	/** {@inheritDoc} */
@@ -279,6 +608,7 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public void delete(Collection<T> entities) throws DataAccessException,
 			DataIntegrityViolationException, OptimisticLockingFailureException {
 		getConvenienceJpaTemplate().removeAll(entities);
+		invalidateQueryResultCache();
 	}
 
 	/** {@inheritDoc} */
@@ -343,6 +673,35 @@ public class GenericJpaDao<T, ID extends Serializable>
 		return findById((ID) util.getIdentifier(entity));
 	}
 
+	/**
+	 * @return the cache for query results, <code>null</code> if results are not cached
+	 */
+	public QueryResultCache getQueryResultCache() {
+		return queryResultCache;
+	}
+
+	/**
+	 * Caches the results of the <code>findByQuery</code> and <code>findCountByQuery</code>
+	 * methods not using an extent. The ids of the found entities are cached (if the persistent
+	 * class has a single basic id), and the entities are loaded by id in the caller's
+	 * persistence context on a cache hit. The cache is invalidated by the write methods of this DAO;
+	 * to also see changes made through other DAOs, subscribe the cache to their change notifier.
+	 * 
+	 * @param queryResultCache    the cache for query results, <code>null</code> to not cache them
+	 */
+	public void setQueryResultCache(QueryResultCache queryResultCache) {
+		this.queryResultCache = queryResultCache;
+	}
+
+	/**
+	 * Invalidates the cached query results of the persistent class, if any.
+	 */
+	protected void invalidateQueryResultCache() {
+		if (queryResultCache != null) {
+			queryResultCache.invalidate(getPersistentClass());
+		}
+	}
+
 	// extent-related methods:
 	
 	/**
@@ -363,6 +722,8 @@ public class GenericJpaDao<T, ID extends Serializable>
 	 * Prototype of Extent-based fetching,
 	 * steps through all the retrieved objects and calls
 	 * the methods of the extent to ensure loading from db.
+	 * If the extent fetcher is a {@link BatchExtentFetcher}, all objects
+	 * are handed over at once.
 	 * 
 	 * @param objects	list of objects to load in given extent
 	 * @param extent	the fetch-extent
@@ -370,10 +731,21 @@ public class GenericJpaDao<T, ID extends Serializable>
 	 * 
 	 * @throws DataAccessException 
 	 */
-	protected List<T> fetchExtent(List<T> objects, DataExtent extent)
+	protected List<T> fetchExtent(final List<T> objects, final DataExtent extent)
 		throws DataAccessException {
 		
-		if (extent != null) {
+		if (extent != null && extentFetcher instanceof BatchExtentFetcher) {
+			s_logger.debug("using batch extent-fetcher " + extentFetcher.getClass());
+			getConvenienceJpaTemplate().execute(new JpaCallback<Object>() {
+
+				@Override
+				public Object doInJpa(EntityManager em) throws PersistenceException {
+					((BatchExtentFetcher) extentFetcher).fetchExtent(objects, extent.getRootEntity(), em);
+					return null;
+				}
+				
+			});
+		} else if (extent != null) {
 			ReferenceMap fetchedObjects = new ReferenceMap();
 			for (Object obj : objects) {
 				fetchExtentObject(obj, extent.getRootEntity(), fetchedObjects);
@@ -422,14 +794,14 @@ public class GenericJpaDao<T, ID extends Serializable>
 	/** {@inheritDoc} */
 	@Override
 	public List<T> findByQuery(QueryBuilder criteria, DataExtent extent) throws DataAccessException {
-		return fetchExtent(findByQuery(criteria), extent);
+		return fetchExtent(doFindByQuery(criteria), extent);
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public List<T> findByQuery(QueryBuilder criteria, int firstResult, int maxResults, DataExtent extent)
 		throws DataAccessException {
-		return fetchExtent(findByQuery(criteria, firstResult, maxResults), extent);
+		return fetchExtent(doFindByQuery(criteria, firstResult, maxResults), extent);
 	}
 
 	/** {@inheritDoc} */
@@ -457,5 +829,123 @@ public class GenericJpaDao<T, ID extends Serializable>
 	public T reload(T entity, DataExtent extent) throws DataAccessException, DataRetrievalFailureException {
 		return fetchExtent(reload(entity), extent);
 	}
-
+	
+	/**
+	 * Loader for query results whose cache key contains a {@link QueryBuilder}.
+	 * The query builder is copied when the key is stored.
+	 *
+	 * @param <V> the type of the result
+	 */
+	private abstract static class QueryBuilderLoader<V> extends QueryResultCache.Loader<V> {
+		/** {@inheritDoc} */
+		@Override
+		public Object copyKey(Object key) {
+			List<Object> parts = new ArrayList<Object>((List<?>) key);
+			parts.set(2, new QueryBuilder((QueryBuilder) parts.get(2)));
+			return parts;
+		}
+	}
+	
+	/**
+	 * @param em    the entity manager
+	 * @return whether the persistence context of the entity manager is known to contain
+	 *         no entities, i.e. clearing it cannot detach entities of the caller
+	 */
+	private boolean isEmpty(EntityManager em) {
+		Object delegate = em.getDelegate();
+		if (delegate instanceof Session) {
+			SessionStatistics statistics = ((Session) delegate).getStatistics();
+			return statistics.getEntityCount() == 0 && statistics.getCollectionCount() == 0;
+		}
+		return false;
+	}
+	
+	/**
+	 * Processes the chunks of a streamed result: loads their extent, hands the objects
+	 * to the visitor and flushes and detaches them afterwards.
+	 */
+	private final class ChunkVisitor {
+		/**
+		 * The entity manager the objects are loaded in.
+		 */
+		private final EntityManager m_entityManager;
+		
+		/**
+		 * May the persistence context be cleared after each chunk? Only if it
+		 * held no entities of the caller.
+		 */
+		private final boolean m_clear;
+		
+		/**
+		 * The extent to load per chunk, may be <code>null</code>.
+		 */
+		private final DataExtent m_extent;
+		
+		/**
+		 * The visitor receiving the objects.
+		 */
+		private final ResultVisitor<? super T> m_visitor;
+		
+		/**
+		 * The number of visited objects.
+		 */
+		private int m_visited = 0;
+		
+		/**
+		 * Has the visitor asked to stop?
+		 */
+		private boolean m_stopped = false;
+		
+		/**
+		 * @param entityManager    the entity manager the objects are loaded in
+		 * @param clear            whether the persistence context may be cleared after each chunk,
+		 *                         otherwise only the objects of the chunk are detached
+		 * @param extent           the extent to load per chunk, may be <code>null</code>
+		 * @param visitor          the visitor receiving the objects
+		 */
+		ChunkVisitor(EntityManager entityManager, boolean clear, DataExtent extent,
+			ResultVisitor<? super T> visitor) {
+			m_entityManager = entityManager;
+			m_clear = clear;
+			m_extent = extent;
+			m_visitor = visitor;
+		}
+		
+		/**
+		 * @param chunk    the objects to process
+		 */
+		void visit(List<T> chunk) {
+			fetchExtent(chunk, m_extent);
+			for (T object : chunk) {
+				m_visited++;
+				if (!m_visitor.visit(object)) {
+					m_stopped = true;
+					break;
+				}
+			}
+			// detaching drops unflushed changes
+			m_entityManager.flush();
+			if (m_clear) {
+				m_entityManager.clear();
+			} else {
+				for (T object : chunk) {
+					m_entityManager.detach(object);
+				}
+			}
+		}
+		
+		/**
+		 * @return the number of visited objects
+		 */
+		int getVisited() {
+			return m_visited;
+		}
+		
+		/**
+		 * @return whether the visitor has asked to stop
+		 */
+		boolean isStopped() {
+			return m_stopped;
+		}
+	}
 }
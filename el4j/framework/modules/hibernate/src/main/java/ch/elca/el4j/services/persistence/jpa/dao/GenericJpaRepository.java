@@ -28,6 +28,7 @@ import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
 import ch.elca.el4j.services.persistence.jpa.criteria.QueryBuilder;
 import ch.elca.el4j.util.codingsupport.Reject;
@@ -176,6 +177,34 @@ public interface GenericJpaRepository<T, ID extends Serializable> {
 	 */
 	public T persist(T entity) throws ConstraintViolationException, OptimisticLockException;
 	
+	/**
+	 * Merges a (possibly large) number of entities, flushing and clearing the
+	 * entity manager after each batch (see
+	 * {@link ConvenienceGenericJpaDao#saveOrUpdateAll(Iterable, int, BatchProgressListener)}).
+	 * 
+	 * @param entities     the entities to merge
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @return the number of merged entities
+	 * @throws ConstraintViolationException
+	 * @throws OptimisticLockException
+	 */
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws ConstraintViolationException, OptimisticLockException;
+	
+	/**
+	 * Persists a (possibly large) number of new entities, flushing and clearing the
+	 * entity manager after each batch.
+	 * 
+	 * @param entities     the new entities to persist
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @return the number of persisted entities
+	 * @throws ConstraintViolationException
+	 */
+	public int persistAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws ConstraintViolationException;
+	
 	/**
 	 * Retrieves all the domain objects matching the JPA criteria.
 	 * 
@@ -39,6 +39,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import ch.elca.el4j.services.monitoring.notification.PersistenceNotificationHelper;
+import ch.elca.el4j.services.persistence.generic.dao.BatchProgressListener;
 import ch.elca.el4j.services.persistence.generic.dao.annotations.ReturnsUnchangedParameter;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.DataExtent;
 import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentEntity;
@@ -145,6 +146,64 @@ GenericJpaRepository<T, ID> {
 		return entity;
 	}
 
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int saveOrUpdateAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws ConstraintViolationException, OptimisticLockException {
+		
+		return writeAll(entities, batchSize, listener, false);
+	}
+	
+	/** {@inheritDoc} */
+	@Transactional(propagation = Propagation.REQUIRED)
+	public int persistAll(Iterable<T> entities, int batchSize, BatchProgressListener listener)
+		throws ConstraintViolationException {
+		
+		return writeAll(entities, batchSize, listener, true);
+	}
+	
+	/**
+	 * Merges or persists the given entities, flushing and clearing the entity manager
+	 * after each batch.
+	 * 
+	 * @param entities     the entities to write
+	 * @param batchSize    the number of entities written per batch
+	 * @param listener     the listener to report the progress to, may be <code>null</code>
+	 * @param persist      whether to persist (or merge) the entities
+	 * @return the number of written entities
+	 */
+	private int writeAll(Iterable<T> entities, int batchSize, BatchProgressListener listener,
+		boolean persist) {
+		
+		Reject.ifNull(entities);
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		
+		int count = 0;
+		for (T entity : entities) {
+			if (persist) {
+				entityManager.persist(entity);
+			} else {
+				mergeStrong(entity, getPersistentClassName());
+			}
+			count++;
+			if (count % batchSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+				if (listener != null) {
+					listener.batchCompleted(count);
+				}
+			}
+		}
+		if (count % batchSize != 0) {
+			entityManager.flush();
+			entityManager.clear();
+			if (listener != null) {
+				listener.batchCompleted(count);
+			}
+		}
+		return count;
+	}
+	
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	@ReturnsUnchangedParameter
@@ -0,0 +1,51 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.jpa.dao.extentstrategies;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.dao.DataAccessException;
+
+import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentEntity;
+
+/**
+ * Strategy interface for fetching extents of whole lists of objects at once.
+ * 
+ * If the injected ExtentFetcher implements this interface, GenericJpaDao
+ * hands all retrieved objects over in one call instead of one call per object.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface BatchExtentFetcher extends ExtentFetcher {
+
+	/**
+	 * Loads the given extent for all the given objects.
+	 * 
+	 * Implementations must be thread-safe.
+	 * 
+	 * @param objects	the objects to load in given extent
+	 * @param entity	the extent entity
+	 * @param em		the entity manager the objects are attached to
+	 * 
+	 * @throws DataAccessException
+	 */
+	public void fetchExtent(Collection<?> objects, ExtentEntity entity, EntityManager em)
+		throws DataAccessException;
+	
+}
@@ -0,0 +1,67 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.persistence.jpa.dao.extentstrategies;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.springframework.dao.DataAccessException;
+
+import ch.elca.el4j.services.persistence.hibernate.dao.extent.BatchExtentLoader;
+import ch.elca.el4j.services.persistence.hibernate.dao.extent.ExtentEntity;
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * Extent Fetcher for JPA with underlying Hibernate implementation that loads
+ * the extent level by level using <code>IN</code>-list queries
+ * (see {@link BatchExtentLoader}).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchingHibernateExtentFetcher extends HibernateExtentFetcher implements BatchExtentFetcher {
+
+	/**
+	 * The maximal number of ids loaded with one query.
+	 */
+	private int m_batchSize = BatchExtentLoader.DEFAULT_BATCH_SIZE;
+	
+	/** {@inheritDoc} */
+	public void fetchExtent(Collection<?> objects, ExtentEntity entity, EntityManager em)
+		throws DataAccessException {
+		
+		new BatchExtentLoader(em.unwrap(Session.class), m_batchSize).load(objects, entity);
+	}
+
+	/**
+	 * @return the maximal number of ids loaded with one query
+	 */
+	public int getBatchSize() {
+		return m_batchSize;
+	}
+
+	/**
+	 * @param batchSize    the maximal number of ids loaded with one query
+	 *                     (default: {@link BatchExtentLoader#DEFAULT_BATCH_SIZE})
+	 */
+	public void setBatchSize(int batchSize) {
+		Reject.ifFalse(batchSize > 0, "The batch size must be positive.");
+		m_batchSize = batchSize;
+	}
+	
+}
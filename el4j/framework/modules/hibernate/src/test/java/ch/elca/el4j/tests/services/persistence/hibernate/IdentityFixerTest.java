@@ -239,6 +239,33 @@ public class IdentityFixerTest {
 		assertEquals("Name not updated", "Anchor(withKey)", anchor.name);
 	}
 	
+	@Test
+	public void testSkipUnchanged() {
+		AbstractIdentityFixer idFixer = new HibernatePrimaryKeyObjectIdentityFixer();
+		
+		Example anchor = new Example("Anchor");
+		anchor.setKey(1);
+		idFixer.merge(null, anchor);
+		
+		// same version: the representative is kept as it is
+		Example unchanged = new Example("Anchor (same version)");
+		unchanged.setKey(1);
+		Example merged = idFixer.merge(null, unchanged, IdentityFixerMergePolicy.reloadChangedPolicy(null));
+		
+		assertTrue("Representative not returned", merged == anchor);
+		assertEquals("Unchanged object merged", "Anchor", anchor.name);
+		
+		// new version: the representative is updated
+		Example changed = new Example("Anchor (new version)");
+		changed.setKey(1);
+		changed.increaseOptimisticLockingVersion();
+		merged = idFixer.merge(null, changed, IdentityFixerMergePolicy.reloadChangedPolicy(null));
+		
+		assertTrue("Representative not returned", merged == anchor);
+		assertEquals("Name not updated", "Anchor (new version)", anchor.name);
+		assertEquals("Version not updated", 1, anchor.getOptimisticLockingVersion());
+	}
+	
 	private Example createExample(String postfix, boolean setKeys) {
 		Example root = new Example("Anchor " + postfix);
 		Example child1 = new Example("Child 1 " + postfix);
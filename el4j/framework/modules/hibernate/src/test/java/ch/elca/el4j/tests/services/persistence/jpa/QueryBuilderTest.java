@@ -27,6 +27,12 @@ import org.junit.Test;
 
 import ch.elca.el4j.services.persistence.jpa.criteria.QueryBuilder;
 import ch.elca.el4j.services.persistence.jpa.criteria.SortOrder;
+import ch.elca.el4j.services.search.QueryObject;
+import ch.elca.el4j.services.search.criterias.AndCriteria;
+import ch.elca.el4j.services.search.criterias.ComparisonCriteria;
+import ch.elca.el4j.services.search.criterias.Criteria;
+import ch.elca.el4j.services.search.criterias.OrCriteria;
+import ch.elca.el4j.services.search.criterias.Order;
 
 /**
  * Test {@link QueryBuilder}.
@@ -120,5 +126,67 @@ public class QueryBuilderTest {
 		builder = builder.clearOrderBy();
 		Assert.assertTrue(!builder.equals(builderCopy));
 	}
-
+	
+	/**
+	 * The keyset predicate of {@link QueryBuilder#seekAfter(Serializable...)} must be the one of
+	 * {@link QueryObject#getKeysetCriteria()}, including the leading range condition.
+	 */
+	@Test
+	public void testSeekAfterMatchesQueryObject() {
+		assertSameKeyset(new boolean[] {true, false}, "Bob", 7L);
+		assertSameKeyset(new boolean[] {false, true, true}, "Bob", 7L, 3);
+		assertSameKeyset(new boolean[] {true}, 7L);
+	}
+	
+	/**
+	 * Asserts that the builder and the query object restrict to the same keyset.
+	 * 
+	 * @param ascending whether the sort columns are sorted ascending
+	 * @param keyset the sort key of the last result seen
+	 */
+	private void assertSameKeyset(boolean[] ascending, Serializable... keyset) {
+		String[] columns = {"name", "key", "rank"};
+		QueryBuilder builder = QueryBuilder.select("e").from("Entity e");
+		QueryObject query = new QueryObject();
+		for (int i = 0; i < ascending.length; i++) {
+			builder.orderBy(ascending[i] ? SortOrder.ASCENDING : SortOrder.DESCENDING, "e." + columns[i]);
+			query.addOrder(ascending[i] ? Order.asc(columns[i]) : Order.desc(columns[i]));
+		}
+		builder.seekAfter(keyset);
+		query.setKeyset((Object[]) keyset);
+		
+		List<Object> parameters = new ArrayList<Object>();
+		String predicate = render(query.getKeysetCriteria(), parameters);
+		String actual = builder.toString();
+		Assert.assertEquals(" WHERE " + predicate,
+			actual.substring(actual.indexOf(" WHERE "), actual.indexOf(" ORDER BY ")));
+		Assert.assertEquals(parameters, new ArrayList<Object>(builder.getSeekParameters()));
+	}
+	
+	/**
+	 * Renders keyset criteria the way {@link QueryBuilder} renders its predicates.
+	 * 
+	 * @param criteria the criteria to render
+	 * @param parameters the list to add the parameters to, in order
+	 * @return the rendered criteria
+	 */
+	private String render(Criteria criteria, List<Object> parameters) {
+		if (criteria instanceof ComparisonCriteria) {
+			ComparisonCriteria comparison = (ComparisonCriteria) criteria;
+			parameters.add(comparison.getValue());
+			return "e." + comparison.getField() + " " + comparison.getOperator() + " {p}";
+		}
+		List<String> parts = new ArrayList<String>();
+		if (criteria instanceof OrCriteria) {
+			for (Criteria alternative : ((OrCriteria) criteria).getCriterias()) {
+				parts.add("(" + render(alternative, parameters) + ")");
+			}
+			return StringUtils.join(parts, " OR ");
+		}
+		for (Criteria conjunct : ((AndCriteria) criteria).getCriterias()) {
+			String part = render(conjunct, parameters);
+			parts.add(conjunct instanceof ComparisonCriteria ? part : "(" + part + ")");
+		}
+		return StringUtils.join(parts, " AND ");
+	}
 }
@@ -21,6 +21,8 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +66,13 @@ public class ClientContextInvocationHandler implements InvocationHandler {
 	private final ImplicitContextPassingRegistry
 		m_implicitContextPassingRegistry;
 	
+	/**
+	 * Maps the methods invoked on the proxy to the methods of the enriched
+	 * service interface, so the reflective lookup is done once per method.
+	 */
+	private final ConcurrentMap<Method, Method> m_dispatchTable
+		= new ConcurrentHashMap<Method, Method>();
+	
 	/**
 	 * Constructor.
 	 *
@@ -87,13 +96,75 @@ public class ClientContextInvocationHandler implements InvocationHandler {
 		}
 	}
 
+	/**
+	 * Fills the dispatch table for all methods of the given interfaces, so the
+	 * first remote calls do not have to look up their target method.
+	 *
+	 * @param proxyInterfaces
+	 *                  Are the interfaces implemented by the proxy using this
+	 *                  invocation handler.
+	 */
+	public void prepareDispatchTable(Class... proxyInterfaces) {
+		for (Class proxyInterface : proxyInterfaces) {
+			for (Method method : proxyInterface.getMethods()) {
+				try {
+					getTargetMethod(method);
+				} catch (NoSuchMethodException e) {
+					s_logger.debug("Method " + method
+						+ " is not available on the enriched service interface.");
+				}
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public Object invoke(Object proxy, Method method, Object[] args)
 		throws Throwable {
-		Method m;
+		Method m = getTargetMethod(method);
 		Object[] newArgs;
+
+		// see getTargetMethod for why isInterface is sufficient here
+		if (method.getDeclaringClass().isInterface()) {
+			int argsLength = (args == null) ? 0 : args.length;
+			newArgs = new Object[argsLength + 1];
+			if (argsLength > 0) {
+				System.arraycopy(args, 0, newArgs, 0, argsLength);
+			}
+			Map map = null;
+			if (m_implicitContextPassingRegistry != null) {
+				map = m_implicitContextPassingRegistry
+						.getAssembledImplicitContext();
+			}
+			newArgs[newArgs.length - 1] = map;
+		} else {
+			newArgs = args;
+		}
+
+		try {
+			return m.invoke(m_innerRemoteObject, newArgs);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	/**
+	 * Returns the method of the inner remote object to call for the given proxy
+	 * method. The target method is looked up only once per proxy method.
+	 *
+	 * @param method
+	 *                  Is the method invoked on the proxy.
+	 * @return Returns the method to invoke on the inner remote object.
+	 * @throws NoSuchMethodException
+	 *                  If the enriched service interface has no such method.
+	 */
+	protected Method getTargetMethod(Method method) throws NoSuchMethodException {
+		Method m = m_dispatchTable.get(method);
+		if (m != null) {
+			return m;
+		}
+		
 		String methodName = method.getName();
 		Class[] methodParametersTypes = method.getParameterTypes();
 		Class declaringClass = method.getDeclaringClass();
@@ -113,28 +184,12 @@ public class ClientContextInvocationHandler implements InvocationHandler {
 			
 			m = m_serviceInterfaceWithContext.getMethod(methodName,
 					methodParametersTypesWithContext);
-	
-			int argsLength = (args == null) ? 0 : args.length;
-			newArgs = new Object[argsLength + 1];
-			for (int i = 0; i < argsLength; i++) {
-				newArgs[i] = args[i];
-			}
-			Map map = null;
-			if (m_implicitContextPassingRegistry != null) {
-				map = m_implicitContextPassingRegistry
-						.getAssembledImplicitContext();
-			}
-			newArgs[newArgs.length - 1] = map;
 		} else {
 			m = declaringClass.getMethod(methodName, methodParametersTypes);
-			newArgs = args;
-		}
-
-		try {
-			return m.invoke(m_innerRemoteObject, newArgs);
-		} catch (InvocationTargetException e) {
-			throw e.getTargetException();
 		}
+		
+		Method existing = m_dispatchTable.putIfAbsent(method, m);
+		return existing != null ? existing : m;
 	}
 
 	/**
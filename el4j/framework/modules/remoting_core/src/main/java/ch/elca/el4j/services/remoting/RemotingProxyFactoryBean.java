@@ -18,23 +18,57 @@
 package ch.elca.el4j.services.remoting;
 
 import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
+import ch.elca.el4j.services.remoting.async.AsyncInvocationHandler;
+import ch.elca.el4j.services.remoting.async.BatchInvocationService;
+import ch.elca.el4j.services.remoting.async.InvocationBatcher;
 import ch.elca.el4j.util.interfaceenrichment.EnrichmentDecorator;
 import ch.elca.el4j.util.interfaceenrichment.InterfaceEnricher;
 
 /**
  * This class is the global remote proxy bean.
  *
+ * <p> If an <code>asyncInterface</code> is set, the created proxy implements
+ * this interface instead of the service interface. Its methods have the
+ * signatures of the service interface methods, but return a
+ * {@link java.util.concurrent.Future}. They are invoked in the background
+ * with the implicit context of the calling thread. If additionally a
+ * <code>batchInvocationService</code> is set, the invocations issued within
+ * the <code>batchWindow</code> are sent in one round trip (see
+ * {@link ch.elca.el4j.services.remoting.async.BatchInvocationServiceImpl} for
+ * the server side).
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Martin Zeltner (MZE)
  */
 public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
-		FactoryBean {
+		FactoryBean, DisposableBean {
+	/**
+	 * Default number of threads executing asynchronous invocations.
+	 */
+	public static final int DEFAULT_ASYNC_THREAD_COUNT = 8;
+
+	/**
+	 * Default milliseconds an invocation waits for others to join its batch.
+	 */
+	public static final long DEFAULT_BATCH_WINDOW = 10;
+
+	/**
+	 * Default number of invocations from which a batch is sent immediately.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
 	/**
 	 * Private logger.
 	 */
@@ -49,12 +83,80 @@ public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
 	/** Whether the factory creates singleton beans or not. */
 	private boolean m_singleton = true;
 	
+	/**
+	 * The asynchronous variant of the service interface, <code>null</code> to
+	 * create synchronous proxies.
+	 */
+	private Class m_asyncInterface;
+	
+	/**
+	 * Executes the asynchronous invocations.
+	 */
+	private ExecutorService m_asyncExecutor;
+	
+	/**
+	 * Whether the asynchronous executor has been created by this factory.
+	 */
+	private boolean m_ownAsyncExecutor;
+	
+	/**
+	 * Sends asynchronous invocations in batches, <code>null</code> to send
+	 * them one by one.
+	 */
+	private BatchInvocationService m_batchInvocationService;
+	
+	/**
+	 * @see #setBatchWindow(long)
+	 */
+	private long m_batchWindow = DEFAULT_BATCH_WINDOW;
+	
+	/**
+	 * @see #setMaxBatchSize(int)
+	 */
+	private int m_maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	
+	/**
+	 * Triggers the sending of batches, created lazily.
+	 */
+	private ScheduledExecutorService m_batchScheduler;
+	
+	/**
+	 * Batches the invocations of all proxies of this factory, created lazily.
+	 */
+	private InvocationBatcher m_batcher;
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void afterPropertiesSet() throws Exception {
 		super.afterPropertiesSet();
 		getRemoteProtocol().checkRemotingProxy(this);
+		if (m_asyncInterface != null && !m_asyncInterface.isInterface()) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"The asyncInterface must be an interface.");
+		}
+		if (m_batchInvocationService != null && m_asyncInterface == null) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"Batched invocations require an asyncInterface.");
+		}
+	}
+	
+	/**
+	 * Fails the invocations still waiting to be batched and shuts down the
+	 * executors created by this factory.
+	 *
+	 * {@inheritDoc}
+	 */
+	public synchronized void destroy() {
+		if (m_batcher != null) {
+			m_batcher.shutdown();
+		}
+		if (m_batchScheduler != null) {
+			m_batchScheduler.shutdown();
+		}
+		if (m_ownAsyncExecutor && m_asyncExecutor != null) {
+			m_asyncExecutor.shutdown();
+		}
 	}
 	
 	/**
@@ -102,6 +204,7 @@ public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
 			
 			Class[] proxyInterface = getRemoteProtocol().
 					getProxyInterface(getServiceInterface());
+			invocationHandler.prepareDispatchTable(proxyInterface);
 			
 			serviceProxy = Proxy.newProxyInstance(cl,
 					proxyInterface, invocationHandler);
@@ -118,9 +221,66 @@ public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
 					getServiceInterface());
 		}
 		
+		if (m_asyncInterface != null) {
+			serviceProxy = createAsyncProxy(serviceProxy);
+		}
+		
 		return serviceProxy;
 	}
 	
+	/**
+	 * Wraps the given service proxy by a proxy implementing the asynchronous
+	 * interface.
+	 *
+	 * @param serviceProxy
+	 *            The synchronous service proxy.
+	 * @return Returns the asynchronous proxy.
+	 */
+	protected Object createAsyncProxy(Object serviceProxy) {
+		AsyncInvocationHandler invocationHandler;
+		synchronized (this) {
+			if (m_asyncExecutor == null) {
+				m_asyncExecutor = Executors.newFixedThreadPool(
+					DEFAULT_ASYNC_THREAD_COUNT, createThreadFactory("async"));
+				m_ownAsyncExecutor = true;
+			}
+			if (m_batchInvocationService != null && m_batcher == null) {
+				m_batchScheduler = Executors.newSingleThreadScheduledExecutor(
+					createThreadFactory("batch"));
+				m_batcher = new InvocationBatcher(m_batchInvocationService,
+					getServiceName(),
+					getRemoteProtocol().getImplicitContextPassingRegistry(),
+					m_batchScheduler, m_asyncExecutor, m_batchWindow,
+					m_maxBatchSize);
+			}
+			invocationHandler = new AsyncInvocationHandler(serviceProxy,
+				getServiceInterface(), m_asyncExecutor, m_batcher,
+				getRemoteProtocol().getImplicitContextPassingRegistry());
+		}
+		try {
+			invocationHandler.prepareDispatchTable(m_asyncInterface);
+		} catch (NoSuchMethodException e) {
+			CoreNotificationHelper.notifyMisconfiguration("The asyncInterface "
+				+ m_asyncInterface.getName() + " does not match the service "
+				+ "interface " + getServiceInterface().getName() + ".", e);
+		}
+		return Proxy.newProxyInstance(
+			Thread.currentThread().getContextClassLoader(),
+			new Class[] {m_asyncInterface}, invocationHandler);
+	}
+	
+	/**
+	 * @param purpose
+	 *            The purpose of the threads, used in their names.
+	 * @return Returns a factory for daemon threads.
+	 */
+	private CustomizableThreadFactory createThreadFactory(String purpose) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+			"el4j-remoting-" + purpose + "-" + getServiceName() + "-");
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -143,7 +303,10 @@ public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
 	 * {@inheritDoc}
 	 */
 	public Class getObjectType() {
-		return (this.m_serviceProxy != null) ? this.m_serviceProxy.getClass()
+		if (this.m_serviceProxy != null) {
+			return this.m_serviceProxy.getClass();
+		}
+		return (m_asyncInterface != null) ? m_asyncInterface
 				: getServiceInterface();
 	}
 
@@ -165,4 +328,89 @@ public class RemotingProxyFactoryBean extends AbstractRemotingBase implements
 	public void setSingleton(boolean singleton) {
 		m_singleton = singleton;
 	}
+
+	/**
+	 * @return Returns the asynchronous interface.
+	 */
+	public Class getAsyncInterface() {
+		return m_asyncInterface;
+	}
+
+	/**
+	 * @param asyncInterface
+	 *      The asynchronous variant of the service interface: its methods
+	 *      have the signatures of service interface methods, but return a
+	 *      {@link java.util.concurrent.Future}. Other methods are invoked
+	 *      synchronously. <code>null</code> (default) to create synchronous
+	 *      proxies.
+	 */
+	public void setAsyncInterface(Class asyncInterface) {
+		m_asyncInterface = asyncInterface;
+	}
+
+	/**
+	 * @return Returns the executor of the asynchronous invocations.
+	 */
+	public ExecutorService getAsyncExecutor() {
+		return m_asyncExecutor;
+	}
+
+	/**
+	 * @param asyncExecutor
+	 *      The executor of the asynchronous invocations. By default, a pool
+	 *      of {@link #DEFAULT_ASYNC_THREAD_COUNT} threads is created.
+	 */
+	public void setAsyncExecutor(ExecutorService asyncExecutor) {
+		m_asyncExecutor = asyncExecutor;
+		m_ownAsyncExecutor = false;
+	}
+
+	/**
+	 * @return Returns the batch invocation service.
+	 */
+	public BatchInvocationService getBatchInvocationService() {
+		return m_batchInvocationService;
+	}
+
+	/**
+	 * @param batchInvocationService
+	 *      The (remote) service to send asynchronous invocations in batches,
+	 *      <code>null</code> (default) to send them one by one.
+	 */
+	public void setBatchInvocationService(
+		BatchInvocationService batchInvocationService) {
+		m_batchInvocationService = batchInvocationService;
+	}
+
+	/**
+	 * @return Returns the batch window in milliseconds.
+	 */
+	public long getBatchWindow() {
+		return m_batchWindow;
+	}
+
+	/**
+	 * @param batchWindow
+	 *      The milliseconds an invocation waits for others to join its batch.
+	 *      Defaults to {@link #DEFAULT_BATCH_WINDOW}.
+	 */
+	public void setBatchWindow(long batchWindow) {
+		m_batchWindow = batchWindow;
+	}
+
+	/**
+	 * @return Returns the maximum batch size.
+	 */
+	public int getMaxBatchSize() {
+		return m_maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchSize
+	 *      The number of invocations from which a batch is sent immediately.
+	 *      Defaults to {@link #DEFAULT_MAX_BATCH_SIZE}.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		m_maxBatchSize = maxBatchSize;
+	}
 }
@@ -152,6 +152,7 @@ public class RemotingServiceExporter extends AbstractRemotingBase implements
 			ServerContextInvocationHandler invocationHandler = new ServerContextInvocationHandler(
 				service, getServiceInterface(), getRemoteProtocol()
 					.getImplicitContextPassingRegistry());
+			invocationHandler.prepareDispatchTable(serviceInterfaceWithContext);
 			Object serviceProxy = Proxy.newProxyInstance(cl,
 				new Class[] {serviceInterfaceWithContext}, invocationHandler);
 
@@ -22,6 +22,8 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,14 @@ public class ServerContextInvocationHandler
 	 */
 	private final ImplicitContextPassingRegistry
 		m_implicitContextPassingRegistry;
+	
+	/**
+	 * Maps the methods invoked on the proxy to the methods of the service
+	 * interface, so the reflective lookup is done once per method. Methods
+	 * are not serializable, so the table is rebuilt after deserialization.
+	 */
+	private transient volatile ConcurrentMap<Method, Method> m_dispatchTable
+		= new ConcurrentHashMap<Method, Method>();
 
 	/**
 	 * Constructor.
@@ -82,13 +92,77 @@ public class ServerContextInvocationHandler
 		}
 	}
 	
+	/**
+	 * Fills the dispatch table for all methods of the given interfaces, so the
+	 * first remote calls do not have to look up their target method.
+	 *
+	 * @param exportedInterfaces
+	 *              Are the interfaces implemented by the proxy using this
+	 *              invocation handler.
+	 */
+	public void prepareDispatchTable(Class... exportedInterfaces) {
+		for (Class exportedInterface : exportedInterfaces) {
+			for (Method method : exportedInterface.getMethods()) {
+				try {
+					getTargetMethod(method);
+				} catch (NoSuchMethodException e) {
+					s_logger.debug("Method " + method
+						+ " is not available on the service interface.");
+				}
+			}
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public Object invoke(Object proxy, Method method, Object[] args)
 		throws Throwable {
-		Method m;
+		Method m = getTargetMethod(method);
 		Object[] newArgs;
+		
+		// see getTargetMethod for why isInterface is sufficient here
+		if (method.getDeclaringClass().isInterface()) {
+			newArgs = new Object[args.length - 1];
+			System.arraycopy(args, 0, newArgs, 0, newArgs.length);
+			Map map = (Map) args[args.length - 1];
+			if (m_implicitContextPassingRegistry != null) {
+				m_implicitContextPassingRegistry.pushAssembledImplicitContext(
+					map);
+			}
+		} else {
+			newArgs = args;
+		}
+
+		try {
+			return m.invoke(m_service, newArgs);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+	
+	/**
+	 * Returns the method of the service to call for the given proxy method.
+	 * The target method is looked up only once per proxy method.
+	 *
+	 * @param method
+	 *              Is the method invoked on the proxy.
+	 * @return Returns the method to invoke on the service.
+	 * @throws NoSuchMethodException
+	 *              If the service interface has no such method.
+	 */
+	protected Method getTargetMethod(Method method) throws NoSuchMethodException {
+		ConcurrentMap<Method, Method> dispatchTable = m_dispatchTable;
+		if (dispatchTable == null) {
+			// not serialized, recreate it after deserialization
+			dispatchTable = new ConcurrentHashMap<Method, Method>();
+			m_dispatchTable = dispatchTable;
+		}
+		Method m = dispatchTable.get(method);
+		if (m != null) {
+			return m;
+		}
+		
 		String methodName = method.getName();
 		Class[] methodParametersTypes = method.getParameterTypes();
 		Class declaringClass = method.getDeclaringClass();
@@ -103,33 +177,17 @@ public class ServerContextInvocationHandler
 		if (declaringClass.isInterface()) {
 			Class[] methodParametersTypesWithoutContext
 				= new Class[methodParametersTypes.length - 1];
-			for (int i = 0;
-				i < methodParametersTypesWithoutContext.length; i++) {
-				methodParametersTypesWithoutContext[i]
-					= methodParametersTypes[i];
-			}
+			System.arraycopy(methodParametersTypes, 0,
+				methodParametersTypesWithoutContext, 0,
+				methodParametersTypesWithoutContext.length);
 	
 			m = m_serviceInterface.getMethod(methodName,
 					methodParametersTypesWithoutContext);
-	
-			newArgs = new Object[args.length - 1];
-			for (int i = 0; i < newArgs.length; i++) {
-				newArgs[i] = args[i];
-			}
-			Map map = (Map) args[args.length - 1];
-			if (m_implicitContextPassingRegistry != null) {
-				m_implicitContextPassingRegistry.pushAssembledImplicitContext(
-					map);
-			}
 		} else {
 			m = declaringClass.getMethod(methodName, methodParametersTypes);
-			newArgs = args;
-		}
-
-		try {
-			return m.invoke(m_service, newArgs);
-		} catch (InvocationTargetException e) {
-			throw e.getTargetException();
 		}
+		
+		Method existing = dispatchTable.putIfAbsent(method, m);
+		return existing != null ? existing : m;
 	}
 }
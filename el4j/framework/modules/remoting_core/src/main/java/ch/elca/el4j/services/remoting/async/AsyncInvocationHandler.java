@@ -0,0 +1,240 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ch.elca.el4j.core.contextpassing.ImplicitContextPassingRegistry;
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * Invocation handler of asynchronous remoting proxies. The proxy implements
+ * an asynchronous interface that mirrors the service interface: its methods
+ * have the same names and parameters, but return a {@link Future}. Such
+ * methods are executed in the background (or sent in batches, if an
+ * {@link InvocationBatcher} is set), all other methods are delegated
+ * synchronously.
+ *
+ * <p> The implicit context of the invoking thread is captured when the method
+ * is called and pushed on the thread that executes the remote invocation.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class AsyncInvocationHandler implements InvocationHandler {
+
+	/**
+	 * The synchronous service proxy.
+	 */
+	private final Object m_serviceProxy;
+
+	/**
+	 * The service interface implemented by the synchronous proxy.
+	 */
+	private final Class<?> m_serviceInterface;
+
+	/**
+	 * Executes the asynchronous invocations.
+	 */
+	private final ExecutorService m_executor;
+
+	/**
+	 * Sends the asynchronous invocations in batches, <code>null</code> to
+	 * send them one by one.
+	 */
+	private final InvocationBatcher m_batcher;
+
+	/**
+	 * The implicit context passing registry, may be <code>null</code>.
+	 */
+	private final ImplicitContextPassingRegistry m_implicitContextPassingRegistry;
+
+	/**
+	 * Maps the methods of the asynchronous interface to the ones of the
+	 * service interface.
+	 */
+	private final ConcurrentMap<Method, Method> m_dispatchTable
+		= new ConcurrentHashMap<Method, Method>();
+
+	/**
+	 * @param serviceProxy
+	 *            The synchronous service proxy
+	 * @param serviceInterface
+	 *            The service interface implemented by the synchronous proxy
+	 * @param executor
+	 *            Executes the asynchronous invocations
+	 * @param batcher
+	 *            Sends the asynchronous invocations in batches,
+	 *            <code>null</code> to send them one by one
+	 * @param implicitContextPassingRegistry
+	 *            The implicit context passing registry, may be
+	 *            <code>null</code>
+	 */
+	public AsyncInvocationHandler(Object serviceProxy, Class<?> serviceInterface,
+		ExecutorService executor, InvocationBatcher batcher,
+		ImplicitContextPassingRegistry implicitContextPassingRegistry) {
+
+		Reject.ifNull(serviceProxy);
+		Reject.ifNull(serviceInterface);
+		Reject.ifNull(executor);
+		m_serviceProxy = serviceProxy;
+		m_serviceInterface = serviceInterface;
+		m_executor = executor;
+		m_batcher = batcher;
+		m_implicitContextPassingRegistry = implicitContextPassingRegistry;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			return invokeObjectMethod(proxy, method, args);
+		}
+		final Method target = getTargetMethod(method);
+		if (!isAsynchronous(method, target)) {
+			return invokeTarget(target, args);
+		}
+
+		Map<String, Object> context = null;
+		if (m_implicitContextPassingRegistry != null) {
+			context = m_implicitContextPassingRegistry.getAssembledImplicitContext();
+		}
+		if (m_batcher != null) {
+			return m_batcher.enqueue(target, args, context);
+		}
+
+		final Object[] arguments = args;
+		final Map<String, Object> callerContext = context;
+		return m_executor.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				return invokeWithContext(target, arguments, callerContext);
+			}
+		});
+	}
+
+	/**
+	 * Fills the dispatch table for all methods of the given asynchronous
+	 * interface.
+	 *
+	 * @param asyncInterface
+	 *            The asynchronous interface
+	 * @throws NoSuchMethodException
+	 *            If the service interface has no method matching one of the
+	 *            asynchronous interface
+	 */
+	public void prepareDispatchTable(Class<?> asyncInterface) throws NoSuchMethodException {
+		for (Method method : asyncInterface.getMethods()) {
+			getTargetMethod(method);
+		}
+	}
+
+	/**
+	 * @param method    the method of the asynchronous interface
+	 * @return the method of the service interface with the same signature
+	 * @throws NoSuchMethodException if there is no such method
+	 */
+	protected Method getTargetMethod(Method method) throws NoSuchMethodException {
+		Method target = m_dispatchTable.get(method);
+		if (target == null) {
+			target = m_serviceInterface.getMethod(method.getName(), method.getParameterTypes());
+			Method existing = m_dispatchTable.putIfAbsent(method, target);
+			target = existing != null ? existing : target;
+		}
+		return target;
+	}
+
+	/**
+	 * @param method    the method of the asynchronous interface
+	 * @param target    the method of the service interface
+	 * @return <code>true</code> if the method is to be executed asynchronously
+	 */
+	protected boolean isAsynchronous(Method method, Method target) {
+		return Future.class.equals(method.getReturnType())
+			&& !Future.class.isAssignableFrom(target.getReturnType());
+	}
+
+	/**
+	 * Invokes the service method on the current thread with the given
+	 * implicit context.
+	 *
+	 * @param target     the method of the service interface
+	 * @param args       the arguments
+	 * @param context    the implicit context of the caller
+	 * @return the result of the invocation
+	 * @throws Exception if the invocation failed
+	 */
+	protected Object invokeWithContext(Method target, Object[] args,
+		Map<String, Object> context) throws Exception {
+
+		if (m_implicitContextPassingRegistry == null) {
+			return invokeTarget(target, args);
+		}
+		Map<String, Object> previousContext
+			= m_implicitContextPassingRegistry.getAssembledImplicitContext();
+		m_implicitContextPassingRegistry.pushAssembledImplicitContext(context);
+		try {
+			return invokeTarget(target, args);
+		} finally {
+			m_implicitContextPassingRegistry.pushAssembledImplicitContext(previousContext);
+		}
+	}
+
+	/**
+	 * @param target    the method of the service interface
+	 * @param args      the arguments
+	 * @return the result of the invocation
+	 * @throws Exception if the invocation failed
+	 */
+	private Object invokeTarget(Method target, Object[] args) throws Exception {
+		try {
+			return target.invoke(m_serviceProxy, args);
+		} catch (InvocationTargetException e) {
+			Throwable t = e.getTargetException();
+			if (t instanceof Exception) {
+				throw (Exception) t;
+			}
+			throw (Error) t;
+		}
+	}
+
+	/**
+	 * Implements the methods of {@link Object} on the proxy.
+	 *
+	 * @param proxy     the proxy
+	 * @param method    the invoked method
+	 * @param args      the arguments
+	 * @return the result of the invocation
+	 */
+	private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if ("equals".equals(name)) {
+			return proxy == args[0];
+		} else if ("hashCode".equals(name)) {
+			return System.identityHashCode(proxy);
+		} else {
+			return "Asynchronous proxy of " + m_serviceInterface.getName();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+/**
+ * A method invocation sent to the {@link BatchInvocationService} as part of a
+ * batch.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchInvocation implements Serializable {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name under which the target service is registered on the server.
+	 */
+	private final String m_serviceName;
+
+	/**
+	 * Name of the invoked method.
+	 */
+	private final String m_methodName;
+
+	/**
+	 * Class names of the parameter types of the invoked method.
+	 */
+	private final String[] m_parameterTypes;
+
+	/**
+	 * The arguments.
+	 */
+	private final Object[] m_arguments;
+
+	/**
+	 * @param serviceName
+	 *            Name under which the target service is registered on the
+	 *            server
+	 * @param method
+	 *            The invoked method of the service interface
+	 * @param arguments
+	 *            The arguments, may be <code>null</code>
+	 */
+	public BatchInvocation(String serviceName, Method method, Object[] arguments) {
+		m_serviceName = serviceName;
+		m_methodName = method.getName();
+		Class<?>[] types = method.getParameterTypes();
+		m_parameterTypes = new String[types.length];
+		for (int i = 0; i < types.length; i++) {
+			m_parameterTypes[i] = types[i].getName();
+		}
+		m_arguments = arguments == null ? new Object[0] : arguments;
+	}
+
+	/**
+	 * @return Returns the name under which the target service is registered.
+	 */
+	public String getServiceName() {
+		return m_serviceName;
+	}
+
+	/**
+	 * @return Returns the name of the invoked method.
+	 */
+	public String getMethodName() {
+		return m_methodName;
+	}
+
+	/**
+	 * @return Returns the class names of the parameter types.
+	 */
+	public String[] getParameterTypes() {
+		return m_parameterTypes;
+	}
+
+	/**
+	 * @return Returns the arguments.
+	 */
+	public Object[] getArguments() {
+		return m_arguments;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return m_serviceName + "#" + m_methodName;
+	}
+}
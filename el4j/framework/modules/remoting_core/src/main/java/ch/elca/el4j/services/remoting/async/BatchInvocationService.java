@@ -0,0 +1,42 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+/**
+ * Executes several method invocations in one remote round trip. An
+ * implementation ({@link BatchInvocationServiceImpl}) is exported on the
+ * server like any other service; clients use it through the
+ * <code>batchInvocationService</code> property of the
+ * {@link ch.elca.el4j.services.remoting.RemotingProxyFactoryBean}.
+ *
+ * <p> The implicit context of the batch invocation is the one of all the
+ * invocations in the batch.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface BatchInvocationService {
+
+	/**
+	 * Executes the given invocations in order. An exception thrown by an
+	 * invocation does not stop the following ones.
+	 *
+	 * @param invocations
+	 *            The invocations to execute
+	 * @return The results, in the order of the invocations
+	 */
+	public BatchResult[] invokeAll(BatchInvocation[] invocations);
+}
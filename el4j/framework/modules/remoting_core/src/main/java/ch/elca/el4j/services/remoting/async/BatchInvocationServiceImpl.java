@@ -0,0 +1,219 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.InitializingBean;
+
+import ch.elca.el4j.core.exceptions.MisconfigurationRTException;
+import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
+
+/**
+ * Server side implementation of the {@link BatchInvocationService}. Only the
+ * explicitly registered services can be invoked, and only through the methods
+ * of their exported service interface: like for a normal exporter, methods of
+ * the implementation class that are not declared by the interface are
+ * rejected. The service names must be the ones used by the clients (see
+ * {@link ch.elca.el4j.services.remoting.AbstractRemotingBase#getServiceName()}).
+ *
+ * <p> Example:
+ * <pre>
+ * &lt;bean id="batchInvocationService" class="ch.elca.el4j.services.remoting.async.BatchInvocationServiceImpl"&gt;
+ *     &lt;property name="services"&gt;
+ *         &lt;map&gt;
+ *             &lt;entry key="calculator" value-ref="calculatorImpl"/&gt;
+ *         &lt;/map&gt;
+ *     &lt;/property&gt;
+ *     &lt;property name="serviceInterfaces"&gt;
+ *         &lt;map&gt;
+ *             &lt;entry key="calculator" value="ch.elca.el4j.apps.remotingtest.Calculator"/&gt;
+ *         &lt;/map&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchInvocationServiceImpl implements BatchInvocationService,
+	InitializingBean {
+
+	/**
+	 * The invocable services by name.
+	 */
+	private Map<String, Object> m_services;
+
+	/**
+	 * The exported interfaces of the services by name.
+	 */
+	private Map<String, Class<?>> m_serviceInterfaces;
+
+	/**
+	 * Caches the resolved methods by service name, method name and parameter
+	 * types.
+	 */
+	private final ConcurrentMap<String, Method> m_methodCache
+		= new ConcurrentHashMap<String, Method>();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void afterPropertiesSet() throws Exception {
+		CoreNotificationHelper.notifyIfEssentialPropertyIsEmpty(
+			m_services, "services", this);
+		CoreNotificationHelper.notifyIfEssentialPropertyIsEmpty(
+			m_serviceInterfaces, "serviceInterfaces", this);
+		for (Map.Entry<String, Object> entry : m_services.entrySet()) {
+			Class<?> serviceInterface = m_serviceInterfaces.get(entry.getKey());
+			if (serviceInterface == null || !serviceInterface.isInterface()) {
+				CoreNotificationHelper.notifyMisconfiguration("No service interface "
+					+ "is registered for the service '" + entry.getKey() + "'.");
+			}
+			if (!serviceInterface.isInstance(entry.getValue())) {
+				CoreNotificationHelper.notifyMisconfiguration("The service '"
+					+ entry.getKey() + "' does not implement "
+					+ serviceInterface.getName() + ".");
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the invocable services by name.
+	 */
+	public Map<String, Object> getServices() {
+		return m_services;
+	}
+
+	/**
+	 * @param services
+	 *            The invocable services by name.
+	 */
+	public void setServices(Map<String, Object> services) {
+		m_services = new HashMap<String, Object>(services);
+	}
+
+	/**
+	 * @return Returns the exported interfaces of the services by name.
+	 */
+	public Map<String, Class<?>> getServiceInterfaces() {
+		return m_serviceInterfaces;
+	}
+
+	/**
+	 * @param serviceInterfaces
+	 *            The exported interfaces of the services by name. Only their
+	 *            methods can be invoked.
+	 */
+	public void setServiceInterfaces(Map<String, Class<?>> serviceInterfaces) {
+		m_serviceInterfaces = new HashMap<String, Class<?>>(serviceInterfaces);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public BatchResult[] invokeAll(BatchInvocation[] invocations) {
+		BatchResult[] results = new BatchResult[invocations.length];
+		for (int i = 0; i < invocations.length; i++) {
+			results[i] = invoke(invocations[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * @param invocation    the invocation to execute
+	 * @return the result of the invocation
+	 */
+	protected BatchResult invoke(BatchInvocation invocation) {
+		try {
+			Object service = m_services.get(invocation.getServiceName());
+			Class<?> serviceInterface = m_serviceInterfaces.get(invocation.getServiceName());
+			if (service == null || serviceInterface == null) {
+				throw new MisconfigurationRTException("No service named '"
+					+ invocation.getServiceName() + "' is registered for batch invocations.");
+			}
+			Method method = getMethod(serviceInterface, invocation);
+			return BatchResult.forValue(method.invoke(service, invocation.getArguments()));
+		} catch (InvocationTargetException e) {
+			return BatchResult.forException(e.getTargetException());
+		} catch (Exception e) {
+			return BatchResult.forException(e);
+		}
+	}
+
+	/**
+	 * @param serviceInterface    the exported interface of the target service
+	 * @param invocation          the invocation
+	 * @return the method of the service interface to invoke
+	 * @throws NoSuchMethodException if the interface has no such method
+	 */
+	protected Method getMethod(Class<?> serviceInterface, BatchInvocation invocation)
+		throws NoSuchMethodException {
+
+		String key = invocation.getServiceName() + "#" + invocation.getMethodName()
+			+ Arrays.toString(invocation.getParameterTypes());
+		Method method = m_methodCache.get(key);
+		if (method != null) {
+			return method;
+		}
+		// never fall back to the implementation class, it may expose more
+		method = findMethod(serviceInterface, invocation);
+		if (method == null) {
+			throw new NoSuchMethodException(key);
+		}
+		Method existing = m_methodCache.putIfAbsent(key, method);
+		return existing != null ? existing : method;
+	}
+
+	/**
+	 * @param type          the type to search
+	 * @param invocation    the invocation
+	 * @return the public method of the given type matching the invocation,
+	 *         <code>null</code> if there is none
+	 */
+	private Method findMethod(Class<?> type, BatchInvocation invocation) {
+		for (Method candidate : type.getMethods()) {
+			if (candidate.getName().equals(invocation.getMethodName())
+				&& matches(candidate.getParameterTypes(), invocation.getParameterTypes())) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param types        the parameter types of a method
+	 * @param typeNames    the class names of the expected parameter types
+	 * @return <code>true</code> if the types have the given names
+	 */
+	private boolean matches(Class<?>[] types, String[] typeNames) {
+		if (types.length != typeNames.length) {
+			return false;
+		}
+		for (int i = 0; i < types.length; i++) {
+			if (!types[i].getName().equals(typeNames[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of a {@link BatchInvocation}: either the returned value or the
+ * thrown exception.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchResult implements Serializable {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The returned value.
+	 */
+	private final Object m_value;
+
+	/**
+	 * The thrown exception, <code>null</code> if the invocation succeeded.
+	 */
+	private final Throwable m_exception;
+
+	/**
+	 * @param value        the returned value
+	 * @param exception    the thrown exception, <code>null</code> if the
+	 *                     invocation succeeded
+	 */
+	private BatchResult(Object value, Throwable exception) {
+		m_value = value;
+		m_exception = exception;
+	}
+
+	/**
+	 * @param value    the returned value
+	 * @return the result of a successful invocation
+	 */
+	public static BatchResult forValue(Object value) {
+		return new BatchResult(value, null);
+	}
+
+	/**
+	 * @param exception    the thrown exception
+	 * @return the result of a failed invocation
+	 */
+	public static BatchResult forException(Throwable exception) {
+		return new BatchResult(null, exception);
+	}
+
+	/**
+	 * @return Returns the returned value.
+	 */
+	public Object getValue() {
+		return m_value;
+	}
+
+	/**
+	 * @return Returns the thrown exception, <code>null</code> if the invocation
+	 *         succeeded.
+	 */
+	public Throwable getException() {
+		return m_exception;
+	}
+}
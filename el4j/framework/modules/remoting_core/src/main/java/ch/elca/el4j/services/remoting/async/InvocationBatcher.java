@@ -0,0 +1,342 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.elca.el4j.core.contextpassing.ImplicitContextPassingRegistry;
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * Coalesces the invocations issued within a short window into one call of a
+ * {@link BatchInvocationService}, and completes the futures of the single
+ * invocations when the results arrive.
+ *
+ * <p> Invocations with different implicit contexts are sent in separate
+ * batches, each with its context, so the server sees the same context as
+ * for unbatched invocations.
+ *
+ * <p> Once {@link #shutdown()} has been called, the pending and all further
+ * invocations fail instead of waiting forever for a batch to be sent.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class InvocationBatcher {
+
+	/**
+	 * Private logger.
+	 */
+	private static Logger s_logger = LoggerFactory.getLogger(InvocationBatcher.class);
+
+	/**
+	 * The remote batch service.
+	 */
+	private final BatchInvocationService m_batchService;
+
+	/**
+	 * Name of the target service on the server.
+	 */
+	private final String m_serviceName;
+
+	/**
+	 * The registry to push the implicit context of a batch, may be
+	 * <code>null</code>.
+	 */
+	private final ImplicitContextPassingRegistry m_implicitContextPassingRegistry;
+
+	/**
+	 * Triggers the sending of a batch at the end of its window.
+	 */
+	private final ScheduledExecutorService m_scheduler;
+
+	/**
+	 * Sends the batches.
+	 */
+	private final Executor m_executor;
+
+	/**
+	 * Milliseconds an invocation waits for others to join its batch.
+	 */
+	private final long m_window;
+
+	/**
+	 * Number of invocations from which a batch is sent immediately.
+	 */
+	private final int m_maxBatchSize;
+
+	/**
+	 * The invocations waiting to be sent. Guarded by <code>this</code>.
+	 */
+	private List<PendingInvocation> m_pending = new ArrayList<PendingInvocation>();
+
+	/**
+	 * Whether sending the pending invocations is scheduled. Guarded by
+	 * <code>this</code>.
+	 */
+	private boolean m_flushScheduled;
+
+	/**
+	 * Whether this batcher has been shut down. Guarded by <code>this</code>.
+	 */
+	private boolean m_shutdown;
+
+	/**
+	 * @param batchService
+	 *            The remote batch service
+	 * @param serviceName
+	 *            Name of the target service on the server
+	 * @param implicitContextPassingRegistry
+	 *            The registry to push the implicit context of a batch, may be
+	 *            <code>null</code>
+	 * @param scheduler
+	 *            Triggers the sending of a batch at the end of its window
+	 * @param executor
+	 *            Sends the batches
+	 * @param window
+	 *            Milliseconds an invocation waits for others to join its batch
+	 * @param maxBatchSize
+	 *            Number of invocations from which a batch is sent immediately
+	 */
+	public InvocationBatcher(BatchInvocationService batchService, String serviceName,
+		ImplicitContextPassingRegistry implicitContextPassingRegistry,
+		ScheduledExecutorService scheduler, Executor executor,
+		long window, int maxBatchSize) {
+
+		Reject.ifNull(batchService);
+		Reject.ifNull(serviceName);
+		Reject.ifNull(scheduler);
+		Reject.ifNull(executor);
+		Reject.ifFalse(window >= 0, "The batch window must not be negative.");
+		Reject.ifFalse(maxBatchSize > 0, "The maximum batch size must be positive.");
+		m_batchService = batchService;
+		m_serviceName = serviceName;
+		m_implicitContextPassingRegistry = implicitContextPassingRegistry;
+		m_scheduler = scheduler;
+		m_executor = executor;
+		m_window = window;
+		m_maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Adds an invocation to the current batch.
+	 *
+	 * @param method
+	 *            The invoked method of the service interface
+	 * @param args
+	 *            The arguments
+	 * @param context
+	 *            The implicit context of the invoking thread, may be
+	 *            <code>null</code>
+	 * @return The future result of the invocation
+	 */
+	public Future<Object> enqueue(Method method, Object[] args, Map<String, Object> context) {
+		PendingInvocation invocation = new PendingInvocation(
+			new BatchInvocation(m_serviceName, method, args), context);
+
+		List<PendingInvocation> full = null;
+		synchronized (this) {
+			if (m_shutdown) {
+				invocation.m_future.fail(createShutdownException());
+				return invocation.m_future;
+			}
+			m_pending.add(invocation);
+			if (m_pending.size() >= m_maxBatchSize) {
+				full = takePending();
+			} else if (!m_flushScheduled) {
+				m_flushScheduled = true;
+				m_scheduler.schedule(new Runnable() {
+					public void run() {
+						flush();
+					}
+				}, m_window, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full != null) {
+			send(full);
+		}
+		return invocation.m_future;
+	}
+
+	/**
+	 * Fails the pending invocations and rejects all further ones. Batches
+	 * that are already being sent complete normally.
+	 */
+	public void shutdown() {
+		List<PendingInvocation> pending;
+		synchronized (this) {
+			m_shutdown = true;
+			pending = takePending();
+		}
+		fail(pending, createShutdownException());
+	}
+
+	/**
+	 * Sends the pending invocations.
+	 */
+	public void flush() {
+		List<PendingInvocation> pending;
+		synchronized (this) {
+			m_flushScheduled = false;
+			pending = takePending();
+		}
+		if (!pending.isEmpty()) {
+			send(pending);
+		}
+	}
+
+	/**
+	 * @return the pending invocations, which are removed from this batcher
+	 */
+	private List<PendingInvocation> takePending() {
+		List<PendingInvocation> pending = m_pending;
+		m_pending = new ArrayList<PendingInvocation>();
+		return pending;
+	}
+
+	/**
+	 * Sends the given invocations, one batch per implicit context.
+	 *
+	 * @param pending    the invocations to send
+	 */
+	private void send(List<PendingInvocation> pending) {
+		Map<Map<String, Object>, List<PendingInvocation>> batches
+			= new LinkedHashMap<Map<String, Object>, List<PendingInvocation>>();
+		for (PendingInvocation invocation : pending) {
+			List<PendingInvocation> batch = batches.get(invocation.m_context);
+			if (batch == null) {
+				batch = new ArrayList<PendingInvocation>();
+				batches.put(invocation.m_context, batch);
+			}
+			batch.add(invocation);
+		}
+		for (final Map.Entry<Map<String, Object>, List<PendingInvocation>> entry
+			: batches.entrySet()) {
+			try {
+				m_executor.execute(new Runnable() {
+					public void run() {
+						sendBatch(entry.getKey(), entry.getValue());
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// e.g. the executor has been shut down, do not let callers wait
+				fail(entry.getValue(), e);
+			}
+		}
+	}
+
+	/**
+	 * @param invocations    the invocations to fail
+	 * @param exception      the cause
+	 */
+	private void fail(List<PendingInvocation> invocations, Throwable exception) {
+		for (PendingInvocation invocation : invocations) {
+			invocation.m_future.fail(exception);
+		}
+	}
+
+	/**
+	 * @return the exception of the invocations that are not sent because this
+	 *         batcher has been shut down
+	 */
+	private RejectedExecutionException createShutdownException() {
+		return new RejectedExecutionException("The batch invocations of service '"
+			+ m_serviceName + "' have been shut down.");
+	}
+
+	/**
+	 * Sends one batch and completes the futures of its invocations.
+	 *
+	 * @param context    the implicit context of the invocations
+	 * @param batch      the invocations
+	 */
+	private void sendBatch(Map<String, Object> context, List<PendingInvocation> batch) {
+		BatchInvocation[] invocations = new BatchInvocation[batch.size()];
+		for (int i = 0; i < invocations.length; i++) {
+			invocations[i] = batch.get(i).m_invocation;
+		}
+
+		BatchResult[] results;
+		Map<String, Object> previousContext = null;
+		if (m_implicitContextPassingRegistry != null) {
+			previousContext = m_implicitContextPassingRegistry.getAssembledImplicitContext();
+			m_implicitContextPassingRegistry.pushAssembledImplicitContext(context);
+		}
+		try {
+			results = m_batchService.invokeAll(invocations);
+		} catch (Throwable t) {
+			s_logger.debug("Batch of " + invocations.length + " invocations failed.", t);
+			fail(batch, t);
+			return;
+		} finally {
+			if (m_implicitContextPassingRegistry != null) {
+				m_implicitContextPassingRegistry.pushAssembledImplicitContext(previousContext);
+			}
+		}
+
+		for (int i = 0; i < invocations.length; i++) {
+			RemoteFuture<Object> future = batch.get(i).m_future;
+			if (results == null || i >= results.length) {
+				future.fail(new IllegalStateException("No result received for " + invocations[i]));
+			} else if (results[i].getException() != null) {
+				future.fail(results[i].getException());
+			} else {
+				future.complete(results[i].getValue());
+			}
+		}
+	}
+
+	/**
+	 * An invocation waiting to be sent.
+	 */
+	private static final class PendingInvocation {
+		/**
+		 * The invocation.
+		 */
+		final BatchInvocation m_invocation;
+
+		/**
+		 * The implicit context of the invoking thread.
+		 */
+		final Map<String, Object> m_context;
+
+		/**
+		 * The future result.
+		 */
+		final RemoteFuture<Object> m_future = new RemoteFuture<Object>();
+
+		/**
+		 * @param invocation    the invocation
+		 * @param context       the implicit context of the invoking thread
+		 */
+		PendingInvocation(BatchInvocation invocation, Map<String, Object> context) {
+			m_invocation = invocation;
+			m_context = context;
+		}
+	}
+}
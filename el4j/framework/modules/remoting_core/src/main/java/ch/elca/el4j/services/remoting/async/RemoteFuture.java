@@ -0,0 +1,148 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.async;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A future completed from outside, e.g. when the result of a batch arrives.
+ * Only the first completion (value, exception or cancellation) counts, later
+ * ones are ignored. Cancelling the future does not stop the remote
+ * invocation, its result is discarded.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ *
+ * @param <V> Generic type of the result.
+ */
+public class RemoteFuture<V> implements Future<V> {
+
+	/**
+	 * Whether this future has been completed.
+	 */
+	private final AtomicBoolean m_completed = new AtomicBoolean();
+
+	/**
+	 * Released once the outcome is set.
+	 */
+	private final CountDownLatch m_done = new CountDownLatch(1);
+
+	/**
+	 * The result of the invocation.
+	 */
+	private volatile V m_value;
+
+	/**
+	 * The exception thrown by the invocation.
+	 */
+	private volatile Throwable m_exception;
+
+	/**
+	 * Whether this future has been cancelled.
+	 */
+	private volatile boolean m_cancelled;
+
+	/**
+	 * @param value    the result of the invocation
+	 * @return <code>true</code> if this future has been completed by this call
+	 */
+	public boolean complete(V value) {
+		if (!m_completed.compareAndSet(false, true)) {
+			return false;
+		}
+		m_value = value;
+		m_done.countDown();
+		return true;
+	}
+
+	/**
+	 * @param exception    the exception thrown by the invocation
+	 * @return <code>true</code> if this future has been completed by this call
+	 */
+	public boolean fail(Throwable exception) {
+		if (!m_completed.compareAndSet(false, true)) {
+			return false;
+		}
+		m_exception = exception;
+		m_done.countDown();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!m_completed.compareAndSet(false, true)) {
+			return false;
+		}
+		m_cancelled = true;
+		m_done.countDown();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isCancelled() {
+		return m_cancelled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isDone() {
+		return m_done.getCount() == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public V get() throws InterruptedException, ExecutionException {
+		m_done.await();
+		return getOutcome();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public V get(long timeout, TimeUnit unit)
+		throws InterruptedException, ExecutionException, TimeoutException {
+		if (!m_done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getOutcome();
+	}
+
+	/**
+	 * @return the result of the invocation
+	 * @throws ExecutionException if the invocation failed
+	 */
+	private V getOutcome() throws ExecutionException {
+		if (m_cancelled) {
+			throw new CancellationException();
+		}
+		if (m_exception != null) {
+			throw new ExecutionException(m_exception);
+		}
+		return m_value;
+	}
+}
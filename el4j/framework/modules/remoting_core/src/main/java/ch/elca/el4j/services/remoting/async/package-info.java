@@ -0,0 +1,26 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+
+/**
+ * Contains the asynchronous and batched invocation support of the remoting
+ * proxies, see {@link ch.elca.el4j.services.remoting.RemotingProxyFactoryBean#setAsyncInterface(Class)}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ *
+ * @wikiLink ModuleRemoting
+ */
+package ch.elca.el4j.services.remoting.async;
@@ -0,0 +1,138 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.remoting.httpinvoker.HttpInvokerServiceExporter;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+/**
+ * Http invoker service exporter that negotiates gzip compression with its
+ * clients: every response announces that compressed requests are accepted
+ * (an <code>Accept-Encoding</code> response header, as in RFC 7694), and
+ * compressed requests (see {@link PooledHttpInvokerRequestExecutor}) are
+ * decompressed. Results larger than the compression threshold are compressed
+ * if the client accepts it (which all Spring http invoker request executors
+ * do by default).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class GzipHttpInvokerServiceExporter extends HttpInvokerServiceExporter {
+
+	/**
+	 * Content encoding of gzip compressed bodies.
+	 */
+	public static final String ENCODING_GZIP = "gzip";
+
+	/**
+	 * Http header for the accepted content encodings.
+	 */
+	public static final String HTTP_HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	/**
+	 * Http header for the content encoding.
+	 */
+	public static final String HTTP_HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+	/**
+	 * @see #setCompressionThreshold(int)
+	 */
+	private int m_compressionThreshold = -1;
+
+	/**
+	 * @return Returns the size in bytes from which results are compressed.
+	 */
+	public int getCompressionThreshold() {
+		return m_compressionThreshold;
+	}
+
+	/**
+	 * @param compressionThreshold
+	 *            The size in bytes from which results are gzip compressed,
+	 *            <code>-1</code> (default) to never compress them. Compressed
+	 *            requests are accepted in any case.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		m_compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Decompresses gzip encoded requests.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputStream decorateInputStream(HttpServletRequest request,
+		InputStream is) throws IOException {
+
+		String encoding = request.getHeader(
+			HTTP_HEADER_CONTENT_ENCODING);
+		if (encoding != null
+			&& encoding.toLowerCase().contains(ENCODING_GZIP)) {
+			return new GZIPInputStream(is);
+		}
+		return is;
+	}
+
+	/**
+	 * Announces that gzip encoded requests are accepted and compresses large
+	 * results if the client accepts gzip encoded responses.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void writeRemoteInvocationResult(HttpServletRequest request,
+		HttpServletResponse response, RemoteInvocationResult result,
+		OutputStream os) throws IOException {
+
+		response.setHeader(HTTP_HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+		if (m_compressionThreshold < 0 || !acceptsGzip(request)) {
+			super.writeRemoteInvocationResult(request, response, result, os);
+			return;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		super.writeRemoteInvocationResult(request, response, result, buffer);
+		if (buffer.size() < m_compressionThreshold) {
+			buffer.writeTo(os);
+		} else {
+			response.setHeader(HTTP_HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+			GZIPOutputStream gzip = new GZIPOutputStream(os);
+			buffer.writeTo(gzip);
+			gzip.finish();
+		}
+		os.flush();
+	}
+
+	/**
+	 * @param request    the current request
+	 * @return <code>true</code> if the client accepts gzip encoded responses
+	 */
+	protected boolean acceptsGzip(HttpServletRequest request) {
+		String accepted = request.getHeader(HTTP_HEADER_ACCEPT_ENCODING);
+		return accepted != null
+			&& accepted.toLowerCase().contains(ENCODING_GZIP);
+	}
+}
@@ -18,9 +18,10 @@
 package ch.elca.el4j.services.remoting.protocol;
 
 import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.support.StaticApplicationContext;
 import org.springframework.remoting.httpinvoker.HttpInvokerProxyFactoryBean;
-import org.springframework.remoting.httpinvoker.HttpInvokerServiceExporter;
+import org.springframework.remoting.httpinvoker.HttpInvokerRequestExecutor;
 
 import ch.elca.el4j.services.remoting.AbstractRemotingBase;
 import ch.elca.el4j.services.remoting.RemotingProxyFactoryBean;
@@ -29,12 +30,25 @@ import ch.elca.el4j.services.remoting.RemotingServiceExporter;
 /**
  * This class implements all needed things for the httpinvoker protocol.
  *
+ * <p> If an {@link HttpInvokerConfiguration} is set as protocol specific
+ * configuration, the proxies share a pool of persistent connections (this
+ * needs commons-httpclient, an optional dependency of this module) and
+ * compression can be enabled. Otherwise, Spring's default request executor
+ * is used.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Rashid Waraich (RWA)
  */
 public class HttpInvoker  extends AbstractInetSocketAddressWebProtocol {
 
+	/**
+	 * The request executor shared by all proxies of this protocol, created
+	 * lazily. Guarded by <code>this</code>. Declared by its interface, so this
+	 * class can be loaded without commons-httpclient.
+	 */
+	private HttpInvokerRequestExecutor m_requestExecutor;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -46,6 +60,10 @@ public class HttpInvoker  extends AbstractInetSocketAddressWebProtocol {
 		MutablePropertyValues props = new MutablePropertyValues();
 		props.addPropertyValue("serviceInterface", serviceInterfaceWithContext);
 		props.addPropertyValue("serviceUrl", generateUrl(proxyBean));
+		HttpInvokerRequestExecutor requestExecutor = getRequestExecutor();
+		if (requestExecutor != null) {
+			props.addPropertyValue("httpInvokerRequestExecutor", requestExecutor);
+		}
 		appContext.registerSingleton("httpInvokerProxyBeanGen",
 			getProxyObjectType(), props);
 		appContext.refresh();
@@ -63,6 +81,11 @@ public class HttpInvoker  extends AbstractInetSocketAddressWebProtocol {
 		MutablePropertyValues props = new MutablePropertyValues();
 		props.addPropertyValue("service", serviceProxy);
 		props.addPropertyValue("serviceInterface", serviceInterfaceWithContext);
+		HttpInvokerConfiguration configuration = getHttpInvokerConfiguration();
+		if (configuration != null) {
+			props.addPropertyValue("compressionThreshold",
+				configuration.getCompressionThreshold());
+		}
 		appContext.registerSingleton("httpInvokerExporterBeanGen",
 				getExporterObjectType(), props);
 		appContext.refresh();
@@ -80,14 +103,14 @@ public class HttpInvoker  extends AbstractInetSocketAddressWebProtocol {
 	 * {@inheritDoc}
 	 */
 	public Class getExporterObjectType() {
-		return HttpInvokerServiceExporter.class;
+		return GzipHttpInvokerServiceExporter.class;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public String generateUrl(AbstractRemotingBase remoteBase) {
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
 		sb.append(getServiceProtocol());
 		sb.append("://");
 		sb.append(getServiceHost());
@@ -99,4 +122,46 @@ public class HttpInvoker  extends AbstractInetSocketAddressWebProtocol {
 		sb.append(remoteBase.getServiceName());
 		return sb.toString();
 	}
+
+	/**
+	 * @return Returns the request executor shared by the proxies of this
+	 *         protocol (a {@link PooledHttpInvokerRequestExecutor}),
+	 *         <code>null</code> if no {@link HttpInvokerConfiguration} is set.
+	 */
+	public synchronized HttpInvokerRequestExecutor getRequestExecutor() {
+		if (m_requestExecutor == null) {
+			HttpInvokerConfiguration configuration = getHttpInvokerConfiguration();
+			if (configuration != null) {
+				m_requestExecutor = new PooledHttpInvokerRequestExecutor(configuration);
+			}
+		}
+		return m_requestExecutor;
+	}
+
+	/**
+	 * @return Returns the protocol specific configuration if it is an
+	 *         {@link HttpInvokerConfiguration}, <code>null</code> otherwise.
+	 */
+	protected HttpInvokerConfiguration getHttpInvokerConfiguration() {
+		if (getProtocolSpecificConfiguration() instanceof HttpInvokerConfiguration) {
+			return (HttpInvokerConfiguration) getProtocolSpecificConfiguration();
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the pooled connections.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void destroy() throws Exception {
+		super.destroy();
+		synchronized (this) {
+			if (m_requestExecutor instanceof DisposableBean) {
+				((DisposableBean) m_requestExecutor).destroy();
+				m_requestExecutor = null;
+			}
+		}
+	}
 }
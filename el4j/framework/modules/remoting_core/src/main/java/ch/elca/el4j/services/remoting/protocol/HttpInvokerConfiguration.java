@@ -0,0 +1,229 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.protocol;
+
+import org.springframework.util.ClassUtils;
+
+import ch.elca.el4j.services.monitoring.notification.CoreNotificationHelper;
+import ch.elca.el4j.services.remoting.ProtocolSpecificConfiguration;
+
+/**
+ * Defines the connection handling parameters of the {@link HttpInvoker}
+ * protocol. If such a configuration is set on the protocol, all its proxies
+ * share a {@link PooledHttpInvokerRequestExecutor}, i.e. a pool of persistent
+ * (keep-alive) connections, instead of opening a new connection per
+ * invocation. The pool is built on commons-httpclient, which is an optional
+ * dependency of this module and must be added to use this configuration.
+ *
+ * <p> Compression is disabled by default. If a compression threshold is set,
+ * large responses are gzip compressed for clients that accept it, and large
+ * requests are gzip compressed once the server announced that it accepts
+ * them (see {@link GzipHttpInvokerServiceExporter}), so servers that do not
+ * understand compressed requests keep receiving plain ones.
+ *
+ * <p> Example:
+ * <pre>
+ * &lt;bean id="httpInvoker" class="ch.elca.el4j.services.remoting.protocol.HttpInvoker"&gt;
+ *     ...
+ *     &lt;property name="protocolSpecificConfiguration"&gt;
+ *         &lt;bean class="ch.elca.el4j.services.remoting.protocol.HttpInvokerConfiguration"&gt;
+ *             &lt;property name="maxConnectionsPerHost" value="50"/&gt;
+ *         &lt;/bean&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class HttpInvokerConfiguration implements ProtocolSpecificConfiguration {
+
+	/**
+	 * The default maximum number of connections per host.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	/**
+	 * The default maximum number of connections.
+	 */
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+	/**
+	 * The default time in milliseconds after which idle connections are closed.
+	 */
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 60000;
+
+	/**
+	 * A class of commons-httpclient, used to check that it is available.
+	 */
+	private static final String HTTP_CLIENT_CLASS_NAME
+		= "org.apache.commons.httpclient.HttpClient";
+
+	/**
+	 * @see #setMaxConnectionsPerHost(int)
+	 */
+	private int m_maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+	/**
+	 * @see #setMaxTotalConnections(int)
+	 */
+	private int m_maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+
+	/**
+	 * @see #setConnectionTimeout(int)
+	 */
+	private int m_connectionTimeout = 0;
+
+	/**
+	 * @see #setReadTimeout(int)
+	 */
+	private int m_readTimeout = 0;
+
+	/**
+	 * @see #setIdleConnectionTimeout(long)
+	 */
+	private long m_idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+	/**
+	 * @see #setCompressionThreshold(int)
+	 */
+	private int m_compressionThreshold = -1;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void afterPropertiesSet() throws Exception {
+		if (!ClassUtils.isPresent(HTTP_CLIENT_CLASS_NAME, getClass().getClassLoader())) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"The http invoker connection pool needs commons-httpclient "
+				+ "on the classpath.");
+		}
+		if (m_maxConnectionsPerHost <= 0 || m_maxTotalConnections <= 0) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"The maximum number of connections must be positive.");
+		}
+		if (m_maxConnectionsPerHost > m_maxTotalConnections) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"The maximum number of connections per host must not exceed "
+				+ "the maximum total number of connections.");
+		}
+		if (m_connectionTimeout < 0 || m_readTimeout < 0 || m_idleConnectionTimeout < 0) {
+			CoreNotificationHelper.notifyMisconfiguration(
+				"Timeouts must not be negative.");
+		}
+	}
+
+	/**
+	 * @return Returns the maximum number of connections per host.
+	 */
+	public int getMaxConnectionsPerHost() {
+		return m_maxConnectionsPerHost;
+	}
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            The maximum number of connections kept to one host. Further
+	 *            invocations wait for a free connection. Defaults to
+	 *            {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST}.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		m_maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * @return Returns the maximum number of connections.
+	 */
+	public int getMaxTotalConnections() {
+		return m_maxTotalConnections;
+	}
+
+	/**
+	 * @param maxTotalConnections
+	 *            The maximum number of connections over all hosts. Defaults
+	 *            to {@link #DEFAULT_MAX_TOTAL_CONNECTIONS}.
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		m_maxTotalConnections = maxTotalConnections;
+	}
+
+	/**
+	 * @return Returns the connection timeout in milliseconds.
+	 */
+	public int getConnectionTimeout() {
+		return m_connectionTimeout;
+	}
+
+	/**
+	 * @param connectionTimeout
+	 *            The time in milliseconds to wait until a connection is
+	 *            established, <code>0</code> (default) to wait infinitely.
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		m_connectionTimeout = connectionTimeout;
+	}
+
+	/**
+	 * @return Returns the read timeout in milliseconds.
+	 */
+	public int getReadTimeout() {
+		return m_readTimeout;
+	}
+
+	/**
+	 * @param readTimeout
+	 *            The time in milliseconds to wait for data of the server,
+	 *            <code>0</code> (default) to wait infinitely.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		m_readTimeout = readTimeout;
+	}
+
+	/**
+	 * @return Returns the time in milliseconds after which idle connections
+	 *         are closed.
+	 */
+	public long getIdleConnectionTimeout() {
+		return m_idleConnectionTimeout;
+	}
+
+	/**
+	 * @param idleConnectionTimeout
+	 *            The time in milliseconds after which idle connections are
+	 *            closed, <code>0</code> to keep them until the server closes
+	 *            them. Defaults to {@link #DEFAULT_IDLE_CONNECTION_TIMEOUT}.
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		m_idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/**
+	 * @return Returns the size in bytes from which bodies are compressed.
+	 */
+	public int getCompressionThreshold() {
+		return m_compressionThreshold;
+	}
+
+	/**
+	 * @param compressionThreshold
+	 *            The size in bytes from which request and response bodies
+	 *            are gzip compressed (e.g. 8192), <code>-1</code> (default)
+	 *            to disable compression. Requests are only compressed for
+	 *            servers that announced to accept them.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		m_compressionThreshold = compressionThreshold;
+	}
+}
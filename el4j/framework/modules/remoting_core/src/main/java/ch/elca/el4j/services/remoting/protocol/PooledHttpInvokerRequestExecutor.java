@@ -0,0 +1,228 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.remoting.httpinvoker.CommonsHttpInvokerRequestExecutor;
+import org.springframework.remoting.httpinvoker.HttpInvokerClientConfiguration;
+
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ * Request executor for http invoker proxies that keeps persistent
+ * connections in a pool shared by all proxies of a protocol.
+ *
+ * <p> The number of connections per host and in total is bounded, idle
+ * connections are closed after a while. If a compression threshold is set,
+ * request bodies larger than it are gzip compressed, but only for services
+ * whose last response announced that they accept compressed requests (see
+ * {@link GzipHttpInvokerServiceExporter} for the server side). The first
+ * request to a service is therefore never compressed. Compressed responses
+ * are always accepted.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class PooledHttpInvokerRequestExecutor extends CommonsHttpInvokerRequestExecutor
+	implements DisposableBean {
+
+	/**
+	 * Private logger of this class.
+	 */
+	private static Logger s_logger = LoggerFactory.getLogger(PooledHttpInvokerRequestExecutor.class);
+
+	/**
+	 * The pool of connections.
+	 */
+	private final MultiThreadedHttpConnectionManager m_connectionManager;
+
+	/**
+	 * Closes idle connections, <code>null</code> if they are kept.
+	 */
+	private final IdleConnectionTimeoutThread m_idleConnectionTimeoutThread;
+
+	/**
+	 * @see HttpInvokerConfiguration#setCompressionThreshold(int)
+	 */
+	private final int m_compressionThreshold;
+
+	/**
+	 * The urls of the services that accept gzip encoded requests.
+	 */
+	private final Set<String> m_gzipAcceptingServices
+		= Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Number of sent requests.
+	 */
+	private final AtomicLong m_requestCount = new AtomicLong();
+
+	/**
+	 * Number of compressed requests.
+	 */
+	private final AtomicLong m_compressedRequestCount = new AtomicLong();
+
+	/**
+	 * Number of bytes saved by compressing requests.
+	 */
+	private final AtomicLong m_savedBytes = new AtomicLong();
+
+	/**
+	 * @param configuration
+	 *            The connection handling parameters
+	 */
+	public PooledHttpInvokerRequestExecutor(HttpInvokerConfiguration configuration) {
+		Reject.ifNull(configuration);
+		m_connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = m_connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(configuration.getMaxConnectionsPerHost());
+		params.setMaxTotalConnections(configuration.getMaxTotalConnections());
+		params.setConnectionTimeout(configuration.getConnectionTimeout());
+		params.setSoTimeout(configuration.getReadTimeout());
+		params.setStaleCheckingEnabled(true);
+		setHttpClient(new HttpClient(m_connectionManager));
+
+		m_compressionThreshold = configuration.getCompressionThreshold();
+
+		long idleTimeout = configuration.getIdleConnectionTimeout();
+		if (idleTimeout > 0) {
+			m_idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+			m_idleConnectionTimeoutThread.setName("el4j-httpinvoker-idle-connection-closer");
+			m_idleConnectionTimeoutThread.setConnectionTimeout(idleTimeout);
+			// check a few times per timeout period, but not too often
+			m_idleConnectionTimeoutThread.setTimeoutInterval(Math.max(idleTimeout / 4, 1000));
+			m_idleConnectionTimeoutThread.addConnectionManager(m_connectionManager);
+			m_idleConnectionTimeoutThread.start();
+		} else {
+			m_idleConnectionTimeoutThread = null;
+		}
+	}
+
+	/**
+	 * Compresses the body if it is larger than the compression threshold and
+	 * the service accepts compressed requests.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setRequestBody(HttpInvokerClientConfiguration config,
+		PostMethod postMethod, ByteArrayOutputStream baos) throws IOException {
+
+		m_requestCount.incrementAndGet();
+		if (m_compressionThreshold < 0 || baos.size() < m_compressionThreshold
+			|| !m_gzipAcceptingServices.contains(config.getServiceUrl())) {
+			super.setRequestBody(config, postMethod, baos);
+			return;
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(baos.size() / 2);
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		baos.writeTo(gzip);
+		gzip.close();
+
+		postMethod.setRequestHeader(
+			GzipHttpInvokerServiceExporter.HTTP_HEADER_CONTENT_ENCODING,
+			GzipHttpInvokerServiceExporter.ENCODING_GZIP);
+		postMethod.setRequestEntity(
+			new ByteArrayRequestEntity(compressed.toByteArray(), getContentType()));
+		m_compressedRequestCount.incrementAndGet();
+		m_savedBytes.addAndGet(baos.size() - compressed.size());
+	}
+
+	/**
+	 * Learns from the response whether the service accepts compressed
+	 * requests.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void executePostMethod(HttpInvokerClientConfiguration config,
+		HttpClient httpClient, PostMethod postMethod) throws IOException {
+
+		super.executePostMethod(config, httpClient, postMethod);
+		if (m_compressionThreshold < 0) {
+			return;
+		}
+		Header accepted = postMethod.getResponseHeader(
+			GzipHttpInvokerServiceExporter.HTTP_HEADER_ACCEPT_ENCODING);
+		if (accepted != null && accepted.getValue() != null
+			&& accepted.getValue().toLowerCase().contains(
+				GzipHttpInvokerServiceExporter.ENCODING_GZIP)) {
+			m_gzipAcceptingServices.add(config.getServiceUrl());
+		} else {
+			// e.g. the service has been redeployed without compression support
+			m_gzipAcceptingServices.remove(config.getServiceUrl());
+		}
+	}
+
+	/**
+	 * Closes all pooled connections.
+	 *
+	 * {@inheritDoc}
+	 */
+	public void destroy() {
+		if (m_idleConnectionTimeoutThread != null) {
+			m_idleConnectionTimeoutThread.shutdown();
+		}
+		m_connectionManager.shutdown();
+		s_logger.debug("Http invoker connection pool shut down.");
+	}
+
+	/**
+	 * @return Returns the number of connections currently in the pool (in use
+	 *         or idle).
+	 */
+	public int getConnectionsInPool() {
+		return m_connectionManager.getConnectionsInPool();
+	}
+
+	/**
+	 * @return Returns the number of requests sent.
+	 */
+	public long getRequestCount() {
+		return m_requestCount.get();
+	}
+
+	/**
+	 * @return Returns the number of requests sent compressed.
+	 */
+	public long getCompressedRequestCount() {
+		return m_compressedRequestCount.get();
+	}
+
+	/**
+	 * @return Returns the number of bytes saved by compressing requests.
+	 */
+	public long getSavedBytes() {
+		return m_savedBytes.get();
+	}
+}
@@ -34,7 +34,7 @@ public abstract class AbstractPolicy {
 	 * Array of protocols, each represented by an array of Strings, using
 	 * a [protocolTag, arg1, arg2, ...] representation.
 	*/
-	protected AbstractRemotingProtocol[] m_protocols;
+	protected volatile AbstractRemotingProtocol[] m_protocols;
 	
 	/**
 	 * This method is called before any other method is called. It passes the
@@ -54,6 +54,31 @@ public abstract class AbstractPolicy {
 		// Do nothing
 	}
 	
+	/**
+	 * This method is called before an invocation is sent using the given
+	 * protocol. Each call is followed by exactly one call of
+	 * {@link #notifyCallEnded(AbstractRemotingProtocol, long, boolean)}.
+	 * Protocol comparison must be done using "=="!
+	 * @param protocol The protocol used for the invocation.
+	 */
+	public void notifyCallStarted(AbstractRemotingProtocol protocol) {
+		// Do nothing
+	}
+	
+	/**
+	 * This method is called after an invocation using the given protocol has
+	 * returned or thrown an exception. Connection failures have already been
+	 * reported by {@link #notifyFailure(AbstractRemotingProtocol)}.
+	 * Protocol comparison must be done using "=="!
+	 * @param protocol The protocol used for the invocation.
+	 * @param durationNanos The duration of the invocation in nanoseconds.
+	 * @param failed Whether the invocation failed due to a connection problem.
+	 */
+	public void notifyCallEnded(AbstractRemotingProtocol protocol,
+		long durationNanos, boolean failed) {
+		// Do nothing
+	}
+	
 	/**
 	 * @return Number of available protocols
 	 */
@@ -79,7 +104,7 @@ public abstract class AbstractPolicy {
 	 * @param protocol
 	 *            Protocol to be removed.
 	 */
-	protected void removeProtocol(AbstractRemotingProtocol protocol) {
+	protected synchronized void removeProtocol(AbstractRemotingProtocol protocol) {
 		int index = -1;
 		for (int i = 0; i < m_protocols.length; i += 1) {
 			if (m_protocols[i] == protocol) {
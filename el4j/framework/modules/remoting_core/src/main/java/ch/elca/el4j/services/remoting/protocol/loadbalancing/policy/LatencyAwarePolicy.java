@@ -0,0 +1,458 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.protocol.loadbalancing.policy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import ch.elca.el4j.services.remoting.AbstractRemotingProtocol;
+import ch.elca.el4j.services.remoting.protocol.AbstractInetSocketAddressProtocol;
+import ch.elca.el4j.services.remoting.protocol.loadbalancing.NoProtocolAvailableRTException;
+import ch.elca.el4j.util.codingsupport.Reject;
+
+/**
+ *
+ * Chooses protocols by their response time ("power of two choices"): two
+ * available protocols are picked at random and the one with the lower
+ * expected cost is used. The cost of a protocol is the exponentially weighted
+ * average of its response times multiplied by the number of its invocations
+ * in flight (plus one), so slow or busy nodes receive less load without
+ * starving them completely.
+ *
+ * <p>
+ * Failed protocols are not removed but put behind a circuit breaker: after
+ * {@link #setFailureThreshold(int) failureThreshold} consecutive failures the
+ * circuit of a node opens and the node is skipped. After
+ * {@link #setOpenCircuitDuration(long) openCircuitDuration} milliseconds a
+ * single trial invocation is let through (half open). If it succeeds, the
+ * circuit is closed again, otherwise it stays open for another period. If the
+ * outcome of a trial is never reported, another trial is let through after
+ * another period.
+ *
+ * <p>
+ * If an MBean server is set, the node health and latency are published
+ * through JMX, see {@link LatencyAwarePolicyMBean}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class LatencyAwarePolicy extends AbstractPolicy
+	implements LatencyAwarePolicyMBean, InitializingBean, DisposableBean {
+
+	/** The default name this policy is registered with in the MBean server. */
+	public static final String DEFAULT_NAME
+		= "Remoting:type=loadBalancingPolicy,name=latencyAwarePolicy";
+
+	/**
+	 * Private logger.
+	 */
+	private static Logger s_logger = LoggerFactory
+			.getLogger(LatencyAwarePolicy.class);
+
+	/** Circuit state: the node is used. */
+	private static final int CLOSED = 0;
+
+	/** Circuit state: the node is skipped. */
+	private static final int OPEN = 1;
+
+	/** Circuit state: a trial invocation is running. */
+	private static final int HALF_OPEN = 2;
+
+	/** Number of nanoseconds per millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/** The nodes, in the order of the protocols. */
+	private volatile Node[] m_nodes = new Node[0];
+
+	/** The nodes by their protocol (compared using "=="). */
+	private volatile Map<AbstractRemotingProtocol, Node> m_nodesByProtocol
+		= new IdentityHashMap<AbstractRemotingProtocol, Node>();
+
+	/** Random number generator to pick the candidates. */
+	private final Random m_random = new Random();
+
+	/** Weight of the latest response time in the latency average. */
+	private volatile double m_smoothingFactor = 0.3;
+
+	/** Number of consecutive failures that open the circuit of a node. */
+	private volatile int m_failureThreshold = 3;
+
+	/** Milliseconds a circuit stays open before a trial invocation. */
+	private volatile long m_openCircuitDuration = 30000;
+
+	/** The MBean server where this policy is registered in, optional. */
+	private MBeanServer m_server;
+
+	/** The name this policy is registered with in the MBean server. */
+	private String m_objectName = DEFAULT_NAME;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setProtocols(AbstractRemotingProtocol[] protocols) {
+		super.setProtocols(protocols);
+		Map<AbstractRemotingProtocol, Node> nodesByProtocol
+			= new IdentityHashMap<AbstractRemotingProtocol, Node>();
+		List<Node> nodes = new ArrayList<Node>();
+		if (protocols != null) {
+			for (AbstractRemotingProtocol protocol : protocols) {
+				// keep the state of nodes that were already known
+				Node node = m_nodesByProtocol.get(protocol);
+				if (node == null) {
+					node = new Node(protocol);
+				}
+				nodesByProtocol.put(protocol, node);
+				nodes.add(node);
+			}
+		}
+		m_nodesByProtocol = nodesByProtocol;
+		m_nodes = nodes.toArray(new Node[nodes.size()]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AbstractRemotingProtocol getNextProtocol()
+		throws NoProtocolAvailableRTException {
+		Node[] nodes = m_nodes;
+		if (nodes.length == 0) {
+			throw new NoProtocolAvailableRTException("No protocol defined");
+		}
+
+		long now = System.currentTimeMillis();
+		List<Node> available = new ArrayList<Node>(nodes.length);
+		for (Node node : nodes) {
+			synchronized (node) {
+				if (node.m_state != CLOSED
+					&& now - node.m_openedAt >= m_openCircuitDuration) {
+					// re-admit the node with a single trial invocation
+					node.m_state = HALF_OPEN;
+					node.m_openedAt = now;
+					s_logger.info("Trying " + node + " again.");
+					return node.m_protocol;
+				}
+				if (node.m_state == CLOSED) {
+					available.add(node);
+				}
+			}
+		}
+
+		int count = available.size();
+		if (count == 0) {
+			throw new NoProtocolAvailableRTException(
+				"The circuits of all protocols are open");
+		}
+		if (count == 1) {
+			return available.get(0).m_protocol;
+		}
+		int first = m_random.nextInt(count);
+		int second = m_random.nextInt(count - 1);
+		if (second >= first) {
+			second++;
+		}
+		Node a = available.get(first);
+		Node b = available.get(second);
+		return (a.getCost() <= b.getCost()) ? a.m_protocol : b.m_protocol;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void notifyFailure(AbstractRemotingProtocol protocol) {
+		Node node = m_nodesByProtocol.get(protocol);
+		if (node == null) {
+			return;
+		}
+		synchronized (node) {
+			node.m_failureCount++;
+			node.m_consecutiveFailures++;
+			if (node.m_state == HALF_OPEN
+				|| (node.m_state == CLOSED
+					&& node.m_consecutiveFailures >= m_failureThreshold)) {
+				node.m_state = OPEN;
+				node.m_openedAt = System.currentTimeMillis();
+				s_logger.warn("Opening circuit of " + node + " after "
+					+ node.m_consecutiveFailures + " consecutive failures.");
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void notifyCallStarted(AbstractRemotingProtocol protocol) {
+		Node node = m_nodesByProtocol.get(protocol);
+		if (node != null) {
+			node.m_inFlight.incrementAndGet();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void notifyCallEnded(AbstractRemotingProtocol protocol,
+		long durationNanos, boolean failed) {
+		Node node = m_nodesByProtocol.get(protocol);
+		if (node == null) {
+			return;
+		}
+		node.m_inFlight.decrementAndGet();
+		if (!failed) {
+			synchronized (node) {
+				if (node.m_successCount == 0) {
+					node.m_latency = durationNanos;
+				} else {
+					node.m_latency += m_smoothingFactor
+						* (durationNanos - node.m_latency);
+				}
+				node.m_successCount++;
+				node.m_consecutiveFailures = 0;
+				if (node.m_state == HALF_OPEN) {
+					node.m_state = CLOSED;
+					s_logger.info("Closing circuit of " + node + ".");
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] getNodes() {
+		Node[] nodes = m_nodes;
+		String[] result = new String[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[i];
+			synchronized (node) {
+				result[i] = node + ": state="
+					+ (node.m_state == CLOSED ? "closed"
+						: node.m_state == OPEN ? "open" : "half open")
+					+ ", latency=" + (node.m_latency / NANOS_PER_MILLI) + "ms"
+					+ ", inFlight=" + node.m_inFlight.get()
+					+ ", successes=" + node.m_successCount
+					+ ", failures=" + node.m_failureCount;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getAvailableNodeCount() {
+		int count = 0;
+		for (Node node : m_nodes) {
+			synchronized (node) {
+				if (node.m_state == CLOSED) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void closeAllCircuits() {
+		for (Node node : m_nodes) {
+			synchronized (node) {
+				node.m_state = CLOSED;
+				node.m_consecutiveFailures = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return Weight of the latest response time in the latency average.
+	 */
+	public double getSmoothingFactor() {
+		return m_smoothingFactor;
+	}
+
+	/**
+	 * @param smoothingFactor Weight of the latest response time in the latency
+	 *                        average, between 0 (exclusive) and 1. Default is 0.3.
+	 */
+	public void setSmoothingFactor(double smoothingFactor) {
+		Reject.ifFalse(smoothingFactor > 0 && smoothingFactor <= 1,
+			"The smoothing factor must be in (0, 1].");
+		m_smoothingFactor = smoothingFactor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getFailureThreshold() {
+		return m_failureThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Default is 3.
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		Reject.ifFalse(failureThreshold > 0,
+			"The failure threshold must be positive.");
+		m_failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getOpenCircuitDuration() {
+		return m_openCircuitDuration;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Default is 30000 (30 seconds).
+	 */
+	public void setOpenCircuitDuration(long openCircuitDuration) {
+		Reject.ifFalse(openCircuitDuration >= 0,
+			"The open circuit duration must not be negative.");
+		m_openCircuitDuration = openCircuitDuration;
+	}
+
+	/**
+	 * @return Returns the MBean server instance where this instance is
+	 *         registered in.
+	 */
+	public MBeanServer getServer() {
+		return m_server;
+	}
+
+	/**
+	 * Sets the MBean server where this instance has to register. If none is
+	 * set, the policy is not published through JMX.
+	 *
+	 * @param server The MBean server to set.
+	 */
+	public void setServer(MBeanServer server) {
+		m_server = server;
+	}
+
+	/**
+	 * @return The name this policy is registered with in the MBean server.
+	 */
+	public String getObjectName() {
+		return m_objectName;
+	}
+
+	/**
+	 * @param objectName The name this policy is registered with in the MBean
+	 *                   server. Default is {@link #DEFAULT_NAME}, it must be
+	 *                   changed if several policies are published.
+	 */
+	public void setObjectName(String objectName) {
+		m_objectName = objectName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void afterPropertiesSet() throws Exception {
+		if (m_server != null) {
+			m_server.registerMBean(this, new ObjectName(m_objectName));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void destroy() throws Exception {
+		if (m_server != null) {
+			m_server.unregisterMBean(new ObjectName(m_objectName));
+		}
+	}
+
+	/**
+	 * The state of one protocol. All fields except the number of invocations in
+	 * flight are guarded by the node itself.
+	 */
+	private static final class Node {
+		/** The protocol of this node. */
+		final AbstractRemotingProtocol m_protocol;
+
+		/** The number of invocations in flight. */
+		final AtomicInteger m_inFlight = new AtomicInteger();
+
+		/** The average response time in nanoseconds. */
+		double m_latency;
+
+		/** The circuit state. */
+		int m_state = CLOSED;
+
+		/** The time the circuit has been opened or the trial has started. */
+		long m_openedAt;
+
+		/** The number of failures since the last success. */
+		int m_consecutiveFailures;
+
+		/** The number of successful invocations. */
+		long m_successCount;
+
+		/** The number of failures. */
+		long m_failureCount;
+
+		/**
+		 * @param protocol The protocol of this node.
+		 */
+		Node(AbstractRemotingProtocol protocol) {
+			m_protocol = protocol;
+		}
+
+		/**
+		 * @return The expected cost of an invocation on this node. Nodes
+		 *         without measurements cost nothing, so they get probed first.
+		 */
+		double getCost() {
+			double latency;
+			synchronized (this) {
+				latency = m_latency;
+			}
+			return latency * (m_inFlight.get() + 1);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String toString() {
+			if (m_protocol instanceof AbstractInetSocketAddressProtocol) {
+				AbstractInetSocketAddressProtocol protocol
+					= (AbstractInetSocketAddressProtocol) m_protocol;
+				return protocol.getServiceHost() + ":" + protocol.getServicePort();
+			}
+			return String.valueOf(m_protocol);
+		}
+	}
+}
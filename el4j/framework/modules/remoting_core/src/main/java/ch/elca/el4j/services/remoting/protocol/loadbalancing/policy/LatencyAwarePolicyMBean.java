@@ -0,0 +1,66 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.remoting.protocol.loadbalancing.policy;
+
+/**
+ * Publishes the node health and latency of a {@link LatencyAwarePolicy}
+ * through JMX (MBean Interface).
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public interface LatencyAwarePolicyMBean {
+
+	/**
+	 * @return One line per node with its circuit state, average latency,
+	 *         number of invocations in flight and failure counts.
+	 */
+	public String[] getNodes();
+
+	/**
+	 * @return Number of nodes whose circuit is closed.
+	 */
+	public int getAvailableNodeCount();
+
+	/**
+	 * @return Number of consecutive failures that open the circuit of a node.
+	 */
+	public int getFailureThreshold();
+
+	/**
+	 * @param failureThreshold Number of consecutive failures that open the
+	 *                         circuit of a node.
+	 */
+	public void setFailureThreshold(int failureThreshold);
+
+	/**
+	 * @return Milliseconds a circuit stays open before a trial invocation is
+	 *         let through.
+	 */
+	public long getOpenCircuitDuration();
+
+	/**
+	 * @param openCircuitDuration Milliseconds a circuit stays open before a
+	 *                            trial invocation is let through.
+	 */
+	public void setOpenCircuitDuration(long openCircuitDuration);
+
+	/**
+	 * Closes the circuits of all nodes, e.g. after a failed cluster has been
+	 * repaired.
+	 */
+	public void closeAllCircuits();
+}
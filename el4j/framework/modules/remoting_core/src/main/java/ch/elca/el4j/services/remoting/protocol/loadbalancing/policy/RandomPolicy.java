@@ -54,11 +54,12 @@ public class RandomPolicy extends AbstractPolicy {
 	@Override
 	public AbstractRemotingProtocol getNextProtocol()
 		throws NoProtocolAvailableRTException {
-		if ((m_protocols == null) || (m_protocols.length == 0)) {
+		AbstractRemotingProtocol[] protocols = m_protocols;
+		if ((protocols == null) || (protocols.length == 0)) {
 			throw new NoProtocolAvailableRTException("No protocol defined");
 		}
 		AbstractRemotingProtocol protocol
-			= m_protocols[m_random.nextInt(m_protocols.length)];
+			= protocols[m_random.nextInt(protocols.length)];
 		s_logger.debug("Returning next protocol: " + protocol);
 		return protocol;
 	}
@@ -40,7 +40,7 @@ public class RedirectUponFailurePolicy extends AbstractPolicy {
 	private int m_currentIndex = 0;
 	
 	/** {@inheritDoc} */
-	public AbstractRemotingProtocol getNextProtocol()
+	public synchronized AbstractRemotingProtocol getNextProtocol()
 		throws NoProtocolAvailableRTException {
 		if ((m_protocols == null) || (m_protocols.length == 0)) {
 			throw new NoProtocolAvailableRTException("No protocol defined");
@@ -49,7 +49,7 @@ public class RedirectUponFailurePolicy extends AbstractPolicy {
 	}
 
 	/** {@inheritDoc} */
-	public void notifyFailure(AbstractRemotingProtocol protocol) {
+	public synchronized void notifyFailure(AbstractRemotingProtocol protocol) {
 		if (m_protocols != null) {
 			int index = findIndex(protocol);
 			if (index == m_currentIndex) {
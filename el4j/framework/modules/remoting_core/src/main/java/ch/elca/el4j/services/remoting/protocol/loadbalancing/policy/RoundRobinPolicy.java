@@ -16,6 +16,8 @@
  */
 package ch.elca.el4j.services.remoting.protocol.loadbalancing.policy;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import ch.elca.el4j.services.remoting.AbstractRemotingProtocol;
 import ch.elca.el4j.services.remoting.protocol.loadbalancing.NoProtocolAvailableRTException;
 
@@ -31,7 +33,7 @@ import ch.elca.el4j.services.remoting.protocol.loadbalancing.NoProtocolAvailable
 public class RoundRobinPolicy extends AbstractPolicy {
 
 	/** Index of the protocol currently in use. */
-	private int m_currentIndex = -1;
+	private final AtomicInteger m_currentIndex = new AtomicInteger(-1);
 	
 	/**
 	 * {@inheritDoc}
@@ -39,10 +41,12 @@ public class RoundRobinPolicy extends AbstractPolicy {
 	@Override
 	public AbstractRemotingProtocol getNextProtocol()
 		throws NoProtocolAvailableRTException {
-		if ((m_protocols == null) || (m_protocols.length == 0)) {
+		AbstractRemotingProtocol[] protocols = m_protocols;
+		if ((protocols == null) || (protocols.length == 0)) {
 			throw new NoProtocolAvailableRTException("No protocol defined");
 		}
-		m_currentIndex = (m_currentIndex + 1) % m_protocols.length;
-		return m_protocols[m_currentIndex];
+		// mask the sign bit, the counter may overflow
+		int index = (m_currentIndex.incrementAndGet() & Integer.MAX_VALUE) % protocols.length;
+		return protocols[index];
 	}
 }
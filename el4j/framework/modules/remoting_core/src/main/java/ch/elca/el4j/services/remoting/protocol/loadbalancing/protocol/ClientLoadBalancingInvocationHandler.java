@@ -57,8 +57,6 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 	private static Logger s_logger = LoggerFactory
 		.getLogger(ClientLoadBalancingInvocationHandler.class);
 
-	private Object m_currentProtocolProxy;
-
 	/** Defines the protocol selection policy. */
 	private AbstractPolicy m_policy;
 
@@ -76,7 +74,8 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 	 * Stores references to the instantiated protocols. The comparison is done
 	 * using "==" rather than the usual "equals" method. Thus, this class
 	 * implements its own simple data structures and cannot use predefined
-	 * structures such as Hashtable.
+	 * structures such as Hashtable. All methods are synchronized, the store is
+	 * shared by all invoking threads.
 	 */
 	private static class ProtocolProxyStore {
 
@@ -96,7 +95,7 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 		 *            ProtocolInfo of the required protocol proxy bean
 		 * @return The protocol proxy bean associated with pi
 		 */
-		public Object retrieve(AbstractRemotingProtocol protocol) {
+		public synchronized Object retrieve(AbstractRemotingProtocol protocol) {
 			if (m_protocols == null) {
 				return null;
 			} // if
@@ -116,7 +115,7 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 		 * @param proxy
 		 *            Proxy bean itself
 		 */
-		public void store(AbstractRemotingProtocol protocol, Object proxy) {
+		public synchronized void store(AbstractRemotingProtocol protocol, Object proxy) {
 			if (m_protocols == null) {
 				m_protocols = new AbstractRemotingProtocol[1];
 				m_protocolProxies = new Object[1];
@@ -147,7 +146,7 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 		 * exist
 		 * @param protocol The protocol to be removed.
 		 */
-		public void remove(AbstractRemotingProtocol protocol) {
+		public synchronized void remove(AbstractRemotingProtocol protocol) {
 			if (m_protocols == null) {
 				return;
 			} else {
@@ -221,6 +220,8 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 		throws Throwable {
 
 		AbstractRemotingProtocol protocol = null;
+		// local, the handler is shared by all invoking threads
+		Object currentProtocolProxy = null;
 		int attemptCount = 0;
 		boolean proxyGenerationSucceeded = false;
 		// Try each protocol at most once
@@ -235,7 +236,15 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 					.getServiceHost()
 					+ ":" + ((AbstractInetSocketAddressProtocol) protocol)
 					.getServicePort());
-				m_currentProtocolProxy = loadCurrentProtocol(protocol);
+				try {
+					currentProtocolProxy = loadCurrentProtocol(protocol);
+				} catch (RuntimeException e) {
+					if (!(e instanceof BeanCreationException)) {
+						// the policy must know, e.g. to end a trial invocation
+						notifyFailure(protocol);
+					}
+					throw e;
+				}
 				proxyGenerationSucceeded = true;
 			} catch (NoProtocolAvailableRTException npae) {
 				s_logger.debug("No more protocols available, stop trying ...");
@@ -258,19 +267,25 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 		}
 
 		Object result = null;
+		boolean failed = false;
+		m_policy.notifyCallStarted(protocol);
+		long start = System.nanoTime();
 		try {
-			result = method.invoke(m_currentProtocolProxy, args);
+			result = method.invoke(currentProtocolProxy, args);
 			return result;
 		} catch (InvocationTargetException ite) {
 			// If invocation failed due to connection problems, report those to
 			// the policy component.
 			if (ite.getTargetException() instanceof RemoteAccessException) {
 				s_logger.debug("Expected exception: " + ite.getMessage());
+				failed = true;
 				notifyFailure(protocol);
 			}
 
 			// Rethrow exception to mirror normal protocol behavior
 			throw ite.getTargetException();
+		} finally {
+			m_policy.notifyCallEnded(protocol, System.nanoTime() - start, failed);
 		}
 	}
 
@@ -289,8 +304,7 @@ public class ClientLoadBalancingInvocationHandler implements InvocationHandler,
 
 	/**
 	 * Retrieves new protocol information from the policy and loads, if needed,
-	 * the corresponding protocols. Side-effects: modifies m_currentProtocol,
-	 * m_currentProtocolProxy, m_protocolProxyStore
+	 * the corresponding protocols. Side-effects: modifies m_protocolProxyStore
 	 *
 	 * @param protocol
 	 *            Defines the protocol to be loaded
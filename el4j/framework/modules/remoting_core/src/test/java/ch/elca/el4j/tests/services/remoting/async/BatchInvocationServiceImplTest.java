@@ -0,0 +1,163 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.remoting.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.core.exceptions.MisconfigurationRTException;
+import ch.elca.el4j.services.remoting.async.BatchInvocation;
+import ch.elca.el4j.services.remoting.async.BatchInvocationServiceImpl;
+import ch.elca.el4j.services.remoting.async.BatchResult;
+
+/**
+ * Tests that the {@link BatchInvocationServiceImpl} only invokes the methods
+ * of the exported service interfaces.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BatchInvocationServiceImplTest {
+	// Checkstyle: MagicNumber off
+
+	/** The service under test. */
+	private BatchInvocationServiceImpl m_batchService;
+
+	/**
+	 * Registers a calculator.
+	 *
+	 * @throws Exception If the configuration is invalid.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		m_batchService = new BatchInvocationServiceImpl();
+		m_batchService.setServices(Collections.<String, Object>singletonMap(
+			"calculator", new CalculatorImpl()));
+		m_batchService.setServiceInterfaces(Collections.<String, Class<?>>singletonMap(
+			"calculator", Calculator.class));
+		m_batchService.afterPropertiesSet();
+	}
+
+	/**
+	 * Methods of the service interface are invoked, their results and
+	 * exceptions are returned in order.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testInvokesInterfaceMethods() throws Exception {
+		BatchResult[] results = m_batchService.invokeAll(new BatchInvocation[] {
+			new BatchInvocation("calculator",
+				Calculator.class.getMethod("add", int.class, int.class), new Object[] {1, 2}),
+			new BatchInvocation("calculator",
+				Calculator.class.getMethod("add", int.class, int.class), new Object[] {-1, 2})
+		});
+		assertEquals(2, results.length);
+		assertEquals(3, results[0].getValue());
+		assertNull(results[0].getException());
+		assertTrue(results[1].getException() instanceof IllegalArgumentException);
+	}
+
+	/**
+	 * Public methods of the implementation that are not declared by the
+	 * service interface are rejected.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testRejectsMethodsOutsideServiceInterface() throws Exception {
+		CalculatorImpl.s_secretInvoked = false;
+		BatchResult[] results = m_batchService.invokeAll(new BatchInvocation[] {
+			new BatchInvocation("calculator", CalculatorImpl.class.getMethod("reset"), null),
+			new BatchInvocation("calculator", Object.class.getMethod("getClass"), null)
+		});
+		assertTrue(results[0].getException() instanceof NoSuchMethodException);
+		assertTrue(results[1].getException() instanceof NoSuchMethodException);
+		assertEquals(false, CalculatorImpl.s_secretInvoked);
+	}
+
+	/**
+	 * Unknown services are rejected.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testRejectsUnknownService() throws Exception {
+		BatchResult[] results = m_batchService.invokeAll(new BatchInvocation[] {
+			new BatchInvocation("other",
+				Calculator.class.getMethod("add", int.class, int.class), new Object[] {1, 2})
+		});
+		assertTrue(results[0].getException() instanceof MisconfigurationRTException);
+	}
+
+	/**
+	 * Every service needs an interface it implements.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test(expected = MisconfigurationRTException.class)
+	public void testRequiresImplementedServiceInterface() throws Exception {
+		BatchInvocationServiceImpl batchService = new BatchInvocationServiceImpl();
+		batchService.setServices(Collections.<String, Object>singletonMap(
+			"calculator", new Object()));
+		batchService.setServiceInterfaces(Collections.<String, Class<?>>singletonMap(
+			"calculator", Calculator.class));
+		batchService.afterPropertiesSet();
+	}
+
+	// Checkstyle: MagicNumber on
+
+	/**
+	 * The exported service interface.
+	 */
+	public interface Calculator {
+		/**
+		 * @param a    a non-negative number
+		 * @param b    another number
+		 * @return the sum
+		 */
+		int add(int a, int b);
+	}
+
+	/**
+	 * The implementation, with an additional public method.
+	 */
+	public static class CalculatorImpl implements Calculator {
+		/** Whether {@link #reset()} has been invoked. */
+		static boolean s_secretInvoked;
+
+		/** {@inheritDoc} */
+		public int add(int a, int b) {
+			if (a < 0) {
+				throw new IllegalArgumentException("Negative number");
+			}
+			return a + b;
+		}
+
+		/**
+		 * Not exported.
+		 */
+		public void reset() {
+			s_secretInvoked = true;
+		}
+	}
+}
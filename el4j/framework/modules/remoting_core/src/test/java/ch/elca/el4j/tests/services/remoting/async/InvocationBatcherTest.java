@@ -0,0 +1,238 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.remoting.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.services.remoting.async.BatchInvocation;
+import ch.elca.el4j.services.remoting.async.BatchInvocationService;
+import ch.elca.el4j.services.remoting.async.BatchResult;
+import ch.elca.el4j.services.remoting.async.InvocationBatcher;
+import ch.elca.el4j.services.remoting.async.RemoteFuture;
+
+/**
+ * Tests the {@link InvocationBatcher} and its {@link RemoteFuture}s.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class InvocationBatcherTest {
+	// Checkstyle: MagicNumber off
+
+	/** Runs the tasks on the calling thread. */
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/** The batches received by the batch service. */
+	private final List<BatchInvocation[]> m_batches
+		= Collections.synchronizedList(new ArrayList<BatchInvocation[]>());
+
+	/** Echoes the first argument, fails for <code>null</code>. */
+	private final BatchInvocationService m_batchService = new BatchInvocationService() {
+		public BatchResult[] invokeAll(BatchInvocation[] invocations) {
+			m_batches.add(invocations);
+			BatchResult[] results = new BatchResult[invocations.length];
+			for (int i = 0; i < invocations.length; i++) {
+				Object argument = invocations[i].getArguments()[0];
+				results[i] = argument != null ? BatchResult.forValue(argument)
+					: BatchResult.forException(new IllegalArgumentException());
+			}
+			return results;
+		}
+	};
+
+	/** Triggers the sending of the batches. */
+	private ScheduledExecutorService m_scheduler;
+
+	/** The echo method. */
+	private Method m_echo;
+
+	/**
+	 * Creates the scheduler.
+	 *
+	 * @throws Exception If the test setup fails.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		m_scheduler = Executors.newSingleThreadScheduledExecutor();
+		m_echo = String.class.getMethod("valueOf", Object.class);
+	}
+
+	/**
+	 * Stops the scheduler.
+	 */
+	@After
+	public void tearDown() {
+		m_scheduler.shutdownNow();
+	}
+
+	/**
+	 * A full batch is sent at once and the results are dispatched to the
+	 * futures of the single invocations.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testFullBatchIsSentAtOnce() throws Exception {
+		InvocationBatcher batcher = createBatcher(DIRECT_EXECUTOR, 60000, 3);
+		Future<Object> first = batcher.enqueue(m_echo, new Object[] {"a"}, null);
+		Future<Object> second = batcher.enqueue(m_echo, new Object[] {null}, null);
+		assertFalse(first.isDone());
+		Future<Object> third = batcher.enqueue(m_echo, new Object[] {"c"}, null);
+
+		assertEquals(1, m_batches.size());
+		assertEquals(3, m_batches.get(0).length);
+		assertEquals("a", first.get());
+		assertEquals("c", third.get());
+		try {
+			second.get();
+			fail("The exception must be dispatched to the future.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	/**
+	 * The invocations issued within the window are sent in one batch.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testInvocationsWithinWindowAreCoalesced() throws Exception {
+		InvocationBatcher batcher = createBatcher(DIRECT_EXECUTOR, 100, 50);
+		Future<Object> first = batcher.enqueue(m_echo, new Object[] {"a"}, null);
+		Future<Object> second = batcher.enqueue(m_echo, new Object[] {"b"}, null);
+		assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		assertEquals("b", second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, m_batches.size());
+	}
+
+	/**
+	 * Shutting down fails the pending and all further invocations.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testShutdownFailsPendingInvocations() throws Exception {
+		InvocationBatcher batcher = createBatcher(DIRECT_EXECUTOR, 60000, 50);
+		Future<Object> pending = batcher.enqueue(m_echo, new Object[] {"a"}, null);
+		batcher.shutdown();
+		assertFailed(pending, RejectedExecutionException.class);
+		assertFailed(batcher.enqueue(m_echo, new Object[] {"b"}, null),
+			RejectedExecutionException.class);
+		assertTrue(m_batches.isEmpty());
+	}
+
+	/**
+	 * Batches rejected by the executor fail instead of waiting forever.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testRejectedBatchFails() throws Exception {
+		Executor rejecting = new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("Shut down");
+			}
+		};
+		InvocationBatcher batcher = createBatcher(rejecting, 60000, 1);
+		assertFailed(batcher.enqueue(m_echo, new Object[] {"a"}, null),
+			RejectedExecutionException.class);
+	}
+
+	/**
+	 * Only the first completion of a remote future counts.
+	 *
+	 * @throws Exception If the test fails.
+	 */
+	@Test
+	public void testFirstCompletionWins() throws Exception {
+		RemoteFuture<String> future = new RemoteFuture<String>();
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("The future must not be done yet.");
+		} catch (TimeoutException e) {
+			assertFalse(future.isDone());
+		}
+		assertTrue(future.complete("a"));
+		assertFalse(future.fail(new IllegalStateException()));
+		assertFalse(future.cancel(true));
+		assertEquals("a", future.get());
+
+		RemoteFuture<String> cancelled = new RemoteFuture<String>();
+		assertTrue(cancelled.cancel(false));
+		assertFalse(cancelled.complete("a"));
+		assertTrue(cancelled.isCancelled());
+		try {
+			cancelled.get();
+			fail("A cancelled future has no result.");
+		} catch (CancellationException e) {
+			assertTrue(cancelled.isDone());
+		}
+	}
+
+	// Checkstyle: MagicNumber on
+
+	/**
+	 * @param executor        sends the batches
+	 * @param window          the batch window in milliseconds
+	 * @param maxBatchSize    the maximum batch size
+	 * @return a batcher for the test batch service
+	 */
+	private InvocationBatcher createBatcher(Executor executor, long window, int maxBatchSize) {
+		return new InvocationBatcher(m_batchService, "echo", null, m_scheduler,
+			executor, window, maxBatchSize);
+	}
+
+	/**
+	 * @param future       the future to check
+	 * @param exception    the expected type of the exception
+	 * @throws Exception If the future is not failed
+	 */
+	private void assertFailed(Future<Object> future, Class<?> exception) throws Exception {
+		assertTrue(future.isDone());
+		try {
+			future.get();
+			fail("The future must be failed.");
+		} catch (ExecutionException e) {
+			assertTrue(exception.isInstance(e.getCause()));
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.services.remoting.protocol.loadbalancing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.services.remoting.AbstractRemotingBase;
+import ch.elca.el4j.services.remoting.AbstractRemotingProtocol;
+import ch.elca.el4j.services.remoting.RemotingProxyFactoryBean;
+import ch.elca.el4j.services.remoting.RemotingServiceExporter;
+import ch.elca.el4j.services.remoting.protocol.AbstractInetSocketAddressProtocol;
+import ch.elca.el4j.services.remoting.protocol.loadbalancing.NoProtocolAvailableRTException;
+import ch.elca.el4j.services.remoting.protocol.loadbalancing.policy.LatencyAwarePolicy;
+import ch.elca.el4j.services.remoting.protocol.loadbalancing.protocol.ClientLoadBalancingInvocationHandler;
+
+/**
+ * Tests the circuit breaker and the latency based choice of the
+ * {@link LatencyAwarePolicy}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class LatencyAwarePolicyTest {
+	// Checkstyle: MagicNumber off
+
+	/** The policy under test. */
+	private LatencyAwarePolicy m_policy;
+
+	/** The fast protocol. */
+	private TestProtocol m_fast;
+
+	/** The slow protocol. */
+	private TestProtocol m_slow;
+
+	/**
+	 * Creates a policy with two protocols.
+	 */
+	@Before
+	public void setUp() {
+		m_fast = new TestProtocol(8080);
+		m_slow = new TestProtocol(8081);
+		m_policy = new LatencyAwarePolicy();
+		m_policy.setFailureThreshold(2);
+		m_policy.setProtocols(new AbstractRemotingProtocol[] {m_fast, m_slow});
+	}
+
+	/**
+	 * The node with the lower latency is preferred.
+	 */
+	@Test
+	public void testPrefersFasterNode() {
+		succeed(m_fast, 1000000);
+		succeed(m_slow, 100000000);
+		for (int i = 0; i < 50; i++) {
+			assertSame(m_fast, m_policy.getNextProtocol());
+		}
+	}
+
+	/**
+	 * Invocations in flight raise the cost of a node.
+	 */
+	@Test
+	public void testInvocationsInFlightRaiseCost() {
+		succeed(m_fast, 10000000);
+		succeed(m_slow, 100000000);
+		for (int i = 0; i < 20; i++) {
+			m_policy.notifyCallStarted(m_fast);
+		}
+		assertSame(m_slow, m_policy.getNextProtocol());
+	}
+
+	/**
+	 * The circuit opens after the configured number of consecutive failures.
+	 */
+	@Test
+	public void testCircuitOpensAfterThreshold() {
+		m_policy.notifyFailure(m_fast);
+		assertEquals(2, m_policy.getAvailableNodeCount());
+		m_policy.notifyFailure(m_fast);
+		assertEquals(1, m_policy.getAvailableNodeCount());
+		for (int i = 0; i < 50; i++) {
+			assertSame(m_slow, m_policy.getNextProtocol());
+		}
+	}
+
+	/**
+	 * A successful trial closes the circuit, a failed one opens it again.
+	 */
+	@Test
+	public void testTrialClosesOrReopensCircuit() {
+		m_policy.setOpenCircuitDuration(0);
+		openCircuit(m_fast);
+
+		assertSame(m_fast, m_policy.getNextProtocol());
+		m_policy.notifyFailure(m_fast);
+		assertEquals(1, m_policy.getAvailableNodeCount());
+
+		assertSame(m_fast, m_policy.getNextProtocol());
+		succeed(m_fast, 1000000);
+		assertEquals(2, m_policy.getAvailableNodeCount());
+	}
+
+	/**
+	 * A trial whose outcome is never reported is repeated after another
+	 * period.
+	 *
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	@Test
+	public void testUnreportedTrialIsRepeated() throws InterruptedException {
+		m_policy.setOpenCircuitDuration(100);
+		openCircuit(m_fast);
+		assertSame(m_slow, m_policy.getNextProtocol());
+
+		Thread.sleep(150);
+		assertSame(m_fast, m_policy.getNextProtocol());
+		// the trial is running, the node is not handed out again
+		assertSame(m_slow, m_policy.getNextProtocol());
+
+		Thread.sleep(150);
+		assertSame(m_fast, m_policy.getNextProtocol());
+	}
+
+	/**
+	 * No protocol is handed out if all circuits are open.
+	 */
+	@Test(expected = NoProtocolAvailableRTException.class)
+	public void testAllCircuitsOpen() {
+		openCircuit(m_fast);
+		openCircuit(m_slow);
+		m_policy.getNextProtocol();
+	}
+
+	/**
+	 * A failure to create the proxy of a trial protocol opens its circuit
+	 * again.
+	 *
+	 * @throws Throwable If the invocation fails unexpectedly.
+	 */
+	@Test
+	public void testProxyCreationFailureEndsTrial() throws Throwable {
+		m_policy.setProtocols(new AbstractRemotingProtocol[] {m_fast});
+		m_policy.setOpenCircuitDuration(0);
+		openCircuit(m_fast);
+		m_fast.m_failure = new IllegalStateException("No proxy");
+
+		ClientLoadBalancingInvocationHandler handler
+			= new ClientLoadBalancingInvocationHandler(m_policy, null,
+				Runnable.class);
+		Method run = Runnable.class.getMethod("run");
+		try {
+			handler.invoke(null, run, null);
+			fail("The proxy creation failure must be propagated.");
+		} catch (IllegalStateException e) {
+			assertSame(m_fast.m_failure, e);
+		}
+		assertTrue(m_policy.getNodes()[0].contains("state=open"));
+
+		// the next trial succeeds and closes the circuit
+		m_fast.m_failure = null;
+		handler.invoke(null, run, null);
+		assertEquals(1, m_fast.m_runs);
+		assertEquals(1, m_policy.getAvailableNodeCount());
+	}
+
+	/**
+	 * Reports a successful invocation.
+	 *
+	 * @param protocol The protocol.
+	 * @param durationNanos The response time in nanoseconds.
+	 */
+	private void succeed(AbstractRemotingProtocol protocol, long durationNanos) {
+		m_policy.notifyCallStarted(protocol);
+		m_policy.notifyCallEnded(protocol, durationNanos, false);
+	}
+
+	/**
+	 * Opens the circuit of the given protocol.
+	 *
+	 * @param protocol The protocol.
+	 */
+	private void openCircuit(AbstractRemotingProtocol protocol) {
+		for (int i = 0; i < m_policy.getFailureThreshold(); i++) {
+			m_policy.notifyFailure(protocol);
+		}
+	}
+
+	// Checkstyle: MagicNumber on
+
+	/**
+	 * Protocol that creates local proxies.
+	 */
+	private static class TestProtocol extends AbstractInetSocketAddressProtocol {
+		/** The exception to throw on proxy creation, if any. */
+		RuntimeException m_failure;
+
+		/** The number of invocations of the proxies. */
+		int m_runs;
+
+		/**
+		 * @param port The service port.
+		 */
+		TestProtocol(int port) {
+			setServiceHost("localhost");
+			setServicePort(port);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public String generateUrl(AbstractRemotingBase remotingBase) {
+			return "test://" + getServiceHost() + ":" + getServicePort();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object createProxyBean(RemotingProxyFactoryBean proxyBean,
+			Class serviceInterfaceWithContext) {
+			if (m_failure != null) {
+				throw m_failure;
+			}
+			return new Runnable() {
+				public void run() {
+					m_runs++;
+				}
+			};
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object createExporterBean(RemotingServiceExporter exporterBean,
+			Class serviceInterfaceWithContext, Object serviceProxy) {
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Class getProxyObjectType() {
+			return Runnable.class;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Class getExporterObjectType() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.util.socketstatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the statistics of closed connections. Adding a
+ * record never blocks, the oldest records are overwritten.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class ConnectionHistory {
+
+	/**
+	 * The records, indexed by sequence number modulo capacity.
+	 */
+	private final AtomicReferenceArray<ConnectionStatistics> m_slots;
+
+	/**
+	 * Sequence number of the next record.
+	 */
+	private final AtomicLong m_next = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity
+	 *            maximum number of records kept
+	 */
+	public ConnectionHistory(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive.");
+		}
+		m_slots = new AtomicReferenceArray<ConnectionStatistics>(capacity);
+	}
+
+	/**
+	 * Adds a record, overwriting the oldest one if the history is full.
+	 * 
+	 * @param cs
+	 *            the statistics of a closed connection
+	 */
+	public void add(ConnectionStatistics cs) {
+		long sequence = m_next.getAndIncrement();
+		m_slots.set((int) (sequence % m_slots.length()), cs);
+	}
+
+	/**
+	 * @return the maximum number of records kept
+	 */
+	public int getCapacity() {
+		return m_slots.length();
+	}
+
+	/**
+	 * @return the records, oldest first (a snapshot)
+	 */
+	public List<ConnectionStatistics> getRecords() {
+		int capacity = m_slots.length();
+		long end = m_next.get();
+		long start = Math.max(0, end - capacity);
+		List<ConnectionStatistics> records = new ArrayList<ConnectionStatistics>((int) (end - start));
+		for (long sequence = start; sequence < end; sequence++) {
+			ConnectionStatistics cs = m_slots.get((int) (sequence % capacity));
+			if (cs != null) {
+				records.add(cs);
+			}
+		}
+		return records;
+	}
+}
@@ -18,13 +18,17 @@ package ch.elca.el4j.util.socketstatistics;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ch.elca.el4j.util.socketstatistics.genericlogger.GenericLogFactory;
 import ch.elca.el4j.util.socketstatistics.genericlogger.GenericLogger;
 
 
 /**
- * Keeps statistics of one (open / closed) socket connection.
+ * Keeps statistics of one (open / closed) socket connection. The traffic
+ * counters are atomic and each is only written by the stream of one
+ * direction, so counting does not lock nor contend with other sockets.
  *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
@@ -40,42 +44,53 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	/**
 	 * Date when socket was created.
 	 */
-	private Date m_created;
+	private final Date m_created;
 
 	/**
 	 * Date when socket was destroyed / closed.
 	 */
-	private Date m_destroyed;
+	private volatile Date m_destroyed;
+
+	/**
+	 * Whether the socket has been closed.
+	 */
+	private final AtomicBoolean m_closed = new AtomicBoolean();
 
 	/**
 	 * The total number of bytes sent on socket.
 	 */
-	private long m_totalBytesSent;
+	private final AtomicLong m_totalBytesSent = new AtomicLong();
 
 	/**
 	 * The total number of bytes received on socket.
 	 */
-	private long m_totalBytesRecveived;
+	private final AtomicLong m_totalBytesRecveived = new AtomicLong();
 
 	/**
 	 * The unique id of the socket.
 	 */
-	private long m_socketId;
+	private final long m_socketId;
+
+	/**
+	 * The statistics of the endpoint this socket has been connected to,
+	 * <code>null</code> if the connection has not been established.
+	 */
+	private volatile EndpointStatistics m_endpointStatistics;
 
 	/**
 	 * The remote address of the socket.
 	 */
-	private InetAddress m_remoteAddress;
+	private volatile InetAddress m_remoteAddress;
 
 	/**
 	 * The remoteport of the socket.
 	 */
-	private int m_remotePort;
+	private volatile int m_remotePort;
 
 	/**
 	 * The local port of the socket.
 	 */
-	private int m_localPort;
+	private volatile int m_localPort;
 
 	/**
 	 * Constructor.
@@ -86,13 +101,9 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	public ConnectionStatistics(long socketID) {
 		this.m_socketId = socketID;
 		this.m_created = new Date();
-		this.m_destroyed = null;
-		this.m_totalBytesSent = 0;
-		this.m_totalBytesRecveived = 0;
-		this.m_remoteAddress = null;
-		this.m_remotePort = 0;
-		this.m_localPort = 0;
-		m_logger.log("info", "Socket opened with Socket-ID " + m_socketId);
+		if (m_logger.isLogEnabled("info")) {
+			m_logger.log("info", "Socket opened with Socket-ID " + m_socketId);
+		}
 	}
 
 	/**
@@ -101,8 +112,8 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @param nrofbytes
 	 *            number of sent bytes
 	 */
-	public synchronized void addbytessent(int nrofbytes) {
-		m_totalBytesSent += nrofbytes;
+	public void addbytessent(int nrofbytes) {
+		m_totalBytesSent.addAndGet(nrofbytes);
 	}
 
 	/**
@@ -111,8 +122,8 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @param nrofbytes
 	 *            number of received bytes
 	 */
-	public synchronized void addbytesrecv(int nrofbytes) {
-		m_totalBytesRecveived += nrofbytes;
+	public void addbytesrecv(int nrofbytes) {
+		m_totalBytesRecveived.addAndGet(nrofbytes);
 	}
 
 	/**
@@ -121,7 +132,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @return total number of bytes received on socket
 	 */
 	public long getBytesReceived() {
-		return m_totalBytesRecveived;
+		return m_totalBytesRecveived.get();
 	}
 
 	/**
@@ -130,7 +141,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @return total number of bytes sent on socket
 	 */
 	public long getBytesSent() {
-		return m_totalBytesSent;
+		return m_totalBytesSent.get();
 	}
 
 	/**
@@ -139,7 +150,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @param ra
 	 *            sockets remote address
 	 */
-	public synchronized void setRemoteAdress(InetAddress ra) {
+	public void setRemoteAdress(InetAddress ra) {
 		this.m_remoteAddress = ra;
 	}
 
@@ -148,8 +159,9 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * 
 	 * @return sockets remote address
 	 */
-	public synchronized String getRemoteAdress() {
-		return this.m_remoteAddress == null ? "" : this.m_remoteAddress.toString();
+	public String getRemoteAdress() {
+		InetAddress remoteAddress = this.m_remoteAddress;
+		return remoteAddress == null ? "" : remoteAddress.toString();
 	}
 
 	/**
@@ -158,7 +170,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @param rp
 	 *            sockets remote port
 	 */
-	public synchronized void setRemotePort(int rp) {
+	public void setRemotePort(int rp) {
 		this.m_remotePort = rp;
 	}
 
@@ -167,7 +179,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * 
 	 * @return sockets remote port
 	 */
-	public synchronized int getRemotePort() {
+	public int getRemotePort() {
 		return this.m_remotePort;
 	}
 
@@ -177,7 +189,7 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @param lp
 	 *            sockets local port
 	 */
-	public synchronized void setLocalPort(int lp) {
+	public void setLocalPort(int lp) {
 		this.m_localPort = lp;
 	}
 
@@ -186,15 +198,61 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * 
 	 * @return sockets local port
 	 */
-	public synchronized int getLocalPort() {
+	public int getLocalPort() {
 		return this.m_localPort;
 	}
 
 	/**
-	 * Mark monitored socket as closed / destroyed.
+	 * Returns the remote endpoint of the socket, used to aggregate statistics.
+	 * 
+	 * @return remote address and port, <code>null</code> if not known
 	 */
-	public synchronized void setDestroyed() {
-		m_logger.log("info", "Socket closed with Socket-ID " + m_socketId);
+	public String getRemoteEndpoint() {
+		InetAddress remoteAddress = this.m_remoteAddress;
+		int remotePort = this.m_remotePort;
+		if (remoteAddress == null || remotePort == 0) {
+			return null;
+		}
+		return remoteAddress.toString() + ":" + remotePort;
+	}
+
+	/**
+	 * @return the statistics of the endpoint this socket has been connected
+	 *         to, <code>null</code> if the connection has not been established
+	 */
+	EndpointStatistics getEndpointStatistics() {
+		return m_endpointStatistics;
+	}
+
+	/**
+	 * @param endpointStatistics
+	 *            the statistics of the endpoint this socket has been
+	 *            connected to
+	 */
+	void setEndpointStatistics(EndpointStatistics endpointStatistics) {
+		m_endpointStatistics = endpointStatistics;
+	}
+
+	/**
+	 * Mark monitored socket as connected.
+	 * 
+	 * @param latencyNanos
+	 *            the time it took to connect in nanoseconds
+	 */
+	public void setConnected(long latencyNanos) {
+		SocketStatistics.setConnectionEstablished(this, latencyNanos);
+	}
+
+	/**
+	 * Mark monitored socket as closed / destroyed. Further calls are ignored.
+	 */
+	public void setDestroyed() {
+		if (!m_closed.compareAndSet(false, true)) {
+			return;
+		}
+		if (m_logger.isLogEnabled("info")) {
+			m_logger.log("info", "Socket closed with Socket-ID " + m_socketId);
+		}
 		SocketStatistics.setConnectionDestroyed(this);
 	}
 
@@ -204,7 +262,8 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * @return string of date when socket was destroyed / closed
 	 */
 	public String getDestroyedDate() {
-		return m_destroyed == null ? "" : m_destroyed.toString();
+		Date destroyed = m_destroyed;
+		return destroyed == null ? "" : destroyed.toString();
 	}
 
 	/**
@@ -212,14 +271,14 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 	 * 
 	 * @return date when socket was destroyed / closed
 	 */
-	protected synchronized Date getDestroyedDateInt() {
+	protected Date getDestroyedDateInt() {
 		return m_destroyed;
 	}
 
 	/**
 	 * Sets socket as destroyed / closed with date = now.
 	 */
-	protected synchronized void setDestroyedDateInt() {
+	protected void setDestroyedDateInt() {
 		m_destroyed = new Date();
 	}
 
@@ -261,8 +320,8 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 		if (m_destroyed != null) { sb.append("\n  [ closed on " + getDestroyedDate() + " ]"); }
 		sb.append("\n  [ Remote address / port: " + getRemoteAdress() + " / " + getRemotePort() + " ]");
 		sb.append("\n  [ Local port: " + getLocalPort() + " ]");
-		sb.append("\n  [ Total bytes received on socket: " + m_totalBytesRecveived + " ]");
-		sb.append("\n  [ Total bytes sent on socket: " + m_totalBytesSent + " ]");
+		sb.append("\n  [ Total bytes received on socket: " + getBytesReceived() + " ]");
+		sb.append("\n  [ Total bytes sent on socket: " + getBytesSent() + " ]");
 		return sb.toString();
 	}
 
@@ -283,11 +342,11 @@ public class ConnectionStatistics implements Comparable<ConnectionStatistics> {
 		sb.append(";");
 		sb.append(getRemotePort());
 		sb.append(";");
-		sb.append(getRemoteAdress());
+		sb.append(getLocalPort());
 		sb.append(";");
-		sb.append(m_totalBytesRecveived);
+		sb.append(getBytesReceived());
 		sb.append(";");
-		sb.append(m_totalBytesSent);
+		sb.append(getBytesSent());
 		sb.append("\n");
 		return sb.toString();
 	}
@@ -0,0 +1,218 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.util.socketstatistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated statistics of all connections to one remote endpoint (address
+ * and port). Connect latencies are recorded when a connection is established,
+ * transferred bytes and throughput when it is closed, so the sockets do not
+ * share any counter while transferring data.
+ *
+ * <p> The histograms use power of two buckets, see {@link Log2Histogram}.
+ * Endpoints without open connections may be evicted, see
+ * {@link SocketStatisticsMXBean#setMaxEndpoints(int)}.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class EndpointStatistics {
+
+	/**
+	 * The remote endpoint.
+	 */
+	private final String m_endpoint;
+
+	/**
+	 * Number of established connections.
+	 */
+	private final AtomicLong m_connectionCount = new AtomicLong();
+
+	/**
+	 * Number of established connections that are not closed yet.
+	 */
+	private final AtomicInteger m_openConnectionCount = new AtomicInteger();
+
+	/**
+	 * Time of the last connect or close in milliseconds.
+	 */
+	private volatile long m_lastUsed = System.currentTimeMillis();
+
+	/**
+	 * Number of closed connections.
+	 */
+	private final AtomicLong m_closedConnectionCount = new AtomicLong();
+
+	/**
+	 * Bytes sent on closed connections.
+	 */
+	private final AtomicLong m_bytesSent = new AtomicLong();
+
+	/**
+	 * Bytes received on closed connections.
+	 */
+	private final AtomicLong m_bytesReceived = new AtomicLong();
+
+	/**
+	 * Connect latencies in microseconds.
+	 */
+	private final Log2Histogram m_connectLatency = new Log2Histogram();
+
+	/**
+	 * Average throughput of the closed connections in bytes per second.
+	 */
+	private final Log2Histogram m_throughput = new Log2Histogram();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param endpoint
+	 *            the remote endpoint
+	 */
+	public EndpointStatistics(String endpoint) {
+		this.m_endpoint = endpoint;
+	}
+
+	/**
+	 * Records an established connection.
+	 * 
+	 * @param latencyNanos
+	 *            the time it took to connect in nanoseconds
+	 */
+	public void recordConnect(long latencyNanos) {
+		m_connectionCount.incrementAndGet();
+		m_openConnectionCount.incrementAndGet();
+		m_connectLatency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+		m_lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records that a connection recorded by {@link #recordConnect(long)} has
+	 * been closed.
+	 */
+	void recordDisconnect() {
+		m_openConnectionCount.decrementAndGet();
+	}
+
+	/**
+	 * Records a closed connection.
+	 * 
+	 * @param bytesSent
+	 *            bytes sent on the connection
+	 * @param bytesReceived
+	 *            bytes received on the connection
+	 * @param durationMillis
+	 *            how long the connection was open in milliseconds
+	 */
+	public void recordClose(long bytesSent, long bytesReceived, long durationMillis) {
+		m_closedConnectionCount.incrementAndGet();
+		m_bytesSent.addAndGet(bytesSent);
+		m_bytesReceived.addAndGet(bytesReceived);
+		m_throughput.record((bytesSent + bytesReceived) * 1000 / Math.max(durationMillis, 1));
+		m_lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the time of the last connect or close in milliseconds
+	 */
+	long getLastUsed() {
+		return m_lastUsed;
+	}
+
+	/**
+	 * @return the remote endpoint (address / port)
+	 */
+	public String getEndpoint() {
+		return m_endpoint;
+	}
+
+	/**
+	 * @return the number of established connections
+	 */
+	public long getConnectionCount() {
+		return m_connectionCount.get();
+	}
+
+	/**
+	 * @return the number of established connections that are not closed yet
+	 */
+	public int getOpenConnectionCount() {
+		return m_openConnectionCount.get();
+	}
+
+	/**
+	 * @return the number of closed connections
+	 */
+	public long getClosedConnectionCount() {
+		return m_closedConnectionCount.get();
+	}
+
+	/**
+	 * @return the bytes sent on closed connections
+	 */
+	public long getBytesSent() {
+		return m_bytesSent.get();
+	}
+
+	/**
+	 * @return the bytes received on closed connections
+	 */
+	public long getBytesReceived() {
+		return m_bytesReceived.get();
+	}
+
+	/**
+	 * @return the number of connections per connect latency bucket (in
+	 *         microseconds)
+	 */
+	public long[] getConnectLatencyHistogram() {
+		return m_connectLatency.getCounts();
+	}
+
+	/**
+	 * @return the estimated median connect latency in microseconds
+	 */
+	public long getMedianConnectLatency() {
+		return m_connectLatency.getPercentile(50);
+	}
+
+	/**
+	 * @return the estimated 99th percentile of the connect latency in
+	 *         microseconds
+	 */
+	public long getConnectLatency99thPercentile() {
+		return m_connectLatency.getPercentile(99);
+	}
+
+	/**
+	 * @return the number of closed connections per throughput bucket (in
+	 *         bytes per second)
+	 */
+	public long[] getThroughputHistogram() {
+		return m_throughput.getCounts();
+	}
+
+	/**
+	 * @return the estimated median throughput of the closed connections in
+	 *         bytes per second
+	 */
+	public long getMedianThroughput() {
+		return m_throughput.getPercentile(50);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.util.socketstatistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power of two buckets: bucket <code>0</code> counts
+ * the values <code>&lt;= 0</code>, bucket <code>i</code> the values in
+ * <code>[2^(i-1), 2^i)</code>. The last bucket also counts all larger values.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class Log2Histogram {
+
+	/**
+	 * Number of buckets.
+	 */
+	public static final int BUCKET_COUNT = 32;
+
+	/**
+	 * The counts per bucket.
+	 */
+	private final AtomicLongArray m_counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Counts a value.
+	 * 
+	 * @param value
+	 *            the value to count
+	 */
+	public void record(long value) {
+		int bucket = value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+		m_counts.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+	}
+
+	/**
+	 * @return the counts per bucket (a snapshot)
+	 */
+	public long[] getCounts() {
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = m_counts.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Estimates a percentile of the counted values.
+	 * 
+	 * @param percentile
+	 *            the percentile, between <code>0</code> and <code>100</code>
+	 * @return the upper bound of the bucket containing the percentile,
+	 *         <code>0</code> if no values have been counted
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = getCounts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				return i == 0 ? 0 : (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Resets all counts.
+	 */
+	public void clear() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			m_counts.set(i, 0);
+		}
+	}
+}
@@ -20,18 +20,33 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Delegator for the use of SocketImpl using reflection.
  *
  * Inspired by http://www.javaspecialists.eu/archive/Issue168.html
  *
+ * <p> Frequently called methods should be resolved once with
+ * {@link #resolve(Class, String, Class...)} and invoked with
+ * {@link #delegate(Method, Object...)}. The convenience method
+ * {@link #invoke(Object...)} determines the method to call by walking the
+ * stack and searching the class on every call.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Jonas Hauenstein (JHN)
  */
 public class ReflectiveDelegator {
 
+	/**
+	 * The accessible declared fields per class, copied to and from the delegate
+	 * around each call.
+	 */
+	private static final ConcurrentMap<Class<?>, Field[]> s_fields
+		= new ConcurrentHashMap<Class<?>, Field[]>();
+
 	/**
 	 * Source class of delegation.
 	 */
@@ -45,7 +60,7 @@ public class ReflectiveDelegator {
 	/**
 	 * Superclass for delegation-calls.
 	 */
-	private final Class m_superclass;
+	private final Class<?> m_superclass;
 
 	/**
 	 * Constructor.
@@ -57,7 +72,7 @@ public class ReflectiveDelegator {
 	 * @param delegate
 	 *            reference to class for delegated method calls
 	 */
-	public ReflectiveDelegator(Object source, Class superclass, Object delegate) {
+	public ReflectiveDelegator(Object source, Class<?> superclass, Object delegate) {
 		this.m_source = source;
 		this.m_superclass = superclass;
 		this.m_delegate = delegate;
@@ -73,12 +88,12 @@ public class ReflectiveDelegator {
 	 * @param delegateClassName
 	 *            name of the class for delegated method calls
 	 */
-	public ReflectiveDelegator(Object source, Class superclass, String delegateClassName) {
+	public ReflectiveDelegator(Object source, Class<?> superclass, String delegateClassName) {
 		try {
 			this.m_source = source;
 			this.m_superclass = superclass;
-			Class implCl = Class.forName(delegateClassName);
-			Constructor delegateConstructor = implCl.getDeclaredConstructor();
+			Class<?> implCl = Class.forName(delegateClassName);
+			Constructor<?> delegateConstructor = implCl.getDeclaredConstructor();
 			delegateConstructor.setAccessible(true);
 			this.m_delegate = delegateConstructor.newInstance();
 		} catch (RuntimeException e) {
@@ -89,7 +104,57 @@ public class ReflectiveDelegator {
 	}
 
 	/**
-	 * Method for invocation on delegated class.
+	 * Resolves a method of the given class once, so it can be invoked
+	 * with {@link #delegate(Method, Object...)} without any further lookup.
+	 * 
+	 * @param superclass
+	 *            class used for delegation
+	 * @param methodName
+	 *            name of the method
+	 * @param parameterTypes
+	 *            signature of the method
+	 * @return the accessible method
+	 */
+	public static Method resolve(Class<?> superclass, String methodName, Class<?>... parameterTypes) {
+		try {
+			Method method;
+			try {
+				method = superclass.getDeclaredMethod(methodName, parameterTypes);
+			} catch (NoSuchMethodException e) {
+				// e.g. methods of implemented interfaces
+				method = superclass.getMethod(methodName, parameterTypes);
+			}
+			method.setAccessible(true);
+			return method;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DelegationException(e);
+		}
+	}
+
+	/**
+	 * Invokes a method resolved by {@link #resolve(Class, String, Class...)} on
+	 * the delegated class.
+	 * 
+	 * @param <T>
+	 *            generic return type
+	 * @param method
+	 *            the resolved method
+	 * @param args
+	 *            arguments to be passed to the original method
+	 * @return return value of original method
+	 */
+	public final <T> T delegate(Method method, Object... args) {
+		@SuppressWarnings("unchecked")
+		T t = (T) invoke0(method, args);
+		return t;
+	}
+
+	/**
+	 * Method for invocation on delegated class. The method with the name of the
+	 * calling method is searched on each call, see
+	 * {@link #delegate(Method, Object...)} for frequent calls.
 	 * 
 	 * @param <T>
 	 *            generic return type
@@ -101,6 +166,7 @@ public class ReflectiveDelegator {
 		try {
 			String methodName = extractMethodName();
 			Method method = findMethod(methodName, args);
+			method.setAccessible(true);
 			@SuppressWarnings("unchecked")
 			T t = (T) invoke0(method, args);
 			return t;
@@ -113,7 +179,7 @@ public class ReflectiveDelegator {
 	 * Internal implementation for invocation on delegated class.
 	 * 
 	 * @param method
-	 *            method to be called
+	 *            method to be called, already made accessible
 	 * @param args
 	 *            arguments to be passed to the called method
 	 * @return return value of original method
@@ -121,7 +187,6 @@ public class ReflectiveDelegator {
 	private Object invoke0(Method method, Object[] args) {
 		try {
 			writeFields(m_superclass, m_source, m_delegate);
-			method.setAccessible(true);
 			Object result = method.invoke(m_delegate, args);
 			writeFields(m_superclass, m_delegate, m_source);
 			return result;
@@ -135,18 +200,40 @@ public class ReflectiveDelegator {
 	}
 
 	/**
+	 * Copies the declared fields of the given class.
+	 * 
 	 * @param clazz
+	 *            class declaring the fields
 	 * @param from
+	 *            object to read the fields from
 	 * @param to
+	 *            object to write the fields to
 	 * @throws Exception
+	 *             if a field could not be copied
 	 */
-	private void writeFields(Class clazz, Object from, Object to) throws Exception {
-		for (Field field : clazz.getDeclaredFields()) {
-			field.setAccessible(true);
+	private void writeFields(Class<?> clazz, Object from, Object to) throws Exception {
+		for (Field field : getFields(clazz)) {
 			field.set(to, field.get(from));
 		}
 	}
 
+	/**
+	 * @param clazz
+	 *            class declaring the fields
+	 * @return the accessible declared fields of the class, looked up once
+	 */
+	private static Field[] getFields(Class<?> clazz) {
+		Field[] fields = s_fields.get(clazz);
+		if (fields == null) {
+			fields = clazz.getDeclaredFields();
+			for (Field field : fields) {
+				field.setAccessible(true);
+			}
+			s_fields.putIfAbsent(clazz, fields);
+		}
+		return fields;
+	}
+
 	/**
 	 * Returns name of calling method using stacktrace.
 	 * 
@@ -297,6 +384,7 @@ public class ReflectiveDelegator {
 		public DelegatorMethodFinder(String methodName, Class<?>... parameterTypes) {
 			try {
 				method = m_superclass.getDeclaredMethod(methodName, parameterTypes);
+				method.setAccessible(true);
 			} catch (RuntimeException e) {
 				throw e;
 			} catch (Exception e) {
@@ -19,6 +19,7 @@ package ch.elca.el4j.util.socketstatistics;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
@@ -34,6 +35,52 @@ import java.net.SocketImpl;
  */
 public class SocketImplLogger extends SocketImpl {
 
+	/*
+	 * The delegated methods, resolved once per class.
+	 */
+
+	/** @see SocketImpl#accept(SocketImpl) */
+	private static final Method ACCEPT = resolve("accept", SocketImpl.class);
+
+	/** @see SocketImpl#available() */
+	private static final Method AVAILABLE = resolve("available");
+
+	/** @see SocketImpl#bind(InetAddress, int) */
+	private static final Method BIND = resolve("bind", InetAddress.class, int.class);
+
+	/** @see SocketImpl#close() */
+	private static final Method CLOSE = resolve("close");
+
+	/** @see SocketImpl#connect(String, int) */
+	private static final Method CONNECT_HOST = resolve("connect", String.class, int.class);
+
+	/** @see SocketImpl#connect(InetAddress, int) */
+	private static final Method CONNECT_ADDRESS = resolve("connect", InetAddress.class, int.class);
+
+	/** @see SocketImpl#connect(SocketAddress, int) */
+	private static final Method CONNECT_SOCKET_ADDRESS = resolve("connect", SocketAddress.class, int.class);
+
+	/** @see SocketImpl#create(boolean) */
+	private static final Method CREATE = resolve("create", boolean.class);
+
+	/** @see SocketImpl#getInputStream() */
+	private static final Method GET_INPUT_STREAM = resolve("getInputStream");
+
+	/** @see SocketImpl#getOutputStream() */
+	private static final Method GET_OUTPUT_STREAM = resolve("getOutputStream");
+
+	/** @see SocketImpl#listen(int) */
+	private static final Method LISTEN = resolve("listen", int.class);
+
+	/** @see SocketImpl#sendUrgentData(int) */
+	private static final Method SEND_URGENT_DATA = resolve("sendUrgentData", int.class);
+
+	/** @see SocketImpl#getOption(int) */
+	private static final Method GET_OPTION = resolve("getOption", int.class);
+
+	/** @see SocketImpl#setOption(int, Object) */
+	private static final Method SET_OPTION = resolve("setOption", int.class, Object.class);
+
 	/**
 	 * Delegator used for calls to java.net.SocksSocketImpl.
 	 */
@@ -58,7 +105,7 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void accept(SocketImpl s) throws IOException {
-		m_delegator.invoke(s);
+		m_delegator.delegate(ACCEPT, s);
 	}
 
 	/**
@@ -66,7 +113,7 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected int available() throws IOException {
-		Integer i = (Integer) m_delegator.invoke();
+		Integer i = (Integer) m_delegator.delegate(AVAILABLE);
 		return i.intValue();
 	}
 
@@ -75,10 +122,8 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void bind(InetAddress host, int port) throws IOException {
-		m_delegator.invoke(host, port);
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		m_delegator.delegate(BIND, host, port);
+		updateConnectionStatistics();
 	}
 
 	/**
@@ -87,7 +132,7 @@ public class SocketImplLogger extends SocketImpl {
 	@Override
 	protected void close() throws IOException {
 		m_constats.setDestroyed();
-		m_delegator.invoke();
+		m_delegator.delegate(CLOSE);
 	}
 
 	/**
@@ -95,8 +140,9 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void connect(String host, int port) throws IOException {
+		long start = System.nanoTime();
 		try {
-			m_delegator.invoke(host, port);
+			m_delegator.delegate(CONNECT_HOST, host, port);
 		} catch (DelegationException e) {
 			if (e.getCause() instanceof IOException) {
 				throw (IOException) e.getCause();
@@ -104,9 +150,8 @@ public class SocketImplLogger extends SocketImpl {
 				throw e;
 			}
 		}
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		updateConnectionStatistics();
+		m_constats.setConnected(System.nanoTime() - start);
 	}
 
 	/**
@@ -114,8 +159,9 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void connect(InetAddress address, int port) throws IOException {
+		long start = System.nanoTime();
 		try {
-			m_delegator.invoke(address, port);
+			m_delegator.delegate(CONNECT_ADDRESS, address, port);
 		} catch (DelegationException e) {
 			if (e.getCause() instanceof IOException) {
 				throw (IOException) e.getCause();
@@ -123,9 +169,8 @@ public class SocketImplLogger extends SocketImpl {
 				throw e;
 			}
 		}
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		updateConnectionStatistics();
+		m_constats.setConnected(System.nanoTime() - start);
 	}
 
 	/**
@@ -133,8 +178,9 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void connect(SocketAddress address, int timeout) throws IOException {
+		long start = System.nanoTime();
 		try {
-			m_delegator.invoke(address, port);
+			m_delegator.delegate(CONNECT_SOCKET_ADDRESS, address, timeout);
 		} catch (DelegationException e) {
 			if (e.getCause() instanceof IOException) {
 				throw (IOException) e.getCause();
@@ -142,9 +188,8 @@ public class SocketImplLogger extends SocketImpl {
 				throw e;
 			}
 		}
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		updateConnectionStatistics();
+		m_constats.setConnected(System.nanoTime() - start);
 	}
 
 	/**
@@ -152,7 +197,7 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void create(boolean stream) throws IOException {
-		m_delegator.invoke(stream);
+		m_delegator.delegate(CREATE, stream);
 	}
 
 	/**
@@ -160,10 +205,8 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected InputStream getInputStream() throws IOException {
-		InputStream real = m_delegator.invoke();
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		InputStream real = m_delegator.delegate(GET_INPUT_STREAM);
+		updateConnectionStatistics();
 		return new InputStreamLogger(real, m_constats);
 	}
 
@@ -172,10 +215,8 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected OutputStream getOutputStream() throws IOException {
-		OutputStream real = m_delegator.invoke();
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		OutputStream real = m_delegator.delegate(GET_OUTPUT_STREAM);
+		updateConnectionStatistics();
 		return new OutputStreamLogger(real, m_constats);
 	}
 
@@ -184,10 +225,8 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void listen(int backlog) throws IOException {
-		m_delegator.invoke(backlog);
-		m_constats.setRemoteAdress((InetAddress) m_delegator.delegateTo("getInetAddress").invoke());
-		m_constats.setRemotePort((Integer) m_delegator.delegateTo("getPort").invoke());
-		m_constats.setLocalPort((Integer) m_delegator.delegateTo("getLocalPort").invoke());
+		m_delegator.delegate(LISTEN, backlog);
+		updateConnectionStatistics();
 	}
 
 	/**
@@ -195,7 +234,7 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	protected void sendUrgentData(int data) throws IOException {
-		m_delegator.invoke();
+		m_delegator.delegate(SEND_URGENT_DATA, data);
 	}
 
 	/**
@@ -203,7 +242,7 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	public Object getOption(int optID) throws SocketException {
-		return m_delegator.invoke(optID);
+		return m_delegator.delegate(GET_OPTION, optID);
 	}
 
 	/**
@@ -211,7 +250,27 @@ public class SocketImplLogger extends SocketImpl {
 	 */
 	@Override
 	public void setOption(int optID, Object value) throws SocketException {
-		m_delegator.invoke(optID, value);
+		m_delegator.delegate(SET_OPTION, optID, value);
 	}
 
+	/**
+	 * Updates the addresses and ports of the connection statistics. The
+	 * delegator has copied them into the fields of this socket.
+	 */
+	private void updateConnectionStatistics() {
+		m_constats.setRemoteAdress(getInetAddress());
+		m_constats.setRemotePort(getPort());
+		m_constats.setLocalPort(getLocalPort());
+	}
+
+	/**
+	 * @param methodName
+	 *            name of the delegated method
+	 * @param parameterTypes
+	 *            signature of the delegated method
+	 * @return the method of SocketImpl to delegate to
+	 */
+	private static Method resolve(String methodName, Class<?>... parameterTypes) {
+		return ReflectiveDelegator.resolve(SocketImpl.class, methodName, parameterTypes);
+	}
 }
@@ -19,80 +19,106 @@ package ch.elca.el4j.util.socketstatistics;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Keeps statistics for all sockets / from all socket connections.
  *
+ * <p> Open connections are kept in a concurrent map, closed ones in a
+ * fixed-size {@link ConnectionHistory}, so opening and closing sockets does
+ * not lock. Closed connections are additionally aggregated per remote
+ * endpoint (see {@link EndpointStatistics}). The number of endpoints is
+ * bounded: once it exceeds maxEndpoints, the least recently used endpoint
+ * without open connections is dropped.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Jonas Hauenstein (JHN)
  */
 public class SocketStatistics implements SocketStatisticsMXBean {
 
+	/**
+	 * Default number of closed connections kept in the history.
+	 */
+	public static final int DEFAULT_HISTORY_SIZE = 1000;
+
+	/**
+	 * Default number of remote endpoints statistics are kept for.
+	 */
+	public static final int DEFAULT_MAX_ENDPOINTS = 1000;
+
 	/**
 	 * Config: How many seconds to keep the statistics of sockets. Default is 600 seconds = 10 minutes
 	 */
-	private static int s_keepStats = 600;
+	private static volatile int s_keepStats = 600;
 
 	/**
 	 * Internal unique id counter for sockets.
 	 */
-	private static long s_socketIdCounter = 0;
+	private static final AtomicLong s_socketIdCounter = new AtomicLong();
 
 	/**
 	 * Number of already closed sockets.
 	 */
-	private static long s_nrofclosedsockets = 0;
+	private static final AtomicLong s_nrofclosedsockets = new AtomicLong();
 
 	/**
-	 * List of all connections sorted by destruction / closed date (first order). and creation date (second order, if
-	 * not yet closed).
+	 * The statistics of the open connections by socket id.
 	 */
-	private static SortedSet<ConnectionStatistics> s_statsbydate = new TreeSet<ConnectionStatistics>();
+	private static final ConcurrentMap<Long, ConnectionStatistics> s_openStats
+		= new ConcurrentHashMap<Long, ConnectionStatistics>();
 
 	/**
-	 * Add a new ConnectionStatics for a socket.
-	 * 
-	 * @return the ConnectionsStatics added to the the set
+	 * The statistics of the most recently closed connections.
 	 */
-	public static synchronized ConnectionStatistics addNewConStats() {
-		// explicitly synchronize on list
-		synchronized (s_statsbydate) {
-			long i = getNextID();
-			ConnectionStatistics cs = new ConnectionStatistics(i);
-			s_statsbydate.add(cs);
-			cleanupStats();
-			return cs;
-		}
-	}
+	private static volatile ConnectionHistory s_closedStats = new ConnectionHistory(DEFAULT_HISTORY_SIZE);
+
+	/**
+	 * The aggregated statistics by remote endpoint.
+	 */
+	private static final ConcurrentMap<String, EndpointStatistics> s_endpointStats
+		= new ConcurrentHashMap<String, EndpointStatistics>();
 
 	/**
-	 * Fetch next id for socket and increment internal counter.
+	 * Config: For how many remote endpoints statistics are kept at most.
+	 */
+	private static volatile int s_maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+
+	/**
+	 * Add a new ConnectionStatics for a socket.
 	 * 
-	 * @return next unique id
+	 * @return the ConnectionsStatics added to the the set
 	 */
-	private static synchronized long getNextID() {
-		return ++s_socketIdCounter;
+	public static ConnectionStatistics addNewConStats() {
+		ConnectionStatistics cs = new ConnectionStatistics(s_socketIdCounter.incrementAndGet());
+		s_openStats.put(cs.getSocketID(), cs);
+		return cs;
 	}
 
 	/** {@inheritDoc} */
 	public long getClosedSocketsCount() {
-		return s_nrofclosedsockets;
+		return s_nrofclosedsockets.get();
 	}
 
 	/** {@inheritDoc} */
 	public long getOpenSocketsCount() {
-		return s_socketIdCounter - s_nrofclosedsockets;
+		return s_socketIdCounter.get() - s_nrofclosedsockets.get();
 	}
 
 	/** {@inheritDoc} */
 	public Set<ConnectionStatistics> getConnectionStatistics() {
-		return new TreeSet<ConnectionStatistics>(s_statsbydate);
+		return getStatistics();
 	}
 
 	/** {@inheritDoc} */
@@ -115,16 +141,73 @@ public class SocketStatistics implements SocketStatisticsMXBean {
 		s_keepStats = ks;
 	}
 
+	/** {@inheritDoc} */
+	public int getHistorySize() {
+		return s_closedStats.getCapacity();
+	}
+
+	/** {@inheritDoc} */
+	public void setHistorySize(int size) {
+		setHistorySizeS(size);
+	}
+
+	/**
+	 * Internal static setter for the historySize property. The most recent
+	 * records of the current history are kept.
+	 * 
+	 * @param size how many closed sockets are kept at most in statistics
+	 */
+	private static synchronized void setHistorySizeS(int size) {
+		ConnectionHistory history = new ConnectionHistory(size);
+		for (ConnectionStatistics cs : s_closedStats.getRecords()) {
+			history.add(cs);
+		}
+		s_closedStats = history;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxEndpoints() {
+		return s_maxEndpoints;
+	}
+
+	/** {@inheritDoc} */
+	public void setMaxEndpoints(int max) {
+		setMaxEndpointsS(max);
+	}
+
+	/**
+	 * Internal static setter for the maxEndpoints property.
+	 * 
+	 * @param max for how many remote endpoints statistics are kept at most
+	 */
+	private static void setMaxEndpointsS(int max) {
+		s_maxEndpoints = max;
+		while (s_endpointStats.size() > max) {
+			if (!evictIdleEndpoint(null)) {
+				break;
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	public List<EndpointStatistics> getEndpointStatistics() {
+		List<EndpointStatistics> result = new ArrayList<EndpointStatistics>(s_endpointStats.values());
+		Collections.sort(result, new Comparator<EndpointStatistics>() {
+			public int compare(EndpointStatistics a, EndpointStatistics b) {
+				return a.getEndpoint().compareTo(b.getEndpoint());
+			}
+		});
+		return result;
+	}
+
 	/** {@inheritDoc} */
 	public void exportStatisticsCSV(String filepath) {
 		BufferedWriter out = null;
 		try {
 			out = new BufferedWriter(new FileWriter(filepath));
 			out.write("Socket ID;Creation Date;Destruction Date;Remote Adress;Remote Port;Local Port;Bytes received;Bytes sent\n");
-			synchronized (s_statsbydate) {
-				for (ConnectionStatistics cs : s_statsbydate) {
-					out.write(cs.getStatisticsCSV());
-				}
+			for (ConnectionStatistics cs : getStatistics()) {
+				out.write(cs.getStatisticsCSV());
 			}
 		} catch (IOException ex) {
 			ex.printStackTrace();
@@ -142,8 +225,24 @@ public class SocketStatistics implements SocketStatisticsMXBean {
 
 	/** {@inheritDoc} */
 	public void deleteStatistics() {
-		synchronized (s_statsbydate) {
-			s_statsbydate.clear();
+		s_openStats.clear();
+		s_closedStats = new ConnectionHistory(s_closedStats.getCapacity());
+		s_endpointStats.clear();
+	}
+
+	/**
+	 * Records that a connection has been established.
+	 * 
+	 * @param cs
+	 *            the corresponding ConnectionStatics object
+	 * @param latencyNanos
+	 *            the time it took to connect in nanoseconds
+	 */
+	public static void setConnectionEstablished(ConnectionStatistics cs, long latencyNanos) {
+		EndpointStatistics endpoint = getEndpointStatistics(cs);
+		if (endpoint != null) {
+			endpoint.recordConnect(latencyNanos);
+			cs.setEndpointStatistics(endpoint);
 		}
 	}
 
@@ -153,16 +252,22 @@ public class SocketStatistics implements SocketStatisticsMXBean {
 	 * @param cs
 	 *            the corresponding ConnectionStatics object
 	 */
-	public static synchronized void setConnectionDestroyed(ConnectionStatistics cs) {
-		// explicitly synchronize on list
-		synchronized (s_statsbydate) {
-			// remove element from set
-			s_statsbydate.remove(cs);
-			// set the destruction date
-			cs.setDestroyedDateInt();
-			s_nrofclosedsockets++;
-			// re-enter element in set (to force reordering)
-			s_statsbydate.add(cs);
+	public static void setConnectionDestroyed(ConnectionStatistics cs) {
+		s_openStats.remove(cs.getSocketID());
+		cs.setDestroyedDateInt();
+		s_nrofclosedsockets.incrementAndGet();
+		s_closedStats.add(cs);
+
+		// an endpoint with open connections is never evicted, so this is still the current one
+		EndpointStatistics endpoint = cs.getEndpointStatistics();
+		if (endpoint != null) {
+			endpoint.recordDisconnect();
+		} else {
+			endpoint = getEndpointStatistics(cs);
+		}
+		if (endpoint != null) {
+			endpoint.recordClose(cs.getBytesSent(), cs.getBytesReceived(),
+				cs.getDestroyedDateInt().getTime() - cs.getCreatedDateInt().getTime());
 		}
 	}
 
@@ -170,47 +275,76 @@ public class SocketStatistics implements SocketStatisticsMXBean {
 	 * Print statistics of all listed sockets to stdout.
 	 */
 	public void showSocketsStats() {
-		cleanupStats();
-		// explicitly synchronize on list
-		synchronized (s_statsbydate) {
-			if (s_statsbydate.isEmpty()) {
-				System.out.println("No statistics available");
-			} else {
-				for (ConnectionStatistics cs : s_statsbydate) {
-					System.out.println(cs.getStatistics());
-				}
+		SortedSet<ConnectionStatistics> stats = getStatistics();
+		if (stats.isEmpty()) {
+			System.out.println("No statistics available");
+		} else {
+			for (ConnectionStatistics cs : stats) {
+				System.out.println(cs.getStatistics());
 			}
 		}
 	}
 
 	/**
-	 * Get rid of the old ConnectionStatics. Purge those, which are closed longer ago then keepstats
-	 */
-	private static synchronized void cleanupStats() {
-
-		// explicitly synchronize on list
-		synchronized (s_statsbydate) {
-			ConnectionStatistics cs;
-			Date dd;
-			long timecheck = new Date().getTime() - (s_keepStats * 1000);
-			Iterator<ConnectionStatistics> i = s_statsbydate.iterator();
-			// remove elements until one does not match the condition in the
-			// sorted list
-			while (i.hasNext()) {
-				cs = i.next();
-				dd = cs.getDestroyedDateInt();
-				if (dd != null) {
-					if (dd.getTime() < timecheck) {
-						i.remove();
-					} else {
-						break;
-					}
-				} else {
-					break;
-				}
+	 * Returns the statistics of the open connections and of the connections
+	 * closed less than keepStats seconds ago, sorted by destroyed / closed
+	 * date (first order) and creation date (second order, if not yet closed).
+	 * 
+	 * @return the statistics (a snapshot)
+	 */
+	private static SortedSet<ConnectionStatistics> getStatistics() {
+		SortedSet<ConnectionStatistics> stats = new TreeSet<ConnectionStatistics>(s_openStats.values());
+		long timecheck = new Date().getTime() - (s_keepStats * 1000L);
+		for (ConnectionStatistics cs : s_closedStats.getRecords()) {
+			if (cs.getDestroyedDateInt().getTime() >= timecheck) {
+				stats.add(cs);
 			}
 		}
+		return stats;
+	}
 
+	/**
+	 * @param cs
+	 *            the statistics of a connection
+	 * @return the aggregated statistics of its remote endpoint, <code>null</code> if the endpoint is not known
+	 */
+	private static EndpointStatistics getEndpointStatistics(ConnectionStatistics cs) {
+		String key = cs.getRemoteEndpoint();
+		if (key == null) {
+			return null;
+		}
+		EndpointStatistics endpoint = s_endpointStats.get(key);
+		if (endpoint == null) {
+			endpoint = new EndpointStatistics(key);
+			EndpointStatistics existing = s_endpointStats.putIfAbsent(key, endpoint);
+			if (existing != null) {
+				endpoint = existing;
+			} else if (s_endpointStats.size() > s_maxEndpoints) {
+				evictIdleEndpoint(endpoint);
+			}
+		}
+		return endpoint;
+	}
+
+	/**
+	 * Drops the statistics of the least recently used endpoint without open
+	 * connections. Statistics recorded concurrently to a dropped endpoint are
+	 * lost.
+	 * 
+	 * @param keep
+	 *            an endpoint not to drop, may be <code>null</code>
+	 * @return <code>true</code> if an endpoint has been dropped
+	 */
+	private static boolean evictIdleEndpoint(EndpointStatistics keep) {
+		Map.Entry<String, EndpointStatistics> eldest = null;
+		for (Map.Entry<String, EndpointStatistics> entry : s_endpointStats.entrySet()) {
+			EndpointStatistics endpoint = entry.getValue();
+			if (endpoint != keep && endpoint.getOpenConnectionCount() <= 0
+				&& (eldest == null || endpoint.getLastUsed() < eldest.getValue().getLastUsed())) {
+				eldest = entry;
+			}
+		}
+		return eldest != null && s_endpointStats.remove(eldest.getKey(), eldest.getValue());
 	}
 
 }
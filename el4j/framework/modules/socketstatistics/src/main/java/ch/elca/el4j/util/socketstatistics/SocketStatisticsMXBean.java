@@ -16,6 +16,7 @@
  */
 package ch.elca.el4j.util.socketstatistics;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -64,6 +65,45 @@ public interface SocketStatisticsMXBean {
 	 */
 	public void setKeepStats(int ks);
 
+	/**
+	 * Getter for the historySize property which defines how many closed sockets are kept at most.
+	 * 
+	 * @return how many closed sockets are kept at most in statistics
+	 */
+	public int getHistorySize();
+
+	/**
+	 * Setter for the historySize property which defines how many closed sockets are kept at most.
+	 * 
+	 * @param size how many closed sockets are kept at most in statistics
+	 */
+	public void setHistorySize(int size);
+
+	/**
+	 * Getter for the maxEndpoints property which defines for how many remote endpoints
+	 * statistics are kept at most.
+	 * 
+	 * @return for how many remote endpoints statistics are kept at most
+	 */
+	public int getMaxEndpoints();
+
+	/**
+	 * Setter for the maxEndpoints property which defines for how many remote endpoints
+	 * statistics are kept at most. If there are more, the statistics of the least recently
+	 * used endpoints without open connections are dropped.
+	 * 
+	 * @param max for how many remote endpoints statistics are kept at most
+	 */
+	public void setMaxEndpoints(int max);
+
+	/**
+	 * Get the aggregated statistics of the closed connections per remote endpoint, including
+	 * connect latency and throughput histograms.
+	 * 
+	 * @return the statistics per remote endpoint, sorted by endpoint
+	 */
+	public List<EndpointStatistics> getEndpointStatistics();
+
 	/**
 	 * Generate a csv of all gathered statistics and save it on the passed path/filename.
 	 * 
@@ -0,0 +1,78 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.tcpforwarder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of direct buffers, so links do not allocate (expensive) direct memory
+ * each time they are established. Not thread-safe: a pool is used by the
+ * selector thread of one {@link TcpForwarder} only.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class BufferPool {
+
+	/**
+	 * The capacity of the buffers.
+	 */
+	private final int m_bufferSize;
+
+	/**
+	 * Maximum number of idle buffers kept.
+	 */
+	private final int m_maxIdleBuffers;
+
+	/**
+	 * The idle buffers.
+	 */
+	private final Deque<ByteBuffer> m_idleBuffers = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param bufferSize The capacity of the buffers.
+	 * @param maxIdleBuffers Maximum number of idle buffers kept.
+	 */
+	public BufferPool(int bufferSize, int maxIdleBuffers) {
+		m_bufferSize = bufferSize;
+		m_maxIdleBuffers = maxIdleBuffers;
+	}
+
+	/**
+	 * @return Returns a cleared buffer.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = m_idleBuffers.pollFirst();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(m_bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * @param buffer Is a buffer no longer used.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer != null && m_idleBuffers.size() < m_maxIdleBuffers) {
+			m_idleBuffers.addFirst(buffer);
+		}
+	}
+}
@@ -16,87 +16,263 @@
  */
 package ch.elca.el4j.services.tcpforwarder;
 
-import java.net.Socket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 /**
  * This class represents an established, forwarding connection.
  *
+ * <p> The link does not own any thread: the selector thread of its
+ * {@link TcpForwarder} notifies it when its channels are ready. Each direction
+ * forwards the data through a direct buffer, so it is not copied to the heap.
+ * Links are therefore created by the forwarder from non-blocking socket
+ * channels; the former constructor taking two connected sockets, which started
+ * two forwarding threads, no longer exists.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Martin Zeltner (MZE)
  */
 public class Link {
+	/**
+	 * Private logger.
+	 */
+	private static Logger s_logger = LoggerFactory.getLogger(Link.class);
+	
 	/**
 	 * The control interface keeping track of <code>this</code>.
 	 */
 	protected final TcpForwarder m_tcpForwarder;
 	
 	/**
-	 * The listen/input socket.
+	 * The listen/input channel.
+	 */
+	protected final SocketChannel m_listenChannel;
+	
+	/**
+	 * The target/output channel.
+	 */
+	protected final SocketChannel m_targetChannel;
+	
+	/**
+	 * Forwards the requests (listenChannel -> targetChannel).
+	 */
+	protected final Direction m_request;
+	
+	/**
+	 * Forwards the responses (targetChannel -> listenChannel).
 	 */
-	protected final Socket m_listenSocket;
+	protected final Direction m_response;
 	
 	/**
-	 * The target/output socket.
+	 * The selection key of the listen channel.
 	 */
-	protected final Socket m_targetSocket;
+	private final SelectionKey m_listenKey;
 	
 	/**
-	 * Is the request forwarder thread (listenSocket -> targetSocket).
+	 * The selection key of the target channel.
 	 */
-	protected final UnidirectionalForwarderThread m_requestForwarderThread;
+	private final SelectionKey m_targetKey;
 	
 	/**
-	 * Is the response forwarder thread (targetSocket -> listenSocket).
+	 * The time <code>this</code> has been established in milliseconds.
 	 */
-	protected final UnidirectionalForwarderThread m_responseForwarderThread;
+	private final long m_creationTime = System.currentTimeMillis();
+	
+	/**
+	 * Whether the target channel is connected.
+	 */
+	private boolean m_connected;
+	
+	/**
+	 * Whether <code>this</code> has been closed.
+	 */
+	private volatile boolean m_closed;
 
 	/**
-	 * Establishes a forwarding link between <code>listenSocket</code> and
-	 * <code>targetSocket</code>.
+	 * Establishes a forwarding link between <code>listenChannel</code> and
+	 * <code>targetChannel</code>. Must be called by the selector thread of the
+	 * tcp forwarder.
 	 *
 	 * @param tcpForwarder
 	 *            The control interface keeping track of <code>this</code>.
-	 * @param listenSocket Is the listen socket.
-	 * @param targetSocket Is the target socket.
+	 * @param listenChannel Is the accepted, non-blocking listen channel.
+	 * @param targetChannel Is the non-blocking target channel, connected or
+	 *            with a pending connection.
+	 * @throws IOException If the channels could not be registered.
 	 */
-	public Link(TcpForwarder tcpForwarder, Socket listenSocket,
-		Socket targetSocket) {
+	public Link(TcpForwarder tcpForwarder, SocketChannel listenChannel,
+		SocketChannel targetChannel) throws IOException {
 		Assert.notNull(tcpForwarder);
-		Assert.notNull(listenSocket);
-		Assert.notNull(targetSocket);
+		Assert.notNull(listenChannel);
+		Assert.notNull(targetChannel);
 		
 		m_tcpForwarder = tcpForwarder;
-		m_listenSocket = listenSocket;
-		m_targetSocket = targetSocket;
-
-		m_requestForwarderThread = new UnidirectionalForwarderThread(
-			this, m_listenSocket, m_targetSocket);
-		m_responseForwarderThread = new UnidirectionalForwarderThread(
-			this, m_targetSocket, m_listenSocket);
+		m_listenChannel = listenChannel;
+		m_targetChannel = targetChannel;
+		
+		m_request = new Direction(m_listenChannel, m_targetChannel);
+		m_response = new Direction(m_targetChannel, m_listenChannel);
+		
+		m_connected = targetChannel.isConnected();
+		m_listenKey = listenChannel.register(
+			m_tcpForwarder.m_selector, 0, this);
+		m_targetKey = targetChannel.register(
+			m_tcpForwarder.m_selector, 0, this);
 		
 		m_tcpForwarder.m_activeLinks.add(this);
-		m_requestForwarderThread.start();
-		m_responseForwarderThread.start();
+		update(System.nanoTime());
+	}
+	
+	/**
+	 * @return Returns the number of bytes forwarded from the listen to the
+	 *         target channel.
+	 */
+	public long getRequestBytes() {
+		return m_request.m_bytes;
+	}
+	
+	/**
+	 * @return Returns the number of bytes forwarded from the target to the
+	 *         listen channel.
+	 */
+	public long getResponseBytes() {
+		return m_response.m_bytes;
+	}
+	
+	/**
+	 * @return Returns the time <code>this</code> has been established in
+	 *         milliseconds.
+	 */
+	public long getCreationTime() {
+		return m_creationTime;
+	}
+	
+	/**
+	 * @return Returns <code>true</code> if <code>this</code> has been closed.
+	 */
+	public boolean isClosed() {
+		return m_closed;
 	}
 
 	/**
-	 * Immediately aborts <code>this</code>.
+	 * Immediately aborts <code>this</code>. Can be called by any thread.
 	 */
 	protected void cut() {
-		m_requestForwarderThread.halt();
-		m_responseForwarderThread.halt();
+		m_tcpForwarder.execute(new Runnable() {
+			public void run() {
+				close();
+			}
+		});
 	}
-
+	
+	/**
+	 * Handles the readiness of one of the channels.
+	 *
+	 * @param key Is the selection key of the ready channel.
+	 */
+	protected void handle(SelectionKey key) {
+		long now = System.nanoTime();
+		try {
+			if (key.isConnectable()) {
+				m_connected = m_targetChannel.finishConnect();
+			}
+			if (key.isReadable()) {
+				(key == m_listenKey ? m_request : m_response).read(now);
+			}
+			if (key.isValid() && key.isWritable()) {
+				(key == m_listenKey ? m_response : m_request).write(now);
+			}
+			update(now);
+		} catch (IOException e) {
+			s_logger.debug("Forwarding aborted; " + this, e);
+			close();
+		}
+	}
+	
+	/**
+	 * Forwards the data whose delay has expired.
+	 *
+	 * @param now Is the current time as of {@link System#nanoTime()}.
+	 */
+	protected void handleTimeout(long now) {
+		try {
+			m_request.write(now);
+			m_response.write(now);
+			update(now);
+		} catch (IOException e) {
+			s_logger.debug("Forwarding aborted; " + this, e);
+			close();
+		}
+	}
+	
 	/**
-	 * Called by workers to tell <code>this</code> that they are done.
+	 * @return Returns the time as of {@link System#nanoTime()} when delayed
+	 *         data has to be forwarded, {@link Long#MAX_VALUE} if there is none.
+	 */
+	protected long getDeadline() {
+		return Math.min(m_request.getDeadline(), m_response.getDeadline());
+	}
+	
+	/**
+	 * Updates the interest of the selector, and closes <code>this</code> if
+	 * both directions are done.
+	 *
+	 * @param now Is the current time as of {@link System#nanoTime()}.
 	 */
-	protected synchronized void done() {
-		if (m_requestForwarderThread.isDone()
-			&& m_responseForwarderThread.isDone()) {
-			m_tcpForwarder.m_activeLinks.remove(this);
+	private void update(long now) {
+		if (m_closed) {
+			return;
+		}
+		if (m_request.isDone() && m_response.isDone()) {
+			close();
+			return;
+		}
+		int listenOps = 0;
+		int targetOps = 0;
+		if (m_connected) {
+			listenOps = m_request.getSourceOps(now) | m_response.getSinkOps(now);
+			targetOps = m_response.getSourceOps(now) | m_request.getSinkOps(now);
+		} else {
+			targetOps = SelectionKey.OP_CONNECT;
+		}
+		m_listenKey.interestOps(listenOps);
+		m_targetKey.interestOps(targetOps);
+		m_tcpForwarder.setTimer(this, getDeadline() != Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Closes the channels and releases the buffers.
+	 */
+	protected void close() {
+		if (m_closed) {
+			return;
+		}
+		m_closed = true;
+		m_listenKey.cancel();
+		m_targetKey.cancel();
+		closeQuietly(m_listenChannel);
+		closeQuietly(m_targetChannel);
+		m_request.release();
+		m_response.release();
+		m_tcpForwarder.setTimer(this, false);
+		m_tcpForwarder.linkClosed(this);
+	}
+	
+	/**
+	 * @param channel Is the channel to close.
+	 */
+	private void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			s_logger.debug("Exception while closing channel.", e);
 		}
 	}
 	
@@ -105,7 +281,184 @@ public class Link {
 	 */
 	@Override
 	public String toString() {
-		return "Link; in=[" + m_listenSocket + "], out=["
-			+ m_targetSocket + "]";
+		return "Link; in=[" + m_listenChannel.socket() + "], out=["
+			+ m_targetChannel.socket() + "]";
+	}
+	
+	/**
+	 * Forwards the data of one direction. Used by the selector thread only.
+	 */
+	protected final class Direction {
+		/**
+		 * Is the input source.
+		 */
+		private final SocketChannel m_source;
+		
+		/**
+		 * Is the output drain.
+		 */
+		private final SocketChannel m_sink;
+		
+		/**
+		 * The buffer holding the chunk to forward, in read mode while
+		 * pending.
+		 */
+		private ByteBuffer m_buffer;
+		
+		/**
+		 * Whether the buffer holds data to forward.
+		 */
+		private boolean m_pending;
+		
+		/**
+		 * Whether the source has reached its end.
+		 */
+		private boolean m_eof;
+		
+		/**
+		 * Whether the output of the sink has been shut down.
+		 */
+		private boolean m_sinkShutdown;
+		
+		/**
+		 * The time as of {@link System#nanoTime()} when the pending chunk
+		 * may be forwarded.
+		 */
+		private long m_releaseTime;
+		
+		/**
+		 * Whether the pending chunk is waiting for its release time.
+		 */
+		private boolean m_delayed;
+		
+		/**
+		 * The earliest time as of {@link System#nanoTime()} the next chunk
+		 * may be forwarded with the limited bandwidth.
+		 */
+		private long m_throttleTime;
+		
+		/**
+		 * The number of bytes forwarded. Written by the selector thread only.
+		 */
+		private volatile long m_bytes;
+		
+		/**
+		 * Constructor.
+		 *
+		 * @param source Is the input source.
+		 * @param sink Is the output drain.
+		 */
+		Direction(SocketChannel source, SocketChannel sink) {
+			m_source = source;
+			m_sink = sink;
+			m_buffer = m_tcpForwarder.m_bufferPool.acquire();
+		}
+		
+		/**
+		 * Reads the next chunk from the source and forwards it if it is not
+		 * delayed.
+		 *
+		 * @param now Is the current time as of {@link System#nanoTime()}.
+		 * @throws IOException If reading or writing failed.
+		 */
+		void read(long now) throws IOException {
+			if (m_pending || m_eof) {
+				return;
+			}
+			NetworkProfile profile = m_tcpForwarder.getNetworkProfile();
+			m_buffer.clear();
+			if (profile != null) {
+				m_buffer.limit(profile.getChunkSize(m_buffer.capacity()));
+			}
+			int readBytes = m_source.read(m_buffer);
+			if (readBytes < 0) {
+				m_eof = true;
+				shutdownSinkIfDone();
+				return;
+			}
+			if (readBytes == 0) {
+				return;
+			}
+			m_buffer.flip();
+			m_pending = true;
+			m_releaseTime = now;
+			if (profile != null) {
+				m_releaseTime = Math.max(now + profile.getDelay(), m_throttleTime);
+				m_throttleTime = m_releaseTime + profile.getTransmissionTime(readBytes);
+				m_delayed = m_releaseTime > now;
+			}
+			write(now);
+		}
+		
+		/**
+		 * Writes the pending chunk to the sink if its delay has expired.
+		 *
+		 * @param now Is the current time as of {@link System#nanoTime()}.
+		 * @throws IOException If writing failed.
+		 */
+		void write(long now) throws IOException {
+			if (!m_pending || now < m_releaseTime) {
+				return;
+			}
+			m_delayed = false;
+			m_bytes += m_sink.write(m_buffer);
+			if (!m_buffer.hasRemaining()) {
+				m_pending = false;
+				shutdownSinkIfDone();
+			}
+		}
+		
+		/**
+		 * Passes the end of the source on to the sink (half close).
+		 *
+		 * @throws IOException If the output could not be shut down.
+		 */
+		private void shutdownSinkIfDone() throws IOException {
+			if (isDone() && !m_sinkShutdown && m_sink.isOpen()) {
+				m_sinkShutdown = true;
+				m_sink.socket().shutdownOutput();
+			}
+		}
+		
+		/**
+		 * @return Returns <code>true</code> if all data has been forwarded.
+		 */
+		boolean isDone() {
+			return m_eof && !m_pending;
+		}
+		
+		/**
+		 * @param now Is the current time as of {@link System#nanoTime()}.
+		 * @return Returns the interest ops of this direction for the source.
+		 */
+		int getSourceOps(long now) {
+			return m_pending || m_eof ? 0 : SelectionKey.OP_READ;
+		}
+		
+		/**
+		 * @param now Is the current time as of {@link System#nanoTime()}.
+		 * @return Returns the interest ops of this direction for the sink.
+		 */
+		int getSinkOps(long now) {
+			return m_pending && now >= m_releaseTime ? SelectionKey.OP_WRITE : 0;
+		}
+		
+		/**
+		 * @return Returns the time when the pending chunk may be forwarded,
+		 *         {@link Long#MAX_VALUE} if there is no delayed chunk.
+		 */
+		long getDeadline() {
+			return m_delayed ? m_releaseTime : Long.MAX_VALUE;
+		}
+		
+		/**
+		 * Returns the buffer to the pool.
+		 */
+		void release() {
+			m_tcpForwarder.m_bufferPool.release(m_buffer);
+			m_buffer = null;
+			m_pending = false;
+			m_delayed = false;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.services.tcpforwarder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Degradations of the network simulated by a {@link TcpForwarder}: added
+ * latency, limited bandwidth and packet loss.
+ *
+ * <p> Data is forwarded in chunks. Each chunk is delayed by the latency and
+ * sent no faster than the bandwidth allows. Since TCP retransmits lost
+ * packets, a dropped chunk is not lost but delayed by the retransmission
+ * delay. A chunk is only read from its source once the previous one has been
+ * sent, so latency also limits the throughput of a link, as on a real network
+ * with a small window.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class NetworkProfile {
+
+	/**
+	 * Default retransmission delay in milliseconds (the minimal TCP
+	 * retransmission timeout).
+	 */
+	public static final long DEFAULT_RETRANSMISSION_DELAY = 200;
+
+	/**
+	 * Minimal chunk size in bytes when the bandwidth is limited.
+	 */
+	private static final int MIN_THROTTLED_CHUNK_SIZE = 512;
+
+	/**
+	 * Chunks per second when the bandwidth is limited, to smooth the traffic.
+	 */
+	private static final int THROTTLED_CHUNKS_PER_SECOND = 20;
+
+	/**
+	 * Decides which chunks are dropped.
+	 */
+	private final Random m_random = new Random();
+
+	/**
+	 * @see #setLatency(long)
+	 */
+	private volatile long m_latencyNanos;
+
+	/**
+	 * @see #setBandwidth(long)
+	 */
+	private volatile long m_bandwidth;
+
+	/**
+	 * @see #setDropProbability(double)
+	 */
+	private volatile double m_dropProbability;
+
+	/**
+	 * @see #setRetransmissionDelay(long)
+	 */
+	private volatile long m_retransmissionDelayNanos
+		= TimeUnit.MILLISECONDS.toNanos(DEFAULT_RETRANSMISSION_DELAY);
+
+	/**
+	 * @return Returns the latency added to each chunk in milliseconds.
+	 */
+	public long getLatency() {
+		return TimeUnit.NANOSECONDS.toMillis(m_latencyNanos);
+	}
+
+	/**
+	 * @param latency
+	 *            The latency added to each chunk in milliseconds (one way).
+	 */
+	public void setLatency(long latency) {
+		m_latencyNanos = TimeUnit.MILLISECONDS.toNanos(latency);
+	}
+
+	/**
+	 * @return Returns the bandwidth per link and direction in bytes per
+	 *         second, <code>0</code> if unlimited.
+	 */
+	public long getBandwidth() {
+		return m_bandwidth;
+	}
+
+	/**
+	 * @param bandwidth
+	 *            The bandwidth per link and direction in bytes per second,
+	 *            <code>0</code> (default) for unlimited.
+	 */
+	public void setBandwidth(long bandwidth) {
+		m_bandwidth = bandwidth;
+	}
+
+	/**
+	 * @return Returns the probability that a chunk is dropped.
+	 */
+	public double getDropProbability() {
+		return m_dropProbability;
+	}
+
+	/**
+	 * @param dropProbability
+	 *            The probability that a chunk is dropped and has to be
+	 *            retransmitted, between <code>0</code> (default) and
+	 *            <code>1</code>.
+	 */
+	public void setDropProbability(double dropProbability) {
+		m_dropProbability = dropProbability;
+	}
+
+	/**
+	 * @return Returns the delay of a dropped chunk in milliseconds.
+	 */
+	public long getRetransmissionDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(m_retransmissionDelayNanos);
+	}
+
+	/**
+	 * @param retransmissionDelay
+	 *            The delay of a dropped chunk in milliseconds. Defaults to
+	 *            {@link #DEFAULT_RETRANSMISSION_DELAY}.
+	 */
+	public void setRetransmissionDelay(long retransmissionDelay) {
+		m_retransmissionDelayNanos = TimeUnit.MILLISECONDS.toNanos(retransmissionDelay);
+	}
+
+	/**
+	 * @param capacity
+	 *            The capacity of the forwarding buffer.
+	 * @return Returns the maximum number of bytes to read in one chunk.
+	 */
+	protected int getChunkSize(int capacity) {
+		long bandwidth = m_bandwidth;
+		if (bandwidth <= 0) {
+			return capacity;
+		}
+		long chunkSize = Math.max(bandwidth / THROTTLED_CHUNKS_PER_SECOND, MIN_THROTTLED_CHUNK_SIZE);
+		return (int) Math.min(chunkSize, capacity);
+	}
+
+	/**
+	 * @return Returns the delay of a chunk in nanoseconds caused by latency
+	 *         and packet loss.
+	 */
+	protected long getDelay() {
+		long delay = m_latencyNanos;
+		double dropProbability = m_dropProbability;
+		if (dropProbability > 0 && m_random.nextDouble() < dropProbability) {
+			delay += m_retransmissionDelayNanos;
+		}
+		return delay;
+	}
+
+	/**
+	 * @param bytes
+	 *            The size of a chunk.
+	 * @return Returns the time in nanoseconds it takes to send the chunk with
+	 *         the limited bandwidth, <code>0</code> if unlimited.
+	 */
+	protected long getTransmissionTime(int bytes) {
+		long bandwidth = m_bandwidth;
+		return bandwidth <= 0 ? 0 : bytes * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+	}
+}
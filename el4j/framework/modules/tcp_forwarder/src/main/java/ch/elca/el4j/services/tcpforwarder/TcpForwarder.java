@@ -19,12 +19,22 @@ package ch.elca.el4j.services.tcpforwarder;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +49,12 @@ import org.slf4j.LoggerFactory;
  * to and from it achieving the same effect but for requiring the application to
  * connect on the forwarder's port.
  *
+ * <p>All links of a forwarder are served by a single selector thread using
+ * non-blocking channels and pooled direct buffers, so thousands of links do
+ * not need thousands of threads. A {@link NetworkProfile} can be set to
+ * simulate latency, limited bandwidth and packet loss. {@link #plug()} and
+ * {@link #unplug()} return once the selector thread has executed them.
+ *
  * @svnLink $Revision$;$Date$;$Author$;$URL$
  *
  * @author Adrian Moos (AMS)
@@ -46,6 +62,22 @@ import org.slf4j.LoggerFactory;
  * @author Martin Zeltner (MZE)
  */
 public class TcpForwarder implements Runnable {
+	/**
+	 * Is the forwarder buffer size.
+	 */
+	public static final int BUFFER_SIZE = 16384;
+	
+	/**
+	 * Maximum number of idle buffers kept for new links.
+	 */
+	public static final int MAX_IDLE_BUFFERS = 256;
+	
+	/**
+	 * Milliseconds between the checks whether the selector thread is still
+	 * alive while waiting for a task.
+	 */
+	private static final long TASK_POLL_INTERVAL = 100;
+	
 	/**
 	 * Private logger.
 	 */
@@ -67,11 +99,59 @@ public class TcpForwarder implements Runnable {
 	 */
 	protected Set<Link> m_activeLinks = Collections.synchronizedSet(
 		new LinkedHashSet<Link>());
+	
+	/**
+	 * The selector serving all channels.
+	 */
+	protected final Selector m_selector;
+	
+	/**
+	 * The direct buffers used by the links.
+	 */
+	protected final BufferPool m_bufferPool
+		= new BufferPool(BUFFER_SIZE, MAX_IDLE_BUFFERS);
 
 	/**
-	 * The used server socket.
+	 * The selector thread.
+	 */
+	private final Thread m_thread;
+	
+	/**
+	 * Tasks to execute on the selector thread.
+	 */
+	private final Queue<Runnable> m_tasks
+		= new ConcurrentLinkedQueue<Runnable>();
+	
+	/**
+	 * The links holding delayed data. Used by the selector thread only.
 	 */
-	private ServerSocket m_serverSocket = null;
+	private final Set<Link> m_timedLinks = new LinkedHashSet<Link>();
+
+	/**
+	 * The used server channel, <code>null</code> if unplugged. Used by the
+	 * selector thread only.
+	 */
+	private ServerSocketChannel m_serverChannel = null;
+	
+	/**
+	 * The simulated network degradations, <code>null</code> for none.
+	 */
+	private volatile NetworkProfile m_networkProfile;
+	
+	/**
+	 * Number of links established.
+	 */
+	private final AtomicLong m_linkCount = new AtomicLong();
+	
+	/**
+	 * Bytes forwarded by closed links from the listen to the target side.
+	 */
+	private final AtomicLong m_closedRequestBytes = new AtomicLong();
+	
+	/**
+	 * Bytes forwarded by closed links from the target to the listen side.
+	 */
+	private final AtomicLong m_closedResponseBytes = new AtomicLong();
 
 	/**
 	 * Forwarder to listen and forward to local ports.
@@ -92,9 +172,16 @@ public class TcpForwarder implements Runnable {
 	public TcpForwarder(int listenPort, InetSocketAddress targetAddress) {
 		m_listenPort = listenPort;
 		m_targetAddress = targetAddress;
-		Thread t = new Thread(this);
-		t.setDaemon(true);
-		t.start();
+		try {
+			m_selector = Selector.open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open a selector.", e);
+		}
+		m_thread = new Thread(this, "TcpForwarder-" + listenPort);
+		m_thread.setDaemon(true);
+		m_thread.start();
+		// returns once the server socket is bound
+		plug();
 	}
 	
 	/**
@@ -122,113 +209,344 @@ public class TcpForwarder implements Runnable {
 	public void run() {
 		try {
 			while (true) {
-				try {
-					m_serverSocket = new ServerSocket(m_listenPort);
-				} catch (IOException e) {
-					s_logger.warn("Binding server socket to local port "
-						+ m_listenPort + " failed. Aborting...", e);
-					return;
+				runTasks();
+				long timeout = getSelectTimeout();
+				if (timeout < 0 || !m_selector.selectedKeys().isEmpty()) {
+					// a task may have selected keys already
+					m_selector.selectNow();
+				} else {
+					m_selector.select(timeout);
 				}
-				s_logger.debug("Server socket successfully bound to address "
-					+ m_serverSocket.getLocalSocketAddress());
-
-				while (true) {
-					Socket listenSocket = null;
-					Socket targetSocket = null;
-					try {
-						listenSocket = m_serverSocket.accept();
-						s_logger.debug("Connection accepted; "
-							+ listenSocket.toString());
-						s_logger.debug("Trying to open the target socket at ["
-							+ m_targetAddress + "].");
-						targetSocket = new Socket(
-							m_targetAddress.getAddress(),
-							m_targetAddress.getPort());
-					} catch (IOException e) {
-						if (listenSocket != null) {
-							try {
-								listenSocket.close();
-							} catch (IOException eInner) {
-								s_logger.debug(
-									"Due to an exception the listening "
-									+ "socket should be closed, but there was "
-									+ "an exception while closing it.", eInner);
-							}
-						}
-						if (targetSocket != null) {
-							try {
-								targetSocket.close();
-							} catch (IOException eInner) {
-								s_logger.debug(
-									"Due to an exception the target "
-									+ "socket should be closed, but there was "
-									+ "an exception while closing it.", eInner);
-							}
-						}
-						
-						if (m_serverSocket.isClosed()) {
-							s_logger.warn(
-								"Server socket on local port "
-								+ m_listenPort + " closed.", e);
-							m_serverSocket = null;
-							break;
-						}
-						s_logger.error("Connection from local port "
-							+ m_listenPort + " to target address "
-							+ m_targetAddress + " failed. Aborting...", e);
-						return;
+				Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
 					}
-					new Link(this, listenSocket, targetSocket);
-				}
-				try {
-					if (m_serverSocket != null) {
-						m_serverSocket.close();
-					}
-				} catch (IOException e) {
-					s_logger.warn("Closing server socket failed.", e);
-				}
-				m_serverSocket = null;
-
-				// wait until we are needed again
-				synchronized (this) {
-					try {
-						wait();
-						s_logger.debug(
-							"Tcp forwarder awoken. Will continue work...");
-					} catch (InterruptedException e) {
-						s_logger.debug(
-							"Tcp forwarder interrupted. Will continue work...");
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						((Link) key.attachment()).handle(key);
 					}
 				}
+				handleTimeouts();
 			}
+		} catch (IOException e) {
+			s_logger.error("Tcp forwarder on local port " + m_listenPort
+				+ " failed. Aborting...", e);
 		} finally {
-			unplug();
+			closeServerChannel();
+			cutLinks();
 		}
 	}
 
 	/**
-	 * Starts forwarding tcp messages.
+	 * Starts forwarding tcp messages. Returns once the server socket is bound
+	 * (or binding it failed).
 	 */
 	public void plug() {
-		synchronized (this) {
-			notify();
-		}
+		executeAndWait(new Runnable() {
+			public void run() {
+				bind();
+			}
+		});
 	}
 
 	/**
-	 * Stops forwarding tcp messages.
+	 * Stops forwarding tcp messages. New connections are refused and the
+	 * established links are cut. Returns once all links are closed.
 	 */
 	public void unplug() {
+		executeAndWait(new Runnable() {
+			public void run() {
+				closeServerChannel();
+				cutLinks();
+				deregisterClosedChannels();
+			}
+		});
+	}
+	
+	/**
+	 * @return Returns the simulated network degradations.
+	 */
+	public NetworkProfile getNetworkProfile() {
+		return m_networkProfile;
+	}
+
+	/**
+	 * @param networkProfile
+	 *            The simulated network degradations, applied to all links,
+	 *            <code>null</code> for none.
+	 */
+	public void setNetworkProfile(NetworkProfile networkProfile) {
+		m_networkProfile = networkProfile;
+	}
+	
+	/**
+	 * @return Returns a snapshot of the active links.
+	 */
+	public List<Link> getActiveLinks() {
+		synchronized (m_activeLinks) {
+			return new ArrayList<Link>(m_activeLinks);
+		}
+	}
+	
+	/**
+	 * @return Returns the number of links established so far.
+	 */
+	public long getLinkCount() {
+		return m_linkCount.get();
+	}
+	
+	/**
+	 * @return Returns the number of bytes forwarded from the listen to the
+	 *         target side so far.
+	 */
+	public long getRequestBytes() {
+		long bytes = m_closedRequestBytes.get();
+		for (Link link : getActiveLinks()) {
+			bytes += link.getRequestBytes();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * @return Returns the number of bytes forwarded from the target to the
+	 *         listen side so far.
+	 */
+	public long getResponseBytes() {
+		long bytes = m_closedResponseBytes.get();
+		for (Link link : getActiveLinks()) {
+			bytes += link.getResponseBytes();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Executes the given task on the selector thread.
+	 *
+	 * @param task Is the task to execute.
+	 */
+	protected void execute(Runnable task) {
+		if (Thread.currentThread() == m_thread) {
+			task.run();
+		} else {
+			m_tasks.add(task);
+			m_selector.wakeup();
+		}
+	}
+	
+	/**
+	 * Executes the given task on the selector thread and waits until it is
+	 * done. Returns early if the selector thread has ended, it closes the
+	 * server channel and all links when it ends.
+	 *
+	 * @param task Is the task to execute.
+	 */
+	protected void executeAndWait(final Runnable task) {
+		if (Thread.currentThread() == m_thread) {
+			task.run();
+			return;
+		}
+		final CountDownLatch done = new CountDownLatch(1);
+		execute(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					done.countDown();
+				}
+			}
+		});
 		try {
-			if (m_serverSocket != null) {
-				m_serverSocket.close();
+			while (!done.await(TASK_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (!m_thread.isAlive()) {
+					return;
+				}
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Registers or unregisters a link holding delayed data.
+	 *
+	 * @param link Is the link.
+	 * @param timed Whether the link holds delayed data.
+	 */
+	protected void setTimer(Link link, boolean timed) {
+		if (timed) {
+			m_timedLinks.add(link);
+		} else {
+			m_timedLinks.remove(link);
+		}
+	}
+	
+	/**
+	 * Called by a link when it has been closed.
+	 *
+	 * @param link Is the closed link.
+	 */
+	protected void linkClosed(Link link) {
+		m_activeLinks.remove(link);
+		m_closedRequestBytes.addAndGet(link.getRequestBytes());
+		m_closedResponseBytes.addAndGet(link.getResponseBytes());
+	}
+	
+	/**
+	 * Binds the server channel if it is not bound yet.
+	 */
+	private void bind() {
+		if (m_serverChannel != null) {
+			return;
+		}
+		ServerSocketChannel serverChannel = null;
+		try {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(m_listenPort));
+			serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+			m_serverChannel = serverChannel;
+			s_logger.debug("Server socket successfully bound to address "
+				+ serverChannel.socket().getLocalSocketAddress());
+		} catch (IOException e) {
+			s_logger.warn("Binding server socket to local port "
+				+ m_listenPort + " failed.", e);
+			if (serverChannel != null) {
+				try {
+					serverChannel.close();
+				} catch (IOException eInner) {
+					s_logger.debug("Closing server socket failed.", eInner);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Closes the server channel, if any.
+	 */
+	private void closeServerChannel() {
+		if (m_serverChannel == null) {
+			return;
+		}
+		try {
+			m_serverChannel.close();
+			s_logger.debug("Server socket on local port " + m_listenPort
+				+ " closed.");
 		} catch (IOException e) {
 			s_logger.warn("Closing server socket failed.", e);
 		}
-		synchronized (m_activeLinks) {
-			for (Link l : m_activeLinks) {
-				l.cut();
+		m_serverChannel = null;
+	}
+	
+	/**
+	 * Deregisters the keys of the closed channels from the selector. A
+	 * registered channel is only closed completely when it is deregistered,
+	 * e.g. the server socket keeps accepting connections until then.
+	 */
+	private void deregisterClosedChannels() {
+		try {
+			m_selector.selectNow();
+		} catch (IOException e) {
+			s_logger.warn("Deregistering closed channels failed.", e);
+		}
+	}
+	
+	/**
+	 * Cuts all active links.
+	 */
+	private void cutLinks() {
+		for (Link link : getActiveLinks()) {
+			link.close();
+		}
+	}
+	
+	/**
+	 * Accepts the pending connections and opens their target connections.
+	 */
+	private void accept() {
+		while (m_serverChannel != null) {
+			SocketChannel listenChannel = null;
+			SocketChannel targetChannel = null;
+			try {
+				listenChannel = m_serverChannel.accept();
+				if (listenChannel == null) {
+					return;
+				}
+				s_logger.debug("Connection accepted; " + listenChannel.socket());
+				listenChannel.configureBlocking(false);
+				targetChannel = SocketChannel.open();
+				targetChannel.configureBlocking(false);
+				targetChannel.connect(m_targetAddress);
+				new Link(this, listenChannel, targetChannel);
+				m_linkCount.incrementAndGet();
+			} catch (IOException e) {
+				s_logger.error("Connection from local port "
+					+ m_listenPort + " to target address "
+					+ m_targetAddress + " failed.", e);
+				closeQuietly(listenChannel);
+				closeQuietly(targetChannel);
+			}
+		}
+	}
+	
+	/**
+	 * Runs the tasks submitted by other threads.
+	 */
+	private void runTasks() {
+		Runnable task;
+		while ((task = m_tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				s_logger.error("Tcp forwarder task failed.", e);
+			}
+		}
+	}
+	
+	/**
+	 * @return Returns the milliseconds to wait for ready channels,
+	 *         <code>0</code> to wait infinitely, <code>-1</code> not to wait.
+	 */
+	private long getSelectTimeout() {
+		long deadline = Long.MAX_VALUE;
+		for (Link link : m_timedLinks) {
+			deadline = Math.min(deadline, link.getDeadline());
+		}
+		if (deadline == Long.MAX_VALUE) {
+			return 0;
+		}
+		long timeout = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		return timeout <= 0 ? -1 : timeout;
+	}
+	
+	/**
+	 * Forwards the delayed data whose delay has expired.
+	 */
+	private void handleTimeouts() {
+		if (m_timedLinks.isEmpty()) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (Link link : new ArrayList<Link>(m_timedLinks)) {
+			if (link.getDeadline() <= now) {
+				link.handleTimeout(now);
+			}
+		}
+	}
+	
+	/**
+	 * @param channel Is the channel to close, may be <code>null</code>.
+	 */
+	private void closeQuietly(SocketChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				s_logger.debug("Closing channel failed.", e);
 			}
 		}
 	}
@@ -0,0 +1,239 @@
+/*
+ * EL4J, the Extension Library for the J2EE, adds incremental enhancements to
+ * the spring framework, http://el4j.sf.net
+ * Copyright (C) 2011 by ELCA Informatique SA, Av. de la Harpe 22-24,
+ * 1000 Lausanne, Switzerland, http://www.elca.ch
+ *
+ * EL4J is published under the GNU Lesser General Public License (LGPL)
+ * Version 2.1. See http://www.gnu.org/licenses/
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * For alternative licensing, please contact info@elca.ch
+ */
+package ch.elca.el4j.tests.tcpforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.elca.el4j.services.tcpforwarder.NetworkProfile;
+import ch.elca.el4j.services.tcpforwarder.TcpForwarder;
+
+/**
+ * Tests the links of the {@link TcpForwarder} against a local echo server, so
+ * no database is needed.
+ *
+ * @svnLink $Revision$;$Date$;$Author$;$URL$
+ */
+public class TcpForwarderLinkTest {
+	// Checkstyle: MagicNumber off
+
+	/**
+	 * The echo server.
+	 */
+	private ServerSocket m_echoServer;
+
+	/**
+	 * The forwarder to the echo server.
+	 */
+	private TcpForwarder m_forwarder;
+
+	/**
+	 * The port the forwarder listens on.
+	 */
+	private int m_listenPort;
+
+	/**
+	 * Starts the echo server and the forwarder.
+	 *
+	 * @throws IOException If a socket could not be opened.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		m_echoServer = new ServerSocket(0);
+		Thread acceptor = new Thread("echo-server") {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						echo(m_echoServer.accept());
+					}
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		ServerSocket free = new ServerSocket(0);
+		m_listenPort = free.getLocalPort();
+		free.close();
+		m_forwarder = new TcpForwarder(m_listenPort,
+			new InetSocketAddress("localhost", m_echoServer.getLocalPort()));
+	}
+
+	/**
+	 * Stops the forwarder and the echo server.
+	 *
+	 * @throws IOException If the echo server could not be closed.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		m_forwarder.unplug();
+		m_echoServer.close();
+	}
+
+	/**
+	 * Data is forwarded in both directions and counted.
+	 *
+	 * @throws IOException If the test fails.
+	 */
+	@Test
+	public void testForwardsAndCountsBytes() throws IOException {
+		Socket client = connect();
+		assertEquals("hello", roundTrip(client, "hello"));
+		assertEquals(1, m_forwarder.getLinkCount());
+
+		// waits for the selector thread, so the counters are up to date
+		m_forwarder.unplug();
+		assertEquals(5, m_forwarder.getRequestBytes());
+		assertEquals(5, m_forwarder.getResponseBytes());
+		client.close();
+	}
+
+	/**
+	 * Unplugging cuts the links and refuses new connections before it
+	 * returns, plugging accepts them again.
+	 *
+	 * @throws IOException If the test fails.
+	 */
+	@Test
+	public void testUnplugCutsLinksBeforeReturning() throws IOException {
+		Socket client = connect();
+		assertEquals("a", roundTrip(client, "a"));
+
+		m_forwarder.unplug();
+		assertTrue(m_forwarder.getActiveLinks().isEmpty());
+		try {
+			assertEquals(-1, client.getInputStream().read());
+		} catch (IOException e) {
+			// connection reset, cut as well
+		}
+		client.close();
+		try {
+			connect().close();
+			fail("The forwarder must refuse connections when unplugged.");
+		} catch (ConnectException e) {
+			// expected
+		}
+
+		m_forwarder.plug();
+		client = connect();
+		assertEquals("b", roundTrip(client, "b"));
+		client.close();
+	}
+
+	/**
+	 * The latency of the network profile delays the data.
+	 *
+	 * @throws IOException If the test fails.
+	 */
+	@Test
+	public void testLatencyIsSimulated() throws IOException {
+		NetworkProfile profile = new NetworkProfile();
+		profile.setLatency(200);
+		m_forwarder.setNetworkProfile(profile);
+
+		Socket client = connect();
+		long start = System.nanoTime();
+		assertEquals("slow", roundTrip(client, "slow"));
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertTrue("Round trip took " + elapsedMillis + "ms", elapsedMillis >= 200);
+		client.close();
+	}
+
+	// Checkstyle: MagicNumber on
+
+	/**
+	 * @return a socket connected to the forwarder
+	 * @throws IOException If the connection is refused.
+	 */
+	private Socket connect() throws IOException {
+		Socket socket = new Socket("localhost", m_listenPort);
+		socket.setSoTimeout(10000);
+		return socket;
+	}
+
+	/**
+	 * @param socket     the socket to use
+	 * @param message    the message to send
+	 * @return the echoed message
+	 * @throws IOException If the message could not be echoed.
+	 */
+	private String roundTrip(Socket socket, String message) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(message.getBytes("US-ASCII"));
+		out.flush();
+		InputStream in = socket.getInputStream();
+		byte[] buffer = new byte[message.length()];
+		int read = 0;
+		while (read < buffer.length) {
+			int count = in.read(buffer, read, buffer.length - read);
+			if (count < 0) {
+				throw new IOException("Connection closed after " + read + " bytes.");
+			}
+			read += count;
+		}
+		return new String(buffer, "US-ASCII");
+	}
+
+	/**
+	 * Echoes the data of the given connection on a new thread.
+	 *
+	 * @param socket    the accepted connection
+	 */
+	private static void echo(final Socket socket) {
+		Thread thread = new Thread("echo") {
+			@Override
+			public void run() {
+				try {
+					InputStream in = socket.getInputStream();
+					OutputStream out = socket.getOutputStream();
+					byte[] buffer = new byte[1024];
+					int count;
+					while ((count = in.read(buffer)) >= 0) {
+						out.write(buffer, 0, count);
+						out.flush();
+					}
+				} catch (IOException e) {
+					// connection cut
+				} finally {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
@@ -162,14 +162,13 @@ public class TcpForwarderTest {
 		// Try if connection works
 		executeFirstInsert();
 		// Unplug and check, if database connection is down
+		// returns once the links are cut
 		m_forwarder.unplug();
-		Thread.sleep(DELAY);
 		executeSecondInsert();
 		Thread.sleep(DELAY);
 		// Plug again and check if connection works again
 		s_logger.debug("Restoring Link");
 		m_forwarder.plug();
-		Thread.sleep(DELAY);
 		executeThirdInsert();
 		Thread.sleep(DELAY);
 		s_logger.debug("TEST OK");